@@ -0,0 +1,158 @@
+package net.findzach.nojokepanel.config;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.core.DefaultDockerClientConfig;
+import com.github.dockerjava.core.DockerClientImpl;
+import com.github.dockerjava.httpclient5.ApacheDockerHttpClient;
+import com.github.dockerjava.transport.DockerHttpClient;
+import net.findzach.nojokepanel.service.NodeRegistry;
+import net.findzach.nojokepanel.util.BlockingCallExecutors;
+import net.findzach.nojokepanel.util.DockerCallMetrics;
+import net.findzach.nojokepanel.util.InstrumentedDockerHttpClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Docker API clients. Request/response calls and long-lived streams (events, stats, log follows) use separate
+ * connection pools, so hundreds of open streams can never starve lifecycle calls of a connection. Both pools
+ * report into the same {@link DockerCallMetrics}.
+ * <p>
+ * Every Docker node in {@code nojokepanel.docker.nodes} gets its own pair of clients in the
+ * {@link NodeRegistry}; without that setting there is a single node at {@code DOCKER_HOST}. The plain
+ * {@link DockerClient} beans are the first node's clients. A configured node uses TLS if
+ * {@code nojokepanel.docker.cert-root} has a directory named after it holding its {@code ca.pem},
+ * {@code cert.pem} and {@code key.pem}; the single default node follows {@code DOCKER_TLS_VERIFY} and
+ * {@code DOCKER_CERT_PATH}.
+ */
+@Configuration
+public class DockerConfig {
+
+    public static final String STREAM_CLIENT = "dockerStreamClient";
+
+    @Value("${nojokepanel.docker.connect-timeout-ms:5000}")
+    private long connectTimeoutMs;
+
+    @Bean
+    public DockerCallMetrics dockerCallMetrics() {
+        return new DockerCallMetrics();
+    }
+
+    /**
+     * For request/response calls. The response timeout bounds how long a call may wait for Docker to answer,
+     * so it has to stay above the longest stop grace period the panel asks for.
+     */
+    @Bean(destroyMethod = "") // Closed with the node registry
+    @Primary
+    public DockerClient dockerClient(NodeRegistry nodeRegistry) {
+        return nodeRegistry.getDefaultNode().getClient();
+    }
+
+    /**
+     * For streams that stay open indefinitely; there is no response timeout, and one connection per stream.
+     */
+    @Bean(value = STREAM_CLIENT, destroyMethod = "")
+    public DockerClient dockerStreamClient(NodeRegistry nodeRegistry) {
+        return nodeRegistry.getDefaultNode().getStreamClient();
+    }
+
+    /**
+     * @param nodes comma-separated {@code id=host} pairs, e.g.
+     *              {@code local=unix:///var/run/docker.sock,build1=tcp://10.0.0.12:2376}
+     */
+    @Bean
+    public NodeRegistry nodeRegistry(DockerCallMetrics metrics,
+                                     @Value("${nojokepanel.docker.nodes:}") String nodes,
+                                     @Value("${nojokepanel.docker.cert-root:}") String certRoot,
+                                     @Value("${nojokepanel.docker.max-connections:64}") int maxConnections,
+                                     @Value("${nojokepanel.docker.stream-max-connections:512}") int streamMaxConnections,
+                                     @Value("${nojokepanel.docker.response-timeout-ms:120000}") long responseTimeoutMs,
+                                     @Value("${nojokepanel.placement.strategy:least-loaded}") String strategy,
+                                     @Value("${nojokepanel.placement.reserve-cpus:1}") double reserveCpus,
+                                     @Value("${nojokepanel.placement.reserve-memory-mb:512}") long reserveMemoryMb,
+                                     @Value("${nojokepanel.placement.max-utilization:0.85}") double maxUtilization,
+                                     @Value("${nojokepanel.placement.refresh-interval-ms:15000}") long refreshIntervalMs) {
+        List<NodeRegistry.Node> registered = new ArrayList<>();
+        for (String[] node : parseNodes(nodes)) {
+            String certPath = certPath(node[0], nodes.isBlank(), certRoot);
+            registered.add(new NodeRegistry.Node(node[0], node[1], certPath,
+                    create(node[1], certPath, metrics, maxConnections, Duration.ofMillis(responseTimeoutMs)),
+                    create(node[1], certPath, metrics, streamMaxConnections, null)));
+        }
+        NodeRegistry nodeRegistry = new NodeRegistry(registered, NodeRegistry.Strategy.parse(strategy),
+                reserveCpus, reserveMemoryMb * 1024 * 1024, maxUtilization);
+        nodeRegistry.start(refreshIntervalMs);
+        return nodeRegistry;
+    }
+
+    /**
+     * @return {id, host} pairs; a single {@value NodeRegistry#LOCAL} node at {@code DOCKER_HOST} if none are set
+     */
+    static List<String[]> parseNodes(String nodes) {
+        List<String[]> parsed = new ArrayList<>();
+        for (String entry : nodes.split(",")) {
+            if (entry.isBlank()) continue;
+            int separator = entry.indexOf('=');
+            if (separator <= 0 || separator == entry.length() - 1) {
+                throw new IllegalArgumentException("Docker node must be id=host, got: " + entry.trim());
+            }
+            parsed.add(new String[]{entry.substring(0, separator).trim(), entry.substring(separator + 1).trim()});
+        }
+        if (parsed.isEmpty()) {
+            String dockerHost = System.getenv("DOCKER_HOST") != null ? System.getenv("DOCKER_HOST") : "unix:///var/run/docker.sock";
+            parsed.add(new String[]{NodeRegistry.LOCAL, dockerHost});
+        }
+        return parsed;
+    }
+
+    /**
+     * @return the node's TLS certificate directory, or null if it doesn't use TLS
+     */
+    private static String certPath(String nodeId, boolean fromEnvironment, String certRoot) {
+        if (fromEnvironment) {
+            String verify = System.getenv("DOCKER_TLS_VERIFY");
+            boolean tls = verify != null && !verify.isEmpty() && !"0".equals(verify);
+            return tls ? System.getenv("DOCKER_CERT_PATH") : null;
+        }
+        if (certRoot.isBlank()) return null;
+        Path dir = Path.of(certRoot, nodeId);
+        return Files.isDirectory(dir) ? dir.toString() : null;
+    }
+
+    /**
+     * Runs blocking Docker work for the operation registry: virtual threads when enabled and available,
+     * otherwise a fixed pool of platform threads.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService dockerCallExecutor(@Value("${nojokepanel.docker.virtual-threads:false}") boolean virtualThreads,
+                                              @Value("${nojokepanel.operations.threads:8}") int platformThreads) {
+        return BlockingCallExecutors.create("operation", platformThreads, virtualThreads);
+    }
+
+    private DockerClient create(String dockerHost, String certPath, DockerCallMetrics metrics, int maxConnections,
+                                Duration responseTimeout) {
+        DefaultDockerClientConfig config = DefaultDockerClientConfig.createDefaultConfigBuilder()
+                .withDockerHost(dockerHost)
+                .withDockerTlsVerify(certPath != null)
+                .withDockerCertPath(certPath)
+                .build();
+        ApacheDockerHttpClient.Builder builder = new ApacheDockerHttpClient.Builder()
+                .dockerHost(config.getDockerHost())
+                .sslConfig(config.getSSLConfig())
+                .maxConnections(maxConnections)
+                .connectionTimeout(Duration.ofMillis(connectTimeoutMs));
+        if (responseTimeout != null) {
+            builder.responseTimeout(responseTimeout);
+        }
+        DockerHttpClient httpClient = new InstrumentedDockerHttpClient(builder.build(), metrics);
+        return DockerClientImpl.getInstance(config, httpClient);
+    }
+}
@@ -0,0 +1,29 @@
+package net.findzach.nojokepanel.config;
+
+import net.findzach.nojokepanel.util.LogArchive;
+import net.findzach.nojokepanel.util.LogChunkStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+@Configuration
+public class LogStoreConfig {
+
+    @Bean
+    public LogChunkStore logChunkStore(@Value("${nojokepanel.logs.chunk-size-kb:64}") int chunkSizeKb,
+                                       @Value("${nojokepanel.logs.memory-budget-mb:64}") long memoryBudgetMb,
+                                       @Value("${nojokepanel.logs.spill-dir:${java.io.tmpdir}/nojokepanel/log-spill}") String spillDir) throws IOException {
+        return new LogChunkStore(chunkSizeKb * 1024, memoryBudgetMb * 1024 * 1024, Path.of(spillDir));
+    }
+
+    @Bean
+    public LogArchive logArchive(@Value("${nojokepanel.logs.archive-dir:./data/log-archive}") String archiveDir,
+                                 @Value("${nojokepanel.logs.archive-segment-mb:64}") long segmentMb,
+                                 @Value("${nojokepanel.logs.archive-member-kb:64}") int memberKb,
+                                 @Value("${nojokepanel.logs.archive-max-mb:10240}") long maxMb) throws IOException {
+        return new LogArchive(Path.of(archiveDir), segmentMb * 1024 * 1024, memberKb * 1024, maxMb * 1024 * 1024);
+    }
+}
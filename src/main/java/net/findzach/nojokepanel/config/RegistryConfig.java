@@ -0,0 +1,48 @@
+package net.findzach.nojokepanel.config;
+
+import lombok.extern.slf4j.Slf4j;
+import net.findzach.nojokepanel.util.TokenCipher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Base64;
+
+@Configuration
+@Slf4j
+public class RegistryConfig {
+
+    /**
+     * Uses the configured token key, or a key generated on first start and kept next to the database.
+     */
+    @Bean
+    public TokenCipher tokenCipher(@Value("${nojokepanel.registry.token-key:}") String configuredKey,
+                                   @Value("${nojokepanel.registry.key-file:./data/token.key}") String keyFile) throws IOException {
+        if (!configuredKey.isBlank()) {
+            return new TokenCipher(Base64.getDecoder().decode(configuredKey.trim()));
+        }
+        Path path = Path.of(keyFile);
+        if (!Files.exists(path)) {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            byte[] key = TokenCipher.generateKey();
+            try {
+                Files.createFile(path);
+                try {
+                    Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rw-------"));
+                } catch (UnsupportedOperationException e) {
+                    // Not a POSIX file system
+                }
+                Files.writeString(path, Base64.getEncoder().encodeToString(key));
+                log.info("Generated token encryption key at {}", path.toAbsolutePath());
+            } catch (FileAlreadyExistsException e) {
+                // Another panel process generated it first
+            }
+        }
+        return new TokenCipher(Base64.getDecoder().decode(Files.readString(path).trim()));
+    }
+}
@@ -1,6 +1,8 @@
 package net.findzach.nojokepanel.config;
 
 import net.findzach.nojokepanel.handler.BuildLogWebSocketHandler;
+import net.findzach.nojokepanel.handler.MetricsWebSocketHandler;
+import net.findzach.nojokepanel.handler.RuntimeLogWebSocketHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
@@ -18,8 +20,16 @@ public class WebSocketConfig implements WebSocketConfigurer {
     @Autowired
     private BuildLogWebSocketHandler buildLogWebSocketHandler;
 
+    @Autowired
+    private MetricsWebSocketHandler metricsWebSocketHandler;
+
+    @Autowired
+    private RuntimeLogWebSocketHandler runtimeLogWebSocketHandler;
+
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
         registry.addHandler(buildLogWebSocketHandler, "/build-logs").setAllowedOrigins("*");
+        registry.addHandler(metricsWebSocketHandler, "/metrics").setAllowedOrigins("*");
+        registry.addHandler(runtimeLogWebSocketHandler, "/runtime-logs").setAllowedOrigins("*");
     }
 }
\ No newline at end of file
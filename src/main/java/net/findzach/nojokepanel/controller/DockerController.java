@@ -1,20 +1,45 @@
 package net.findzach.nojokepanel.controller;
 
+import net.findzach.nojokepanel.model.BulkLifecycleRequest;
+import net.findzach.nojokepanel.model.ContainerSummary;
 import net.findzach.nojokepanel.model.GitHubDeploy;
 import net.findzach.nojokepanel.model.PanelContainer;
+import net.findzach.nojokepanel.service.BuildScheduler;
+import net.findzach.nojokepanel.service.BulkLifecycleService;
+import net.findzach.nojokepanel.service.ContainerMetricsService;
 import net.findzach.nojokepanel.service.ContainerService;
+import net.findzach.nojokepanel.service.DeployMetrics;
+import net.findzach.nojokepanel.service.ImageGcService;
+import net.findzach.nojokepanel.service.LogSearchService;
+import net.findzach.nojokepanel.service.NodeRegistry;
+import net.findzach.nojokepanel.service.OperationRegistry;
+import net.findzach.nojokepanel.util.DockerCallMetrics;
+import net.findzach.nojokepanel.util.LogArchive;
+import net.findzach.nojokepanel.util.MetricSeries;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.nio.channels.Channels;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 @Controller
 @RequestMapping("/")
@@ -22,19 +47,88 @@ import java.util.concurrent.CompletableFuture;
 @EnableAsync
 public class DockerController {
 
+    private static final int DASHBOARD_PAGE_SIZE = 100;
+
     private final ContainerService containerService;
+    private final BuildScheduler buildScheduler;
+    private final ContainerMetricsService metricsService;
+    private final BulkLifecycleService bulkLifecycleService;
+    private final OperationRegistry operationRegistry;
+    private final DockerCallMetrics dockerCallMetrics;
+    private final DeployMetrics deployMetrics;
+    private final NodeRegistry nodeRegistry;
+    private final LogSearchService logSearchService;
+    private final LogArchive logArchive;
+    private final ImageGcService imageGcService;
 
     @Autowired
-    public DockerController(ContainerService containerService) {
+    public DockerController(ContainerService containerService, BuildScheduler buildScheduler, ContainerMetricsService metricsService,
+                            BulkLifecycleService bulkLifecycleService, OperationRegistry operationRegistry,
+                            DockerCallMetrics dockerCallMetrics, DeployMetrics deployMetrics, NodeRegistry nodeRegistry,
+                            LogSearchService logSearchService, LogArchive logArchive, ImageGcService imageGcService) {
         this.containerService = containerService;
+        this.buildScheduler = buildScheduler;
+        this.metricsService = metricsService;
+        this.bulkLifecycleService = bulkLifecycleService;
+        this.operationRegistry = operationRegistry;
+        this.dockerCallMetrics = dockerCallMetrics;
+        this.deployMetrics = deployMetrics;
+        this.nodeRegistry = nodeRegistry;
+        this.logSearchService = logSearchService;
+        this.logArchive = logArchive;
+        this.imageGcService = imageGcService;
     }
 
     @GetMapping
-    public String home(Model model) {
-        model.addAttribute("containers", containerService.getContainers().values());
+    public String home(@RequestParam(required = false) String cursor, @RequestParam(required = false) String status,
+                       @RequestParam(required = false) String domain, Model model) {
+        ContainerService.ContainerPage page = containerService.listContainers(cursor, DASHBOARD_PAGE_SIZE, parseStatuses(status), domain);
+        model.addAttribute("containers", page.containers());
+        model.addAttribute("nextCursor", page.nextCursor());
+        model.addAttribute("status", status);
+        model.addAttribute("domain", domain);
         return "index";
     }
 
+    /**
+     * Lists containers a page at a time. Pass the returned {@code nextCursor} back as {@code cursor} for the
+     * next page. Responses carry the registry version as their ETag, and a matching If-None-Match gets a 304
+     * until a container is added, removed or changes status.
+     *
+     * @param status comma-separated statuses to include, e.g. {@code RUNNING,FAILED}
+     * @param domain substring of the domain, case-insensitive
+     */
+    @GetMapping("/api/containers")
+    @ResponseBody
+    public Map<String, Object> listContainers(@RequestParam(required = false) String cursor,
+                                              @RequestParam(defaultValue = "100") int limit,
+                                              @RequestParam(required = false) String status,
+                                              @RequestParam(required = false) String domain,
+                                              WebRequest webRequest) {
+        if (limit < 1 || limit > ContainerService.MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + ContainerService.MAX_PAGE_SIZE);
+        }
+        if (webRequest.checkNotModified("\"" + containerService.getRegistryVersion() + "\"")) {
+            return null; // 304, the client's copy is current
+        }
+        ContainerService.ContainerPage page = containerService.listContainers(cursor, limit, parseStatuses(status), domain);
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("containers", page.containers().stream().map(ContainerSummary::from).toList());
+        response.put("nextCursor", page.nextCursor());
+        response.put("version", page.version());
+        return response;
+    }
+
+    private static Set<String> parseStatuses(String status) {
+        Set<String> statuses = new LinkedHashSet<>();
+        if (status != null) {
+            for (String part : status.split(",")) {
+                if (!part.isBlank()) statuses.add(part.trim().toUpperCase(Locale.ROOT));
+            }
+        }
+        return statuses;
+    }
+
     @GetMapping("/deploy")
     public String deployForm(Model model) {
         model.addAttribute("githubDeploy", new GitHubDeploy());
@@ -43,28 +137,213 @@ public class DockerController {
 
     @PostMapping("/deploy")
     @ResponseBody
+    @ResponseStatus(HttpStatus.ACCEPTED)
     public Map<String, String> deployGitHubRepo(@ModelAttribute GitHubDeploy githubDeploy) {
         log.info("Deploy request received: repoUrl={}, domain={}, internalPort={}",
                 githubDeploy.getRepoUrl(), githubDeploy.getDomain(), githubDeploy.getInternalPort());
+        ContainerService.Initiation initiation;
         try {
-            PanelContainer panelContainer = containerService.initiateDeployment(githubDeploy); // New method
+            initiation = containerService.initiateOrAttach(githubDeploy);
+        } catch (Exception e) {
+            log.error("Deployment initiation failed: {}", e.getMessage(), e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Deployment initiation failed: " + e.getMessage(), e);
+        }
+        PanelContainer panelContainer = initiation.container();
+        if (initiation.attached()) {
+            // The same deploy is already queued or building; share its build and log stream
+            OperationRegistry.Operation existing = operationRegistry.findActive("DEPLOY", panelContainer.getId());
             Map<String, String> response = new HashMap<>();
             response.put("containerId", panelContainer.getId());
-            response.put("message", "Deployment initiated. Streaming logs via WebSocket.");
+            if (existing != null) response.put("operationId", existing.getId());
+            response.put("queuePosition", String.valueOf(buildScheduler.getQueuePosition(panelContainer.getId())));
+            response.put("attached", "true");
+            response.put("message", "Identical deployment already in progress. Streaming its logs via WebSocket.");
             log.info("Deploy response: {}", response);
-            // Start the build process asynchronously
-            CompletableFuture.runAsync(() -> {
+            return response;
+        }
+        Map<String, String> response = queueDeployment(panelContainer, githubDeploy.getPriority());
+        response.put("message", "Deployment initiated. Streaming logs via WebSocket.");
+        log.info("Deploy response: {}", response);
+        return response;
+    }
+
+    /**
+     * Builds a new version of a running container next to it and switches traffic over once the new one is
+     * healthy; see {@link ContainerService#initiateRedeploy}.
+     *
+     * @param ref branch, tag or commit to deploy; the container's own ref when absent
+     */
+    @PostMapping("/container/{id}/redeploy")
+    @ResponseBody
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public Map<String, String> redeploy(@PathVariable String id, @RequestParam(required = false) String ref) {
+        if (containerService.getContainer(id) == null || containerService.getDeployment(id) == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Container not found");
+        }
+        PanelContainer replacement;
+        try {
+            replacement = containerService.initiateRedeploy(id, ref);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage(), e);
+        } catch (Exception e) {
+            log.error("Redeploy initiation failed: {}", e.getMessage(), e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Redeploy initiation failed: " + e.getMessage(), e);
+        }
+        Map<String, String> response = queueDeployment(replacement, containerService.getDeployment(replacement.getId()).getPriority());
+        response.put("replaces", id);
+        response.put("message", "Redeploy initiated. Traffic moves to the new container once it is healthy.");
+        log.info("Redeploy response: {}", response);
+        return response;
+    }
+
+    /**
+     * Queues the build of an initiated deployment; the scheduler bounds how many run at once.
+     */
+    private Map<String, String> queueDeployment(PanelContainer panelContainer, int priority) {
+        containerService.updateStatus(panelContainer, "QUEUED");
+        deployMetrics.startDeploy(panelContainer);
+        OperationRegistry.Operation operation = operationRegistry.track("DEPLOY", panelContainer.getId());
+        try {
+            BuildScheduler.BuildTask task = buildScheduler.submit(panelContainer.getId(), priority, () -> {
+                operationRegistry.start(operation);
+                BuildScheduler.BuildTask started = buildScheduler.getTask(panelContainer.getId());
+                if (started != null) {
+                    deployMetrics.recordQueueWait(panelContainer, started.getWaitMillis());
+                }
                 try {
                     containerService.completeDeployment(panelContainer);
                 } catch (Exception e) {
-                    log.error("Async deployment failed for containerId {}: {}", panelContainer.getId(), e.getMessage(), e);
+                    BuildScheduler.BuildTask current = buildScheduler.getTask(panelContainer.getId());
+                    containerService.updateStatus(panelContainer, current != null && current.isCancelRequested() ? "CANCELLED" : "FAILED");
+                    throw e;
                 }
             });
-            return response;
-        } catch (Exception e) {
-            log.error("Deployment initiation failed: {}", e.getMessage(), e);
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Deployment initiation failed: " + e.getMessage(), e);
+            task.getCompletion().whenComplete((state, error) -> {
+                containerService.deploymentFinished(panelContainer.getId());
+                logSearchService.archive(panelContainer);
+                if (state == BuildScheduler.State.SUCCEEDED) operationRegistry.succeed(operation);
+                else operationRegistry.fail(operation, error != null ? error.getMessage() : "Build " + state.name().toLowerCase());
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Deployment rejected for containerId {}: {}", panelContainer.getId(), e.getMessage());
+            operationRegistry.fail(operation, e.getMessage());
+            containerService.discardDeployment(panelContainer.getId());
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, e.getMessage(), e);
+        }
+        Map<String, String> response = new HashMap<>();
+        response.put("containerId", panelContainer.getId());
+        response.put("operationId", operation.getId());
+        response.put("queuePosition", String.valueOf(buildScheduler.getQueuePosition(panelContainer.getId())));
+        return response;
+    }
+
+    @PostMapping("/container/{id}/cancel")
+    @ResponseBody
+    public Map<String, String> cancelDeployment(@PathVariable String id) {
+        if (!buildScheduler.cancel(id)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No queued or running build for container " + id);
         }
+        PanelContainer panelContainer = containerService.getContainer(id);
+        if (panelContainer != null) {
+            containerService.updateStatus(panelContainer, "CANCELLED");
+        }
+        Map<String, String> response = new HashMap<>();
+        response.put("containerId", id);
+        response.put("message", "Build cancelled");
+        return response;
+    }
+
+    @GetMapping("/builds/queue")
+    @ResponseBody
+    public BuildScheduler.QueueStats buildQueue() {
+        return buildScheduler.getStats();
+    }
+
+    /**
+     * Docker nodes with their capacity, live usage and pending deploys, as placement sees them.
+     */
+    @GetMapping("/nodes")
+    @ResponseBody
+    public List<NodeRegistry.Node> nodes() {
+        return nodeRegistry.getNodes();
+    }
+
+    /**
+     * Reports of the latest image garbage collection runs, oldest first.
+     */
+    @GetMapping("/gc")
+    @ResponseBody
+    public List<ImageGcService.RunReport> gcReports() {
+        return imageGcService.getReports();
+    }
+
+    @PostMapping("/gc/run")
+    @ResponseBody
+    public Map<String, String> runGc() {
+        imageGcService.trigger();
+        Map<String, String> response = new HashMap<>();
+        response.put("message", "Image garbage collection queued");
+        return response;
+    }
+
+    /**
+     * Lines of archived build logs containing {@code q}, ignoring case, newest builds first.
+     */
+    @GetMapping("/api/logs/search")
+    @ResponseBody
+    public LogSearchService.Result searchLogs(@RequestParam String q, @RequestParam(required = false) String container,
+                                              @RequestParam(defaultValue = "" + LogSearchService.DEFAULT_LIMIT) int limit) {
+        try {
+            return logSearchService.search(q, container, limit);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        } catch (IOException e) {
+            log.error("Log search for '{}' failed", q, e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Log search failed", e);
+        }
+    }
+
+    /**
+     * Downloads an archived build log, or part of it: {@code tail} bytes from the end, or {@code length} bytes
+     * from {@code offset}. A whole log goes out still gzip-compressed, straight from the archive file, to
+     * clients that accept gzip; ranges are inflated member by member. Neither loads the log into memory.
+     */
+    @GetMapping("/api/logs/{id}")
+    public void downloadLog(@PathVariable String id, @RequestParam(required = false) Long offset,
+                            @RequestParam(required = false) Long length, @RequestParam(required = false) Long tail,
+                            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                            HttpServletResponse response) throws IOException {
+        long size = logArchive.size(id);
+        if (size < 0) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No archived log for container " + id);
+        }
+        response.setContentType("text/plain;charset=UTF-8");
+        response.setHeader("X-Log-Size", String.valueOf(size));
+        if (offset == null && length == null && tail == null) {
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + id + ".log\"");
+            if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+                response.setContentLengthLong(logArchive.compressedSize(id));
+                logArchive.transferCompressed(id, Channels.newChannel(response.getOutputStream()));
+                return;
+            }
+        }
+        long start = tail != null ? Math.max(0, size - tail) : Math.max(0, offset != null ? offset : 0);
+        long end = length != null ? Math.min(size, start + Math.max(0, length)) : size;
+        response.setHeader("X-Log-Offset", String.valueOf(Math.min(start, size)));
+        response.setContentLengthLong(Math.max(0, end - start));
+        logArchive.copy(id, start, end - start, response.getOutputStream());
+    }
+
+    /**
+     * Latency, error and in-flight counts per Docker API command.
+     */
+    @GetMapping("/docker/metrics")
+    @ResponseBody
+    public List<DockerCallMetrics.CommandStats> dockerMetrics() {
+        return dockerCallMetrics.snapshot();
     }
 
     @GetMapping("/container/{id}")
@@ -78,58 +357,229 @@ public class DockerController {
         return "container";
     }
 
-    @PostMapping("/container/{id}/stop")
-    public String stopContainer(@PathVariable String id, Model model) {
+    /**
+     * Resource usage history at one resolution: second (last 5 minutes), minute (4 hours) or hour (7 days).
+     * Gaps are null.
+     */
+    @GetMapping("/container/{id}/metrics")
+    @ResponseBody
+    public Map<String, Object> containerMetrics(@PathVariable String id, @RequestParam(defaultValue = "second") String resolution) {
+        if (containerService.getContainer(id) == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Container not found");
+        }
+        MetricSeries.Resolution parsed;
         try {
-            PanelContainer panelContainer = containerService.stopContainer(id);
-            model.addAttribute("message", "Container " + id + " stopped");
-            model.addAttribute("container", panelContainer);
-            return "result";
-        } catch (Exception e) {
-            log.error("Stop container failed", e);
-            model.addAttribute("error", "Failed: " + e.getMessage());
-            return "error";
+            parsed = MetricSeries.Resolution.valueOf(resolution.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown resolution: " + resolution);
+        }
+        MetricSeries series = metricsService.getSeries(id);
+        MetricSeries.Window window = series != null ? series.window(parsed) : new MetricSeries().window(parsed);
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("start", window.startEpochSecond());
+        response.put("step", window.stepSeconds());
+        for (int c = 0; c < MetricSeries.CHANNELS; c++) {
+            float[] values = window.values()[c];
+            Float[] boxed = new Float[values.length];
+            for (int i = 0; i < values.length; i++) {
+                boxed[i] = Float.isNaN(values[i]) ? null : values[i];
+            }
+            response.put(MetricSeries.CHANNEL_NAMES[c], boxed);
         }
+        return response;
     }
 
-    @PostMapping("/container/{id}/start")
-    public String startContainer(@PathVariable String id, Model model) {
+    /**
+     * Milliseconds spent in each stage of the container's last deployment, queue wait first.
+     */
+    @GetMapping("/container/{id}/timings")
+    @ResponseBody
+    public Map<String, Long> deployTimings(@PathVariable String id) {
+        PanelContainer panelContainer = containerService.getContainer(id);
+        if (panelContainer == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Container not found");
+        }
+        return panelContainer.getStageTimings();
+    }
+
+    /**
+     * Applies one action to many containers in parallel and answers once all are done, without holding a
+     * servlet thread while the Docker calls run.
+     */
+    @PostMapping("/containers/bulk")
+    @ResponseBody
+    public CompletableFuture<BulkLifecycleService.Summary> bulkLifecycle(@RequestBody BulkLifecycleRequest request) {
+        BulkLifecycleService.Action action = parseBulkRequest(request);
+        return bulkLifecycleService.run(action, request.getContainerIds(), stopTimeout(request), result -> {
+        });
+    }
+
+    /**
+     * Same as {@link #bulkLifecycle} but streams a {@code result} event per container as it finishes, then a
+     * {@code done} event with the summary.
+     */
+    @PostMapping(value = "/containers/bulk/stream", produces = "text/event-stream")
+    public SseEmitter bulkLifecycleStream(@RequestBody BulkLifecycleRequest request) {
+        BulkLifecycleService.Action action = parseBulkRequest(request);
+        SseEmitter emitter = new SseEmitter(0L); // Lasts as long as the operation
+        bulkLifecycleService.run(action, request.getContainerIds(), stopTimeout(request), result -> {
+            try {
+                emitter.send(SseEmitter.event().name("result").data(result));
+            } catch (Exception e) {
+                log.debug("Bulk progress client went away: {}", e.getMessage()); // The operation itself carries on
+            }
+        }).whenComplete((summary, error) -> {
+            try {
+                if (error != null) {
+                    emitter.completeWithError(error);
+                    return;
+                }
+                emitter.send(SseEmitter.event().name("done").data(summary));
+                emitter.complete();
+            } catch (Exception e) {
+                emitter.completeWithError(e);
+            }
+        });
+        return emitter;
+    }
+
+    private BulkLifecycleService.Action parseBulkRequest(BulkLifecycleRequest request) {
+        if (request.getContainerIds() == null || request.getContainerIds().isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "containerIds is required");
+        }
         try {
-            PanelContainer panelContainer = containerService.startContainer(id);
-            model.addAttribute("message", "Container " + id + " started");
-            model.addAttribute("container", panelContainer);
-            return "result";
-        } catch (Exception e) {
-            log.error("Start container failed", e);
-            model.addAttribute("error", "Failed: " + e.getMessage());
-            return "error";
+            return BulkLifecycleService.Action.parse(request.getAction() == null ? "" : request.getAction());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown action: " + request.getAction());
         }
     }
 
+    private static int stopTimeout(BulkLifecycleRequest request) {
+        Integer timeout = request.getStopTimeoutSeconds();
+        return timeout != null && timeout >= 0 ? timeout : ContainerService.DEFAULT_STOP_TIMEOUT_SECONDS;
+    }
+
+    @PostMapping("/container/{id}/stop")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public String stopContainer(@PathVariable String id, Model model) {
+        return submitLifecycle("STOP", id, () -> containerService.stopContainer(id), model);
+    }
+
+    @PostMapping(value = "/container/{id}/stop", produces = "application/json")
+    @ResponseBody
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public OperationRegistry.Operation stopContainerAsync(@PathVariable String id) {
+        return submitLifecycle("STOP", id, () -> containerService.stopContainer(id));
+    }
+
+    @PostMapping("/container/{id}/start")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public String startContainer(@PathVariable String id, Model model) {
+        return submitLifecycle("START", id, () -> containerService.startContainer(id), model);
+    }
+
+    @PostMapping(value = "/container/{id}/start", produces = "application/json")
+    @ResponseBody
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public OperationRegistry.Operation startContainerAsync(@PathVariable String id) {
+        return submitLifecycle("START", id, () -> containerService.startContainer(id));
+    }
+
     @PostMapping("/container/{id}/restart")
+    @ResponseStatus(HttpStatus.ACCEPTED)
     public String restartContainer(@PathVariable String id, Model model) {
+        return submitLifecycle("RESTART", id, () -> containerService.restartContainer(id), model);
+    }
+
+    @PostMapping(value = "/container/{id}/restart", produces = "application/json")
+    @ResponseBody
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public OperationRegistry.Operation restartContainerAsync(@PathVariable String id) {
+        return submitLifecycle("RESTART", id, () -> containerService.restartContainer(id));
+    }
+
+    @PostMapping("/container/{id}/remove")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public String removeContainer(@PathVariable String id, Model model) {
+        return submitLifecycle("REMOVE", id, () -> containerService.removeContainer(id), model);
+    }
+
+    @PostMapping(value = "/container/{id}/remove", produces = "application/json")
+    @ResponseBody
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public OperationRegistry.Operation removeContainerAsync(@PathVariable String id) {
+        return submitLifecycle("REMOVE", id, () -> containerService.removeContainer(id));
+    }
+
+    private String submitLifecycle(String type, String id, OperationRegistry.Work work, Model model) {
         try {
-            PanelContainer panelContainer = containerService.restartContainer(id);
-            model.addAttribute("message", "Container " + id + " restarted");
-            model.addAttribute("container", panelContainer);
+            OperationRegistry.Operation operation = submitLifecycle(type, id, work);
+            model.addAttribute("message", type.charAt(0) + type.substring(1).toLowerCase() + " of container " + id
+                    + " accepted as operation " + operation.getId());
+            model.addAttribute("panelContainer", containerService.getContainer(id));
             return "result";
-        } catch (Exception e) {
-            log.error("Restart container failed", e);
-            model.addAttribute("error", "Failed: " + e.getMessage());
+        } catch (ResponseStatusException e) {
+            model.addAttribute("error", "Failed: " + e.getReason());
             return "error";
         }
     }
 
-    @PostMapping("/container/{id}/remove")
-    public String removeContainer(@PathVariable String id, Model model) {
+    /**
+     * Queues a lifecycle action on the operation registry; the request returns before Docker is called.
+     */
+    private OperationRegistry.Operation submitLifecycle(String type, String id, OperationRegistry.Work work) {
+        if (containerService.getContainer(id) == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Container not found");
+        }
         try {
-            containerService.removeContainer(id);
-            model.addAttribute("message", "Container " + id + " removed");
-            return "result";
+            return operationRegistry.submit(type, id, work);
+        } catch (RejectedExecutionException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage(), e);
+        }
+    }
+
+    @GetMapping("/operations")
+    @ResponseBody
+    public List<OperationRegistry.Operation> operations(@RequestParam(defaultValue = "false") boolean active) {
+        return operationRegistry.list(active);
+    }
+
+    @GetMapping("/operations/{operationId}")
+    @ResponseBody
+    public OperationRegistry.Operation operation(@PathVariable String operationId) {
+        OperationRegistry.Operation operation = operationRegistry.get(operationId);
+        if (operation == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Operation not found");
+        }
+        return operation;
+    }
+
+    /**
+     * Server-sent events for every operation state change, starting with the operations currently in flight.
+     */
+    @GetMapping(value = "/operations/stream", produces = "text/event-stream")
+    public SseEmitter operationStream() {
+        SseEmitter emitter = new SseEmitter(0L);
+        Runnable[] unsubscribe = new Runnable[1];
+        unsubscribe[0] = operationRegistry.subscribe(operation -> {
+            try {
+                emitter.send(SseEmitter.event().name("operation").data(operation));
+            } catch (Exception e) {
+                unsubscribe[0].run();
+                emitter.completeWithError(e);
+            }
+        });
+        emitter.onCompletion(() -> unsubscribe[0].run());
+        emitter.onTimeout(() -> unsubscribe[0].run());
+        emitter.onError(e -> unsubscribe[0].run());
+        try {
+            for (OperationRegistry.Operation operation : operationRegistry.list(true)) {
+                emitter.send(SseEmitter.event().name("operation").data(operation));
+            }
         } catch (Exception e) {
-            log.error("Remove container failed", e);
-            model.addAttribute("error", "Failed: " + e.getMessage());
-            return "error";
+            unsubscribe[0].run();
+            emitter.completeWithError(e);
         }
+        return emitter;
     }
-}
\ No newline at end of file
+}
@@ -1,80 +1,170 @@
 package net.findzach.nojokepanel.handler;
 
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import net.findzach.nojokepanel.model.PanelContainer;
 import net.findzach.nojokepanel.service.ContainerService;
+import net.findzach.nojokepanel.util.BuildLog;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Component
 @Slf4j
 public class BuildLogWebSocketHandler extends TextWebSocketHandler {
 
-    private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+    private static final int REPLAY_FRAME_BYTES = 64 * 1024;
+
+    private final Map<String, Set<LogSubscriber>> subscribers = new ConcurrentHashMap<>();
+    private final Map<String, LogSubscriber> subscribersBySession = new ConcurrentHashMap<>();
+    private final ExecutorService sender;
+
+    @Value("${nojokepanel.websocket.subscriber-queue-kb:1024}")
+    private int subscriberQueueKb;
+
+    @Value("${nojokepanel.websocket.max-frame-chars:65536}")
+    private int maxFrameChars;
+
+    @Value("${nojokepanel.websocket.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
 
     @Autowired
     private ApplicationContext applicationContext; // Use application context to resolve dependencies
 
-    @Override
-    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-        String containerId = session.getUri().getQuery().split("=")[1]; // e.g., ?containerId=uuid
-        sessions.put(containerId, session);
-        log.info("WebSocket connection established for container ID: {}", containerId);
+    public BuildLogWebSocketHandler(@Value("${nojokepanel.websocket.send-threads:4}") int sendThreads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.sender = Executors.newFixedThreadPool(sendThreads, r -> {
+            Thread t = new Thread(r, "build-log-sender-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
     }
 
     @Override
-    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
-        log.info("Received WebSocket message: {}", message.getPayload());
-        String payload = message.getPayload();
-        if (payload.startsWith("startBuild:")) {
-            String[] parts = payload.split(":", 2);
-            if (parts.length == 2) {
-                String containerId = parts[1];
-                log.info("Starting build for containerId: {}", containerId);
-                ContainerService containerService = applicationContext.getBean(ContainerService.class);
-                PanelContainer panelContainer = containerService.getContainer(containerId);
-                if (panelContainer != null) {
-                    log.info("Found container, streaming logs for containerId: {}", containerId);
-                    containerService.streamBuildLogs(panelContainer);
-                } else {
-                    log.warn("Container not found for containerId: {}", containerId);
-                    session.sendMessage(new TextMessage("Error: Container not found"));
-                }
-            } else {
-                log.warn("Invalid message format: {}", payload);
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        MultiValueMap<String, String> params = UriComponentsBuilder.fromUri(session.getUri()).build().getQueryParams();
+        String containerId = params.getFirst("containerId"); // e.g., ?containerId=uuid&offset=1024
+        if (containerId == null) {
+            session.close(CloseStatus.BAD_DATA.withReason("containerId is required"));
+            return;
+        }
+        // The decorator closes viewers whose socket stays blocked past the time limit instead of pinning a sender thread
+        WebSocketSession guarded = new ConcurrentWebSocketSessionDecorator(session, sendTimeLimitMs, maxFrameChars * 4);
+        LogSubscriber subscriber = new LogSubscriber(guarded, sender, subscriberQueueKb * 1024, maxFrameChars);
+        subscribersBySession.put(session.getId(), subscriber);
+
+        String offset = params.getFirst("offset");
+        PanelContainer panelContainer = offset == null ? null : applicationContext.getBean(ContainerService.class).getContainer(containerId);
+        BuildLog buildLog = panelContainer == null ? null : panelContainer.getBuildLog();
+        if (buildLog != null) {
+            // Subscribe before reading where the log ends: a line appended in between is then either covered
+            // by the replay or held back as a live line, never neither
+            subscriber.beginReplay(-1);
+            subscribe(containerId, subscriber);
+            long end = buildLog.size();
+            subscriber.replayUpTo(end);
+            try {
+                replay(subscriber, buildLog, parseOffset(offset), end);
+            } finally {
+                subscriber.endReplay();
             }
         } else {
-            log.warn("Unknown message type: {}", payload);
+            subscribe(containerId, subscriber);
+        }
+        log.info("WebSocket connection established for container ID: {} ({} viewers)", containerId, getViewerCount(containerId));
+    }
+
+    private void subscribe(String containerId, LogSubscriber subscriber) {
+        subscribers.compute(containerId, (id, viewers) -> {
+            Set<LogSubscriber> updated = viewers != null ? viewers : ConcurrentHashMap.newKeySet();
+            updated.add(subscriber);
+            return updated;
+        });
+    }
+
+    private static long parseOffset(String offset) {
+        try {
+            return Long.parseLong(offset);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void replay(LogSubscriber subscriber, BuildLog buildLog, long from, long to) throws Exception {
+        long position = Math.max(0, from);
+        while (position < to) {
+            BuildLog.Slice slice = buildLog.readLines(position, (int) Math.min(REPLAY_FRAME_BYTES, to - position));
+            if (slice.lines().isEmpty()) break; // A single line longer than one frame; the live stream picks up from here
+            position = slice.nextOffset();
+            subscriber.sendReplay(LogSubscriber.OFFSET_HEADER + position + "\n" + String.join("\n", slice.lines()));
         }
     }
 
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        // Viewers only watch; builds are queued by the deploy request
+        log.debug("Ignoring WebSocket message from viewer {}: {}", session.getId(), message.getPayload());
+    }
+
+    /**
+     * Sends a status message to every viewer of the container. Never blocks on a viewer's socket.
+     */
     public void broadcastMessage(String containerId, String message) {
-        WebSocketSession session = sessions.get(containerId);
-        if (session != null && session.isOpen()) {
-            try {
-                log.info("Broadcasting message to containerId {}: {}", containerId, message);
-                session.sendMessage(new TextMessage(message));
-            } catch (Exception e) {
-                log.error("Failed to send WebSocket message for containerId {}: {}", containerId, e);
-            }
-        } else {
-            log.warn("No open WebSocket session for containerId: {}", containerId);
+        broadcastMessage(containerId, message, -1);
+    }
+
+    /**
+     * Sends a build log line to every viewer of the container.
+     *
+     * @param endOffset the build log offset just past this line, used to resume viewers after a reconnect
+     */
+    public void broadcastMessage(String containerId, String message, long endOffset) {
+        Set<LogSubscriber> viewers = subscribers.get(containerId);
+        if (viewers == null || viewers.isEmpty()) {
+            log.debug("No open WebSocket session for containerId: {}", containerId);
+            return;
         }
+        for (LogSubscriber viewer : viewers) {
+            viewer.offer(message, endOffset);
+        }
+    }
+
+    public int getViewerCount(String containerId) {
+        Set<LogSubscriber> viewers = subscribers.get(containerId);
+        return viewers == null ? 0 : viewers.size();
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
-        String containerId = session.getUri().getQuery().split("=")[1];
-        sessions.remove(containerId);
+        LogSubscriber subscriber = subscribersBySession.remove(session.getId());
+        String containerId = UriComponentsBuilder.fromUri(session.getUri()).build().getQueryParams().getFirst("containerId");
+        if (subscriber != null && containerId != null) {
+            subscribers.computeIfPresent(containerId, (id, viewers) -> {
+                viewers.remove(subscriber);
+                return viewers.isEmpty() ? null : viewers;
+            });
+        }
         log.info("WebSocket connection closed for container ID: {}", containerId);
     }
 
-}
\ No newline at end of file
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdownNow();
+    }
+
+}
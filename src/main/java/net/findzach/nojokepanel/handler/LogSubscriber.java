@@ -0,0 +1,155 @@
+package net.findzach.nojokepanel.handler;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+/**
+ * One viewer of a log stream. Messages are queued per viewer and sent from a shared executor, so a slow
+ * browser only ever delays itself. Queued lines are coalesced into one frame per send. The queue is bounded by
+ * the characters it holds rather than by messages, since one message may be a single line or a batch of tens
+ * of kilobytes; when it is full new messages are dropped and the viewer gets a marker saying how many were
+ * lost.
+ * <p>
+ * Log frames start with a {@code #offset N} header carrying the log offset just past their last line,
+ * which a client can pass back as {@code ?offset=N} to resume after a reconnect.
+ */
+@Slf4j
+public class LogSubscriber {
+
+    public static final String OFFSET_HEADER = "#offset ";
+
+    private record Entry(String message, long endOffset) {
+    }
+
+    private final WebSocketSession session;
+    private final Executor sender;
+    private final int capacityChars;
+    private final int maxFrameChars;
+    private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+    private long queuedChars;
+    private long dropped;
+    private boolean draining;
+    private long replayedUpTo = -1;
+
+    /**
+     * @param capacityChars the most characters queued for this viewer; a message is always queued when the
+     *                      queue is empty, however long it is
+     */
+    public LogSubscriber(WebSocketSession session, Executor sender, int capacityChars, int maxFrameChars) {
+        this.session = session;
+        this.sender = sender;
+        this.capacityChars = capacityChars;
+        this.maxFrameChars = maxFrameChars;
+    }
+
+    public WebSocketSession getSession() {
+        return session;
+    }
+
+    /**
+     * Queues a message for this viewer.
+     *
+     * @param endOffset the log offset just past this line, or -1 for messages that aren't part of the log
+     */
+    public void offer(String message, long endOffset) {
+        boolean schedule = false;
+        synchronized (this) {
+            if (endOffset >= 0 && endOffset <= replayedUpTo) {
+                return; // Already sent as part of the replay
+            }
+            if (!queue.isEmpty() && queuedChars + message.length() > capacityChars) {
+                dropped++;
+            } else {
+                queue.add(new Entry(message, endOffset));
+                queuedChars += message.length();
+            }
+            if (!draining) {
+                draining = true;
+                schedule = true;
+            }
+        }
+        if (schedule) {
+            sender.execute(this::drain);
+        }
+    }
+
+    /**
+     * Holds back live messages while the caller sends a replay directly on this thread. Live lines up to
+     * {@code upTo} are skipped since the replay covers them.
+     */
+    public synchronized void beginReplay(long upTo) {
+        replayedUpTo = upTo;
+        draining = true;
+    }
+
+    /**
+     * Sets where the replay ends once it is known, for callers that had to start holding live lines back
+     * before they could tell. Live lines up to {@code upTo} already queued are dropped.
+     */
+    public synchronized void replayUpTo(long upTo) {
+        replayedUpTo = upTo;
+        queue.removeIf(entry -> {
+            if (entry.endOffset() < 0 || entry.endOffset() > upTo) return false;
+            queuedChars -= entry.message().length();
+            return true;
+        });
+    }
+
+    public void sendReplay(String frame) throws IOException {
+        session.sendMessage(new TextMessage(frame));
+    }
+
+    public void endReplay() {
+        sender.execute(this::drain);
+    }
+
+    private void drain() {
+        while (true) {
+            StringBuilder frame = new StringBuilder();
+            long frameOffset = -1;
+            synchronized (this) {
+                if (queue.isEmpty() && dropped == 0) {
+                    draining = false;
+                    return;
+                }
+                if (dropped > 0) {
+                    frame.append("[... ").append(dropped).append(" batches of output dropped, viewer is too slow ...]\n");
+                    dropped = 0;
+                }
+                while (!queue.isEmpty() && (frame.length() == 0 || frame.length() + queue.peek().message().length() <= maxFrameChars)) {
+                    Entry entry = queue.poll();
+                    queuedChars -= entry.message().length();
+                    frame.append(entry.message()).append('\n');
+                    frameOffset = Math.max(frameOffset, entry.endOffset());
+                }
+            }
+            frame.setLength(frame.length() - 1);
+            if (frameOffset >= 0) {
+                frame.insert(0, OFFSET_HEADER + frameOffset + "\n");
+            }
+            try {
+                if (!session.isOpen()) {
+                    close();
+                    return;
+                }
+                session.sendMessage(new TextMessage(frame.toString()));
+            } catch (Exception e) {
+                log.warn("Dropping WebSocket viewer {} after send failure: {}", session.getId(), e.getMessage());
+                close();
+                return;
+            }
+        }
+    }
+
+    private synchronized void close() {
+        queue.clear();
+        queuedChars = 0;
+        dropped = 0;
+        draining = false;
+    }
+}
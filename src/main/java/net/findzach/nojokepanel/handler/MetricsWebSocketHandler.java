@@ -0,0 +1,137 @@
+package net.findzach.nojokepanel.handler;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.findzach.nojokepanel.service.ContainerMetricsService;
+import net.findzach.nojokepanel.util.MetricSeries;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes container resource samples to the detail page. A viewer first gets a snapshot of the per-second
+ * history, then one small JSON line per sample. Viewers share the container's single stats stream and each
+ * has its own bounded queue, so a slow browser drops samples rather than holding anything up.
+ */
+@Component
+@Slf4j
+public class MetricsWebSocketHandler extends TextWebSocketHandler {
+
+    private static final int SUBSCRIBER_QUEUE_CHARS = 64 * 1024;
+    private static final int MAX_FRAME_CHARS = 64 * 1024;
+
+    private final Map<String, Set<LogSubscriber>> subscribers = new ConcurrentHashMap<>();
+    private final Map<String, LogSubscriber> subscribersBySession = new ConcurrentHashMap<>();
+    private final ContainerMetricsService metricsService;
+    private final ExecutorService sender;
+
+    @Value("${nojokepanel.websocket.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+
+    public MetricsWebSocketHandler(ContainerMetricsService metricsService,
+                                   @Value("${nojokepanel.metrics.send-threads:2}") int sendThreads) {
+        this.metricsService = metricsService;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.sender = Executors.newFixedThreadPool(sendThreads, r -> {
+            Thread t = new Thread(r, "metrics-sender-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        metricsService.addListener(this::onSample);
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        String containerId = containerId(session);
+        if (containerId == null) {
+            session.close(CloseStatus.BAD_DATA.withReason("containerId is required"));
+            return;
+        }
+        WebSocketSession guarded = new ConcurrentWebSocketSessionDecorator(session, sendTimeLimitMs, MAX_FRAME_CHARS * 4);
+        LogSubscriber subscriber = new LogSubscriber(guarded, sender, SUBSCRIBER_QUEUE_CHARS, MAX_FRAME_CHARS);
+        subscribersBySession.put(session.getId(), subscriber);
+        // Hold live samples back until the snapshot is out, so the client sees history first
+        subscriber.beginReplay(-1);
+        subscribers.compute(containerId, (id, viewers) -> {
+            Set<LogSubscriber> updated = viewers != null ? viewers : ConcurrentHashMap.newKeySet();
+            updated.add(subscriber);
+            return updated;
+        });
+        try {
+            MetricSeries series = metricsService.getSeries(containerId);
+            if (series != null) {
+                subscriber.sendReplay(snapshotJson(series.window(MetricSeries.Resolution.SECOND)));
+            }
+        } finally {
+            subscriber.endReplay();
+        }
+    }
+
+    private void onSample(String containerId, long epochSecond, float[] values) {
+        Set<LogSubscriber> viewers = subscribers.get(containerId);
+        if (viewers == null || viewers.isEmpty()) return;
+        StringBuilder json = new StringBuilder(160).append("{\"type\":\"sample\",\"t\":").append(epochSecond);
+        for (int c = 0; c < MetricSeries.CHANNELS; c++) {
+            json.append(",\"").append(MetricSeries.CHANNEL_NAMES[c]).append("\":");
+            appendValue(json, values[c]);
+        }
+        String message = json.append('}').toString();
+        for (LogSubscriber viewer : viewers) {
+            viewer.offer(message, -1);
+        }
+    }
+
+    static String snapshotJson(MetricSeries.Window window) {
+        StringBuilder json = new StringBuilder(16 * 1024)
+                .append("{\"type\":\"snapshot\",\"start\":").append(window.startEpochSecond())
+                .append(",\"step\":").append(window.stepSeconds());
+        for (int c = 0; c < MetricSeries.CHANNELS; c++) {
+            json.append(",\"").append(MetricSeries.CHANNEL_NAMES[c]).append("\":[");
+            float[] values = window.values()[c];
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) json.append(',');
+                appendValue(json, values[i]);
+            }
+            json.append(']');
+        }
+        return json.append('}').toString();
+    }
+
+    private static void appendValue(StringBuilder json, float value) {
+        if (Float.isNaN(value) || Float.isInfinite(value)) json.append("null");
+        else json.append(value);
+    }
+
+    private static String containerId(WebSocketSession session) {
+        return session.getUri() == null ? null
+                : UriComponentsBuilder.fromUri(session.getUri()).build().getQueryParams().getFirst("containerId");
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+        LogSubscriber subscriber = subscribersBySession.remove(session.getId());
+        String containerId = containerId(session);
+        if (subscriber != null && containerId != null) {
+            subscribers.computeIfPresent(containerId, (id, viewers) -> {
+                viewers.remove(subscriber);
+                return viewers.isEmpty() ? null : viewers;
+            });
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdownNow();
+    }
+}
@@ -0,0 +1,152 @@
+package net.findzach.nojokepanel.handler;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.findzach.nojokepanel.service.RuntimeLogService;
+import net.findzach.nojokepanel.util.LogTail;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streams a running container's stdout/stderr to the detail page, at
+ * {@code /runtime-logs?containerId=...} with optional {@code tail=N} (default 200), {@code since=} (epoch
+ * seconds or an ISO instant) or {@code after=SEQ} to resume after a reconnect.
+ * <p>
+ * Each line is sent as {@code O} or {@code E} (stdout or stderr), its Docker timestamp ({@code -} if it has
+ * none) and its text, separated by single spaces. Frames start with the {@code #offset} header carrying the
+ * sequence number of their last line. Viewers share the container's single upstream stream and each has its
+ * own bounded queue, so a chatty app drops lines for a slow viewer instead of piling them up in memory.
+ */
+@Component
+@Slf4j
+public class RuntimeLogWebSocketHandler extends TextWebSocketHandler {
+
+    private static final int DEFAULT_TAIL = 200;
+    private static final int REPLAY_FRAME_CHARS = 64 * 1024;
+
+    private record Viewer(String containerId, LogTail.Viewer listener) {
+    }
+
+    private final RuntimeLogService runtimeLogService;
+    private final Map<String, Viewer> viewersBySession = new ConcurrentHashMap<>();
+    private final ExecutorService sender;
+
+    @Value("${nojokepanel.websocket.subscriber-queue-kb:1024}")
+    private int subscriberQueueKb;
+
+    @Value("${nojokepanel.websocket.max-frame-chars:65536}")
+    private int maxFrameChars;
+
+    @Value("${nojokepanel.websocket.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+
+    public RuntimeLogWebSocketHandler(RuntimeLogService runtimeLogService,
+                                      @Value("${nojokepanel.runtime-logs.send-threads:2}") int sendThreads) {
+        this.runtimeLogService = runtimeLogService;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.sender = Executors.newFixedThreadPool(sendThreads, r -> {
+            Thread t = new Thread(r, "runtime-log-sender-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        MultiValueMap<String, String> params = UriComponentsBuilder.fromUri(session.getUri()).build().getQueryParams();
+        String containerId = params.getFirst("containerId");
+        if (containerId == null) {
+            session.close(CloseStatus.BAD_DATA.withReason("containerId is required"));
+            return;
+        }
+        WebSocketSession guarded = new ConcurrentWebSocketSessionDecorator(session, sendTimeLimitMs, maxFrameChars * 4);
+        LogSubscriber subscriber = new LogSubscriber(guarded, sender, subscriberQueueKb * 1024, maxFrameChars);
+        LogTail.Viewer listener = line -> subscriber.offer(format(line), line.seq());
+        // Hold live lines back until the backlog is out; the service never hands a line to both
+        subscriber.beginReplay(-1);
+        LogTail.Backlog backlog;
+        try {
+            backlog = runtimeLogService.attach(containerId, listener, parseLong(params.getFirst("after"), -1),
+                    parseSince(params.getFirst("since")), (int) parseLong(params.getFirst("tail"), DEFAULT_TAIL));
+        } catch (IllegalArgumentException e) {
+            session.close(CloseStatus.BAD_DATA.withReason(e.getMessage()));
+            return;
+        }
+        viewersBySession.put(session.getId(), new Viewer(containerId, listener));
+        if (!session.isOpen()) {
+            afterConnectionClosed(session, CloseStatus.GOING_AWAY); // Closed while attaching
+            return;
+        }
+        try {
+            replay(subscriber, backlog.lines());
+        } finally {
+            subscriber.endReplay();
+        }
+        log.debug("Runtime log viewer joined container {} ({} viewers)", containerId, runtimeLogService.getViewerCount(containerId));
+    }
+
+    private static void replay(LogSubscriber subscriber, List<LogTail.Line> lines) throws Exception {
+        StringBuilder frame = new StringBuilder();
+        for (int i = 0; i < lines.size(); i++) {
+            frame.append(format(lines.get(i))).append('\n');
+            if (frame.length() >= REPLAY_FRAME_CHARS || i == lines.size() - 1) {
+                frame.setLength(frame.length() - 1);
+                subscriber.sendReplay(LogSubscriber.OFFSET_HEADER + lines.get(i).seq() + "\n" + frame);
+                frame.setLength(0);
+            }
+        }
+    }
+
+    static String format(LogTail.Line line) {
+        return (line.stderr() ? "E " : "O ") + (line.timestamp() != null ? line.timestamp().toString() : "-") + " " + line.text();
+    }
+
+    private static long parseLong(String value, long fallback) {
+        try {
+            return value == null ? fallback : Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static Instant parseSince(String value) {
+        if (value == null || value.isBlank()) return null;
+        try {
+            return Instant.ofEpochSecond(Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            try {
+                return Instant.parse(value);
+            } catch (DateTimeParseException invalid) {
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+        Viewer viewer = viewersBySession.remove(session.getId());
+        if (viewer != null) {
+            runtimeLogService.detach(viewer.containerId(), viewer.listener());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdownNow();
+    }
+}
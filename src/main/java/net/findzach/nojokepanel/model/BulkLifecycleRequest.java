@@ -0,0 +1,14 @@
+package net.findzach.nojokepanel.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Setter
+@Getter
+public class BulkLifecycleRequest {
+    private String action; // start, stop, restart or remove
+    private List<String> containerIds;
+    private Integer stopTimeoutSeconds; // Grace period for stop and restart; the single-container default when null
+}
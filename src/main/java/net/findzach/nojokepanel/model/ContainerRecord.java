@@ -0,0 +1,63 @@
+package net.findzach.nojokepanel.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Persistent form of a {@link PanelContainer}. Runtime-only state (build log, sessions) is not stored.
+ */
+@Entity
+@Table(name = "containers", indexes = @Index(name = "idx_containers_status", columnList = "status"))
+@Getter
+@Setter
+@NoArgsConstructor
+public class ContainerRecord {
+    @Id
+    private String id;
+    private String dockerId;
+    private String name;
+    private String imageName;
+    private String domain;
+    private int internalPort;
+    @Column(nullable = false)
+    private String status;
+    private String commitSha;
+    private String imageId;
+    private String routeName;
+    private String nodeId;
+    private long updatedAt;
+
+    public static ContainerRecord from(PanelContainer panelContainer) {
+        ContainerRecord record = new ContainerRecord();
+        record.id = panelContainer.getId();
+        record.dockerId = panelContainer.getDockerId();
+        record.name = panelContainer.getName();
+        record.imageName = panelContainer.getImageName();
+        record.domain = panelContainer.getDomain();
+        record.internalPort = panelContainer.getInternalPort();
+        record.status = panelContainer.getStatus();
+        record.commitSha = panelContainer.getCommitSha();
+        record.imageId = panelContainer.getImageId();
+        record.routeName = panelContainer.getRouteName();
+        record.nodeId = panelContainer.getNodeId();
+        record.updatedAt = System.currentTimeMillis();
+        return record;
+    }
+
+    public PanelContainer toPanelContainer() {
+        PanelContainer panelContainer = new PanelContainer(id, name, imageName, domain, internalPort);
+        panelContainer.setDockerId(dockerId);
+        panelContainer.setStatus(status);
+        panelContainer.setCommitSha(commitSha);
+        panelContainer.setImageId(imageId);
+        panelContainer.setRouteName(routeName);
+        panelContainer.setNodeId(nodeId);
+        return panelContainer;
+    }
+}
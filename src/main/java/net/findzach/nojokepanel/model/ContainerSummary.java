@@ -0,0 +1,32 @@
+package net.findzach.nojokepanel.model;
+
+import lombok.Getter;
+
+/**
+ * What the listing API returns per container: the fields a dashboard row needs, without the build log or
+ * runtime state.
+ */
+@Getter
+public class ContainerSummary {
+    private final String id;
+    private final String name;
+    private final String imageName;
+    private final String domain;
+    private final int internalPort;
+    private final String status;
+    private final String commitSha;
+
+    private ContainerSummary(PanelContainer panelContainer) {
+        this.id = panelContainer.getId();
+        this.name = panelContainer.getName();
+        this.imageName = panelContainer.getImageName();
+        this.domain = panelContainer.getDomain();
+        this.internalPort = panelContainer.getInternalPort();
+        this.status = panelContainer.getStatus();
+        this.commitSha = panelContainer.getCommitSha();
+    }
+
+    public static ContainerSummary from(PanelContainer panelContainer) {
+        return new ContainerSummary(panelContainer);
+    }
+}
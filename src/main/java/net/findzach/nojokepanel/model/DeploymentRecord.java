@@ -0,0 +1,59 @@
+package net.findzach.nojokepanel.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Persistent form of the {@link GitHubDeploy} a container was deployed from, keyed by the container's ID.
+ * The access token is encrypted at rest.
+ */
+@Entity
+@Table(name = "deployments")
+@Getter
+@Setter
+@NoArgsConstructor
+public class DeploymentRecord {
+    @Id
+    private String containerId;
+    @Column(length = 2048)
+    private String repoUrl;
+    private String ref;
+    @Convert(converter = EncryptedStringConverter.class)
+    @Column(length = 1024)
+    private String githubToken;
+    private String domain;
+    private int internalPort;
+    private int priority;
+    private String healthPath;
+
+    public static DeploymentRecord from(String containerId, GitHubDeploy githubDeploy) {
+        DeploymentRecord record = new DeploymentRecord();
+        record.containerId = containerId;
+        record.repoUrl = githubDeploy.getRepoUrl();
+        record.ref = githubDeploy.getRef();
+        record.githubToken = githubDeploy.getGithubToken();
+        record.domain = githubDeploy.getDomain();
+        record.internalPort = githubDeploy.getInternalPort();
+        record.priority = githubDeploy.getPriority();
+        record.healthPath = githubDeploy.getHealthPath();
+        return record;
+    }
+
+    public GitHubDeploy toGitHubDeploy() {
+        GitHubDeploy githubDeploy = new GitHubDeploy();
+        githubDeploy.setRepoUrl(repoUrl);
+        githubDeploy.setRef(ref);
+        githubDeploy.setGithubToken(githubToken);
+        githubDeploy.setDomain(domain);
+        githubDeploy.setInternalPort(internalPort);
+        githubDeploy.setPriority(priority);
+        githubDeploy.setHealthPath(healthPath);
+        return githubDeploy;
+    }
+}
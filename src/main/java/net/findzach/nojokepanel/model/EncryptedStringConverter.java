@@ -0,0 +1,31 @@
+package net.findzach.nojokepanel.model;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import net.findzach.nojokepanel.util.TokenCipher;
+import org.springframework.stereotype.Component;
+
+/**
+ * Encrypts a column with the panel's {@link TokenCipher}. Hibernate obtains it from the Spring context, so the
+ * key is injected rather than read from a static.
+ */
+@Component
+@Converter
+public class EncryptedStringConverter implements AttributeConverter<String, String> {
+
+    private final TokenCipher tokenCipher;
+
+    public EncryptedStringConverter(TokenCipher tokenCipher) {
+        this.tokenCipher = tokenCipher;
+    }
+
+    @Override
+    public String convertToDatabaseColumn(String attribute) {
+        return attribute == null || attribute.isEmpty() ? attribute : tokenCipher.encrypt(attribute);
+    }
+
+    @Override
+    public String convertToEntityAttribute(String dbData) {
+        return dbData == null || dbData.isEmpty() ? dbData : tokenCipher.decrypt(dbData);
+    }
+}
@@ -8,8 +8,11 @@ import lombok.Setter;
 public class GitHubDeploy {
     // Getters and setters
     private String repoUrl;
+    private String ref; // Branch, tag or commit; blank for the default branch
     private String githubToken;
     private String domain;
     private int internalPort;
+    private int priority;
+    private String healthPath; // HTTP path probed before a redeploy takes traffic; blank rules out redeploys
 
 }
\ No newline at end of file
@@ -1,21 +1,35 @@
 package net.findzach.nojokepanel.model;
 
 import lombok.Data;
+import lombok.ToString;
+import net.findzach.nojokepanel.util.BuildLog;
 import org.springframework.web.socket.WebSocketSession;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Data
 public class PanelContainer {
+    private static final int LOG_VIEW_BYTES = 256 * 1024;
+
     private String id;
+    private String dockerId;
     private String name;
     private String imageName;
     private String domain;
     private int internalPort;
     private String status;
+    private String commitSha;
+    private String imageId;
+    private String nodeId; // Docker node the container was placed on; null for containers that predate placement
+    private String routeName; // Traefik router and service, shared by every container serving the app
+    private String replaces; // ID of the container a blue/green redeploy hands traffic over from
     private WebSocketSession webSocketSession;
-    private List<String> logs = new ArrayList<>();
+    @ToString.Exclude
+    private BuildLog buildLog;
+    private final Map<String, Long> stageTimings = new LinkedHashMap<>();
 
     public PanelContainer(String id, String name, String imageName, String domain, int internalPort) {
         this.id = id;
@@ -26,7 +40,66 @@ public class PanelContainer {
         this.status = "CREATING";
     }
 
-    public void addLog(String log) {
-        logs.add(log);
+    /**
+     * @return the ID to address this container by in Docker API calls
+     */
+    public String dockerIdOrId() {
+        return dockerId != null ? dockerId : id;
+    }
+
+    /**
+     * @return the Traefik router and service name this container joins; containers deployed before
+     * redeploys existed use their own name
+     */
+    public String routeNameOrName() {
+        return routeName != null ? routeName : name;
+    }
+
+    /**
+     * @return the build log offset just past the added line, or -1 if this container has no build log
+     */
+    public long addLog(String log) {
+        return buildLog != null ? buildLog.append(log) : -1;
+    }
+
+    /**
+     * Records how long one deployment stage took; stages keep the order they first ran in.
+     */
+    public void recordStageTiming(String stage, long millis) {
+        synchronized (stageTimings) {
+            stageTimings.put(stage, millis);
+        }
+    }
+
+    /**
+     * Forgets the stage timings of the previous deployment, so a new one doesn't show stages it skipped.
+     */
+    public void clearStageTimings() {
+        synchronized (stageTimings) {
+            stageTimings.clear();
+        }
+    }
+
+    /**
+     * @return milliseconds spent in each stage of the last deployment, in pipeline order
+     */
+    public Map<String, Long> getStageTimings() {
+        synchronized (stageTimings) {
+            return new LinkedHashMap<>(stageTimings);
+        }
+    }
+
+    /**
+     * @return the most recent build output lines, for rendering; use {@link #getBuildLog()} to read it all
+     */
+    public List<String> getLogs() {
+        if (buildLog == null) {
+            return List.of();
+        }
+        try {
+            return buildLog.tail(LOG_VIEW_BYTES);
+        } catch (IOException e) {
+            return List.of("Build log unavailable: " + e.getMessage());
+        }
     }
-}
\ No newline at end of file
+}
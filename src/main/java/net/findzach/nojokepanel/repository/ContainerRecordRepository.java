@@ -0,0 +1,7 @@
+package net.findzach.nojokepanel.repository;
+
+import net.findzach.nojokepanel.model.ContainerRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface ContainerRecordRepository extends JpaRepository<ContainerRecord, String> {
+}
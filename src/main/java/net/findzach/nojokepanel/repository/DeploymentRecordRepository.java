@@ -0,0 +1,7 @@
+package net.findzach.nojokepanel.repository;
+
+import net.findzach.nojokepanel.model.DeploymentRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface DeploymentRecordRepository extends JpaRepository<DeploymentRecord, String> {
+}
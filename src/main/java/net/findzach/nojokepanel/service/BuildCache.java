@@ -0,0 +1,136 @@
+package net.findzach.nojokepanel.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers which image was built from which commit, and names the per-repository buildpack cache volume.
+ * <p>
+ * A build is identified by Docker node, repository, commit SHA and build settings (builder, env, pack
+ * version); pack builds into the node's daemon, so the image only exists there. Records are kept in
+ * {@code builds.json} under the cache root so they survive panel restarts. A lookup only bumps the record's
+ * last use in memory; that reaches the file with the next new or evicted build, or at shutdown.
+ */
+@Service
+@Slf4j
+public class BuildCache {
+
+    /**
+     * @param imageId the local image ID (sha256:...) on the node, not a registry digest
+     */
+    public record BuildRecord(String nodeId, String repoKey, String commitSha, String settings, String imageName,
+                              String imageId, long builtAt, long lastUsedAt) {
+
+        BuildRecord touch() {
+            return new BuildRecord(nodeId, repoKey, commitSha, settings, imageName, imageId, builtAt, System.currentTimeMillis());
+        }
+    }
+
+    private final Path recordsFile;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, BuildRecord> records = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    public BuildCache(@Value("${nojokepanel.build-cache.root:${java.io.tmpdir}/nojokepanel/build-cache}") String root) {
+        this.recordsFile = Path.of(root, "builds.json");
+        load();
+    }
+
+    /**
+     * @return the Docker volume pack should use as the build cache for this repository
+     */
+    public String cacheVolume(String repoUrl) {
+        return "nojokepanel-cache-" + GitMirrorCache.mirrorKey(repoUrl);
+    }
+
+    public Optional<BuildRecord> find(String nodeId, String repoUrl, String commitSha, String settings) {
+        if (commitSha == null) {
+            return Optional.empty();
+        }
+        BuildRecord record = records.computeIfPresent(key(nodeId, GitMirrorCache.mirrorKey(repoUrl), commitSha, settings),
+                (k, existing) -> existing.touch());
+        if (record != null) {
+            dirty = true;
+        }
+        return Optional.ofNullable(record);
+    }
+
+    public void record(String nodeId, String repoUrl, String commitSha, String settings, String imageName, String imageId) {
+        if (commitSha == null || imageId == null) {
+            return;
+        }
+        String repoKey = GitMirrorCache.mirrorKey(repoUrl);
+        long now = System.currentTimeMillis();
+        records.put(key(nodeId, repoKey, commitSha, settings), new BuildRecord(nodeId, repoKey, commitSha, settings, imageName, imageId, now, now));
+        save();
+        log.info("Recorded build of {} at {} on node {} as {}", repoKey, commitSha, nodeId, imageId);
+    }
+
+    /**
+     * Drops a record whose image no longer exists.
+     */
+    public void evict(BuildRecord record) {
+        records.remove(key(record));
+        save();
+    }
+
+    public List<BuildRecord> getRecords() {
+        return new ArrayList<>(records.values());
+    }
+
+    private static String key(BuildRecord record) {
+        return key(record.nodeId(), record.repoKey(), record.commitSha(), record.settings());
+    }
+
+    private static String key(String nodeId, String repoKey, String commitSha, String settings) {
+        return nodeId + "/" + repoKey + "@" + commitSha + "#" + settings;
+    }
+
+    private void load() {
+        if (!Files.exists(recordsFile)) {
+            return;
+        }
+        try {
+            List<BuildRecord> saved = objectMapper.readValue(recordsFile.toFile(), new TypeReference<List<BuildRecord>>() { });
+            for (BuildRecord record : saved) {
+                records.put(key(record), record);
+            }
+            log.info("Loaded {} build cache records from {}", records.size(), recordsFile);
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable build cache records at {}: {}", recordsFile, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void flush() {
+        if (dirty) {
+            save();
+        }
+    }
+
+    private synchronized void save() {
+        dirty = false;
+        try {
+            Files.createDirectories(recordsFile.getParent());
+            Path temp = recordsFile.resolveSibling(recordsFile.getFileName() + ".tmp");
+            objectMapper.writeValue(temp.toFile(), new ArrayList<>(records.values()));
+            Files.move(temp, recordsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Failed to save build cache records to {}: {}", recordsFile, e.getMessage());
+        }
+    }
+}
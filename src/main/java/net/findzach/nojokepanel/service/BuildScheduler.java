@@ -0,0 +1,232 @@
+package net.findzach.nojokepanel.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs deployment builds on a fixed number of workers. Builds that can't start right away wait in a
+ * priority queue (FIFO within the same priority); once the queue is full new builds are rejected.
+ */
+@Service
+@Slf4j
+public class BuildScheduler {
+
+    public enum State { QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED }
+
+    @FunctionalInterface
+    public interface BuildJob {
+        void run() throws Exception;
+    }
+
+    public record QueueStats(int concurrency, int running, int queued, int queueCapacity,
+                             long completed, long rejected, long cancelled,
+                             double averageWaitMillis, long maxWaitMillis, long oldestQueuedMillis) {
+    }
+
+    private final int concurrency;
+    private final int queueCapacity;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, BuildTask> tasks = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong totalWaitMillis = new AtomicLong();
+    private final AtomicLong maxWaitMillis = new AtomicLong();
+
+    public BuildScheduler(@Value("${nojokepanel.build.concurrency:2}") int concurrency,
+                          @Value("${nojokepanel.build.queue-capacity:100}") int queueCapacity) {
+        this.concurrency = Math.max(1, concurrency);
+        this.queueCapacity = Math.max(0, queueCapacity);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(this.concurrency, this.concurrency, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "build-worker-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        log.info("Build scheduler started with concurrency {} and queue capacity {}", this.concurrency, this.queueCapacity);
+    }
+
+    /**
+     * Queues a build for the given container. Higher priorities run first.
+     *
+     * @throws RejectedExecutionException if the queue is full or the container already has a build pending
+     */
+    public synchronized BuildTask submit(String containerId, int priority, BuildJob job) {
+        if (tasks.containsKey(containerId)) {
+            throw new RejectedExecutionException("A build is already queued or running for container " + containerId);
+        }
+        boolean workerFree = executor.getActiveCount() + executor.getQueue().size() < concurrency;
+        if (!workerFree && executor.getQueue().size() >= queueCapacity) {
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("Build queue is full (" + queueCapacity + " builds waiting)");
+        }
+        BuildTask task = new BuildTask(containerId, priority, sequence.incrementAndGet(), job);
+        tasks.put(containerId, task);
+        executor.execute(task);
+        log.info("Queued build for container {} with priority {} (queue depth {})", containerId, priority, executor.getQueue().size());
+        return task;
+    }
+
+    /**
+     * Cancels a queued build, or interrupts it if it's already running.
+     *
+     * @return false if no build is pending for the container
+     */
+    public boolean cancel(String containerId) {
+        BuildTask task = tasks.get(containerId);
+        if (task == null) {
+            return false;
+        }
+        if (task.state.compareAndSet(State.QUEUED, State.CANCELLED)) {
+            executor.remove(task);
+            task.finish(State.CANCELLED, null);
+            log.info("Cancelled queued build for container {}", containerId);
+            return true;
+        }
+        if (task.state.get() == State.RUNNING) {
+            task.cancelRequested = true;
+            Thread worker = task.worker;
+            if (worker != null) {
+                worker.interrupt();
+            }
+            log.info("Interrupting running build for container {}", containerId);
+            return true;
+        }
+        return false;
+    }
+
+    public BuildTask getTask(String containerId) {
+        return tasks.get(containerId);
+    }
+
+    /**
+     * @return the 1-based position of the build in the queue, 0 if it's running or unknown
+     */
+    public int getQueuePosition(String containerId) {
+        BuildTask task = tasks.get(containerId);
+        if (task == null || task.state.get() != State.QUEUED) {
+            return 0;
+        }
+        int position = 1;
+        for (Runnable queued : executor.getQueue()) {
+            if (queued != task && ((BuildTask) queued).compareTo(task) < 0) {
+                position++;
+            }
+        }
+        return position;
+    }
+
+    public int getRunningCount() {
+        return executor.getActiveCount();
+    }
+
+    public QueueStats getStats() {
+        long oldest = 0;
+        long now = System.nanoTime();
+        for (Runnable queued : executor.getQueue()) {
+            oldest = Math.max(oldest, TimeUnit.NANOSECONDS.toMillis(now - ((BuildTask) queued).enqueuedAt));
+        }
+        long startedCount = started.get();
+        double averageWait = startedCount == 0 ? 0 : (double) totalWaitMillis.get() / startedCount;
+        return new QueueStats(concurrency, executor.getActiveCount(), executor.getQueue().size(), queueCapacity,
+                completed.get(), rejected.get(), cancelled.get(), averageWait, maxWaitMillis.get(), oldest);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Getter
+    public class BuildTask implements Runnable, Comparable<BuildTask> {
+        private final String containerId;
+        private final int priority;
+        private final long sequence;
+        private final long enqueuedAt = System.nanoTime();
+        private final CompletableFuture<State> completion = new CompletableFuture<>();
+        private final BuildJob job;
+        private final AtomicReference<State> state = new AtomicReference<>(State.QUEUED);
+        private volatile long waitMillis;
+        private volatile boolean cancelRequested;
+        private volatile Thread worker;
+
+        private BuildTask(String containerId, int priority, long sequence, BuildJob job) {
+            this.containerId = containerId;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.job = job;
+        }
+
+        public State getState() {
+            return state.get();
+        }
+
+        @Override
+        public void run() {
+            if (!state.compareAndSet(State.QUEUED, State.RUNNING)) {
+                return;
+            }
+            worker = Thread.currentThread();
+            waitMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - enqueuedAt);
+            started.incrementAndGet();
+            totalWaitMillis.addAndGet(waitMillis);
+            maxWaitMillis.accumulateAndGet(waitMillis, Math::max);
+            log.info("Starting build for container {} after waiting {} ms", containerId, waitMillis);
+            try {
+                job.run();
+                finish(cancelRequested ? State.CANCELLED : State.SUCCEEDED, null);
+            } catch (Exception e) {
+                if (cancelRequested) {
+                    finish(State.CANCELLED, null);
+                } else {
+                    log.error("Build failed for container {}: {}", containerId, e.getMessage(), e);
+                    finish(State.FAILED, e);
+                }
+            } finally {
+                worker = null;
+                Thread.interrupted(); // Don't leak a cancellation interrupt into the next build on this worker
+            }
+        }
+
+        private void finish(State finalState, Exception error) {
+            state.set(finalState);
+            tasks.remove(containerId, this);
+            if (finalState == State.CANCELLED) {
+                cancelled.incrementAndGet();
+            } else {
+                completed.incrementAndGet();
+            }
+            if (error != null) {
+                completion.completeExceptionally(error);
+            } else {
+                completion.complete(finalState);
+            }
+        }
+
+        @Override
+        public int compareTo(BuildTask other) {
+            if (priority != other.priority) {
+                return Integer.compare(other.priority, priority);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package net.findzach.nojokepanel.service;
+
+import com.github.dockerjava.api.exception.NotModifiedException;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.findzach.nojokepanel.model.PanelContainer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs one lifecycle action against many containers at once.
+ * <p>
+ * Docker calls go out on a fixed pool, so at most {@code nojokepanel.bulk.parallelism} of them are in flight
+ * across all bulk operations; a stop that waits out its grace period only occupies one slot. Every container
+ * gets its own result, and a failure never aborts the rest of the batch. Each container's action is also
+ * tracked as an operation in the {@link OperationRegistry}, so bulk work shows up alongside everything else
+ * and waits for earlier operations on the same container, like any other operation.
+ */
+@Service
+@Slf4j
+public class BulkLifecycleService {
+
+    public enum Action {
+        START, STOP, RESTART, REMOVE;
+
+        public static Action parse(String action) {
+            return valueOf(action.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    public record Result(String containerId, Action action, boolean success, String status, String error, long durationMillis) {
+    }
+
+    public record Summary(Action action, int total, int succeeded, int failed, long durationMillis, List<Result> results) {
+    }
+
+    private final ContainerService containerService;
+    private final OperationRegistry operationRegistry;
+    private final ExecutorService workers;
+
+    public BulkLifecycleService(ContainerService containerService, OperationRegistry operationRegistry,
+                                @Value("${nojokepanel.bulk.parallelism:16}") int parallelism) {
+        this.containerService = containerService;
+        this.operationRegistry = operationRegistry;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "bulk-lifecycle-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Starts the action on every container. Duplicate IDs are run once.
+     *
+     * @param onResult called as each container finishes, from a worker thread
+     * @return completes with all results, in request order, once every container is done
+     */
+    public CompletableFuture<Summary> run(Action action, List<String> containerIds, int stopTimeoutSeconds, Consumer<Result> onResult) {
+        long started = System.nanoTime();
+        List<CompletableFuture<Result>> futures = new ArrayList<>();
+        for (String id : new LinkedHashSet<>(containerIds)) {
+            OperationRegistry.Operation operation = operationRegistry.track(action.name(), id);
+            futures.add(operationRegistry.enqueue(id, workers, () -> {
+                operationRegistry.start(operation);
+                Result result = apply(action, id, stopTimeoutSeconds);
+                if (result.success()) operationRegistry.succeed(operation);
+                else operationRegistry.fail(operation, result.error());
+                try {
+                    onResult.accept(result);
+                } catch (Exception e) {
+                    log.debug("Bulk progress listener failed: {}", e.getMessage());
+                }
+                return result;
+            }));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(done -> {
+            List<Result> results = futures.stream().map(CompletableFuture::join).toList();
+            int succeeded = (int) results.stream().filter(Result::success).count();
+            long durationMillis = (System.nanoTime() - started) / 1_000_000;
+            log.info("Bulk {} of {} containers finished in {} ms, {} failed", action, results.size(), durationMillis, results.size() - succeeded);
+            return new Summary(action, results.size(), succeeded, results.size() - succeeded, durationMillis, results);
+        });
+    }
+
+    private Result apply(Action action, String id, int stopTimeoutSeconds) {
+        long started = System.nanoTime();
+        try {
+            String status = switch (action) {
+                case START -> containerService.startContainer(id).getStatus();
+                case STOP -> containerService.stopContainer(id, stopTimeoutSeconds).getStatus();
+                case RESTART -> containerService.restartContainer(id, stopTimeoutSeconds).getStatus();
+                case REMOVE -> {
+                    containerService.removeContainer(id);
+                    yield "REMOVED";
+                }
+            };
+            return new Result(id, action, true, status, null, elapsedMillis(started));
+        } catch (NotModifiedException e) {
+            // Already in the requested state, e.g. stopping a stopped container
+            PanelContainer panelContainer = containerService.getContainer(id);
+            String status = action == Action.START ? "RUNNING" : "STOPPED";
+            if (panelContainer != null) {
+                containerService.updateStatus(panelContainer, status);
+            }
+            return new Result(id, action, true, status, null, elapsedMillis(started));
+        } catch (Exception e) {
+            log.warn("Bulk {} failed for container {}: {}", action, id, e.getMessage());
+            PanelContainer panelContainer = containerService.getContainer(id);
+            return new Result(id, action, false, panelContainer != null ? panelContainer.getStatus() : null,
+                    e.getMessage(), elapsedMillis(started));
+        }
+    }
+
+    private static long elapsedMillis(long started) {
+        return (System.nanoTime() - started) / 1_000_000;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+}
@@ -0,0 +1,256 @@
+package net.findzach.nojokepanel.service;
+
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.model.BlkioStatEntry;
+import com.github.dockerjava.api.model.BlkioStatsConfig;
+import com.github.dockerjava.api.model.CpuStatsConfig;
+import com.github.dockerjava.api.model.MemoryStatsConfig;
+import com.github.dockerjava.api.model.StatisticNetworksConfig;
+import com.github.dockerjava.api.model.Statistics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.findzach.nojokepanel.model.PanelContainer;
+import net.findzach.nojokepanel.util.MetricSeries;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects CPU, memory, network and block I/O usage of running containers.
+ * <p>
+ * Each running container gets exactly one {@code docker stats} stream, opened and closed by a periodic sync
+ * against the registry, no matter how many viewers are watching it. Samples are turned into rates, stored in
+ * the container's fixed-size {@link MetricSeries} and handed to listeners, which push them to the UI. Each
+ * sync also sums the latest samples per Docker node, which is the live load placement works from.
+ */
+@Service
+@Slf4j
+public class ContainerMetricsService {
+
+    /**
+     * Receives every sample as it is recorded; called on the stats stream's thread, so it must not block.
+     */
+    public interface SampleListener {
+        void onSample(String containerId, long epochSecond, float[] values);
+    }
+
+    private final NodeRegistry nodeRegistry;
+    private final ContainerService containerService;
+    private final Map<String, MetricSeries> series = new ConcurrentHashMap<>();
+    private final Map<String, StatsStream> streams = new ConcurrentHashMap<>();
+    private final List<SampleListener> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "container-metrics-sync");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public ContainerMetricsService(NodeRegistry nodeRegistry, ContainerService containerService,
+                                   @Value("${nojokepanel.metrics.enabled:true}") boolean enabled,
+                                   @Value("${nojokepanel.metrics.sync-interval-ms:5000}") long syncIntervalMs) {
+        this.nodeRegistry = nodeRegistry;
+        this.containerService = containerService;
+        if (enabled) {
+            syncer.scheduleWithFixedDelay(this::sync, syncIntervalMs, syncIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void addListener(SampleListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @return the container's history, or null if it has never been sampled
+     */
+    public MetricSeries getSeries(String containerId) {
+        return series.get(containerId);
+    }
+
+    /**
+     * Opens streams for containers that are running and closes those that no longer are. History is kept
+     * while the container stays in the registry, so a stopped container still shows its last hours.
+     */
+    void sync() {
+        try {
+            Map<String, PanelContainer> containers = containerService.getContainers();
+            Map<String, double[]> nodeUsage = new HashMap<>();
+            for (PanelContainer panelContainer : containers.values()) {
+                if ("RUNNING".equals(panelContainer.getStatus()) && panelContainer.getDockerId() != null) {
+                    streams.computeIfAbsent(panelContainer.getId(), id -> open(panelContainer));
+                    addUsage(nodeUsage, panelContainer);
+                }
+            }
+            nodeRegistry.updateUsage(nodeUsage);
+            streams.forEach((id, stream) -> {
+                PanelContainer panelContainer = containers.get(id);
+                if (panelContainer == null || !"RUNNING".equals(panelContainer.getStatus()) || stream.closed) {
+                    streams.remove(id, stream);
+                    stream.closeQuietly();
+                }
+            });
+            series.keySet().retainAll(containers.keySet());
+        } catch (Exception e) {
+            log.warn("Container metrics sync failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Adds the container's latest CPU (in CPUs) and memory sample to its node's total.
+     */
+    private void addUsage(Map<String, double[]> nodeUsage, PanelContainer panelContainer) {
+        MetricSeries containerSeries = series.get(panelContainer.getId());
+        float[] latest = containerSeries != null ? containerSeries.latest() : null;
+        if (latest == null) return;
+        NodeRegistry.Node node = nodeRegistry.getNode(panelContainer.getNodeId());
+        if (node == null) return;
+        double[] total = nodeUsage.computeIfAbsent(node.getId(), id -> new double[2]);
+        if (!Float.isNaN(latest[MetricSeries.CPU_PERCENT])) total[0] += latest[MetricSeries.CPU_PERCENT] / 100.0;
+        if (!Float.isNaN(latest[MetricSeries.MEMORY_BYTES])) total[1] += latest[MetricSeries.MEMORY_BYTES];
+    }
+
+    private StatsStream open(PanelContainer panelContainer) {
+        String containerId = panelContainer.getId();
+        StatsStream stream = new StatsStream(containerId);
+        try {
+            nodeRegistry.streamClient(panelContainer.getNodeId()).statsCmd(panelContainer.getDockerId()).exec(stream);
+            log.debug("Opened stats stream for container {}", containerId);
+        } catch (Exception e) {
+            log.warn("Could not open stats stream for container {}: {}", containerId, e.getMessage());
+            stream.closed = true; // Removed and retried on the next sync
+        }
+        return stream;
+    }
+
+    private void record(String containerId, float[] values) {
+        long now = System.currentTimeMillis() / 1000;
+        series.computeIfAbsent(containerId, id -> new MetricSeries()).record(now, values);
+        for (SampleListener listener : listeners) {
+            listener.onSample(containerId, now, values);
+        }
+    }
+
+    private final class StatsStream extends ResultCallback.Adapter<Statistics> {
+        private final String containerId;
+        private volatile boolean closed;
+        private long previousNanos = -1;
+        private long previousRx;
+        private long previousTx;
+        private long previousRead;
+        private long previousWrite;
+
+        private StatsStream(String containerId) {
+            this.containerId = containerId;
+        }
+
+        @Override
+        public void onNext(Statistics stats) {
+            long nanos = System.nanoTime();
+            long rx = 0;
+            long tx = 0;
+            Map<String, StatisticNetworksConfig> networks = stats.getNetworks();
+            if (networks != null) {
+                for (StatisticNetworksConfig network : networks.values()) {
+                    rx += valueOf(network.getRxBytes());
+                    tx += valueOf(network.getTxBytes());
+                }
+            }
+            long read = 0;
+            long write = 0;
+            BlkioStatsConfig blkio = stats.getBlkioStats();
+            if (blkio != null && blkio.getIoServiceBytesRecursive() != null) {
+                for (BlkioStatEntry entry : blkio.getIoServiceBytesRecursive()) {
+                    if ("read".equalsIgnoreCase(entry.getOp())) read += valueOf(entry.getValue());
+                    else if ("write".equalsIgnoreCase(entry.getOp())) write += valueOf(entry.getValue());
+                }
+            }
+
+            float[] values = new float[MetricSeries.CHANNELS];
+            values[MetricSeries.CPU_PERCENT] = cpuPercent(stats.getCpuStats(), stats.getPreCpuStats());
+            MemoryStatsConfig memory = stats.getMemoryStats();
+            values[MetricSeries.MEMORY_BYTES] = memory != null ? valueOf(memory.getUsage()) : Float.NaN;
+            values[MetricSeries.MEMORY_LIMIT_BYTES] = memory != null ? valueOf(memory.getLimit()) : Float.NaN;
+            if (previousNanos < 0) {
+                values[MetricSeries.NET_RX_BYTES_PER_SEC] = Float.NaN;
+                values[MetricSeries.NET_TX_BYTES_PER_SEC] = Float.NaN;
+                values[MetricSeries.BLOCK_READ_BYTES_PER_SEC] = Float.NaN;
+                values[MetricSeries.BLOCK_WRITE_BYTES_PER_SEC] = Float.NaN;
+            } else {
+                double seconds = Math.max(1e-3, (nanos - previousNanos) / 1e9);
+                values[MetricSeries.NET_RX_BYTES_PER_SEC] = rate(rx, previousRx, seconds);
+                values[MetricSeries.NET_TX_BYTES_PER_SEC] = rate(tx, previousTx, seconds);
+                values[MetricSeries.BLOCK_READ_BYTES_PER_SEC] = rate(read, previousRead, seconds);
+                values[MetricSeries.BLOCK_WRITE_BYTES_PER_SEC] = rate(write, previousWrite, seconds);
+            }
+            previousNanos = nanos;
+            previousRx = rx;
+            previousTx = tx;
+            previousRead = read;
+            previousWrite = write;
+            record(containerId, values);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            log.debug("Stats stream for container {} failed: {}", containerId, throwable.getMessage());
+            closed = true;
+        }
+
+        @Override
+        public void onComplete() {
+            closed = true;
+        }
+
+        private void closeQuietly() {
+            closed = true;
+            try {
+                close();
+            } catch (IOException e) {
+                log.debug("Error closing stats stream for container {}", containerId, e);
+            }
+        }
+    }
+
+    /**
+     * Same formula as {@code docker stats}: the container's share of host CPU time since the previous sample,
+     * scaled by the number of online CPUs.
+     */
+    private static float cpuPercent(CpuStatsConfig current, CpuStatsConfig previous) {
+        if (current == null || previous == null || current.getCpuUsage() == null || previous.getCpuUsage() == null) {
+            return Float.NaN;
+        }
+        long cpuDelta = valueOf(current.getCpuUsage().getTotalUsage()) - valueOf(previous.getCpuUsage().getTotalUsage());
+        long systemDelta = valueOf(current.getSystemCpuUsage()) - valueOf(previous.getSystemCpuUsage());
+        if (cpuDelta < 0 || systemDelta <= 0) {
+            return Float.NaN; // First sample of the stream has no previous reading
+        }
+        long cpus = valueOf(current.getOnlineCpus());
+        if (cpus == 0 && current.getCpuUsage().getPercpuUsage() != null) {
+            cpus = current.getCpuUsage().getPercpuUsage().size();
+        }
+        return (float) ((double) cpuDelta / systemDelta * Math.max(1, cpus) * 100.0);
+    }
+
+    private static float rate(long current, long previous, double seconds) {
+        return current < previous ? Float.NaN : (float) ((current - previous) / seconds); // Counters reset on restart
+    }
+
+    private static long valueOf(Long value) {
+        return value != null ? value : 0;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        syncer.shutdownNow();
+        streams.values().forEach(StatsStream::closeQuietly);
+        streams.clear();
+    }
+}
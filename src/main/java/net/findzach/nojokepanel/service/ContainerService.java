@@ -4,52 +4,145 @@ import net.findzach.nojokepanel.handler.BuildLogWebSocketHandler;
 import net.findzach.nojokepanel.model.GitHubDeploy;
 import net.findzach.nojokepanel.model.PanelContainer;
 import net.findzach.nojokepanel.util.BuildExecutor;
+import net.findzach.nojokepanel.util.BlockingCallExecutors;
+import net.findzach.nojokepanel.util.DockerProbe;
+import net.findzach.nojokepanel.util.HealthProbe;
+import net.findzach.nojokepanel.util.LogChunkStore;
+import net.findzach.nojokepanel.util.StageGraph;
 import net.findzach.nojokepanel.util.WebSocketStreamHandler;
 import com.github.dockerjava.api.DockerClient;
 import com.github.dockerjava.api.command.CreateContainerResponse;
+import com.github.dockerjava.api.command.InspectContainerResponse;
+import com.github.dockerjava.api.exception.NotFoundException;
 import com.github.dockerjava.api.model.ExposedPort;
+import com.github.dockerjava.api.model.ContainerNetwork;
 import com.github.dockerjava.api.model.HostConfig;
-import com.github.dockerjava.core.DefaultDockerClientConfig;
-import com.github.dockerjava.core.DockerClientImpl;
-import com.github.dockerjava.httpclient5.ApacheDockerHttpClient;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.exec.CommandLine;
 import org.apache.commons.exec.DefaultExecutor;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.URL;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 @Slf4j
 public class ContainerService implements ContainerServiceInterface {
 
-    private final DockerClient dockerClient;
-    private final Map<String, PanelContainer> containers = new ConcurrentHashMap<>();
+    private final NodeRegistry nodeRegistry;
+    private final ConcurrentSkipListMap<String, PanelContainer> containers = new ConcurrentSkipListMap<>(); // Sorted, for cursor paging
+    private final AtomicLong registryVersion = new AtomicLong();
+    private final AtomicLong deploySequence = new AtomicLong();
+    private final long registryEpoch = System.currentTimeMillis();
     private final Map<String, GitHubDeploy> deployments = new ConcurrentHashMap<>(); // Store GitHubDeploy objects
+    private final Map<String, String> inFlightDeploys = new ConcurrentHashMap<>(); // Deploy key -> container building it
+    private final Map<String, String> redeploys = new ConcurrentHashMap<>(); // Container being replaced -> its replacement
+    private volatile boolean registryLoaded;
     private final BuildLogWebSocketHandler webSocketHandler;
+    private final ToolchainCache toolchainCache;
+    private final GitMirrorCache gitMirrorCache;
+    private final BuildCache buildCache;
+    private final LogChunkStore logChunkStore;
+    private final RegistryStore registryStore;
+    private final DeployMetrics deployMetrics;
+    private final WorkspaceManager workspaceManager;
+    // Stages of concurrent deploys; the build scheduler bounds how many deploys run at once
+    private final ExecutorService stageExecutor = Executors.newCachedThreadPool(BlockingCallExecutors.daemonThreads("deploy-stage"));
+    private final HealthProbe healthProbe = new HealthProbe();
     private String traefikNetwork = "traefik-net";
+    public static final String MANAGED_LABEL = "nojokepanel.managed";
+    public static final String CONTAINER_LABEL = "nojokepanel.container";
+    private static final String BUILDER = "paketobuildpacks/builder-jammy-base";
+    public static final int DEFAULT_STOP_TIMEOUT_SECONDS = 10;
+    public static final int MAX_PAGE_SIZE = 500;
+    private static final String BUILD_ENV = "BP_JVM_VERSION=17"; // Specify JDK 17
+
+    /**
+     * One page of the registry in ID order.
+     *
+     * @param nextCursor the ID to pass as the cursor for the following page, or null on the last page
+     * @param version    the registry version the page was read at; see {@link #getRegistryVersion()}
+     */
+    public record ContainerPage(List<PanelContainer> containers, String nextCursor, String version) {
+    }
+
+    /**
+     * @param attached true if an identical deploy was already in flight and {@code container} is that one
+     */
+    public record Initiation(PanelContainer container, boolean attached) {
+    }
+
+    @Value("${nojokepanel.build.mirror-output-to-log:false}")
+    private boolean mirrorBuildOutputToLog;
+
+    @Value("${nojokepanel.build.pull-policy:always}")
+    private String pullPolicy;
+
+    @Value("${nojokepanel.deploy.stage-retry-backoff-ms:2000}")
+    private long stageRetryBackoffMs;
+
+    @Value("${nojokepanel.redeploy.health-timeout-ms:120000}")
+    private long healthTimeoutMs;
+
+    @Value("${nojokepanel.redeploy.health-interval-ms:1000}")
+    private long healthIntervalMs;
+
+    @Value("${nojokepanel.redeploy.probe-image:busybox:1.36}")
+    private String probeImage;
+
+    @Value("${nojokepanel.redeploy.cutover-settle-ms:3000}")
+    private long cutoverSettleMs;
+
+    @Value("${nojokepanel.redeploy.drain-seconds:30}")
+    private int drainSeconds;
 
     @Autowired
-    public ContainerService(BuildLogWebSocketHandler webSocketHandler) {
+    public ContainerService(NodeRegistry nodeRegistry, BuildLogWebSocketHandler webSocketHandler, ToolchainCache toolchainCache,
+                            GitMirrorCache gitMirrorCache, BuildCache buildCache, LogChunkStore logChunkStore,
+                            RegistryStore registryStore, DeployMetrics deployMetrics, WorkspaceManager workspaceManager) {
+        this.nodeRegistry = nodeRegistry;
         this.webSocketHandler = webSocketHandler;
-        String dockerHost = System.getenv("DOCKER_HOST") != null ? System.getenv("DOCKER_HOST") : "unix:///var/run/docker.sock";
-        DefaultDockerClientConfig config = DefaultDockerClientConfig.createDefaultConfigBuilder()
-                .withDockerHost(dockerHost)
-                .build();
-        ApacheDockerHttpClient httpClient = new ApacheDockerHttpClient.Builder()
-                .dockerHost(config.getDockerHost())
-                .sslConfig(config.getSSLConfig())
-                .build();
-        this.dockerClient = DockerClientImpl.getInstance(config, httpClient);
+        this.toolchainCache = toolchainCache;
+        this.gitMirrorCache = gitMirrorCache;
+        this.buildCache = buildCache;
+        this.logChunkStore = logChunkStore;
+        this.registryStore = registryStore;
+        this.deployMetrics = deployMetrics;
+        this.workspaceManager = workspaceManager;
+    }
+
+    /**
+     * Brings every container back into memory after a restart, stopped and failed ones included, so the
+     * dashboard, the listing API and image GC see the whole registry. Deployments are loaded on first use.
+     */
+    @PostConstruct
+    public void loadRegistry() {
+        try {
+            registryStore.loadAll(panelContainer -> containers.putIfAbsent(panelContainer.getId(), panelContainer));
+            registryLoaded = true;
+            log.info("Loaded {} containers from the registry", containers.size());
+        } catch (Exception e) {
+            log.error("Failed to load the container registry", e);
+        }
     }
 
     @Override
@@ -57,64 +150,516 @@ public class ContainerService implements ContainerServiceInterface {
         return containers;
     }
 
+    /**
+     * @return whether {@link #getContainers()} holds the whole registry; false if loading it failed
+     */
+    public boolean isRegistryLoaded() {
+        return registryLoaded;
+    }
+
+    /**
+     * The whole registry is loaded at startup, so a container missing from memory doesn't exist, or was
+     * removed and only awaits deletion from the database.
+     */
     @Override
     public PanelContainer getContainer(String id) {
         return containers.get(id);
     }
 
+    /**
+     * Pages through the in-memory registry. Pages are cut by container ID rather than position, so a
+     * container added or removed between requests never shifts or repeats the rest of the listing.
+     *
+     * @param cursor   the last ID of the previous page, or null for the first page
+     * @param statuses statuses to include, all when empty
+     * @param domain   case-insensitive substring the domain must contain, or null for any
+     */
+    public ContainerPage listContainers(String cursor, int limit, Collection<String> statuses, String domain) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        // Read before iterating: a change racing with this page can only make the version older than the
+        // contents, which costs the client a refetch but never a stale 304
+        String version = getRegistryVersion();
+        NavigableMap<String, PanelContainer> view = cursor == null || cursor.isEmpty() ? containers : containers.tailMap(cursor, false);
+        String domainFilter = domain == null || domain.isBlank() ? null : domain.trim().toLowerCase(Locale.ROOT);
+        List<PanelContainer> page = new ArrayList<>(Math.min(pageSize, 64));
+        String nextCursor = null;
+        for (PanelContainer panelContainer : view.values()) {
+            if (!statuses.isEmpty() && !statuses.contains(panelContainer.getStatus())) continue;
+            if (domainFilter != null && (panelContainer.getDomain() == null
+                    || !panelContainer.getDomain().toLowerCase(Locale.ROOT).contains(domainFilter))) continue;
+            if (page.size() == pageSize) {
+                nextCursor = page.get(pageSize - 1).getId();
+                break;
+            }
+            page.add(panelContainer);
+        }
+        return new ContainerPage(page, nextCursor, version);
+    }
+
+    /**
+     * @return a token that changes whenever a container is added, removed or changes status; unique across
+     * restarts, so it can be used as an ETag
+     */
+    public String getRegistryVersion() {
+        return registryEpoch + "-" + registryVersion.get();
+    }
+
+    private void registryChanged() {
+        registryVersion.incrementAndGet();
+    }
+
+    /**
+     * @return the deploy request a container was created from, loading it from the registry if needed
+     */
+    public GitHubDeploy getDeployment(String containerId) {
+        GitHubDeploy githubDeploy = deployments.get(containerId);
+        if (githubDeploy != null) {
+            return githubDeploy;
+        }
+        return registryStore.loadDeployment(containerId)
+                .map(loaded -> deployments.computeIfAbsent(containerId, k -> loaded))
+                .orElse(null);
+    }
+
+    /**
+     * Changes a container's status and queues it for persistence.
+     */
+    public void updateStatus(PanelContainer panelContainer, String status) {
+        panelContainer.setStatus(status);
+        containerChanged(panelContainer);
+    }
+
+    /**
+     * Call after changing any persisted field of a container: bumps the registry version, so the listing's
+     * ETag doesn't serve a stale 304, and queues the container for persistence.
+     */
+    private void containerChanged(PanelContainer panelContainer) {
+        registryChanged();
+        String id = panelContainer.getId();
+        if (containers.get(id) != panelContainer) return; // Removed; saving it would bring the row back
+        registryStore.markDirty(panelContainer);
+        if (containers.get(id) != panelContainer) {
+            registryStore.markRemoved(id); // Removed in the meantime, after its removal was queued
+        }
+    }
+
+    /**
+     * Looks a container up by the Docker ID it was started with.
+     */
+    public PanelContainer findByDockerId(String dockerId) {
+        for (PanelContainer panelContainer : containers.values()) {
+            if (dockerId.equals(panelContainer.getDockerId())) {
+                return panelContainer;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Records the Docker container found running a registered container that has none yet, e.g. one whose
+     * deploy was interrupted after the container was created but before its ID was saved.
+     */
+    public void adoptDockerContainer(PanelContainer panelContainer, String dockerId, String nodeId) {
+        if (panelContainer.getDockerId() != null) return;
+        log.info("Container {} is Docker container {} on node {}", panelContainer.getId(), dockerId, nodeId);
+        panelContainer.setDockerId(dockerId);
+        panelContainer.setNodeId(nodeId);
+        containerChanged(panelContainer);
+    }
+
+    /**
+     * Records a status change observed outside the panel, e.g. from the Docker events stream.
+     */
+    public void applyStatus(PanelContainer panelContainer, String status) {
+        if (!status.equals(panelContainer.getStatus())) {
+            log.info("Container {} changed status {} -> {}", panelContainer.getId(), panelContainer.getStatus(), status);
+            updateStatus(panelContainer, status);
+        }
+    }
+
+    /**
+     * Starts a deployment, unless an identical one is still queued or building, in which case the caller is
+     * attached to that one instead. Deploys are identical when repository, ref, the commit the ref resolves
+     * to right now, build settings, domain and port all match, e.g. a double-clicked deploy button or a
+     * retried CI webhook. The resolved commit is pinned on the new container so the build checks out exactly
+     * what was deduplicated on, even if the branch moves while it's queued.
+     * <p>
+     * If the commit can't be resolved the deploy is never coalesced.
+     */
+    public Initiation initiateOrAttach(GitHubDeploy githubDeploy) {
+        String commit = resolveCommit(githubDeploy);
+        if (commit == null) {
+            return new Initiation(initiateDeployment(githubDeploy), false);
+        }
+        String key = String.join("|", GitMirrorCache.mirrorKey(githubDeploy.getRepoUrl()),
+                githubDeploy.getRef() == null || githubDeploy.getRef().isBlank() ? "HEAD" : githubDeploy.getRef().trim(),
+                commit, buildSettings(), String.valueOf(githubDeploy.getDomain()), String.valueOf(githubDeploy.getInternalPort()));
+        // The container is created outside the map's lock; a deploy that loses the race to claim the key
+        // discards its container, which was never queued, and attaches to the winner
+        while (true) {
+            String inFlight = inFlightDeploys.get(key);
+            PanelContainer existing = inFlight != null ? containers.get(inFlight) : null;
+            if (existing != null) {
+                log.info("Deploy of {} at {} is already in flight as {}, attaching to it", githubDeploy.getRepoUrl(), commit, inFlight);
+                deployMetrics.recordCoalesced();
+                return new Initiation(existing, true);
+            }
+            PanelContainer created = initiateDeployment(githubDeploy);
+            created.setCommitSha(commit);
+            containerChanged(created);
+            boolean claimed = inFlight == null
+                    ? inFlightDeploys.putIfAbsent(key, created.getId()) == null
+                    : inFlightDeploys.replace(key, inFlight, created.getId()); // Its container is gone
+            if (claimed) {
+                return new Initiation(created, false);
+            }
+            discardDeployment(created.getId());
+        }
+    }
+
+    /**
+     * Lets identical deploys start a new build again; called once a deployment has succeeded, failed or
+     * been cancelled.
+     */
+    public void deploymentFinished(String containerId) {
+        inFlightDeploys.values().remove(containerId);
+        redeploys.values().remove(containerId);
+        PanelContainer panelContainer = containers.get(containerId);
+        if (panelContainer != null && panelContainer.getBuildLog() != null) {
+            panelContainer.getBuildLog().seal();
+        }
+    }
+
+    /**
+     * Starts a blue/green redeploy: a new container is built from the same deployment, at {@code ref} if one
+     * is given, and joins the existing container's Traefik service. Once it passes its health probe, the old
+     * container is drained and removed; if anything fails before that, the old one keeps serving untouched.
+     * <p>
+     * Labels can't change once a container exists, so the replacement is in Traefik's service from the moment
+     * it starts; only Traefik's health check on the deployment's health path keeps traffic away from it until
+     * it is ready. A deployment without a health path can't be redeployed this way.
+     *
+     * @return the replacement, to be built with {@link #completeDeployment}
+     * @throws IllegalArgumentException if the deployment has no health path
+     * @throws IllegalStateException    if the container is already being redeployed
+     */
+    public PanelContainer initiateRedeploy(String id, String ref) throws Exception {
+        PanelContainer current = getContainer(id);
+        GitHubDeploy deployed = getDeployment(id);
+        if (current == null || deployed == null) {
+            throw new Exception("No deployment data found for containerId: " + id);
+        }
+        if (deployed.getHealthPath() == null || deployed.getHealthPath().isBlank()) {
+            throw new IllegalArgumentException("Container " + id + " has no health check path; deploy it with one to redeploy without downtime");
+        }
+        GitHubDeploy githubDeploy = new GitHubDeploy();
+        githubDeploy.setRepoUrl(deployed.getRepoUrl());
+        githubDeploy.setRef(ref != null && !ref.isBlank() ? ref.trim() : deployed.getRef());
+        githubDeploy.setGithubToken(deployed.getGithubToken());
+        githubDeploy.setDomain(deployed.getDomain());
+        githubDeploy.setInternalPort(deployed.getInternalPort());
+        githubDeploy.setPriority(deployed.getPriority());
+        githubDeploy.setHealthPath(deployed.getHealthPath());
+
+        PanelContainer replacement = initiateDeployment(githubDeploy);
+        if (redeploys.putIfAbsent(id, replacement.getId()) != null) {
+            discardDeployment(replacement.getId());
+            throw new IllegalStateException("Container " + id + " is already being redeployed");
+        }
+        replacement.setRouteName(current.routeNameOrName());
+        // Same node as the old container, whose Traefik routes the app
+        replacement.setNodeId(current.getNodeId() != null ? current.getNodeId() : nodeRegistry.getDefaultNode().getId());
+        replacement.setReplaces(id);
+        containerChanged(replacement);
+        log.info("Redeploying {} as {}", id, replacement.getId());
+        return replacement;
+    }
+
+    private String resolveCommit(GitHubDeploy githubDeploy) {
+        try {
+            return gitMirrorCache.resolveCommit(githubDeploy.getRepoUrl(), githubDeploy.getGithubToken(), githubDeploy.getRef());
+        } catch (IOException e) {
+            log.warn("Could not resolve {} of {}, deploying without deduplication: {}", githubDeploy.getRef(), githubDeploy.getRepoUrl(), e.getMessage());
+            return null;
+        }
+    }
+
+    private String buildSettings() {
+        return "builder=" + BUILDER + ";env=" + BUILD_ENV + ";pack=" + toolchainCache.getPackVersion();
+    }
+
     @Override
     public PanelContainer initiateDeployment(GitHubDeploy githubDeploy) {
         log.info("Initiating deployment for repoUrl: {}, domain: {}, port: {}",
                 githubDeploy.getRepoUrl(), githubDeploy.getDomain(), githubDeploy.getInternalPort());
-        String tempDir = "repo-" + System.currentTimeMillis();
-        new File(tempDir).mkdir();
 
-        String imageName = "app-" + System.currentTimeMillis() + ":latest";
+        // Unique even for deploys in the same millisecond, which coalescing discards by ID
+        String suffix = System.currentTimeMillis() + "-" + deploySequence.incrementAndGet();
+        String imageName = "app-" + suffix + ":latest";
         String containerId = imageName.replace(":", "-");
 
-        PanelContainer panelContainer = new PanelContainer(containerId, "github-" + System.currentTimeMillis(),
+        PanelContainer panelContainer = new PanelContainer(containerId, "github-" + suffix,
                 imageName, githubDeploy.getDomain(), githubDeploy.getInternalPort());
+        panelContainer.setBuildLog(logChunkStore.create(containerId));
         containers.put(containerId, panelContainer);
         deployments.put(containerId, githubDeploy); // Store the original GitHubDeploy object
+        containerChanged(panelContainer);
+        registryStore.markDirty(containerId, githubDeploy);
         return panelContainer;
     }
 
+    /**
+     * Forgets a deployment that was initiated but never built, e.g. because the build queue rejected it.
+     */
+    public void discardDeployment(String containerId) {
+        PanelContainer panelContainer = containers.remove(containerId);
+        deployments.remove(containerId);
+        deploymentFinished(containerId);
+        registryChanged();
+        registryStore.markRemoved(containerId);
+        if (panelContainer != null && panelContainer.getBuildLog() != null) {
+            panelContainer.getBuildLog().release();
+        }
+    }
+
     public void completeDeployment(PanelContainer panelContainer) throws Exception {
         String containerId = panelContainer.getId();
-        GitHubDeploy githubDeploy = deployments.get(containerId); // Retrieve the original deploy data
+        GitHubDeploy githubDeploy = getDeployment(containerId); // Retrieve the original deploy data
         if (githubDeploy == null) {
             throw new Exception("No deployment data found for containerId: " + containerId);
         }
 
-        String tempDir = "repo-" + containerId.replace("-", "");
-        new File(tempDir).mkdir();
+        WorkspaceManager.Workspace workspace = workspaceManager.create(containerId);
+        File tempDir = workspace.getPath().toFile();
 
+        NodeRegistry.Node node = null;
+        long started = System.nanoTime();
+        boolean success = false;
         try {
-            cloneRepoWithToken(githubDeploy.getRepoUrl(), githubDeploy.getGithubToken(), tempDir);
-            Path packPath = downloadAndInstallPack(tempDir);
-            buildWithPaketo(packPath.toString(), tempDir, panelContainer.getImageName(), panelContainer);
-
-            CreateContainerResponse dockerContainer = dockerClient.createContainerCmd(panelContainer.getImageName())
-                    .withName(panelContainer.getName())
-                    .withHostConfig(HostConfig.newHostConfig().withNetworkMode(traefikNetwork))
-                    .withExposedPorts(ExposedPort.tcp(githubDeploy.getInternalPort()))
-                    .withLabels(Map.of(
-                            "traefik.enable", "true",
-                            "traefik.http.routers." + panelContainer.getName() + ".rule", "Host(`" + githubDeploy.getDomain() + "`)",
-                            "traefik.http.routers." + panelContainer.getName() + ".entrypoints", "websecure",
-                            "traefik.http.routers." + panelContainer.getName() + ".tls", "true",
-                            "traefik.http.routers." + panelContainer.getName() + ".tls.certresolver", "myresolver",
-                            "traefik.http.services." + panelContainer.getName() + ".loadbalancer.server.port", String.valueOf(githubDeploy.getInternalPort())
-                    ))
-                    .exec();
-            dockerClient.startContainerCmd(dockerContainer.getId()).exec();
-            panelContainer.setId(dockerContainer.getId());
-            panelContainer.setStatus("RUNNING");
+            // Build and run on one node: pack builds into that daemon, so the image only exists there
+            node = nodeRegistry.place(panelContainer.getNodeId());
+            panelContainer.setNodeId(node.getId());
+            containerChanged(panelContainer);
+            DockerClient docker = node.getClient();
+            NodeRegistry.Node buildNode = node;
+            String placement = "Deploying to Docker node " + node.getId();
+            webSocketHandler.broadcastMessage(containerId, placement, panelContainer.addLog(placement));
+            // A commit pinned when the deploy was deduplicated wins over the ref, which may have moved since
+            String ref = panelContainer.getCommitSha() != null ? panelContainer.getCommitSha() : githubDeploy.getRef();
+            String buildSettings = buildSettings();
+            DeployRun run = new DeployRun();
+            // clone -> image_reuse --+--> pack_install --+
+            //                        +--> builder_pull --+--> build --+
+            //                        +-------------------+            +--> create --> start
+            // network ------------------------------------------------+
+            // pack_install and builder_pull only run on a cache miss, so a cached redeploy needs neither
+            // GitHub nor Docker Hub
+            StageGraph graph = new StageGraph(containerId, stageExecutor, stageRetryBackoffMs)
+                    .stage(DeployMetrics.CLONE, 2, () -> run.commit = deployMetrics.time(panelContainer, DeployMetrics.CLONE, () -> {
+                        String commit = gitMirrorCache.checkout(githubDeploy.getRepoUrl(), githubDeploy.getGithubToken(), ref, tempDir);
+                        workspace.enforceQuota();
+                        return commit;
+                    }))
+                    .stage(DeployMetrics.NETWORK, 3, () -> deployMetrics.run(panelContainer, DeployMetrics.NETWORK, () -> ensureNetwork(docker)))
+                    .stage(DeployMetrics.IMAGE_REUSE, () -> {
+                        panelContainer.setCommitSha(run.commit);
+                        containerChanged(panelContainer);
+                        run.reused = deployMetrics.time(panelContainer, DeployMetrics.IMAGE_REUSE, () ->
+                                reuseCachedImage(githubDeploy.getRepoUrl(), run.commit, buildSettings, panelContainer));
+                    }, DeployMetrics.CLONE)
+                    .stage(DeployMetrics.PACK_INSTALL, 3, () -> {
+                        if (run.reused) return;
+                        run.packPath = deployMetrics.time(panelContainer, DeployMetrics.PACK_INSTALL, toolchainCache::getPack);
+                    }, DeployMetrics.IMAGE_REUSE)
+                    .stage(DeployMetrics.BUILDER_PULL, 3, () -> {
+                        if (run.reused) return;
+                        deployMetrics.run(panelContainer, DeployMetrics.BUILDER_PULL, () -> pullBuilder(docker));
+                    }, DeployMetrics.IMAGE_REUSE)
+                    .stage(DeployMetrics.BUILD, () -> {
+                        if (run.reused) return;
+                        deployMetrics.run(panelContainer, DeployMetrics.BUILD, () -> {
+                            buildWithPaketo(run.packPath.toString(), tempDir.getPath(), panelContainer.getImageName(), buildCache.cacheVolume(githubDeploy.getRepoUrl()), buildNode, panelContainer);
+                            String imageId = docker.inspectImageCmd(panelContainer.getImageName()).exec().getId();
+                            panelContainer.setImageId(imageId);
+                            containerChanged(panelContainer);
+                            buildCache.record(buildNode.getId(), githubDeploy.getRepoUrl(), run.commit, buildSettings, panelContainer.getImageName(), imageId);
+                        });
+                    }, DeployMetrics.IMAGE_REUSE, DeployMetrics.PACK_INSTALL, DeployMetrics.BUILDER_PULL)
+                    .stage(DeployMetrics.CREATE, () -> {
+                        CreateContainerResponse dockerContainer = deployMetrics.time(panelContainer, DeployMetrics.CREATE, () ->
+                                docker.createContainerCmd(panelContainer.getImageName())
+                                        .withName(panelContainer.getName())
+                                        .withHostConfig(HostConfig.newHostConfig().withNetworkMode(traefikNetwork))
+                                        .withExposedPorts(ExposedPort.tcp(githubDeploy.getInternalPort()))
+                                        .withLabels(containerLabels(panelContainer, githubDeploy))
+                                        .exec());
+                        panelContainer.setDockerId(dockerContainer.getId());
+                        containerChanged(panelContainer);
+                    }, DeployMetrics.BUILD, DeployMetrics.NETWORK)
+                    .stage(DeployMetrics.START, 2, () -> deployMetrics.run(panelContainer, DeployMetrics.START, () ->
+                            docker.startContainerCmd(panelContainer.getDockerId()).exec()), DeployMetrics.CREATE);
+            if (panelContainer.getReplaces() != null) {
+                // Blue/green: the new container already shares the old one's Traefik service, where Traefik's
+                // health check holds traffic back until it is ready; the old one only goes once it is
+                graph.stage(DeployMetrics.HEALTH, () -> deployMetrics.run(panelContainer, DeployMetrics.HEALTH, () ->
+                                awaitHealthy(panelContainer, githubDeploy)), DeployMetrics.START)
+                        .stage(DeployMetrics.CUTOVER, () -> deployMetrics.run(panelContainer, DeployMetrics.CUTOVER, () ->
+                                retire(panelContainer, panelContainer.getReplaces())), DeployMetrics.HEALTH);
+            }
+            workspace.onQuotaExceeded(graph::cancel);
+            try {
+                graph.run();
+            } catch (CancellationException e) {
+                if (workspace.isOverQuota()) throw workspace.quotaExceeded();
+                throw e;
+            }
+            updateStatus(panelContainer, "RUNNING");
+            success = true;
         } catch (Exception e) {
             log.error("Deployment failed in completeDeployment for containerId {}: {}", panelContainer.getId(), e.getMessage(), e);
+            if (panelContainer.getReplaces() != null) {
+                withdrawReplacement(panelContainer);
+            }
             throw e;
         } finally {
-            deleteDirectory(new File(tempDir));
+            deployMetrics.recordDeploy(System.nanoTime() - started, success);
+            workspace.close();
+            if (node != null) nodeRegistry.release(node);
+        }
+    }
+
+    /**
+     * What the stages of one deployment hand to each other. Fields are written by a stage and only read by
+     * stages that depend on it.
+     */
+    private static final class DeployRun {
+        private volatile String commit;
+        private volatile Path packPath;
+        private volatile boolean reused;
+    }
+
+    /**
+     * Pulls the builder image ahead of the build, following the same pull policy as pack, so the download
+     * overlaps the other stages and pack only has to confirm it is current.
+     */
+    private void pullBuilder(DockerClient docker) throws InterruptedException {
+        if ("never".equals(pullPolicy)) return;
+        if ("if-not-present".equals(pullPolicy)) {
+            try {
+                docker.inspectImageCmd(BUILDER).exec();
+                return;
+            } catch (NotFoundException e) {
+                // Not on the node yet
+            }
+        }
+        log.info("Pulling builder image {}", BUILDER);
+        docker.pullImageCmd(BUILDER).withTag("latest").start().awaitCompletion();
+    }
+
+    /**
+     * Makes sure the network Traefik routes through exists before the build finishes, so a missing network
+     * fails the deploy up front instead of after a full build. The panel doesn't create it: a network Traefik
+     * isn't attached to would only give the container a route nothing serves.
+     */
+    private void ensureNetwork(DockerClient docker) {
+        try {
+            docker.inspectNetworkCmd().withNetworkId(traefikNetwork).exec();
+        } catch (NotFoundException e) {
+            throw new IllegalStateException("Docker network " + traefikNetwork + " does not exist; start Traefik on it before deploying");
+        }
+    }
+
+    /**
+     * Traefik labels keyed by the route name rather than the container, so during a redeploy both containers
+     * declare the same router and service and Traefik balances across them. The two must declare them
+     * identically, or Traefik drops the conflicting service; a redeploy copies every input from the deployment
+     * it replaces.
+     */
+    private Map<String, String> containerLabels(PanelContainer panelContainer, GitHubDeploy githubDeploy) {
+        String route = panelContainer.routeNameOrName();
+        Map<String, String> labels = new HashMap<>();
+        labels.put("traefik.enable", "true");
+        labels.put("traefik.http.routers." + route + ".rule", "Host(`" + githubDeploy.getDomain() + "`)");
+        labels.put("traefik.http.routers." + route + ".entrypoints", "websecure");
+        labels.put("traefik.http.routers." + route + ".tls", "true");
+        labels.put("traefik.http.routers." + route + ".tls.certresolver", "myresolver");
+        labels.put("traefik.http.services." + route + ".loadbalancer.server.port", String.valueOf(githubDeploy.getInternalPort()));
+        if (githubDeploy.getHealthPath() != null && !githubDeploy.getHealthPath().isBlank()) {
+            // Traefik checks a new instance as soon as it picks it up and only routes to it while it passes,
+            // which is what gates a redeploy's replacement
+            labels.put("traefik.http.services." + route + ".loadbalancer.healthcheck.path", githubDeploy.getHealthPath());
+            labels.put("traefik.http.services." + route + ".loadbalancer.healthcheck.interval", "5s");
+        }
+        labels.put(MANAGED_LABEL, "true");
+        labels.put(CONTAINER_LABEL, panelContainer.getId());
+        return labels;
+    }
+
+    /**
+     * Probes a new container from its node's Traefik network, the way Traefik reaches it. Its address there is
+     * only routable on that network, which the panel isn't on for a remote node, and need not be on locally.
+     */
+    void awaitHealthy(PanelContainer panelContainer, GitHubDeploy githubDeploy) throws IOException, InterruptedException {
+        String address = containerAddress(panelContainer);
+        int port = githubDeploy.getInternalPort();
+        long lifetimeSeconds = healthTimeoutMs / 1000 + 60;
+        try (DockerProbe probe = DockerProbe.start(docker(panelContainer), probeImage, traefikNetwork,
+                "nojokepanel-probe-" + panelContainer.getId(), lifetimeSeconds)) {
+            healthProbe.await(panelContainer.getId() + " (" + address + ":" + port + ")",
+                    () -> probe.check(address, port, githubDeploy.getHealthPath()), healthTimeoutMs, healthIntervalMs);
+        }
+    }
+
+    /**
+     * @return the container's address on the Traefik network
+     */
+    private String containerAddress(PanelContainer panelContainer) {
+        InspectContainerResponse inspection = docker(panelContainer).inspectContainerCmd(panelContainer.getDockerId()).exec();
+        Map<String, ContainerNetwork> networks = inspection.getNetworkSettings().getNetworks();
+        ContainerNetwork network = networks != null ? networks.get(traefikNetwork) : null;
+        if (network != null && network.getIpAddress() != null && !network.getIpAddress().isEmpty()) {
+            return network.getIpAddress();
+        }
+        return panelContainer.getName(); // Resolvable by name on the network
+    }
+
+    /**
+     * Takes the replaced container out of service once its replacement is healthy. Traefik is given time to
+     * pick up the new instance first; then the old one is stopped with the drain period as its grace period,
+     * so in-flight requests finish while Traefik drops it, and removed. Failing here never fails the deploy:
+     * the new container is already serving.
+     */
+    private void retire(PanelContainer replacement, String oldId) throws InterruptedException {
+        Thread.sleep(cutoverSettleMs);
+        PanelContainer old = getContainer(oldId);
+        if (old == null) {
+            log.info("Container {} replaced by {} is already gone", oldId, replacement.getId());
+            return;
+        }
+        try {
+            updateStatus(old, "DRAINING");
+            stopContainer(oldId, drainSeconds);
+            removeContainer(oldId);
+            replacement.addLog("Replaced container " + oldId);
+            log.info("Container {} replaced by {}", oldId, replacement.getId());
+        } catch (Exception e) {
+            log.warn("Could not retire container {} after redeploying it as {}: {}", oldId, replacement.getId(), e.getMessage());
+            replacement.addLog("Could not remove the replaced container " + oldId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Removes a failed replacement's Docker container, if it got that far, so it stops sharing the old
+     * container's Traefik service. The panel entry stays for its build log.
+     */
+    private void withdrawReplacement(PanelContainer replacement) {
+        if (replacement.getDockerId() == null) return;
+        try {
+            docker(replacement).removeContainerCmd(replacement.getDockerId()).withForce(true).exec();
+            replacement.setDockerId(null);
+            containerChanged(replacement);
+        } catch (Exception e) {
+            log.warn("Could not remove failed replacement {} of {}: {}", replacement.getId(), replacement.getReplaces(), e.getMessage());
         }
     }
 
@@ -127,37 +672,54 @@ public class ContainerService implements ContainerServiceInterface {
 
     @Override
     public PanelContainer stopContainer(String id) throws Exception {
-        PanelContainer panelContainer = containers.get(id);
+        return stopContainer(id, DEFAULT_STOP_TIMEOUT_SECONDS);
+    }
+
+    /**
+     * @param timeoutSeconds how long the app gets to shut down before it is killed
+     */
+    public PanelContainer stopContainer(String id, int timeoutSeconds) throws Exception {
+        PanelContainer panelContainer = getContainer(id);
         if (panelContainer == null) throw new Exception("Container not found");
-        dockerClient.stopContainerCmd(id).withTimeout(10).exec();
-        panelContainer.setStatus("STOPPED");
+        docker(panelContainer).stopContainerCmd(panelContainer.dockerIdOrId()).withTimeout(timeoutSeconds).exec();
+        updateStatus(panelContainer, "STOPPED");
         return panelContainer;
     }
 
     @Override
     public PanelContainer startContainer(String id) throws Exception {
-        PanelContainer panelContainer = containers.get(id);
+        PanelContainer panelContainer = getContainer(id);
         if (panelContainer == null) throw new Exception("Container not found");
-        dockerClient.startContainerCmd(id).exec();
-        panelContainer.setStatus("RUNNING");
+        docker(panelContainer).startContainerCmd(panelContainer.dockerIdOrId()).exec();
+        updateStatus(panelContainer, "RUNNING");
         return panelContainer;
     }
 
     @Override
     public PanelContainer restartContainer(String id) throws Exception {
-        PanelContainer panelContainer = containers.get(id);
+        return restartContainer(id, DEFAULT_STOP_TIMEOUT_SECONDS);
+    }
+
+    public PanelContainer restartContainer(String id, int timeoutSeconds) throws Exception {
+        PanelContainer panelContainer = getContainer(id);
         if (panelContainer == null) throw new Exception("Container not found");
-        dockerClient.restartContainerCmd(id).withTimeout(10).exec();
-        panelContainer.setStatus("RUNNING");
+        docker(panelContainer).restartContainerCmd(panelContainer.dockerIdOrId()).withTimeout(timeoutSeconds).exec();
+        updateStatus(panelContainer, "RUNNING");
         return panelContainer;
     }
 
     @Override
     public void removeContainer(String id) throws Exception {
-        PanelContainer panelContainer = containers.get(id);
+        PanelContainer panelContainer = getContainer(id);
         if (panelContainer == null) throw new Exception("Container not found");
-        dockerClient.removeContainerCmd(id).withForce(true).exec();
+        docker(panelContainer).removeContainerCmd(panelContainer.dockerIdOrId()).withForce(true).exec();
         containers.remove(id);
+        deployments.remove(id);
+        registryChanged();
+        registryStore.markRemoved(id);
+        if (panelContainer.getBuildLog() != null) {
+            panelContainer.getBuildLog().release();
+        }
     }
 
     @Override
@@ -168,77 +730,92 @@ public class ContainerService implements ContainerServiceInterface {
         } catch (InterruptedException e) {
             log.error("Delay interrupted", e);
         }
-        new BuildExecutor(panelContainer, webSocketHandler).executeBuild();
+        new BuildExecutor(panelContainer, webSocketHandler, toolchainCache).executeBuild();
     }
 
-    private void cloneRepoWithToken(String repoUrl, String githubToken, String cloneDir) throws IOException {
-        File dir = new File(cloneDir);
-        if (dir.exists()) deleteDirectory(dir);
-        String authRepoUrl = repoUrl.replace("https://", "https://" + githubToken + "@");
-        CommandLine cmd = CommandLine.parse("git clone " + authRepoUrl + " " + cloneDir);
-        DefaultExecutor executor = new DefaultExecutor();
-        executor.execute(cmd);
-        log.info("Cloned GitHub repo to {}", cloneDir);
-    }
-
-    private Path downloadAndInstallPack(String tempDir) throws IOException, InterruptedException {
-        String packVersion = "0.32.0";
-        String packUrl = "https://github.com/buildpacks/pack/releases/download/v" + packVersion + "/pack-v" + packVersion + "-linux.tgz";
-        Path packTgzPath = Path.of(tempDir, "pack.tgz");
-        try (InputStream in = new URL(packUrl).openStream()) {
-            Files.copy(in, packTgzPath);
-        }
-        Path packDir = Path.of(tempDir, "pack");
-        Files.createDirectories(packDir);
-        ProcessBuilder pb = new ProcessBuilder("tar", "-xzf", packTgzPath.toString(), "-C", packDir.toString());
-        pb.inheritIO();
-        Process p = pb.start();
-        int exitCode = p.waitFor();
-        if (exitCode != 0) throw new IOException("Failed to extract pack.tgz, exit code: " + exitCode);
-        Path packBinary = packDir.resolve("pack");
-        if (!Files.exists(packBinary)) throw new IOException("Pack binary not found at " + packBinary);
-        Files.setPosixFilePermissions(packBinary, PosixFilePermissions.fromString("rwxr-xr-x"));
-        log.info("Pack binary installed at {}", packBinary);
-        return packBinary;
-    }
-
-    private void buildWithPaketo(String packPath, String cloneDir, String imageName, PanelContainer panelContainer) throws IOException, InterruptedException {
+    /**
+     * Tags the image previously built from the same commit and settings as this deploy's image, skipping the build.
+     *
+     * @return false if there is no such image, in which case the caller has to build
+     */
+    private boolean reuseCachedImage(String repoUrl, String commit, String buildSettings, PanelContainer panelContainer) {
+        Optional<BuildCache.BuildRecord> cached = buildCache.find(panelContainer.getNodeId(), repoUrl, commit, buildSettings);
+        if (cached.isEmpty()) {
+            return false;
+        }
+        String imageId = cached.get().imageId();
+        try {
+            docker(panelContainer).inspectImageCmd(imageId).exec();
+        } catch (NotFoundException e) {
+            log.info("Cached image {} for commit {} no longer exists, rebuilding", imageId, commit);
+            buildCache.evict(cached.get());
+            return false;
+        }
+        String imageName = panelContainer.getImageName();
+        int tagSeparator = imageName.lastIndexOf(':');
+        docker(panelContainer).tagImageCmd(imageId, imageName.substring(0, tagSeparator), imageName.substring(tagSeparator + 1)).exec();
+        panelContainer.setImageId(imageId);
+        updateStatus(panelContainer, "BUILD_COMPLETE");
+        String message = "Commit " + commit + " was already built as " + cached.get().imageName() + ", reusing image " + imageId;
+        webSocketHandler.broadcastMessage(panelContainer.getId(), message, panelContainer.addLog(message));
+        log.info(message);
+        return true;
+    }
+
+    /**
+     * @param node the daemon pack builds into, i.e. the node the container will run on
+     */
+    private void buildWithPaketo(String packPath, String cloneDir, String imageName, String cacheVolume, NodeRegistry.Node node,
+                                 PanelContainer panelContainer) throws IOException, InterruptedException {
         log.info("Building with pack at: {}", packPath);
         File packFile = new File(packPath);
         if (!packFile.exists() || !packFile.canExecute()) {
             throw new IOException("Pack binary not found or not executable at " + packPath);
         }
-        String relativePackPath = new File(cloneDir).toPath().relativize(new File(packPath).toPath()).toString();
-        CommandLine cmd = new CommandLine(relativePackPath)
+        CommandLine cmd = new CommandLine(packFile.getAbsolutePath())
                 .addArgument("build")
                 .addArgument(imageName)
                 .addArgument("--path")
                 .addArgument(".")
                 .addArgument("--builder")
-                .addArgument("paketobuildpacks/builder-jammy-base")
+                .addArgument(BUILDER)
+                .addArgument("--pull-policy")
+                .addArgument(pullPolicy)
+                .addArgument("--cache")
+                .addArgument("type=build;format=volume;name=" + cacheVolume, false) // Layer cache shared by every build of this repo
                 .addArgument("--env")
-                .addArgument("BP_JVM_VERSION=17"); // Specify JDK 17
+                .addArgument(BUILD_ENV);
         DefaultExecutor executor = new DefaultExecutor();
         executor.setWorkingDirectory(new File(cloneDir));
-        WebSocketStreamHandler streamHandler = new WebSocketStreamHandler(panelContainer, webSocketHandler); // Manual instantiation
+        WebSocketStreamHandler streamHandler = new WebSocketStreamHandler(panelContainer, webSocketHandler, mirrorBuildOutputToLog); // Manual instantiation
         executor.setStreamHandler(streamHandler);
         log.info("Starting pack build for image: {}", imageName);
-        int exitCode = executor.execute(cmd);
+        Map<String, String> environment = new HashMap<>(System.getenv());
+        environment.put("DOCKER_HOST", node.getHost());
+        // The panel's own TLS settings belong to its DOCKER_HOST, not necessarily to this node
+        environment.remove("DOCKER_CERT_PATH");
+        environment.remove("DOCKER_TLS_VERIFY");
+        if (node.getCertPath() != null) {
+            environment.put("DOCKER_CERT_PATH", node.getCertPath());
+            environment.put("DOCKER_TLS_VERIFY", "1");
+        }
+        int exitCode = executor.execute(cmd, environment);
         if (exitCode != 0) {
             throw new IOException("Pack build failed with exit code " + exitCode + ". Error: " + streamHandler.getErrorOutput());
         }
-        panelContainer.setStatus("BUILD_COMPLETE");
+        updateStatus(panelContainer, "BUILD_COMPLETE");
         log.info("Built Docker image with Paketo Buildpacks: {}", imageName);
     }
 
-    private void deleteDirectory(File dir) {
-        File[] files = dir.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                if (file.isDirectory()) deleteDirectory(file);
-                else file.delete();
-            }
-        }
-        dir.delete();
+    /**
+     * @return the client of the node the container runs on
+     */
+    private DockerClient docker(PanelContainer panelContainer) {
+        return nodeRegistry.client(panelContainer.getNodeId());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stageExecutor.shutdownNow();
     }
-}
\ No newline at end of file
+}
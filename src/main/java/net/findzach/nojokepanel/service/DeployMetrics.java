@@ -0,0 +1,141 @@
+package net.findzach.nojokepanel.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import net.findzach.nojokepanel.model.PanelContainer;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every stage of the deployment pipeline and counts what goes wrong.
+ * <p>
+ * Each stage is recorded twice: as a Micrometer timer tagged with the stage and outcome, which Actuator
+ * exposes at {@code /actuator/prometheus} on the loopback-only management port for fleet-wide percentiles,
+ * and on the deployed {@link PanelContainer}, so a single slow deploy can be broken down on its own.
+ */
+@Service
+public class DeployMetrics {
+
+    public static final String STAGE_TIMER = "nojokepanel.deploy.stage";
+    public static final String DEPLOY_TIMER = "nojokepanel.deploy.duration";
+    public static final String QUEUE_WAIT_TIMER = "nojokepanel.deploy.queue.wait";
+    public static final String FAILURES = "nojokepanel.deploy.failures";
+    public static final String DOWNLOAD_BYTES = "nojokepanel.deploy.download.bytes";
+    public static final String COALESCED = "nojokepanel.deploy.coalesced";
+
+    public static final String QUEUE = "queue";
+    public static final String CLONE = "clone";
+    public static final String PACK_INSTALL = "pack_install";
+    public static final String BUILDER_PULL = "builder_pull";
+    public static final String NETWORK = "network";
+    public static final String IMAGE_REUSE = "image_reuse";
+    public static final String BUILD = "build";
+    public static final String CREATE = "create";
+    public static final String START = "start";
+    public static final String HEALTH = "health";
+    public static final String CUTOVER = "cutover";
+
+    public interface Stage<T> {
+        T run() throws Exception;
+    }
+
+    public interface Step {
+        void run() throws Exception;
+    }
+
+    private final MeterRegistry registry;
+
+    public DeployMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Starts the per-deploy breakdown of a container afresh; call once when its deployment is queued.
+     */
+    public void startDeploy(PanelContainer panelContainer) {
+        panelContainer.clearStageTimings();
+    }
+
+    /**
+     * Runs one pipeline stage and records how long it took, whether or not it succeeded.
+     */
+    public <T> T time(PanelContainer panelContainer, String stage, Stage<T> work) throws Exception {
+        long started = System.nanoTime();
+        boolean success = false;
+        try {
+            T result = work.run();
+            success = true;
+            return result;
+        } finally {
+            long nanos = System.nanoTime() - started;
+            Timer.builder(STAGE_TIMER)
+                    .description("Time spent in one stage of a deployment")
+                    .tag("stage", stage)
+                    .tag("outcome", success ? "success" : "failure")
+                    .register(registry)
+                    .record(nanos, TimeUnit.NANOSECONDS);
+            if (!success) {
+                Counter.builder(FAILURES)
+                        .description("Deployments that failed, by the stage they failed in")
+                        .tag("stage", stage)
+                        .register(registry)
+                        .increment();
+            }
+            panelContainer.recordStageTiming(stage, TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+    }
+
+    public void run(PanelContainer panelContainer, String stage, Step work) throws Exception {
+        time(panelContainer, stage, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * Records a whole deployment, from checkout until the container is started or the first stage fails.
+     */
+    public void recordDeploy(long nanos, boolean success) {
+        Timer.builder(DEPLOY_TIMER)
+                .description("End-to-end deployment time, excluding the build queue")
+                .tag("outcome", success ? "success" : "failure")
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records how long a deployment sat in the build queue before a worker picked it up.
+     */
+    public void recordQueueWait(PanelContainer panelContainer, long waitMillis) {
+        Timer.builder(QUEUE_WAIT_TIMER)
+                .description("Time a deployment waited for a build slot")
+                .register(registry)
+                .record(waitMillis, TimeUnit.MILLISECONDS);
+        panelContainer.recordStageTiming(QUEUE, waitMillis);
+    }
+
+    /**
+     * Counts a deploy request that attached to an identical in-flight deploy instead of building again.
+     */
+    public void recordCoalesced() {
+        Counter.builder(COALESCED)
+                .description("Deploy requests served by an identical deploy already in flight")
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Counts bytes fetched while preparing a deployment, e.g. the pack release archive.
+     */
+    public void recordDownload(String artifact, String source, long bytes) {
+        Counter.builder(DOWNLOAD_BYTES)
+                .description("Bytes downloaded by the deployment pipeline")
+                .baseUnit("bytes")
+                .tag("artifact", artifact)
+                .tag("source", source)
+                .register(registry)
+                .increment(bytes);
+    }
+}
@@ -0,0 +1,254 @@
+package net.findzach.nojokepanel.service;
+
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.model.Container;
+import com.github.dockerjava.api.model.Event;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.findzach.nojokepanel.model.PanelContainer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps container statuses in line with what Docker actually reports.
+ * <p>
+ * A single subscription per Docker node to its {@code /events} stream, filtered to containers carrying the
+ * panel's managed label, applies each lifecycle change to the registry as it happens, so crashes, OOM kills
+ * and external {@code docker} commands show up without polling. On startup the panel does one bulk reconcile
+ * per node from a labelled container listing. If a node's stream drops, it reconnects with backoff,
+ * reconciles that node again and backfills the missed events by resubscribing from the last event time it
+ * saw there.
+ */
+@Service
+@Slf4j
+public class DockerEventSync {
+
+    private static final long MIN_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 30000;
+    private static final Pattern EXIT_CODE = Pattern.compile("Exited \\((-?\\d+)\\)");
+
+    private final NodeRegistry nodeRegistry;
+    private final ContainerService containerService;
+    private final boolean enabled;
+    private final List<NodeEvents> streams = new ArrayList<>();
+    private final ScheduledExecutorService reconnector = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "docker-event-sync");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile boolean shuttingDown;
+
+    public DockerEventSync(NodeRegistry nodeRegistry, ContainerService containerService,
+                           @Value("${nojokepanel.docker.events.enabled:true}") boolean enabled) {
+        this.nodeRegistry = nodeRegistry;
+        this.containerService = containerService;
+        this.enabled = enabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            log.info("Docker event sync is disabled");
+            return;
+        }
+        for (NodeRegistry.Node node : nodeRegistry.getNodes()) {
+            NodeEvents events = new NodeEvents(node);
+            streams.add(events);
+            reconnector.execute(events::connect);
+        }
+    }
+
+    /**
+     * The event subscription of one node and what is needed to resume it.
+     */
+    private final class NodeEvents {
+        private final NodeRegistry.Node node;
+        private volatile long lastEventSeconds;
+        private volatile Closeable subscription;
+        private volatile long backoffMillis = MIN_BACKOFF_MILLIS;
+
+        private NodeEvents(NodeRegistry.Node node) {
+            this.node = node;
+        }
+
+        /**
+         * Reconciles against a fresh listing, then subscribes from the last event seen (or from just before
+         * the listing on first connect) so nothing that happened in between is missed.
+         */
+        private synchronized void connect() {
+            if (shuttingDown) return;
+            try {
+                long since = lastEventSeconds > 0 ? lastEventSeconds : System.currentTimeMillis() / 1000 - 1;
+                reconcile();
+                EventCallback callback = new EventCallback(this);
+                subscription = callback;
+                node.getStreamClient().eventsCmd()
+                        .withEventTypeFilter("container")
+                        .withLabelFilter(Map.of(ContainerService.MANAGED_LABEL, "true"))
+                        .withSince(String.valueOf(since))
+                        .exec(callback);
+                log.info("Subscribed to Docker events of node {} since {}", node.getId(), since);
+            } catch (Exception e) {
+                log.warn("Could not subscribe to Docker events of node {}: {}", node.getId(), e.getMessage());
+                scheduleReconnect(subscription);
+            }
+        }
+
+        private synchronized void scheduleReconnect(Closeable failed) {
+            if (shuttingDown || subscription != failed) return; // Already reconnecting
+            closeSubscription();
+            long delay = backoffMillis;
+            backoffMillis = Math.min(MAX_BACKOFF_MILLIS, backoffMillis * 2);
+            log.info("Reconnecting to Docker events of node {} in {} ms", node.getId(), delay);
+            reconnector.schedule(this::connect, delay, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Brings every registered container on this node in line with a single labelled {@code docker ps -a}.
+         */
+        private void reconcile() {
+            List<Container> listed = node.getClient().listContainersCmd()
+                    .withShowAll(true)
+                    .withLabelFilter(Map.of(ContainerService.MANAGED_LABEL, "true"))
+                    .exec();
+            for (Container container : listed) {
+                PanelContainer panelContainer = lookup(container.getId(), container.getLabels());
+                if (panelContainer == null) continue;
+                containerService.adoptDockerContainer(panelContainer, container.getId(), node.getId());
+                String status = statusForState(container.getState(), container.getStatus());
+                if (status != null) {
+                    containerService.applyStatus(panelContainer, status);
+                }
+            }
+            log.info("Reconciled {} managed containers with Docker node {}", listed.size(), node.getId());
+        }
+
+        private void handle(Event event) {
+            if (event.getTime() != null) {
+                lastEventSeconds = Math.max(lastEventSeconds, event.getTime());
+            }
+            Map<String, String> attributes = event.getActor() != null ? event.getActor().getAttributes() : null;
+            PanelContainer panelContainer = lookup(event.getId(), attributes);
+            if (panelContainer == null) return;
+            String status = statusForEvent(event.getAction(), attributes, panelContainer.getStatus());
+            if (status != null) {
+                containerService.applyStatus(panelContainer, status);
+            }
+        }
+
+        private void closeSubscription() {
+            Closeable current = subscription;
+            subscription = null;
+            if (current != null) {
+                try {
+                    current.close();
+                } catch (IOException e) {
+                    log.debug("Error closing Docker event stream of node {}", node.getId(), e);
+                }
+            }
+        }
+    }
+
+    private PanelContainer lookup(String dockerId, Map<String, String> labels) {
+        String registryId = labels != null ? labels.get(ContainerService.CONTAINER_LABEL) : null;
+        PanelContainer panelContainer = registryId != null ? containerService.getContainer(registryId) : null;
+        if (panelContainer == null && dockerId != null) {
+            panelContainer = containerService.findByDockerId(dockerId);
+        }
+        return panelContainer;
+    }
+
+    /**
+     * Maps a container event action to a panel status, or null if the action doesn't change it.
+     */
+    static String statusForEvent(String action, Map<String, String> attributes, String current) {
+        if (action == null) return null;
+        switch (action) {
+            case "start":
+            case "restart":
+            case "unpause":
+                return "RUNNING";
+            case "pause":
+                return "PAUSED";
+            case "stop":
+                return "STOPPED";
+            case "oom":
+                return "OOM_KILLED";
+            case "die":
+                if ("OOM_KILLED".equals(current)) return current; // The oom event arrives first
+                String exitCode = attributes != null ? attributes.get("exitCode") : null;
+                return "0".equals(exitCode) ? "STOPPED" : "EXITED";
+            case "destroy":
+                return "REMOVED";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Maps a container's listed state to a panel status, or null for transient states.
+     */
+    static String statusForState(String state, String statusText) {
+        if (state == null) return null;
+        switch (state) {
+            case "running":
+            case "restarting":
+                return "RUNNING";
+            case "paused":
+                return "PAUSED";
+            case "exited":
+                Matcher matcher = statusText != null ? EXIT_CODE.matcher(statusText) : null;
+                return matcher != null && matcher.find() && !"0".equals(matcher.group(1)) ? "EXITED" : "STOPPED";
+            case "dead":
+                return "EXITED";
+            default:
+                return null;
+        }
+    }
+
+    private final class EventCallback extends ResultCallback.Adapter<Event> {
+        private final NodeEvents events;
+
+        private EventCallback(NodeEvents events) {
+            this.events = events;
+        }
+
+        @Override
+        public void onNext(Event event) {
+            events.backoffMillis = MIN_BACKOFF_MILLIS;
+            events.handle(event);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            log.warn("Docker event stream of node {} failed: {}", events.node.getId(), throwable.getMessage());
+            events.scheduleReconnect(this);
+        }
+
+        @Override
+        public void onComplete() {
+            log.info("Docker event stream of node {} closed", events.node.getId());
+            events.scheduleReconnect(this);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shuttingDown = true;
+        reconnector.shutdownNow();
+        streams.forEach(NodeEvents::closeSubscription);
+    }
+}
@@ -0,0 +1,232 @@
+package net.findzach.nojokepanel.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.exec.CommandLine;
+import org.apache.commons.exec.DefaultExecutor;
+import org.apache.commons.exec.ExecuteException;
+import org.apache.commons.exec.ExecuteWatchdog;
+import org.apache.commons.exec.PumpStreamHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Keeps a bare mirror of every deployed repository so redeploys only fetch what changed.
+ * <p>
+ * Builds never work in the mirror itself: each checkout is a depth-1 fetch from the local mirror into the
+ * build directory. All access to a mirror is serialized per repository, so concurrent deploys of the same
+ * repo can't interleave a fetch with another build's checkout.
+ */
+@Service
+@Slf4j
+public class GitMirrorCache {
+
+    private static final Pattern FULL_SHA = Pattern.compile("(?i)[0-9a-f]{40}|[0-9a-f]{64}");
+
+    private final Path root;
+    private final long lsRemoteTimeoutMs;
+    private final Map<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+    public GitMirrorCache(@Value("${nojokepanel.git.mirror-root:${java.io.tmpdir}/nojokepanel/git}") String root,
+                          @Value("${nojokepanel.git.ls-remote-timeout-ms:5000}") long lsRemoteTimeoutMs) {
+        this.root = Path.of(root);
+        this.lsRemoteTimeoutMs = lsRemoteTimeoutMs;
+    }
+
+    /**
+     * Brings the mirror for {@code repoUrl} up to date and checks {@code ref} out into {@code cloneDir}.
+     *
+     * @param ref a branch, tag or commit SHA; blank for the remote's default branch
+     * @return the commit SHA that was checked out
+     */
+    public String checkout(String repoUrl, String githubToken, String ref, File cloneDir) throws IOException {
+        String key = mirrorKey(repoUrl);
+        ReentrantLock lock = locks.computeIfAbsent(key, k -> new ReentrantLock());
+        lock.lock();
+        try {
+            Path mirror = updateMirror(key, repoUrl, githubToken);
+
+            if (cloneDir.exists()) deleteDirectory(cloneDir.toPath());
+            Files.createDirectories(cloneDir.toPath());
+            String target = ref == null || ref.isBlank() ? "HEAD" : ref.trim();
+            git(cloneDir, githubToken, "init", "--quiet");
+            git(cloneDir, githubToken, "fetch", "--quiet", "--depth", "1", mirror.toUri().toString(), target);
+            git(cloneDir, githubToken, "checkout", "--quiet", "FETCH_HEAD");
+            String commit = git(cloneDir, githubToken, "rev-parse", "HEAD").trim();
+            log.info("Checked out {} ({}) to {}", target, commit, cloneDir);
+            return commit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Asks the remote which commit {@code ref} points at, without fetching anything. Gives up after
+     * {@code nojokepanel.git.ls-remote-timeout-ms}, since callers wait on it before answering a request.
+     *
+     * @param ref a branch, tag or commit SHA; blank for the remote's default branch
+     * @return the commit SHA, or null if the ref doesn't exist on the remote
+     */
+    public String resolveCommit(String repoUrl, String githubToken, String ref) throws IOException {
+        String target = ref == null || ref.isBlank() ? "HEAD" : ref.trim();
+        if (FULL_SHA.matcher(target).matches()) {
+            return target.toLowerCase();
+        }
+        Files.createDirectories(root);
+        // The ^{} pattern makes the remote also list what an annotated tag points at
+        String output = git(root.toFile(), githubToken, lsRemoteTimeoutMs, "ls-remote", authenticatedUrl(repoUrl, githubToken), target, target + "^{}");
+        return parseLsRemote(output, target);
+    }
+
+    /**
+     * Picks the commit for {@code ref} out of {@code git ls-remote} output, preferring a branch over a tag of
+     * the same name and a tag's peeled commit over the tag object. ls-remote also lists refs that merely end
+     * in {@code ref}, like {@code refs/heads/feature/main} for {@code main}; those never count.
+     *
+     * @return the commit SHA, or null if no ref is exactly {@code ref}
+     */
+    static String parseLsRemote(String output, String ref) {
+        Map<String, String> commits = new HashMap<>();
+        for (String line : output.split("\n")) {
+            int tab = line.indexOf('\t');
+            if (tab <= 0) continue;
+            commits.put(line.substring(tab + 1).trim(), line.substring(0, tab).trim());
+        }
+        for (String candidate : new String[]{ref, "refs/heads/" + ref, "refs/tags/" + ref + "^{}", "refs/tags/" + ref}) {
+            String sha = commits.get(candidate);
+            if (sha != null) return sha;
+        }
+        return null;
+    }
+
+    private Path updateMirror(String key, String repoUrl, String githubToken) throws IOException {
+        Path mirror = root.resolve(key + ".git");
+        String authRepoUrl = authenticatedUrl(repoUrl, githubToken);
+        if (Files.isDirectory(mirror)) {
+            try {
+                git(mirror.toFile(), githubToken, "fetch", "--quiet", "--prune", authRepoUrl,
+                        "+refs/heads/*:refs/heads/*", "+refs/tags/*:refs/tags/*");
+                log.info("Fetched updates into mirror {}", mirror);
+                return mirror;
+            } catch (IOException e) {
+                // Most fetch failures are the remote's (network, auth); only a broken mirror is worth re-cloning
+                if (isIntact(mirror, githubToken)) throw e;
+                log.warn("Fetch into mirror {} failed and the mirror is corrupt, recreating it: {}", mirror, e.getMessage());
+                deleteDirectory(mirror);
+            }
+        }
+
+        // Clone into a staging directory and publish it with a rename so a half-written mirror is never reused
+        Files.createDirectories(root);
+        Path staging = root.resolve(".staging-" + UUID.randomUUID());
+        try {
+            git(root.toFile(), githubToken, "clone", "--quiet", "--mirror", authRepoUrl, staging.toString());
+            // Don't keep the token in the mirror's config; fetches pass it explicitly
+            git(staging.toFile(), githubToken, "remote", "set-url", "origin", repoUrl);
+            // Lets builds fetch a pinned commit SHA from the mirror
+            git(staging.toFile(), githubToken, "config", "uploadpack.allowAnySHA1InWant", "true");
+            Files.move(staging, mirror, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Created mirror {} for {}", mirror, repoUrl);
+        } finally {
+            if (Files.exists(staging)) deleteDirectory(staging);
+        }
+        return mirror;
+    }
+
+    /**
+     * Checks that the mirror is a readable repository whose refs all point at objects it has.
+     */
+    private boolean isIntact(Path mirror, String githubToken) {
+        try {
+            git(mirror.toFile(), githubToken, "fsck", "--connectivity-only", "--no-progress", "--no-dangling");
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Runs git in {@code workDir} and returns its standard output. The token is masked in error messages.
+     */
+    private String git(File workDir, String githubToken, String... args) throws IOException {
+        return git(workDir, githubToken, ExecuteWatchdog.INFINITE_TIMEOUT, args);
+    }
+
+    private String git(File workDir, String githubToken, long timeoutMs, String... args) throws IOException {
+        CommandLine cmd = new CommandLine("git");
+        for (String arg : args) {
+            cmd.addArgument(arg, false);
+        }
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        DefaultExecutor executor = new DefaultExecutor();
+        executor.setWorkingDirectory(workDir);
+        executor.setStreamHandler(new PumpStreamHandler(stdout, stderr));
+        ExecuteWatchdog watchdog = new ExecuteWatchdog(timeoutMs);
+        executor.setWatchdog(watchdog);
+        try {
+            executor.execute(cmd);
+        } catch (ExecuteException e) {
+            if (watchdog.killedProcess()) {
+                throw new IOException("git " + args[0] + " timed out after " + timeoutMs + " ms");
+            }
+            String error = stderr.toString(StandardCharsets.UTF_8).trim();
+            if (githubToken != null && !githubToken.isEmpty()) {
+                error = error.replace(githubToken, "***");
+            }
+            throw new IOException("git " + args[0] + " failed with exit code " + e.getExitValue() + ": " + error);
+        }
+        return stdout.toString(StandardCharsets.UTF_8);
+    }
+
+    static String authenticatedUrl(String repoUrl, String githubToken) {
+        if (githubToken == null || githubToken.isEmpty()) {
+            return repoUrl;
+        }
+        return repoUrl.replace("https://", "https://" + githubToken + "@");
+    }
+
+    /**
+     * Derives a stable directory name from the repository URL, ignoring the case of the scheme and host and a
+     * trailing {@code .git}. The path keeps its case, since the server decides whether it matters.
+     */
+    static String mirrorKey(String repoUrl) {
+        String trimmed = repoUrl.trim().replaceAll("/+$", "").replaceAll("(?i)\\.git$", "");
+        int scheme = trimmed.indexOf("://");
+        int path = trimmed.indexOf('/', scheme < 0 ? 0 : scheme + 3);
+        String normalized = path < 0 ? trimmed.toLowerCase() : trimmed.substring(0, path).toLowerCase() + trimmed.substring(path);
+        String name = normalized.substring(normalized.lastIndexOf('/') + 1).replaceAll("[^A-Za-z0-9._-]", "_");
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(normalized.getBytes(StandardCharsets.UTF_8));
+            return name + "-" + HexFormat.of().formatHex(hash, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void deleteDirectory(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
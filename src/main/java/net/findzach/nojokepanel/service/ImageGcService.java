@@ -0,0 +1,354 @@
+package net.findzach.nojokepanel.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.InspectVolumeResponse;
+import com.github.dockerjava.api.exception.ConflictException;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.model.Container;
+import com.github.dockerjava.api.model.Image;
+import com.github.dockerjava.core.DockerClientImpl;
+import com.github.dockerjava.transport.DockerHttpClient;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.findzach.nojokepanel.model.GitHubDeploy;
+import net.findzach.nojokepanel.model.PanelContainer;
+import net.findzach.nojokepanel.util.BlockingCallExecutors;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Deletes the images and build caches deploys leave behind.
+ * <p>
+ * Every deploy builds a new {@code app-<millis>:latest} image, and removing a container leaves its image
+ * behind. A periodic run goes over each healthy Docker node, looks at the images the panel built there,
+ * including ones left dangling by a rebuild of the same tag, and deletes what the {@link ImageRetentionPolicy}
+ * gives up. Other images, like the builder or dangling images the panel didn't build, are never touched.
+ * Buildpack cache volumes of repositories that haven't been built for longer than the unused limit, and no
+ * longer have a container, go too. Both decisions rely on the whole container registry, so a node isn't
+ * collected while it failed to load.
+ * <p>
+ * Deletes are spaced out so they don't compete with builds for the Docker daemon, and a run waits while
+ * builds are running; if they keep running past the defer limit, it stops and the next run picks up the
+ * rest. Each run's report (what was removed and roughly how much space it freed) is kept for the UI.
+ * <p>
+ * Watermarks are checked against the bytes each image holds on its own. docker-java can't ask Docker for
+ * that, so images are listed again straight over the node's HTTP client with {@code shared-size=1}
+ * (Docker 23 and later); against older daemons, whole image sizes are used instead, which overstates
+ * how much the images take up.
+ */
+@Service
+@Slf4j
+public class ImageGcService {
+
+    private static final Pattern PANEL_IMAGE = Pattern.compile("app-\\d+(-\\d+)?:latest"); // Deploys from before the sequence suffix have none
+    private static final String CACHE_VOLUME_PREFIX = "nojokepanel-cache-";
+    private static final String DANGLING = "<none>:<none>";
+    private static final int KEPT_REPORTS = 20;
+    private static final long BUSY_POLL_MS = 5000;
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    /**
+     * @param imageBytes     the unique bytes of the panel's images, the figure the watermarks apply to
+     * @param bytesReclaimed the summed sizes of deleted images; layers shared with kept images aren't
+     *                       actually freed, so this is an upper bound
+     */
+    public record NodeReport(String nodeId, int images, long imageBytes, int imagesRemoved, long bytesReclaimed,
+                             int volumesRemoved, boolean deferred, List<String> failures) {
+    }
+
+    public record RunReport(long startedAt, long finishedAt, String trigger, boolean deferred, long bytesReclaimed,
+                            List<NodeReport> nodes) {
+    }
+
+    private final NodeRegistry nodeRegistry;
+    private final ContainerService containerService;
+    private final BuildCache buildCache;
+    private final BuildScheduler buildScheduler;
+    private final ImageRetentionPolicy policy;
+    private final long maxUnusedMillis;
+    private final long deleteIntervalMs;
+    private final long maxDeferMs;
+    private final Map<String, Long> lastSeenInUse = new ConcurrentHashMap<>();
+    private final ArrayDeque<RunReport> reports = new ArrayDeque<>();
+    private final ScheduledExecutorService runner = Executors.newSingleThreadScheduledExecutor(BlockingCallExecutors.daemonThreads("image-gc"));
+
+    public ImageGcService(NodeRegistry nodeRegistry, ContainerService containerService, BuildCache buildCache,
+                          BuildScheduler buildScheduler,
+                          @Value("${nojokepanel.gc.enabled:true}") boolean enabled,
+                          @Value("${nojokepanel.gc.interval-ms:3600000}") long intervalMs,
+                          @Value("${nojokepanel.gc.keep-per-app:3}") int keepPerApp,
+                          @Value("${nojokepanel.gc.high-watermark-gb:20}") double highWatermarkGb,
+                          @Value("${nojokepanel.gc.low-watermark-gb:15}") double lowWatermarkGb,
+                          @Value("${nojokepanel.gc.max-unused-days:14}") double maxUnusedDays,
+                          @Value("${nojokepanel.gc.min-age-minutes:60}") long minAgeMinutes,
+                          @Value("${nojokepanel.gc.delete-interval-ms:2000}") long deleteIntervalMs,
+                          @Value("${nojokepanel.gc.max-defer-ms:600000}") long maxDeferMs) {
+        this.nodeRegistry = nodeRegistry;
+        this.containerService = containerService;
+        this.buildCache = buildCache;
+        this.buildScheduler = buildScheduler;
+        this.maxUnusedMillis = (long) (maxUnusedDays * 24 * 60 * 60 * 1000);
+        this.policy = new ImageRetentionPolicy(keepPerApp, (long) (highWatermarkGb * 1024 * 1024 * 1024),
+                (long) (lowWatermarkGb * 1024 * 1024 * 1024), maxUnusedMillis, TimeUnit.MINUTES.toMillis(minAgeMinutes));
+        this.deleteIntervalMs = deleteIntervalMs;
+        this.maxDeferMs = maxDeferMs;
+        if (enabled) {
+            runner.scheduleWithFixedDelay(() -> run("scheduled"), intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Queues a run now; runs never overlap.
+     */
+    public Future<RunReport> trigger() {
+        return runner.submit(() -> run("manual"));
+    }
+
+    public List<RunReport> getReports() {
+        synchronized (reports) {
+            return new ArrayList<>(reports);
+        }
+    }
+
+    RunReport run(String trigger) {
+        long startedAt = System.currentTimeMillis();
+        List<NodeReport> nodes = new ArrayList<>();
+        boolean deferred = false;
+        for (NodeRegistry.Node node : nodeRegistry.getNodes()) {
+            if (!node.isHealthy()) continue;
+            try {
+                NodeReport report = collect(node);
+                nodes.add(report);
+                if (report.deferred()) {
+                    deferred = true;
+                    break;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.warn("Image GC on Docker node {} failed: {}", node.getId(), e.getMessage());
+                nodes.add(new NodeReport(node.getId(), 0, 0, 0, 0, 0, false, List.of(String.valueOf(e.getMessage()))));
+            }
+        }
+        long reclaimed = nodes.stream().mapToLong(NodeReport::bytesReclaimed).sum();
+        RunReport report = new RunReport(startedAt, System.currentTimeMillis(), trigger, deferred, reclaimed, nodes);
+        synchronized (reports) {
+            if (reports.size() == KEPT_REPORTS) reports.removeFirst();
+            reports.addLast(report);
+        }
+        log.info("Image GC ({}) removed {} images and {} cache volumes, reclaiming up to {} MB{}", trigger,
+                nodes.stream().mapToInt(NodeReport::imagesRemoved).sum(), nodes.stream().mapToInt(NodeReport::volumesRemoved).sum(),
+                reclaimed / (1024 * 1024), deferred ? "; deferred the rest to the next run, builds kept running" : "");
+        return report;
+    }
+
+    private NodeReport collect(NodeRegistry.Node node) throws InterruptedException {
+        if (!containerService.isRegistryLoaded()) {
+            // A partial registry would make the images and caches of the missing containers look abandoned
+            throw new IllegalStateException("The container registry isn't loaded, skipping");
+        }
+        DockerClient docker = node.getClient();
+        long now = System.currentTimeMillis();
+        Map<String, PanelContainer> containers = containerService.getContainers(); // The whole registry, not just running ones
+
+        Set<String> inUse = new HashSet<>();
+        for (Container container : docker.listContainersCmd().withShowAll(true).exec()) {
+            if (container.getImageId() != null) inUse.add(container.getImageId());
+        }
+        Map<String, String> appByTag = new HashMap<>();
+        Set<String> registryRepos = new HashSet<>();
+        for (PanelContainer panelContainer : containers.values()) {
+            if (panelContainer.getImageId() != null) inUse.add(panelContainer.getImageId());
+            GitHubDeploy deploy = containerService.getDeployment(panelContainer.getId());
+            if (deploy != null) {
+                String repoKey = GitMirrorCache.mirrorKey(deploy.getRepoUrl());
+                registryRepos.add(repoKey);
+                appByTag.put(panelContainer.getImageName(), repoKey);
+            }
+        }
+        Map<String, BuildCache.BuildRecord> recordsByImage = new HashMap<>();
+        for (BuildCache.BuildRecord record : buildCache.getRecords()) {
+            if (!node.getId().equals(record.nodeId())) continue;
+            recordsByImage.merge(record.imageId(), record, (a, b) -> a.lastUsedAt() >= b.lastUsedAt() ? a : b);
+        }
+        Set<String> panelImageIds = new HashSet<>(recordsByImage.keySet());
+        for (PanelContainer panelContainer : containers.values()) {
+            if (panelContainer.getImageId() != null) panelImageIds.add(panelContainer.getImageId());
+        }
+
+        List<ImageRetentionPolicy.ImageInfo> images = new ArrayList<>();
+        Map<String, Image> imagesById = new HashMap<>();
+        Map<String, Long> sharedSizes = sharedSizes(node);
+        for (Image image : docker.listImagesCmd().exec()) {
+            List<String> tags = tags(image);
+            // A dangling image is only the panel's if it built it: a rebuild under the same tag leaves the old one
+            boolean panelBuilt = tags.isEmpty() ? panelImageIds.contains(image.getId())
+                    : tags.stream().anyMatch(tag -> PANEL_IMAGE.matcher(tag).matches());
+            if (!panelBuilt) continue;
+            for (String tag : tags) {
+                if (appByTag.containsKey(tag)) inUse.add(image.getId());
+            }
+            boolean used = inUse.contains(image.getId());
+            if (used) lastSeenInUse.put(image.getId(), now);
+            BuildCache.BuildRecord record = recordsByImage.get(image.getId());
+            String app = record != null ? record.repoKey()
+                    : tags.stream().map(appByTag::get).filter(Objects::nonNull).findFirst().orElse(null);
+            long created = image.getCreated() != null ? image.getCreated() * 1000 : now;
+            long lastUsed = Math.max(created, Math.max(record != null ? record.lastUsedAt() : 0, lastSeenInUse.getOrDefault(image.getId(), 0L)));
+            long size = image.getSize() != null ? image.getSize() : 0;
+            long shared = sharedSizes.getOrDefault(image.getId(), 0L);
+            images.add(new ImageRetentionPolicy.ImageInfo(image.getId(), app, created, lastUsed, size, Math.max(0, size - shared), used));
+            imagesById.put(image.getId(), image);
+        }
+
+        ImageRetentionPolicy.Plan plan = policy.plan(images, now);
+        List<String> failures = new ArrayList<>();
+        int removed = 0;
+        long reclaimed = 0;
+        for (ImageRetentionPolicy.ImageInfo image : plan.evict()) {
+            if (!awaitIdleBuilds()) {
+                return new NodeReport(node.getId(), images.size(), plan.totalBytes(), removed, reclaimed, 0, true, failures);
+            }
+            try {
+                removeImage(docker, imagesById.get(image.id()));
+                removed++;
+                reclaimed += image.sizeBytes();
+                lastSeenInUse.remove(image.id());
+                BuildCache.BuildRecord record = recordsByImage.get(image.id());
+                if (record != null) buildCache.evict(record);
+            } catch (ConflictException e) {
+                failures.add(image.id() + ": " + e.getMessage()); // Picked up by a container since listing
+            } catch (NotFoundException e) {
+                // Already gone
+            }
+            Thread.sleep(deleteIntervalMs);
+        }
+
+        int volumesRemoved = 0;
+        List<String> volumes = maxUnusedMillis > 0 ? unusedCacheVolumes(node, registryRepos, now) : List.of();
+        for (String volume : volumes) {
+            if (!awaitIdleBuilds()) {
+                return new NodeReport(node.getId(), images.size(), plan.totalBytes(), removed, reclaimed, volumesRemoved, true, failures);
+            }
+            try {
+                docker.removeVolumeCmd(volume).exec();
+                volumesRemoved++;
+            } catch (ConflictException e) {
+                failures.add(volume + ": " + e.getMessage()); // A build of that repo just started
+            } catch (NotFoundException e) {
+                // Already gone
+            }
+            Thread.sleep(deleteIntervalMs);
+        }
+        return new NodeReport(node.getId(), images.size(), plan.totalBytes(), removed, reclaimed, volumesRemoved, false, failures);
+    }
+
+    /**
+     * @return the bytes each image shares with other images, by image ID; empty if the node doesn't report
+     * them
+     */
+    static Map<String, Long> sharedSizes(NodeRegistry.Node node) {
+        if (!(node.getClient() instanceof DockerClientImpl client)) return Map.of();
+        DockerHttpClient.Request request = DockerHttpClient.Request.builder()
+                .method(DockerHttpClient.Request.Method.GET)
+                .path("/images/json?shared-size=1")
+                .build();
+        Map<String, Long> sharedSizes = new HashMap<>();
+        try (DockerHttpClient.Response response = client.getHttpClient().execute(request)) {
+            if (response.getStatusCode() == 200) {
+                for (JsonNode image : JSON.readTree(response.getBody())) {
+                    long shared = image.path("SharedSize").asLong(-1); // -1 if the daemon doesn't know the parameter
+                    if (shared >= 0) sharedSizes.put(image.path("Id").asText(), shared);
+                }
+            }
+        } catch (Exception e) {
+            log.debug("Could not list shared image sizes on Docker node {}", node.getId(), e);
+        }
+        if (sharedSizes.isEmpty()) {
+            log.debug("Docker node {} doesn't report shared image sizes, counting whole images", node.getId());
+        }
+        return sharedSizes;
+    }
+
+    /**
+     * Untags a panel image tag by tag, so Docker still refuses if a container started using it meanwhile;
+     * the last tag takes the image with it. Dangling images are removed by ID.
+     */
+    private static void removeImage(DockerClient docker, Image image) {
+        List<String> tags = tags(image);
+        if (tags.isEmpty()) {
+            docker.removeImageCmd(image.getId()).exec();
+            return;
+        }
+        for (String tag : tags) {
+            docker.removeImageCmd(tag).exec();
+        }
+    }
+
+    /**
+     * @return the buildpack cache volumes of repositories with no container left and no build within the
+     * unused limit
+     */
+    private List<String> unusedCacheVolumes(NodeRegistry.Node node, Set<String> registryRepos, long now) {
+        Map<String, Long> lastBuilt = new HashMap<>();
+        for (BuildCache.BuildRecord record : buildCache.getRecords()) {
+            if (!node.getId().equals(record.nodeId())) continue;
+            lastBuilt.merge(record.repoKey(), record.lastUsedAt(), Math::max);
+        }
+        List<String> unused = new ArrayList<>();
+        List<InspectVolumeResponse> volumes = node.getClient().listVolumesCmd().exec().getVolumes();
+        for (InspectVolumeResponse volume : volumes != null ? volumes : List.<InspectVolumeResponse>of()) {
+            String name = volume.getName();
+            if (!name.startsWith(CACHE_VOLUME_PREFIX)) continue;
+            String repoKey = name.substring(CACHE_VOLUME_PREFIX.length());
+            if (registryRepos.contains(repoKey) || now - lastBuilt.getOrDefault(repoKey, 0L) <= maxUnusedMillis) continue;
+            unused.add(name);
+        }
+        return unused;
+    }
+
+    /**
+     * @return false if builds kept running for longer than the defer limit
+     */
+    private boolean awaitIdleBuilds() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + maxDeferMs;
+        while (buildScheduler.getRunningCount() > 0) {
+            if (System.currentTimeMillis() >= deadline) return false;
+            Thread.sleep(BUSY_POLL_MS);
+        }
+        return true;
+    }
+
+    private static List<String> tags(Image image) {
+        List<String> tags = new ArrayList<>();
+        if (image.getRepoTags() != null) {
+            for (String tag : image.getRepoTags()) {
+                if (!DANGLING.equals(tag)) tags.add(tag);
+            }
+        }
+        return tags;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        runner.shutdownNow();
+    }
+}
@@ -0,0 +1,106 @@
+package net.findzach.nojokepanel.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decides which panel-built images a garbage collection run deletes from a node.
+ * <p>
+ * An image is kept while a container uses it, while it is younger than {@code minAgeMillis} (it may belong
+ * to a deploy that hasn't started its container yet), and while it is one of the {@code keepPerApp} newest
+ * images of its app, so a rollback doesn't need a rebuild. Everything else may go, least recently used
+ * first: images unused for longer than {@code maxUnusedMillis} always, the rest only while the node's
+ * images take up more than the high watermark, until they are back under the low one. Watermarks count each
+ * image's unique bytes, the layers no other image uses: those are what deleting it frees, and summing whole
+ * image sizes counts a base layer once for every image built on it.
+ */
+public class ImageRetentionPolicy {
+
+    /**
+     * @param app            the repository the image was built from, or null if unknown (e.g. dangling images)
+     * @param lastUsedMillis the last time the image was built, reused or seen running
+     * @param sizeBytes      the image's whole size, including layers shared with other images
+     * @param uniqueBytes    the size of the layers only this image uses
+     */
+    public record ImageInfo(String id, String app, long createdMillis, long lastUsedMillis, long sizeBytes, long uniqueBytes,
+                            boolean inUse) {
+    }
+
+    /**
+     * @param evict      in deletion order
+     * @param totalBytes the unique bytes of all images, before and after the evictions
+     */
+    public record Plan(List<ImageInfo> evict, long totalBytes, long bytesAfter) {
+    }
+
+    private final int keepPerApp;
+    private final long highWatermarkBytes;
+    private final long lowWatermarkBytes;
+    private final long maxUnusedMillis;
+    private final long minAgeMillis;
+
+    /**
+     * @param highWatermarkBytes 0 disables size-based eviction
+     * @param maxUnusedMillis    0 disables age-based eviction
+     */
+    public ImageRetentionPolicy(int keepPerApp, long highWatermarkBytes, long lowWatermarkBytes, long maxUnusedMillis, long minAgeMillis) {
+        this.keepPerApp = keepPerApp;
+        this.highWatermarkBytes = highWatermarkBytes;
+        this.lowWatermarkBytes = Math.min(lowWatermarkBytes, highWatermarkBytes);
+        this.maxUnusedMillis = maxUnusedMillis;
+        this.minAgeMillis = minAgeMillis;
+    }
+
+    public Plan plan(List<ImageInfo> images, long now) {
+        Set<String> kept = new HashSet<>();
+        Map<String, List<ImageInfo>> byApp = new HashMap<>();
+        long total = 0;
+        for (ImageInfo image : images) {
+            total += image.uniqueBytes();
+            if (image.inUse() || now - image.createdMillis() < minAgeMillis) {
+                kept.add(image.id());
+            }
+            if (image.app() != null) {
+                byApp.computeIfAbsent(image.app(), app -> new ArrayList<>()).add(image);
+            }
+        }
+        for (List<ImageInfo> appImages : byApp.values()) {
+            appImages.sort(Comparator.comparingLong(ImageInfo::createdMillis).reversed());
+            for (int i = 0; i < Math.min(keepPerApp, appImages.size()); i++) {
+                kept.add(appImages.get(i).id());
+            }
+        }
+
+        List<ImageInfo> candidates = new ArrayList<>();
+        for (ImageInfo image : images) {
+            if (!kept.contains(image.id())) candidates.add(image);
+        }
+        candidates.sort(Comparator.comparingLong(ImageInfo::lastUsedMillis).thenComparingLong(ImageInfo::createdMillis));
+
+        LinkedHashSet<ImageInfo> evict = new LinkedHashSet<>();
+        long remaining = total;
+        if (maxUnusedMillis > 0) {
+            for (ImageInfo image : candidates) {
+                if (now - image.lastUsedMillis() > maxUnusedMillis) {
+                    evict.add(image);
+                    remaining -= image.uniqueBytes();
+                }
+            }
+        }
+        if (highWatermarkBytes > 0 && remaining > highWatermarkBytes) {
+            for (ImageInfo image : candidates) {
+                if (remaining <= lowWatermarkBytes) break;
+                if (evict.add(image)) {
+                    remaining -= image.uniqueBytes();
+                }
+            }
+        }
+        return new Plan(new ArrayList<>(evict), total, remaining);
+    }
+}
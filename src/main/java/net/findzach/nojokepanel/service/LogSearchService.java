@@ -0,0 +1,200 @@
+package net.findzach.nojokepanel.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.findzach.nojokepanel.model.GitHubDeploy;
+import net.findzach.nojokepanel.model.PanelContainer;
+import net.findzach.nojokepanel.util.BlockingCallExecutors;
+import net.findzach.nojokepanel.util.BuildLog;
+import net.findzach.nojokepanel.util.LogArchive;
+import net.findzach.nojokepanel.util.LogIndex;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Full-text search over the build logs of every finished deploy, including containers that are long gone.
+ * <p>
+ * When a build finishes, its log is compressed into the {@link LogArchive} and indexed by trigram
+ * ({@link LogIndex}) on a background thread. The index of each log is saved next to it, so a restart only
+ * loads those files instead of re-reading every log. A search reads nothing but the few blocks the index
+ * points at, which keeps queries over thousands of builds in the milliseconds. Logs the archive deletes to
+ * stay under its limit leave the index, and their saved index files are deleted, at the same time.
+ */
+@Service
+@Slf4j
+public class LogSearchService {
+
+    public static final int DEFAULT_LIMIT = 100;
+    public static final int MAX_LIMIT = 1000;
+    private static final String INDEX_SUFFIX = ".idx";
+
+    /**
+     * A matching line: which build it came from, its 1-based line number and its byte offset in that log.
+     */
+    public record Match(String containerId, String source, long line, long offset, String text) {
+    }
+
+    public record Result(String query, List<Match> matches, boolean truncated, int blocksScanned, long tookMillis) {
+    }
+
+    private final LogArchive logArchive;
+    private final ContainerService containerService;
+    private final LogIndex index = new LogIndex();
+    private final Path indexDir;
+    private final int blockBytes;
+    private final ExecutorService indexer = Executors.newSingleThreadExecutor(BlockingCallExecutors.daemonThreads("log-indexer"));
+
+    public LogSearchService(LogArchive logArchive, ContainerService containerService,
+                            @Value("${nojokepanel.logs.index-dir:./data/log-index}") String indexDir,
+                            @Value("${nojokepanel.logs.index-block-kb:8}") int blockKb) throws IOException {
+        this.logArchive = logArchive;
+        this.containerService = containerService;
+        this.indexDir = Path.of(indexDir);
+        this.blockBytes = blockKb * 1024;
+        Files.createDirectories(this.indexDir);
+        indexer.execute(this::loadIndex);
+    }
+
+    /**
+     * Archives and indexes a finished build's log in the background. The log is retained until it is archived,
+     * so removing the container meanwhile doesn't free it under the archiver.
+     */
+    public void archive(PanelContainer panelContainer) {
+        BuildLog buildLog = panelContainer.getBuildLog();
+        if (buildLog == null || buildLog.size() == 0 || !buildLog.retain()) {
+            return;
+        }
+        String id = panelContainer.getId();
+        String source = source(panelContainer);
+        try {
+            indexer.execute(() -> {
+                try {
+                    List<String> evicted = logArchive.archive(id, buildLog);
+                    index(id, source);
+                    evicted.forEach(this::unindex);
+                } catch (Exception e) {
+                    log.warn("Failed to archive the build log of container {}: {}", id, e.getMessage());
+                } finally {
+                    buildLog.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            buildLog.release(); // Shutting down
+        }
+    }
+
+    /**
+     * Finds archived log lines containing {@code query}, ignoring ASCII case, newest builds first.
+     *
+     * @param containerId only search this build's log, or null for all
+     * @throws IllegalArgumentException if the query is too short to use the index
+     */
+    public Result search(String query, String containerId, int limit) throws IOException {
+        long start = System.nanoTime();
+        int max = Math.max(1, Math.min(limit, MAX_LIMIT));
+        List<LogIndex.Block> blocks = index.candidates(query, containerId);
+        List<Match> matches = new ArrayList<>();
+        byte[] buffer = new byte[0];
+        int scanned = 0;
+        for (LogIndex.Block block : blocks) {
+            if (matches.size() > max) break;
+            if (buffer.length < block.length()) {
+                buffer = new byte[block.length()];
+            }
+            int read;
+            try {
+                read = logArchive.read(block.documentId(), block.offset(), buffer, 0, block.length());
+            } catch (NoSuchFileException e) {
+                continue; // Aged out of the archive since it was indexed
+            }
+            scanned++;
+            // One match past the limit tells the caller there are more
+            LogIndex.scanBlock(block, buffer, read, query, (line, offset, text) -> {
+                matches.add(new Match(block.documentId(), block.source(), line + 1, offset, text));
+                return matches.size() <= max;
+            });
+        }
+        boolean truncated = matches.size() > max;
+        List<Match> page = truncated ? new ArrayList<>(matches.subList(0, max)) : matches;
+        return new Result(query, page, truncated, scanned, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    public int getIndexedCount() {
+        return index.getDocumentCount();
+    }
+
+    private void index(String id, String source) throws IOException {
+        LogIndex.Document document = LogIndex.build(id, source, logArchive.size(id),
+                (offset, dst, dstOffset, length) -> logArchive.read(id, offset, dst, dstOffset, length), blockBytes);
+        document.save(indexDir.resolve(id + INDEX_SUFFIX));
+        index.add(document);
+    }
+
+    private void unindex(String id) {
+        index.remove(id);
+        try {
+            Files.deleteIfExists(indexDir.resolve(id + INDEX_SUFFIX));
+        } catch (IOException e) {
+            log.warn("Failed to delete the search index of expired build log {}: {}", id, e.getMessage());
+        }
+    }
+
+    /**
+     * Loads the saved index of every archived log, indexes archived logs whose index is missing, e.g.
+     * after a crash between archiving and indexing, and deletes the indexes of logs no longer archived.
+     */
+    private void loadIndex() {
+        long start = System.currentTimeMillis();
+        try (DirectoryStream<Path> saved = Files.newDirectoryStream(indexDir, "*" + INDEX_SUFFIX)) {
+            for (Path file : saved) {
+                String name = file.getFileName().toString();
+                if (!logArchive.contains(name.substring(0, name.length() - INDEX_SUFFIX.length()))) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to clean up the search index of expired build logs: {}", e.getMessage());
+        }
+        for (String id : logArchive.ids()) {
+            Path saved = indexDir.resolve(id + INDEX_SUFFIX);
+            try {
+                if (Files.exists(saved)) {
+                    index.add(LogIndex.Document.load(saved));
+                } else {
+                    GitHubDeploy deploy = containerService.getDeployment(id);
+                    index(id, deploy != null ? deploy.getRepoUrl() : null);
+                }
+            } catch (Exception e) {
+                log.warn("Skipping the archived build log of {} in search: {}", id, e.getMessage());
+            }
+        }
+        log.info("Loaded the search index of {} build logs ({} blocks) in {} ms",
+                index.getDocumentCount(), index.getBlockCount(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * @return the repository and commit a build came from, shown with its matches
+     */
+    private String source(PanelContainer panelContainer) {
+        GitHubDeploy deploy = containerService.getDeployment(panelContainer.getId());
+        String repo = deploy != null ? deploy.getRepoUrl() : panelContainer.getName();
+        String commit = panelContainer.getCommitSha();
+        return commit != null ? repo + "@" + commit.substring(0, Math.min(12, commit.length())) : repo;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        indexer.shutdownNow();
+    }
+}
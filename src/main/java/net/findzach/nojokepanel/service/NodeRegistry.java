@@ -0,0 +1,293 @@
+package net.findzach.nojokepanel.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.model.Info;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import net.findzach.nojokepanel.util.BlockingCallExecutors;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The Docker daemons the panel deploys to, each with its own pair of clients (see
+ * {@link net.findzach.nojokepanel.config.DockerConfig}), and the placement of new deployments across them.
+ * <p>
+ * Every node's capacity (CPUs, memory, running containers) is refreshed from {@code docker info} in the
+ * background, and its live usage is summed from the stats streams of the containers running on it. Deploys
+ * still building count against their node with a fixed reservation, so a burst of deploys spreads out instead
+ * of piling onto whichever node looked emptiest when the burst started. A container remembers its node, and
+ * every later call about it goes to that node's clients.
+ */
+@Slf4j
+public class NodeRegistry {
+
+    public static final String LOCAL = "local";
+
+    public enum Strategy {
+        /**
+         * Spread deploys: the node with the lowest utilization wins.
+         */
+        LEAST_LOADED,
+        /**
+         * Pack deploys: the fullest node that still has room wins, leaving other nodes free for large apps.
+         */
+        BIN_PACKING;
+
+        public static Strategy parse(String value) {
+            return valueOf(value.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+        }
+    }
+
+    @Getter
+    public static class Node {
+        private final String id;
+        private final String host;
+        /**
+         * Directory with the node's {@code ca.pem}, {@code cert.pem} and {@code key.pem}, or null if it
+         * doesn't use TLS
+         */
+        @JsonIgnore
+        private final String certPath;
+        @JsonIgnore
+        private final DockerClient client;
+        @JsonIgnore
+        private final DockerClient streamClient;
+        private volatile boolean healthy = true;
+        private volatile int cpus;
+        private volatile long memoryBytes;
+        private volatile int runningContainers;
+        private volatile double cpusUsed;
+        private volatile long memoryUsedBytes;
+        private final AtomicInteger pendingDeploys = new AtomicInteger();
+
+        public Node(String id, String host, DockerClient client, DockerClient streamClient) {
+            this(id, host, null, client, streamClient);
+        }
+
+        public Node(String id, String host, String certPath, DockerClient client, DockerClient streamClient) {
+            this.id = id;
+            this.host = host;
+            this.certPath = certPath;
+            this.client = client;
+            this.streamClient = streamClient;
+        }
+
+        public int getPendingDeploys() {
+            return pendingDeploys.get();
+        }
+
+        void updateCapacity(int cpus, long memoryBytes, int runningContainers) {
+            this.cpus = cpus;
+            this.memoryBytes = memoryBytes;
+            this.runningContainers = runningContainers;
+            this.healthy = true;
+        }
+
+        void updateUsage(double cpusUsed, long memoryUsedBytes) {
+            this.cpusUsed = cpusUsed;
+            this.memoryUsedBytes = memoryUsedBytes;
+        }
+
+        void markUnhealthy() {
+            this.healthy = false;
+        }
+
+        /**
+         * @return the busier of CPU and memory as a fraction of capacity, counting {@code extraDeploys} more
+         * reservations than are pending; 0 while the capacity is still unknown
+         */
+        double utilization(int extraDeploys, double reserveCpus, long reserveMemoryBytes) {
+            int deploys = pendingDeploys.get() + extraDeploys;
+            double cpu = cpus > 0 ? (cpusUsed + deploys * reserveCpus) / cpus : 0;
+            double memory = memoryBytes > 0 ? (double) (memoryUsedBytes + deploys * reserveMemoryBytes) / memoryBytes : 0;
+            return Math.max(cpu, memory);
+        }
+    }
+
+    private final Map<String, Node> nodes = new LinkedHashMap<>();
+    private final Node defaultNode;
+    private final Strategy strategy;
+    private final double reserveCpus;
+    private final long reserveMemoryBytes;
+    private final double maxUtilization;
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(BlockingCallExecutors.daemonThreads("node-refresh"));
+
+    /**
+     * @param nodes              at least one; the first is the default for containers that predate placement
+     * @param reserveCpus        CPUs a deploy is assumed to need until its container reports real usage
+     * @param reserveMemoryBytes memory a deploy is assumed to need until then
+     * @param maxUtilization     how full bin packing may make a node before moving on to the next
+     */
+    public NodeRegistry(List<Node> nodes, Strategy strategy, double reserveCpus, long reserveMemoryBytes, double maxUtilization) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("At least one Docker node is required");
+        }
+        for (Node node : nodes) {
+            if (this.nodes.putIfAbsent(node.getId(), node) != null) {
+                throw new IllegalArgumentException("Duplicate Docker node " + node.getId());
+            }
+        }
+        this.defaultNode = nodes.get(0);
+        this.strategy = strategy;
+        this.reserveCpus = reserveCpus;
+        this.reserveMemoryBytes = reserveMemoryBytes;
+        this.maxUtilization = maxUtilization;
+    }
+
+    /**
+     * Starts refreshing node capacity, right away and then at the given interval.
+     */
+    public void start(long refreshIntervalMs) {
+        refresher.scheduleWithFixedDelay(this::refresh, 0, refreshIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public List<Node> getNodes() {
+        return new ArrayList<>(nodes.values());
+    }
+
+    public Node getDefaultNode() {
+        return defaultNode;
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * @param nodeId null for containers deployed before they recorded a node
+     * @return the node, or null if no node has that ID any more
+     */
+    public Node getNode(String nodeId) {
+        return nodeId == null ? defaultNode : nodes.get(nodeId);
+    }
+
+    /**
+     * @return the request/response client of the container's node
+     * @throws IllegalStateException if the node is no longer configured
+     */
+    public DockerClient client(String nodeId) {
+        return require(nodeId).getClient();
+    }
+
+    /**
+     * @return the streaming client of the container's node
+     * @throws IllegalStateException if the node is no longer configured
+     */
+    public DockerClient streamClient(String nodeId) {
+        return require(nodeId).getStreamClient();
+    }
+
+    private Node require(String nodeId) {
+        Node node = getNode(nodeId);
+        if (node == null) {
+            throw new IllegalStateException("Docker node " + nodeId + " is not configured");
+        }
+        return node;
+    }
+
+    /**
+     * Picks the node for a new deployment and reserves room on it; the caller must {@link #release} it once
+     * the deployment has finished, successfully or not. Choosing and reserving happen under one lock, so
+     * concurrent placements each see the reservations made before them.
+     *
+     * @param pinnedNodeId a node the deployment has to go to, e.g. the one a redeployed container runs on, or
+     *                     null to let the strategy choose
+     * @throws IOException if no healthy node is available
+     */
+    public synchronized Node place(String pinnedNodeId) throws IOException {
+        Node node;
+        if (pinnedNodeId != null) {
+            node = nodes.get(pinnedNodeId);
+            if (node == null) throw new IOException("Docker node " + pinnedNodeId + " is not configured");
+        } else {
+            node = choose();
+        }
+        node.pendingDeploys.incrementAndGet();
+        return node;
+    }
+
+    public void release(Node node) {
+        node.pendingDeploys.decrementAndGet();
+    }
+
+    synchronized Node choose() throws IOException {
+        List<Node> healthy = nodes.values().stream().filter(Node::isHealthy).toList();
+        if (healthy.isEmpty()) {
+            throw new IOException("No healthy Docker node to deploy to");
+        }
+        Comparator<Node> leastLoaded = Comparator.<Node>comparingDouble(node -> node.utilization(0, reserveCpus, reserveMemoryBytes))
+                .thenComparingInt(node -> node.getRunningContainers() + node.getPendingDeploys());
+        if (strategy == Strategy.BIN_PACKING) {
+            // Fullest node that still fits one more deploy; if none does, spread like least-loaded
+            return healthy.stream()
+                    .filter(node -> node.utilization(1, reserveCpus, reserveMemoryBytes) <= maxUtilization)
+                    .max(leastLoaded)
+                    .orElseGet(() -> healthy.stream().min(leastLoaded).orElseThrow());
+        }
+        return healthy.stream().min(leastLoaded).orElseThrow();
+    }
+
+    /**
+     * Sets the summed usage of the containers running on each node; nodes not in the map run nothing.
+     *
+     * @param usage node ID to {CPUs used, memory bytes used}
+     */
+    public void updateUsage(Map<String, double[]> usage) {
+        for (Node node : nodes.values()) {
+            double[] used = usage.get(node.getId());
+            node.updateUsage(used != null ? used[0] : 0, used != null ? (long) used[1] : 0);
+        }
+    }
+
+    void refresh() {
+        for (Node node : nodes.values()) {
+            try {
+                Info info = node.getClient().infoCmd().exec();
+                node.updateCapacity(valueOf(info.getNCPU()), valueOf(info.getMemTotal()), valueOf(info.getContainersRunning()));
+            } catch (Exception e) {
+                if (node.isHealthy()) {
+                    log.warn("Docker node {} at {} is unreachable, not placing deploys there: {}", node.getId(), node.getHost(), e.getMessage());
+                }
+                node.markUnhealthy();
+            }
+        }
+    }
+
+    private static int valueOf(Integer value) {
+        return value != null ? value : 0;
+    }
+
+    private static long valueOf(Long value) {
+        return value != null ? value : 0;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+        for (Node node : nodes.values()) {
+            closeQuietly(node.getClient());
+            closeQuietly(node.getStreamClient());
+        }
+    }
+
+    private static void closeQuietly(DockerClient client) {
+        if (client == null) return;
+        try {
+            client.close();
+        } catch (IOException e) {
+            log.debug("Error closing Docker client", e);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package net.findzach.nojokepanel.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import net.findzach.nojokepanel.util.BlockingCallExecutors;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * One place for every long-running mutation the panel performs: deploys, lifecycle actions and the like.
+ * <p>
+ * Callers get an {@link Operation} back immediately and the work runs on the Docker call executor (virtual
+ * threads when enabled, otherwise a platform pool), so request threads never wait on Docker. Operations on
+ * the same container run one after another in submission order, which keeps e.g. a stop and a remove from
+ * racing. Every state change is published to subscribers (the SSE stream), and finished operations are kept
+ * for inspection up to a retention limit.
+ */
+@Service
+@Slf4j
+public class OperationRegistry {
+
+    public enum State {PENDING, RUNNING, SUCCEEDED, FAILED}
+
+    public interface Work {
+        void run() throws Exception;
+    }
+
+    @Getter
+    public static class Operation {
+        private final String id;
+        private final String type;
+        private final String containerId;
+        private final long createdAt;
+        private volatile State state = State.PENDING;
+        private volatile long startedAt;
+        private volatile long finishedAt;
+        private volatile String error;
+
+        Operation(String type, String containerId) {
+            this.id = UUID.randomUUID().toString();
+            this.type = type;
+            this.containerId = containerId;
+            this.createdAt = System.currentTimeMillis();
+        }
+
+        private Operation(Operation source) {
+            this.id = source.id;
+            this.type = source.type;
+            this.containerId = source.containerId;
+            this.createdAt = source.createdAt;
+            this.state = source.state;
+            this.startedAt = source.startedAt;
+            this.finishedAt = source.finishedAt;
+            this.error = source.error;
+        }
+
+        public long getDurationMillis() {
+            if (startedAt == 0) return 0;
+            return (finishedAt != 0 ? finishedAt : System.currentTimeMillis()) - startedAt;
+        }
+
+        @JsonIgnore
+        public boolean isFinished() {
+            return state == State.SUCCEEDED || state == State.FAILED;
+        }
+    }
+
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Void>> containerTails = new ConcurrentHashMap<>();
+    private final List<Consumer<Operation>> subscribers = new CopyOnWriteArrayList<>();
+    private final ExecutorService workers;
+    private final ExecutorService publisher;
+    private final boolean ownsWorkers;
+    private final int retained;
+
+    /**
+     * @param workers shared with the rest of the panel, whose owner shuts it down
+     */
+    @Autowired
+    public OperationRegistry(@Qualifier("dockerCallExecutor") ExecutorService workers,
+                             @Value("${nojokepanel.operations.retained:1000}") int retained) {
+        this(workers, false, retained);
+    }
+
+    OperationRegistry(int threads, int retained) {
+        this(BlockingCallExecutors.create("operation", threads, false), true, retained);
+    }
+
+    private OperationRegistry(ExecutorService workers, boolean ownsWorkers, int retained) {
+        this.workers = workers;
+        this.ownsWorkers = ownsWorkers;
+        this.retained = retained;
+        // Subscribers are notified off the worker threads, so a slow SSE client never delays an operation
+        this.publisher = Executors.newSingleThreadExecutor(BlockingCallExecutors.daemonThreads("operation-events"));
+    }
+
+    /**
+     * Queues work on the managed pool, after any earlier operation on the same container.
+     */
+    public Operation submit(String type, String containerId, Work work) {
+        Operation operation = track(type, containerId);
+        try {
+            enqueue(containerId, workers, () -> {
+                run(operation, work);
+                return null;
+            });
+        } catch (RejectedExecutionException e) {
+            fail(operation, "Operation executor is shut down");
+            throw e;
+        }
+        return operation;
+    }
+
+    /**
+     * Runs a task on {@code executor} once every earlier task on the same container is done, whether it
+     * succeeded or not. For callers that run work on their own pool and report it through {@link #track}
+     * (e.g. bulk actions), so their operations keep the per-container order too.
+     */
+    public <T> CompletableFuture<T> enqueue(String containerId, Executor executor, Supplier<T> task) {
+        if (containerId == null) {
+            return CompletableFuture.supplyAsync(task, executor);
+        }
+        AtomicReference<CompletableFuture<T>> result = new AtomicReference<>();
+        CompletableFuture<Void> next = containerTails.compute(containerId, (id, tail) -> {
+            CompletableFuture<T> future = tail == null
+                    ? CompletableFuture.supplyAsync(task, executor)
+                    : tail.thenApplyAsync(done -> task.get(), executor);
+            result.set(future);
+            return future.handle((value, error) -> null);
+        });
+        next.whenComplete((v, e) -> containerTails.remove(containerId, next));
+        return result.get();
+    }
+
+    /**
+     * Registers an operation whose work runs elsewhere (e.g. on the build scheduler); the caller reports
+     * progress through {@link #start}, {@link #succeed} and {@link #fail}.
+     */
+    public Operation track(String type, String containerId) {
+        Operation operation = new Operation(type, containerId);
+        operations.put(operation.getId(), operation);
+        publish(operation);
+        evictFinished();
+        return operation;
+    }
+
+    public void start(Operation operation) {
+        operation.startedAt = System.currentTimeMillis();
+        operation.state = State.RUNNING;
+        publish(operation);
+    }
+
+    public void succeed(Operation operation) {
+        finish(operation, State.SUCCEEDED, null);
+    }
+
+    public void fail(Operation operation, String error) {
+        finish(operation, State.FAILED, error);
+    }
+
+    public Operation get(String id) {
+        return operations.get(id);
+    }
+
+    /**
+     * @return the newest unfinished operation of this type on the container, or null if there is none
+     */
+    public Operation findActive(String type, String containerId) {
+        Operation newest = null;
+        for (Operation operation : operations.values()) {
+            if (!operation.isFinished() && operation.getType().equals(type) && containerId.equals(operation.getContainerId())
+                    && (newest == null || operation.getCreatedAt() > newest.getCreatedAt())) {
+                newest = operation;
+            }
+        }
+        return newest;
+    }
+
+    /**
+     * @return operations newest first, optionally only those still pending or running
+     */
+    public List<Operation> list(boolean activeOnly) {
+        List<Operation> result = new ArrayList<>();
+        for (Operation operation : operations.values()) {
+            if (!activeOnly || !operation.isFinished()) result.add(operation);
+        }
+        result.sort(Comparator.comparingLong(Operation::getCreatedAt).reversed());
+        return result;
+    }
+
+    /**
+     * @return a handle that removes the subscription
+     */
+    public Runnable subscribe(Consumer<Operation> subscriber) {
+        subscribers.add(subscriber);
+        return () -> subscribers.remove(subscriber);
+    }
+
+    private void run(Operation operation, Work work) {
+        start(operation);
+        try {
+            work.run();
+            succeed(operation);
+        } catch (Exception e) {
+            log.warn("Operation {} {} on {} failed: {}", operation.getType(), operation.getId(), operation.getContainerId(), e.getMessage());
+            fail(operation, e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+        }
+    }
+
+    private void finish(Operation operation, State state, String error) {
+        if (operation.startedAt == 0) operation.startedAt = System.currentTimeMillis();
+        operation.finishedAt = System.currentTimeMillis();
+        operation.error = error;
+        operation.state = state;
+        publish(operation);
+    }
+
+    /**
+     * Hands subscribers a copy of the operation as it is now; by the time the publisher gets to it the
+     * operation itself may have moved on, and subscribers would see a later state twice.
+     */
+    private void publish(Operation operation) {
+        if (subscribers.isEmpty()) return;
+        Operation snapshot = new Operation(operation);
+        try {
+            publisher.execute(() -> {
+                for (Consumer<Operation> subscriber : subscribers) {
+                    try {
+                        subscriber.accept(snapshot);
+                    } catch (Exception e) {
+                        log.debug("Operation subscriber failed: {}", e.getMessage());
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+        }
+    }
+
+    private void evictFinished() {
+        int excess = operations.size() - retained;
+        if (excess <= 0) return;
+        operations.values().stream()
+                .filter(Operation::isFinished)
+                .sorted(Comparator.comparingLong(Operation::getFinishedAt))
+                .limit(excess)
+                .forEach(operation -> operations.remove(operation.getId()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (ownsWorkers) {
+            workers.shutdownNow();
+        }
+        publisher.shutdownNow();
+    }
+}
@@ -0,0 +1,187 @@
+package net.findzach.nojokepanel.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.findzach.nojokepanel.model.ContainerRecord;
+import net.findzach.nojokepanel.model.DeploymentRecord;
+import net.findzach.nojokepanel.model.GitHubDeploy;
+import net.findzach.nojokepanel.model.PanelContainer;
+import net.findzach.nojokepanel.repository.ContainerRecordRepository;
+import net.findzach.nojokepanel.repository.DeploymentRecordRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Write-behind persistence for the container registry.
+ * <p>
+ * Callers only mark containers and deployments dirty, which is a map put and never touches the database.
+ * A background flusher periodically (or early, once a batch fills up) snapshots the current state of every
+ * dirty entry and writes them in one transaction, so a container changing status ten times between flushes
+ * costs one row write. Failed flushes are re-queued and retried on the next tick.
+ */
+@Service
+@Slf4j
+public class RegistryStore {
+
+    private static final int LOAD_PAGE_SIZE = 500;
+    private static final Object REMOVED = new Object();
+
+    private final ContainerRecordRepository containerRepository;
+    private final DeploymentRecordRepository deploymentRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final Map<String, Object> dirtyContainers = new ConcurrentHashMap<>(); // PanelContainer or REMOVED
+    private final Map<String, GitHubDeploy> dirtyDeployments = new ConcurrentHashMap<>();
+    private final AtomicBoolean earlyFlushScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "registry-flusher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public RegistryStore(ContainerRecordRepository containerRepository, DeploymentRecordRepository deploymentRepository,
+                         PlatformTransactionManager transactionManager,
+                         @Value("${nojokepanel.registry.flush-interval-ms:500}") long flushIntervalMs,
+                         @Value("${nojokepanel.registry.batch-size:200}") int batchSize) {
+        this.containerRepository = containerRepository;
+        this.deploymentRepository = deploymentRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void markDirty(PanelContainer panelContainer) {
+        dirtyContainers.put(panelContainer.getId(), panelContainer);
+        flushEarlyIfFull();
+    }
+
+    public void markDirty(String containerId, GitHubDeploy githubDeploy) {
+        dirtyDeployments.put(containerId, githubDeploy);
+        flushEarlyIfFull();
+    }
+
+    public void markRemoved(String containerId) {
+        dirtyContainers.put(containerId, REMOVED);
+        dirtyDeployments.remove(containerId);
+        flushEarlyIfFull();
+    }
+
+    /**
+     * Streams every container page by page, whatever its status, for rebuilding the in-memory registry at
+     * startup.
+     */
+    public void loadAll(Consumer<PanelContainer> consumer) {
+        int page = 0;
+        Page<ContainerRecord> records;
+        do {
+            records = containerRepository.findAll(PageRequest.of(page++, LOAD_PAGE_SIZE, Sort.by("id")));
+            records.forEach(record -> consumer.accept(record.toPanelContainer()));
+        } while (records.hasNext());
+    }
+
+    /**
+     * @return the saved container, or empty if it doesn't exist or its removal is still waiting to be flushed
+     */
+    public Optional<PanelContainer> loadContainer(String id) {
+        if (dirtyContainers.get(id) == REMOVED) return Optional.empty();
+        return containerRepository.findById(id).map(ContainerRecord::toPanelContainer);
+    }
+
+    /**
+     * @return the saved deployment, or empty if it doesn't exist or its container's removal is still waiting to
+     * be flushed
+     */
+    public Optional<GitHubDeploy> loadDeployment(String containerId) {
+        if (dirtyContainers.get(containerId) == REMOVED) return Optional.empty();
+        return deploymentRepository.findById(containerId).map(DeploymentRecord::toGitHubDeploy);
+    }
+
+    private void flushEarlyIfFull() {
+        if (dirtyContainers.size() + dirtyDeployments.size() >= batchSize && earlyFlushScheduled.compareAndSet(false, true)) {
+            flusher.execute(this::flushQuietly);
+        }
+    }
+
+    private void flushQuietly() {
+        earlyFlushScheduled.set(false);
+        try {
+            flush();
+        } catch (Exception e) {
+            log.warn("Registry flush failed, will retry: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Writes every pending change. Entries are snapshotted when they are taken off the dirty set, so the
+     * row reflects the latest in-memory state rather than the state at the time it was marked.
+     */
+    public synchronized void flush() {
+        if (dirtyContainers.isEmpty() && dirtyDeployments.isEmpty()) return;
+        Map<String, Object> containers = drain(dirtyContainers);
+        Map<String, GitHubDeploy> deployments = drain(dirtyDeployments);
+        List<ContainerRecord> saved = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        containers.forEach((id, value) -> {
+            if (value == REMOVED) removed.add(id);
+            else saved.add(ContainerRecord.from((PanelContainer) value));
+        });
+        List<DeploymentRecord> savedDeployments = new ArrayList<>();
+        deployments.forEach((id, deploy) -> savedDeployments.add(DeploymentRecord.from(id, deploy)));
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                containerRepository.saveAll(saved);
+                deploymentRepository.saveAll(savedDeployments);
+                deleteAll(removed);
+            });
+        } catch (RuntimeException e) {
+            // Put the entries back unless they were marked again in the meantime, which is newer
+            containers.forEach(dirtyContainers::putIfAbsent);
+            deployments.forEach(dirtyDeployments::putIfAbsent);
+            throw e;
+        }
+        log.debug("Flushed {} containers, {} deployments and {} removals", saved.size(), savedDeployments.size(), removed.size());
+    }
+
+    private void deleteAll(Collection<String> ids) {
+        if (ids.isEmpty()) return;
+        containerRepository.deleteAllByIdInBatch(ids);
+        deploymentRepository.deleteAllByIdInBatch(ids);
+    }
+
+    private static <V> Map<String, V> drain(Map<String, V> dirty) {
+        Map<String, V> drained = new HashMap<>();
+        for (String id : new ArrayList<>(dirty.keySet())) {
+            V value = dirty.remove(id);
+            if (value != null) drained.put(id, value);
+        }
+        return drained;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdown();
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Final registry flush failed, recent changes are lost", e);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package net.findzach.nojokepanel.service;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.command.LogContainerCmd;
+import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.api.model.StreamType;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.findzach.nojokepanel.model.PanelContainer;
+import net.findzach.nojokepanel.util.BlockingCallExecutors;
+import net.findzach.nojokepanel.util.LogTail;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Live stdout/stderr of running containers.
+ * <p>
+ * A container has at most one {@code docker logs --follow} stream, opened for its first viewer and shared by
+ * all of them through a {@link LogTail}. Before following, the tail is primed with the container's last
+ * lines, so viewers can seek back by line count or time without another request to Docker. When the stream
+ * ends (the container stopped or restarted, or the connection dropped) while viewers are watching, it is
+ * reopened with backoff from the last timestamp seen. Once the last viewer leaves, the stream is kept open a
+ * little longer for page reloads, then closed.
+ */
+@Service
+@Slf4j
+public class RuntimeLogService {
+
+    private static final long INITIAL_REOPEN_DELAY_MS = 1000;
+    private static final long MAX_REOPEN_DELAY_MS = 30_000;
+
+    private final NodeRegistry nodeRegistry;
+    private final ContainerService containerService;
+    private final int ringLines;
+    private final int maxLineBytes;
+    private final long lingerMs;
+    private final long primeTimeoutMs;
+    private final Map<String, Tail> tails = new HashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(BlockingCallExecutors.daemonThreads("runtime-logs"));
+
+    public RuntimeLogService(NodeRegistry nodeRegistry, ContainerService containerService,
+                             @Value("${nojokepanel.runtime-logs.ring-lines:2000}") int ringLines,
+                             @Value("${nojokepanel.runtime-logs.max-line-kb:16}") int maxLineKb,
+                             @Value("${nojokepanel.runtime-logs.linger-ms:30000}") long lingerMs,
+                             @Value("${nojokepanel.runtime-logs.prime-timeout-ms:5000}") long primeTimeoutMs) {
+        this.nodeRegistry = nodeRegistry;
+        this.containerService = containerService;
+        this.ringLines = ringLines;
+        this.maxLineBytes = maxLineKb * 1024;
+        this.lingerMs = lingerMs;
+        this.primeTimeoutMs = primeTimeoutMs;
+    }
+
+    /**
+     * One container's shared tail and the upstream stream feeding it.
+     */
+    private final class Tail {
+        private final String containerId;
+        private final LogTail lines = new LogTail(ringLines, maxLineBytes);
+        private Upstream upstream;
+        private ScheduledFuture<?> pending; // Reopen or linger close
+        private long reopenDelayMs = INITIAL_REOPEN_DELAY_MS;
+        private boolean closed;
+
+        private Tail(String containerId) {
+            this.containerId = containerId;
+        }
+    }
+
+    private final class Upstream extends ResultCallback.Adapter<Frame> {
+        private final Tail tail;
+        private volatile boolean live;
+
+        private Upstream(Tail tail) {
+            this.tail = tail;
+        }
+
+        @Override
+        public void onNext(Frame frame) {
+            if (!live) {
+                // Lines are flowing again, so the next time the stream ends the backoff starts over
+                live = true;
+                synchronized (tails) {
+                    if (tail.upstream == this) tail.reopenDelayMs = INITIAL_REOPEN_DELAY_MS;
+                }
+            }
+            // docker-java splits the multiplexed stream into frames; TTY containers send RAW frames
+            tail.lines.append(frame.getStreamType() == StreamType.STDERR, frame.getPayload());
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            log.debug("Log stream for container {} failed: {}", tail.containerId, throwable.getMessage());
+            super.onError(throwable);
+            ended(tail, this);
+        }
+
+        @Override
+        public void onComplete() {
+            super.onComplete();
+            ended(tail, this);
+        }
+    }
+
+    /**
+     * Adds a viewer to the container's tail, opening the upstream for the first one.
+     *
+     * @param afterSeq  last sequence number the viewer has seen, -1 for a fresh viewer
+     * @param since     for a fresh viewer, the time to start from, or null
+     * @param tailLines otherwise, how many of the latest lines to start with
+     * @return the viewer's backlog; later lines go to the viewer as they arrive
+     * @throws IllegalArgumentException if the container doesn't exist or has never started
+     */
+    public LogTail.Backlog attach(String containerId, LogTail.Viewer viewer, long afterSeq, Instant since, int tailLines) {
+        PanelContainer panelContainer = containerService.getContainer(containerId);
+        if (panelContainer == null || panelContainer.getDockerId() == null) {
+            throw new IllegalArgumentException("Container " + containerId + " has no Docker container to tail");
+        }
+        Tail tail;
+        synchronized (tails) {
+            tail = tails.get(containerId);
+            if (tail != null) {
+                if (tail.pending != null && tail.upstream != null) {
+                    tail.pending.cancel(false); // A pending linger close; the stream is still open
+                    tail.pending = null;
+                }
+                return tail.lines.attach(viewer, afterSeq, since, Math.min(tailLines, ringLines));
+            }
+            tail = new Tail(containerId);
+            tails.put(containerId, tail);
+        }
+        prime(tail, panelContainer);
+        LogTail.Backlog backlog;
+        synchronized (tails) {
+            if (tail.closed) {
+                return attach(containerId, viewer, afterSeq, since, tailLines); // Every other viewer left while priming
+            }
+            backlog = tail.lines.attach(viewer, afterSeq, since, Math.min(tailLines, ringLines));
+        }
+        follow(tail);
+        return backlog;
+    }
+
+    /**
+     * Removes a viewer; the upstream is closed a while after the last one leaves.
+     */
+    public void detach(String containerId, LogTail.Viewer viewer) {
+        synchronized (tails) {
+            Tail tail = tails.get(containerId);
+            if (tail == null || !tail.lines.detach(viewer)) return;
+            if (tail.upstream == null) {
+                close(tail); // Waiting to reopen, or still priming; nothing worth keeping open
+                return;
+            }
+            if (tail.pending != null) tail.pending.cancel(false);
+            tail.pending = scheduler.schedule(() -> lingerExpired(tail), lingerMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public int getViewerCount(String containerId) {
+        synchronized (tails) {
+            Tail tail = tails.get(containerId);
+            return tail == null ? 0 : tail.lines.getViewerCount();
+        }
+    }
+
+    /**
+     * Reads the container's last lines into the tail with a one-off, non-following request, bounded by the
+     * prime timeout so a slow daemon can't hold up the viewer for long.
+     */
+    private void prime(Tail tail, PanelContainer panelContainer) {
+        ResultCallback.Adapter<Frame> history = new ResultCallback.Adapter<>() {
+            @Override
+            public void onNext(Frame frame) {
+                tail.lines.append(frame.getStreamType() == StreamType.STDERR, frame.getPayload());
+            }
+        };
+        try {
+            logs(panelContainer).withTail(ringLines).exec(history).awaitCompletion(primeTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            log.debug("Could not read the recent logs of container {}: {}", tail.containerId, e.getMessage());
+        } finally {
+            closeQuietly(history, tail.containerId);
+        }
+    }
+
+    /**
+     * Opens the follow stream, starting where the tail left off.
+     */
+    private void follow(Tail tail) {
+        PanelContainer panelContainer = containerService.getContainer(tail.containerId);
+        Upstream upstream = new Upstream(tail);
+        synchronized (tails) {
+            if (tail.closed) return;
+            tail.upstream = upstream;
+        }
+        try {
+            if (panelContainer == null || panelContainer.getDockerId() == null) {
+                throw new IllegalStateException("container is gone");
+            }
+            Instant since = tail.lines.resume();
+            LogContainerCmd cmd = logs(panelContainer).withFollowStream(true);
+            if (since != null) {
+                cmd.withSince((int) since.getEpochSecond());
+            } else {
+                cmd.withTail(0);
+            }
+            cmd.exec(upstream);
+            log.debug("Following the logs of container {}", tail.containerId);
+        } catch (Exception e) {
+            log.debug("Could not follow the logs of container {}: {}", tail.containerId, e.getMessage());
+            ended(tail, upstream);
+        }
+    }
+
+    private LogContainerCmd logs(PanelContainer panelContainer) {
+        DockerClient client = nodeRegistry.streamClient(panelContainer.getNodeId());
+        return client.logContainerCmd(panelContainer.getDockerId())
+                .withStdOut(true)
+                .withStdErr(true)
+                .withTimestamps(true);
+    }
+
+    /**
+     * Reopens an upstream that ended while viewers are still attached, backing off while the container stays
+     * stopped or unreachable.
+     */
+    private void ended(Tail tail, Upstream upstream) {
+        tail.lines.flush();
+        synchronized (tails) {
+            if (tail.closed || tail.upstream != upstream) return;
+            tail.upstream = null;
+            if (tail.pending != null) tail.pending.cancel(false);
+            if (tail.lines.getViewerCount() == 0) {
+                close(tail);
+                return;
+            }
+            long delay = tail.reopenDelayMs;
+            tail.reopenDelayMs = Math.min(MAX_REOPEN_DELAY_MS, tail.reopenDelayMs * 2);
+            tail.pending = scheduler.schedule(() -> follow(tail), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void lingerExpired(Tail tail) {
+        synchronized (tails) {
+            if (tail.lines.getViewerCount() == 0) {
+                close(tail);
+            }
+        }
+    }
+
+    private void close(Tail tail) {
+        tail.closed = true;
+        tails.remove(tail.containerId, tail);
+        if (tail.pending != null) tail.pending.cancel(false);
+        if (tail.upstream != null) {
+            closeQuietly(tail.upstream, tail.containerId);
+            tail.upstream = null;
+        }
+        log.debug("Stopped following the logs of container {}", tail.containerId);
+    }
+
+    private static void closeQuietly(ResultCallback.Adapter<Frame> callback, String containerId) {
+        try {
+            callback.close();
+        } catch (IOException e) {
+            log.debug("Error closing log stream for container {}", containerId, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        synchronized (tails) {
+            for (Tail tail : tails.values().toArray(new Tail[0])) {
+                close(tail);
+            }
+        }
+    }
+}
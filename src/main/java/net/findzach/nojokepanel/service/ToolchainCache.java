@@ -0,0 +1,215 @@
+package net.findzach.nojokepanel.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Installs the pack CLI once per host and hands out the cached binary to every build.
+ * <p>
+ * Each install lives in {@code <root>/pack/<version>-<sha256>/pack}, keyed by the SHA-256 of the release
+ * archive. Installs are extracted into a private staging directory and published with an atomic rename,
+ * so concurrent first use (even from separate panel processes) never sees a half-extracted binary.
+ * <p>
+ * The archive must match the pinned {@code pack-sha256} or, when nothing is pinned, the checksum file
+ * published next to the archive in the release. Running an unverified pack, when neither is available, has
+ * to be switched on explicitly with {@code allow-unverified-pack}, and then nothing installed by an earlier
+ * run is trusted: the archive is fetched again once per process.
+ */
+@Service
+@Slf4j
+public class ToolchainCache {
+
+    private static final Pattern SHA256 = Pattern.compile("[0-9a-f]{64}");
+
+    private final Path root;
+    private final String packVersion;
+    private final String expectedSha256;
+    private final String seedArchive;
+    private final String releaseUrl;
+    private final boolean allowUnverified;
+    private final DeployMetrics deployMetrics;
+    private volatile Path cachedPack;
+
+    public ToolchainCache(@Value("${nojokepanel.toolchain.root:${java.io.tmpdir}/nojokepanel/toolchains}") String root,
+                          @Value("${nojokepanel.toolchain.pack-version:0.32.0}") String packVersion,
+                          @Value("${nojokepanel.toolchain.pack-sha256:}") String expectedSha256,
+                          @Value("${nojokepanel.toolchain.pack-archive:}") String seedArchive,
+                          @Value("${nojokepanel.toolchain.pack-release-url:https://github.com/buildpacks/pack/releases/download}") String releaseUrl,
+                          @Value("${nojokepanel.toolchain.allow-unverified-pack:false}") boolean allowUnverified,
+                          DeployMetrics deployMetrics) {
+        this.root = Path.of(root);
+        this.packVersion = packVersion;
+        this.expectedSha256 = expectedSha256.trim().toLowerCase();
+        this.seedArchive = seedArchive.trim();
+        this.releaseUrl = releaseUrl.trim().replaceAll("/+$", "");
+        this.allowUnverified = allowUnverified;
+        this.deployMetrics = deployMetrics;
+    }
+
+    /**
+     * @return the path of an executable pack binary, installing it first if needed
+     */
+    public Path getPack() throws IOException, InterruptedException {
+        Path pack = cachedPack;
+        if (pack != null && Files.isExecutable(pack)) {
+            return pack;
+        }
+        synchronized (this) {
+            if (cachedPack == null || !Files.isExecutable(cachedPack)) {
+                String sha256 = expectedSha256();
+                cachedPack = findInstalled(sha256);
+                if (cachedPack == null) {
+                    cachedPack = install(sha256);
+                }
+            }
+            return cachedPack;
+        }
+    }
+
+    public String getPackVersion() {
+        return packVersion;
+    }
+
+    /**
+     * @return the pinned checksum, else the one published with the release, or empty if there is none and
+     * unverified installs are allowed
+     */
+    private String expectedSha256() throws IOException {
+        if (!expectedSha256.isEmpty()) {
+            return expectedSha256;
+        }
+        String checksumUrl = archiveUrl() + ".sha256";
+        try (InputStream in = new URL(checksumUrl).openStream()) {
+            String published = new String(in.readAllBytes(), StandardCharsets.US_ASCII).trim().split("\\s+")[0].toLowerCase();
+            if (!SHA256.matcher(published).matches()) {
+                throw new IOException("Not a SHA-256 checksum: " + published);
+            }
+            return published;
+        } catch (IOException e) {
+            if (allowUnverified) {
+                log.warn("Installing pack {} without verifying its checksum, {} is unavailable: {}", packVersion, checksumUrl, e.getMessage());
+                return "";
+            }
+            throw new IOException("No checksum for pack " + packVersion + " (" + checksumUrl + ": " + e.getMessage()
+                    + "); set nojokepanel.toolchain.pack-sha256, or nojokepanel.toolchain.allow-unverified-pack=true to run it unverified");
+        }
+    }
+
+    /**
+     * @return the install of the archive with this checksum, or null if there is none or the checksum is unknown
+     */
+    private Path findInstalled(String sha256) {
+        if (sha256.isEmpty()) {
+            return null;
+        }
+        Path binary = root.resolve("pack").resolve(packVersion + "-" + sha256).resolve("pack");
+        return Files.isExecutable(binary) ? binary : null;
+    }
+
+    private Path install(String expectedSha256) throws IOException, InterruptedException {
+        Path packRoot = root.resolve("pack");
+        Files.createDirectories(packRoot);
+        Path staging = Files.createDirectory(packRoot.resolve(".staging-" + UUID.randomUUID()));
+        try {
+            Path archive = staging.resolve("pack.tgz");
+            String sha256 = fetchArchive(archive);
+            if (!expectedSha256.isEmpty() && !expectedSha256.equals(sha256)) {
+                throw new IOException("Checksum mismatch for pack " + packVersion + ": expected " + expectedSha256 + " but got " + sha256);
+            }
+
+            Path extracted = Files.createDirectory(staging.resolve("pack"));
+            ProcessBuilder pb = new ProcessBuilder("tar", "-xzf", archive.toString(), "-C", extracted.toString());
+            pb.inheritIO();
+            Process p = pb.start();
+            int exitCode = p.waitFor();
+            if (exitCode != 0) throw new IOException("Failed to extract pack.tgz, exit code: " + exitCode);
+            Path packBinary = extracted.resolve("pack");
+            if (!Files.exists(packBinary)) throw new IOException("Pack binary not found at " + packBinary);
+            Files.setPosixFilePermissions(packBinary, PosixFilePermissions.fromString("rwxr-xr-x"));
+
+            Path target = packRoot.resolve(packVersion + "-" + sha256);
+            try {
+                Files.move(extracted, target, StandardCopyOption.ATOMIC_MOVE);
+                log.info("Pack {} installed at {}", packVersion, target);
+            } catch (FileAlreadyExistsException e) {
+                // Another process published the same archive first; theirs is identical
+                log.info("Pack {} was installed concurrently, using {}", packVersion, target);
+            } catch (IOException e) {
+                if (!Files.isExecutable(target.resolve("pack"))) throw e;
+            }
+            return target.resolve("pack");
+        } finally {
+            deleteQuietly(staging);
+        }
+    }
+
+    /**
+     * Copies the release archive into {@code destination}, from the seed file when configured and
+     * from the release URL otherwise.
+     *
+     * @return the SHA-256 of the archive as lowercase hex
+     */
+    private String fetchArchive(Path destination) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        InputStream source;
+        if (!seedArchive.isEmpty()) {
+            log.info("Seeding pack {} from {}", packVersion, seedArchive);
+            source = Files.newInputStream(Path.of(seedArchive));
+        } else {
+            String packUrl = archiveUrl();
+            log.info("Downloading pack {} from {}", packVersion, packUrl);
+            source = new URL(packUrl).openStream();
+        }
+        long bytes;
+        try (InputStream in = new DigestInputStream(source, digest);
+             OutputStream out = Files.newOutputStream(destination)) {
+            bytes = in.transferTo(out);
+        }
+        deployMetrics.recordDownload("pack", seedArchive.isEmpty() ? "github" : "seed", bytes);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private String archiveUrl() {
+        return releaseUrl + "/v" + packVersion + "/pack-v" + packVersion + "-linux.tgz";
+    }
+
+    private void deleteQuietly(Path dir) {
+        if (!Files.exists(dir)) return;
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    log.warn("Failed to delete {}", path, e);
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Failed to clean up {}", dir, e);
+        }
+    }
+}
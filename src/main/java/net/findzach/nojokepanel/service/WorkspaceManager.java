@@ -0,0 +1,267 @@
+package net.findzach.nojokepanel.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.findzach.nojokepanel.util.BlockingCallExecutors;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Hands out build workspaces: one fresh directory per deployment under a configurable root, which can be put
+ * on tmpfs for fast checkouts.
+ * <p>
+ * Workspaces are named by UUID, so concurrent deploys never share one. Releasing a workspace only renames it
+ * into a trash directory; the tree is deleted in the background, off the deploy's critical path. Active
+ * workspaces are measured periodically against a per-build quota, and the workspaces a previous run left
+ * under the root (a crash mid-build, an unfinished cleanup) are swept away when the panel starts. Anything
+ * else under the root is never touched, so the root may be shared.
+ */
+@Service
+@Slf4j
+public class WorkspaceManager {
+
+    private static final String TRASH = ".trash";
+    private static final String UUID_PATTERN = "[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}";
+    private static final Pattern WORKSPACE_NAME = Pattern.compile(UUID_PATTERN);
+    private static final Pattern TRASHED_NAME = Pattern.compile(UUID_PATTERN + "-" + UUID_PATTERN);
+
+    private final Path root;
+    private final Path trash;
+    private final long quotaBytes;
+    private final Map<String, Workspace> active = new ConcurrentHashMap<>();
+    private final AtomicLong deletedBytes = new AtomicLong();
+    private final ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor(BlockingCallExecutors.daemonThreads("workspace-cleaner"));
+
+    public WorkspaceManager(@Value("${nojokepanel.workspace.root:${java.io.tmpdir}/nojokepanel/workspaces}") String root,
+                            @Value("${nojokepanel.workspace.quota-mb:2048}") long quotaMb,
+                            @Value("${nojokepanel.workspace.quota-check-interval-ms:10000}") long quotaCheckIntervalMs) throws IOException {
+        this.root = Path.of(root).toAbsolutePath();
+        this.trash = this.root.resolve(TRASH);
+        this.quotaBytes = quotaMb * 1024 * 1024;
+        Files.createDirectories(trash);
+        sweep();
+        if (quotaBytes > 0) {
+            cleaner.scheduleWithFixedDelay(this::checkQuotas, quotaCheckIntervalMs, quotaCheckIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * A build directory owned by one deployment. Closing it hands it to the background cleaner.
+     */
+    public final class Workspace implements AutoCloseable {
+        private final String id = UUID.randomUUID().toString();
+        private final String owner;
+        private final Path path;
+        private volatile Runnable onQuotaExceeded;
+        private volatile boolean overQuota;
+        private volatile boolean closed;
+
+        private Workspace(String owner) {
+            this.owner = owner;
+            this.path = root.resolve(id);
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+
+        /**
+         * @param action run once, from the cleaner thread, if the workspace grows past the quota
+         */
+        public void onQuotaExceeded(Runnable action) {
+            this.onQuotaExceeded = action;
+        }
+
+        public boolean isOverQuota() {
+            return overQuota;
+        }
+
+        public long getQuotaBytes() {
+            return quotaBytes;
+        }
+
+        /**
+         * Measures the workspace now instead of waiting for the next periodic check.
+         *
+         * @throws IOException if it is over the quota
+         */
+        public void enforceQuota() throws IOException {
+            if (quotaBytes > 0 && (overQuota || sizeOf(path) > quotaBytes)) {
+                overQuota = true;
+                throw quotaExceeded();
+            }
+        }
+
+        public IOException quotaExceeded() {
+            return new IOException("Build workspace of " + owner + " exceeded its quota of " + (quotaBytes >> 20) + " MB");
+        }
+
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            active.remove(id);
+            discard(path);
+        }
+    }
+
+    /**
+     * Creates an empty workspace for the given owner, e.g. a container ID used in log messages.
+     */
+    public Workspace create(String owner) throws IOException {
+        Workspace workspace = new Workspace(owner);
+        Files.createDirectory(workspace.path);
+        active.put(workspace.id, workspace);
+        return workspace;
+    }
+
+    public int getActiveCount() {
+        return active.size();
+    }
+
+    /**
+     * @return bytes freed by background deletion since startup
+     */
+    public long getDeletedBytes() {
+        return deletedBytes.get();
+    }
+
+    /**
+     * Moves a directory out of the way and deletes it in the background. The rename is atomic on the same
+     * file system, so the name is free again immediately. Only what made it into the trash is deleted; a
+     * directory that couldn't be moved stays where it is until the next start sweeps it.
+     */
+    private void discard(Path dir) {
+        Path target;
+        try {
+            target = Files.move(dir, trash.resolve(dir.getFileName() + "-" + UUID.randomUUID()), StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            return;
+        } catch (IOException e) {
+            log.warn("Could not move {} to the trash, leaving it for the next start: {}", dir, e.getMessage());
+            return;
+        }
+        cleaner.execute(() -> delete(target));
+    }
+
+    /**
+     * Clears out what a previous run left behind: workspaces under the root and workspaces in the trash, both
+     * recognised by their UUID names. Called before any workspace is handed out, so none of them is in use.
+     */
+    private void sweep() {
+        List<Path> orphans = new ArrayList<>();
+        collectOrphans(root, WORKSPACE_NAME, orphans);
+        collectOrphans(trash, TRASHED_NAME, orphans);
+        if (!orphans.isEmpty()) {
+            log.info("Sweeping {} orphaned build workspaces", orphans.size());
+            orphans.forEach(this::discard);
+        }
+    }
+
+    private static void collectOrphans(Path dir, Pattern names, List<Path> orphans) {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            for (Path entry : entries) {
+                if (names.matcher(entry.getFileName().toString()).matches() && Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                    orphans.add(entry);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not list {}: {}", dir, e.getMessage());
+        }
+    }
+
+    private void checkQuotas() {
+        for (Workspace workspace : active.values()) {
+            if (workspace.overQuota || workspace.closed) continue;
+            long size = sizeOf(workspace.path);
+            if (size > quotaBytes) {
+                workspace.overQuota = true;
+                log.warn("Workspace of {} uses {} MB, over the {} MB quota", workspace.owner, size >> 20, quotaBytes >> 20);
+                Runnable action = workspace.onQuotaExceeded;
+                if (action != null) {
+                    try {
+                        action.run();
+                    } catch (Exception e) {
+                        log.warn("Quota action for {} failed: {}", workspace.owner, e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    static long sizeOf(Path dir) {
+        AtomicLong size = new AtomicLong();
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    size.addAndGet(attrs.size());
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE; // Deleted while walking
+                }
+            });
+        } catch (IOException e) {
+            log.debug("Could not measure {}: {}", dir, e.getMessage());
+        }
+        return size.get();
+    }
+
+    private void delete(Path dir) {
+        AtomicLong freed = new AtomicLong();
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    freed.addAndGet(attrs.size());
+                    Files.deleteIfExists(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path directory, IOException e) throws IOException {
+                    Files.deleteIfExists(directory);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (NoSuchFileException e) {
+            // Already gone
+        } catch (IOException e) {
+            log.warn("Failed to delete workspace {}: {}", dir, e.getMessage());
+        }
+        deletedBytes.addAndGet(freed.get());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cleaner.shutdown(); // Let queued deletions finish
+    }
+}
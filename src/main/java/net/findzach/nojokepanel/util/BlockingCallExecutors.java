@@ -0,0 +1,57 @@
+package net.findzach.nojokepanel.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates executors for work that mostly blocks on I/O, such as Docker API calls.
+ * <p>
+ * When virtual threads are requested and the runtime has them (Java 21+), each task gets its own virtual
+ * thread, so blocked calls cost almost nothing and the Docker connection pool is the only limit. Otherwise,
+ * including on the Java 17 baseline, a fixed pool of daemon platform threads is used. The virtual-thread
+ * factory is looked up reflectively so the code still compiles and runs on 17.
+ */
+@Slf4j
+public final class BlockingCallExecutors {
+
+    private BlockingCallExecutors() {
+    }
+
+    public static ExecutorService create(String name, int platformThreads, boolean preferVirtualThreads) {
+        if (preferVirtualThreads) {
+            ExecutorService virtual = virtualThreadPerTask(name);
+            if (virtual != null) {
+                log.info("Using virtual threads for {}", name);
+                return virtual;
+            }
+            log.info("Virtual threads are not available on Java {}, using {} platform threads for {}",
+                    Runtime.version().feature(), platformThreads, name);
+        }
+        return Executors.newFixedThreadPool(platformThreads, daemonThreads(name));
+    }
+
+    public static ThreadFactory daemonThreads(String name) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    private static ExecutorService virtualThreadPerTask(String name) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 1L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package net.findzach.nojokepanel.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Append-only build output for one container, stored as UTF-8 bytes in fixed-size chunks.
+ * <p>
+ * Every byte has a stable offset, so readers can resume from where they left off. Full chunks are handed
+ * to the {@link LogChunkStore}, which may move them to the log's spill file when the global memory budget
+ * is exceeded; reads of spilled chunks go to disk transparently. Once the build is over, {@link #seal()}
+ * trims the last, partly filled chunk and hands it over too, and closes the spill file, so a finished log
+ * holds neither heap beyond the budget nor a file descriptor. All methods are thread-safe and a line is
+ * always appended as a whole.
+ */
+public class BuildLog {
+
+    static final class Chunk {
+        final long start;
+        final int capacity;
+        byte[] data;
+        int length;
+
+        Chunk(long start, int capacity) {
+            this.start = start;
+            this.capacity = capacity;
+            this.data = new byte[capacity];
+        }
+    }
+
+    /**
+     * Lines read from a log, plus the offset to continue reading from.
+     */
+    public record Slice(List<String> lines, long nextOffset) {
+    }
+
+    private static final byte NEWLINE = '\n';
+    private static final byte[] NEWLINE_BYTES = {NEWLINE};
+
+    private final String id;
+    private final LogChunkStore store;
+    private final List<Chunk> chunks = new ArrayList<>();
+    private Chunk current;
+    private long size;
+    private long lineCount;
+    private FileChannel spill; // Kept open while the log is being written
+    private boolean spilled;
+    private boolean sealed;
+    private boolean released;
+    private int references = 1; // The owner's, dropped by its release()
+
+    BuildLog(String id, LogChunkStore store) {
+        this.id = id;
+        this.store = store;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Appends one line; a trailing newline is added.
+     *
+     * @return the offset just past the appended line
+     */
+    public long append(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        return append(bytes, 0, bytes.length, true);
+    }
+
+    /**
+     * Appends raw bytes, optionally followed by a newline.
+     *
+     * @return the offset just past the appended bytes
+     */
+    public long append(byte[] bytes, int offset, int length, boolean newline) {
+        boolean allocated;
+        long end;
+        synchronized (this) {
+            if (released) return size;
+            allocated = write(bytes, offset, length);
+            if (newline) {
+                allocated |= write(NEWLINE_BYTES, 0, 1);
+                lineCount++;
+            } else {
+                for (int i = offset; i < offset + length; i++) {
+                    if (bytes[i] == NEWLINE) lineCount++;
+                }
+            }
+            end = size;
+        }
+        // Evict outside our own lock; the store locks each victim log on its own
+        if (allocated) store.evictIfOverBudget();
+        return end;
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized long lineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Copies up to {@code length} bytes starting at {@code offset} into {@code dst}.
+     *
+     * @return the number of bytes copied, 0 at the end of the log
+     */
+    public synchronized int read(long offset, byte[] dst, int dstOffset, int length) throws IOException {
+        if (released || offset < 0 || offset >= size) return 0;
+        int copied = 0;
+        FileChannel channel = null;
+        try {
+            while (copied < length && offset < size) {
+                Chunk chunk = chunkAt(offset);
+                int inChunk = (int) (offset - chunk.start);
+                int n = Math.min(length - copied, chunk.length - inChunk);
+                if (chunk.data != null) {
+                    System.arraycopy(chunk.data, inChunk, dst, dstOffset + copied, n);
+                } else {
+                    if (channel == null) {
+                        channel = spill != null ? spill : FileChannel.open(store.spillPath(id), StandardOpenOption.READ);
+                    }
+                    ByteBuffer buffer = ByteBuffer.wrap(dst, dstOffset + copied, n);
+                    long position = offset;
+                    while (buffer.hasRemaining()) {
+                        int read = channel.read(buffer, position);
+                        if (read < 0) throw new IOException("Spill file for log " + id + " is truncated");
+                        position += read;
+                    }
+                }
+                copied += n;
+                offset += n;
+            }
+        } finally {
+            if (channel != null && channel != spill) channel.close();
+        }
+        return copied;
+    }
+
+    /**
+     * @return the chunk holding {@code offset}; chunks are full except for ones trimmed by {@link #seal()}
+     */
+    private Chunk chunkAt(long offset) {
+        int low = 0;
+        int high = chunks.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (chunks.get(mid).start <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return chunks.get(low);
+    }
+
+    /**
+     * Reads whole lines starting at {@code offset}, reading at most {@code maxBytes} bytes. A trailing
+     * partial line is left for the next read.
+     */
+    public Slice readLines(long offset, int maxBytes) throws IOException {
+        byte[] buffer = new byte[(int) Math.max(0, Math.min(maxBytes, size() - offset))];
+        int read = read(offset, buffer, 0, buffer.length);
+        List<String> lines = new ArrayList<>();
+        int lineStart = 0;
+        for (int i = 0; i < read; i++) {
+            if (buffer[i] == NEWLINE) {
+                lines.add(new String(buffer, lineStart, i - lineStart, StandardCharsets.UTF_8));
+                lineStart = i + 1;
+            }
+        }
+        return new Slice(lines, offset + lineStart);
+    }
+
+    /**
+     * Reads the last lines of the log, looking back at most {@code maxBytes} bytes.
+     */
+    public List<String> tail(int maxBytes) throws IOException {
+        long end = size();
+        long start = Math.max(0, end - maxBytes);
+        if (start > 0) {
+            // Skip ahead to the first full line, which may begin right at start
+            byte[] probe = new byte[(int) (end - start + 1)];
+            int read = read(start - 1, probe, 0, probe.length);
+            long lineStart = end;
+            for (int i = 0; i < read; i++) {
+                if (probe[i] == NEWLINE) {
+                    lineStart = start + i;
+                    break;
+                }
+            }
+            start = lineStart;
+        }
+        return readLines(start, (int) (end - start)).lines();
+    }
+
+    /**
+     * Marks the build as finished. The partly filled last chunk is trimmed to its contents and may be spilled
+     * like a full one, and the spill file is closed; reads and later spills open it just for their own use.
+     * A line appended afterwards starts a new chunk, which the next call seals.
+     */
+    public void seal() {
+        long freed = 0;
+        synchronized (this) {
+            if (released) return;
+            sealed = true;
+            if (current != null) {
+                freed = current.data.length - current.length;
+                current.data = Arrays.copyOf(current.data, current.length);
+                store.sealed(this, current);
+                current = null;
+            }
+            closeSpill();
+        }
+        store.trimmed(freed);
+    }
+
+    /**
+     * Keeps the log readable until a matching {@link #release()}, e.g. while it is archived in the background
+     * after its container may already be gone.
+     *
+     * @return false if the log was already released, in which case there is nothing to release later
+     */
+    public synchronized boolean retain() {
+        if (released) return false;
+        references++;
+        return true;
+    }
+
+    /**
+     * Drops a reference to the log. The last one frees all memory held by the log and deletes its spill file;
+     * later appends are ignored.
+     */
+    public void release() {
+        long freed = 0;
+        synchronized (this) {
+            if (released || --references > 0) return;
+            released = true;
+            for (Chunk chunk : chunks) {
+                if (chunk.data != null) {
+                    freed += chunk.data.length;
+                    chunk.data = null;
+                }
+            }
+            chunks.clear();
+            current = null;
+            closeSpill();
+            if (spilled) {
+                try {
+                    Files.deleteIfExists(store.spillPath(id));
+                } catch (IOException e) {
+                    // Orphaned spill files are swept when the store starts
+                }
+            }
+        }
+        store.released(this, freed);
+    }
+
+    /**
+     * Moves a full chunk to the spill file. Called by the store while it holds its eviction lock.
+     *
+     * @return the number of bytes of memory freed
+     */
+    synchronized long evict(Chunk chunk) throws IOException {
+        if (released || chunk.data == null || chunk == current) return 0;
+        FileChannel channel = spill;
+        if (channel == null) {
+            // The first spill replaces whatever a previous log with the same ID left behind
+            channel = spilled
+                    ? FileChannel.open(store.spillPath(id), StandardOpenOption.READ, StandardOpenOption.WRITE)
+                    : FileChannel.open(store.spillPath(id), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            spilled = true;
+            if (!sealed) spill = channel;
+        }
+        try {
+            // Chunks are contiguous, so each one lives at its own log offset in the spill file
+            ByteBuffer buffer = ByteBuffer.wrap(chunk.data, 0, chunk.length);
+            long position = chunk.start;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        } finally {
+            if (channel != spill) channel.close();
+        }
+        int freed = chunk.data.length;
+        chunk.data = null;
+        return freed;
+    }
+
+    private void closeSpill() {
+        if (spill == null) return;
+        try {
+            spill.close();
+        } catch (IOException e) {
+            // Nothing left to flush; the data was written with positional writes
+        }
+        spill = null;
+    }
+
+    private boolean write(byte[] src, int offset, int length) {
+        boolean allocated = false;
+        while (length > 0) {
+            if (current == null || current.length == current.capacity) {
+                if (current != null) store.sealed(this, current);
+                current = new Chunk(size, store.getChunkSize());
+                chunks.add(current);
+                store.allocated(current.capacity);
+                allocated = true;
+            }
+            int n = Math.min(length, current.capacity - current.length);
+            System.arraycopy(src, offset, current.data, current.length, n);
+            current.length += n;
+            size += n;
+            offset += n;
+            length -= n;
+        }
+        return allocated;
+    }
+}
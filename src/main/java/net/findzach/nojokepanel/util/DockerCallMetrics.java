@@ -0,0 +1,102 @@
+package net.findzach.nojokepanel.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Per-command latency and error counts for Docker API calls.
+ * <p>
+ * Calls are grouped by method and path template, e.g. {@code POST /containers/{id}/stop}, so the number of
+ * keys stays small no matter how many containers exist. Latency is time to response headers; for streaming
+ * calls (logs, stats, events) that is how long the stream took to open.
+ */
+public class DockerCallMetrics {
+
+    private static final Pattern API_VERSION = Pattern.compile("^/v\\d+(\\.\\d+)?");
+    private static final List<String> OBJECT_COLLECTIONS = List.of("containers", "images", "networks", "volumes", "exec", "plugins", "services", "tasks", "secrets", "configs", "nodes");
+    private static final List<String> IMAGE_ACTIONS = List.of("json", "history", "push", "tag", "get");
+    private static final List<String> COLLECTION_ACTIONS = List.of("json", "create", "prune", "load", "search", "get", "build");
+
+    /**
+     * Snapshot of one command's counters.
+     */
+    public record CommandStats(String command, long calls, long errors, long inFlight, double averageMillis, double maxMillis) {
+    }
+
+    private static final class Counters {
+        final LongAdder calls = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final AtomicLong maxNanos = new AtomicLong();
+        final AtomicLong inFlight = new AtomicLong();
+    }
+
+    private final Map<String, Counters> commands = new ConcurrentHashMap<>();
+
+    /**
+     * Marks a call as started.
+     *
+     * @return the start time to pass to {@link #finished}
+     */
+    public long started(String command) {
+        counters(command).inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    public void finished(String command, long startNanos, boolean error) {
+        long elapsed = System.nanoTime() - startNanos;
+        Counters counters = counters(command);
+        counters.inFlight.decrementAndGet();
+        counters.calls.increment();
+        counters.totalNanos.add(elapsed);
+        counters.maxNanos.accumulateAndGet(elapsed, Math::max);
+        if (error) counters.errors.increment();
+    }
+
+    /**
+     * @return stats for every command seen so far, busiest first
+     */
+    public List<CommandStats> snapshot() {
+        List<CommandStats> result = new ArrayList<>();
+        commands.forEach((command, counters) -> {
+            long calls = counters.calls.sum();
+            result.add(new CommandStats(command, calls, counters.errors.sum(), counters.inFlight.get(),
+                    calls == 0 ? 0 : counters.totalNanos.sum() / 1e6 / calls, counters.maxNanos.get() / 1e6));
+        });
+        result.sort(Comparator.comparingLong(CommandStats::calls).reversed());
+        return result;
+    }
+
+    private Counters counters(String command) {
+        return commands.computeIfAbsent(command, k -> new Counters());
+    }
+
+    /**
+     * Turns a request into its command key: the API version prefix and query string are dropped and object
+     * IDs and names are replaced with {@code {id}}.
+     */
+    public static String commandOf(String method, String path) {
+        int query = path.indexOf('?');
+        String bare = API_VERSION.matcher(query >= 0 ? path.substring(0, query) : path).replaceFirst("");
+        String[] segments = bare.split("/");
+        StringBuilder command = new StringBuilder(method).append(' ');
+        for (int i = 1; i < segments.length; i++) {
+            String segment = segments[i];
+            boolean isId = i == 2 && OBJECT_COLLECTIONS.contains(segments[1]) && !COLLECTION_ACTIONS.contains(segment);
+            // Image names can contain slashes; whatever follows the ID up to a known action belongs to it
+            if (isId && "images".equals(segments[1])) {
+                int last = segments.length - 1;
+                i = IMAGE_ACTIONS.contains(segments[last]) && last > i ? last - 1 : last;
+            }
+            command.append('/').append(isId ? "{id}" : segment);
+        }
+        if (segments.length <= 1) command.append('/');
+        return command.toString();
+    }
+}
@@ -0,0 +1,125 @@
+package net.findzach.nojokepanel.util;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.api.model.HostConfig;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs {@link HealthProbe} checks from inside a Docker network, for containers only reachable there, like
+ * a container on a remote node's bridge network.
+ * <p>
+ * A helper container is started on the network and each check is a {@code docker exec} of busybox's
+ * {@code nc} in it: a TCP connect, or a raw HTTP GET whose status line is judged like {@link HealthProbe}
+ * judges a response. The helper removes itself once it exits, so closing the probe, or the panel dying,
+ * never leaves it behind.
+ */
+@Slf4j
+public class DockerProbe implements AutoCloseable {
+
+    private static final Pattern STATUS_LINE = Pattern.compile("HTTP/\\d(?:\\.\\d)? (\\d{3}).*");
+    private static final String HTTP_GET = "printf 'GET %s HTTP/1.0\\r\\nHost: %s\\r\\nConnection: close\\r\\n\\r\\n' \"$0\" \"$1\""
+            + " | nc -w " + HealthProbe.ATTEMPT_TIMEOUT.toSeconds() + " \"$1\" \"$2\" | head -n 1";
+
+    private final DockerClient docker;
+    private final String containerId;
+
+    DockerProbe(DockerClient docker, String containerId) {
+        this.docker = docker;
+        this.containerId = containerId;
+    }
+
+    /**
+     * Starts the helper container, pulling its image first if the node doesn't have it.
+     *
+     * @param image           an image with busybox's {@code sh}, {@code nc} and {@code head}
+     * @param lifetimeSeconds how long the helper lives if it is never closed
+     */
+    public static DockerProbe start(DockerClient docker, String image, String network, String name, long lifetimeSeconds) throws InterruptedException {
+        try {
+            docker.inspectImageCmd(image).exec();
+        } catch (NotFoundException e) {
+            log.info("Pulling probe image {}", image);
+            int tagSeparator = image.lastIndexOf(':');
+            boolean tagged = tagSeparator > image.lastIndexOf('/');
+            docker.pullImageCmd(tagged ? image.substring(0, tagSeparator) : image)
+                    .withTag(tagged ? image.substring(tagSeparator + 1) : "latest")
+                    .start().awaitCompletion();
+        }
+        String containerId = docker.createContainerCmd(image)
+                .withName(name)
+                .withCmd("sleep", String.valueOf(lifetimeSeconds))
+                .withHostConfig(HostConfig.newHostConfig().withNetworkMode(network).withAutoRemove(true))
+                .exec().getId();
+        DockerProbe probe = new DockerProbe(docker, containerId);
+        try {
+            docker.startContainerCmd(containerId).exec();
+        } catch (RuntimeException e) {
+            probe.close();
+            throw e;
+        }
+        return probe;
+    }
+
+    /**
+     * @param path HTTP path to probe, or null/blank for a TCP probe
+     * @return null if healthy, otherwise why not
+     */
+    public String check(String host, int port, String path) throws InterruptedException {
+        boolean tcp = path == null || path.isBlank();
+        String[] cmd = tcp
+                ? new String[]{"nc", "-z", "-w", String.valueOf(HealthProbe.ATTEMPT_TIMEOUT.toSeconds()), host, String.valueOf(port)}
+                : new String[]{"sh", "-c", HTTP_GET, path.startsWith("/") ? path : "/" + path, host, String.valueOf(port)};
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Long exitCode;
+        try {
+            String execId = docker.execCreateCmd(containerId)
+                    .withCmd(cmd)
+                    .withAttachStdout(true)
+                    .withAttachStderr(true)
+                    .exec().getId();
+            try (ResultCallback.Adapter<Frame> callback = docker.execStartCmd(execId).exec(new ResultCallback.Adapter<>() {
+                @Override
+                public void onNext(Frame frame) {
+                    output.writeBytes(frame.getPayload());
+                }
+            })) {
+                if (!callback.awaitCompletion(HealthProbe.ATTEMPT_TIMEOUT.toMillis() * 2, TimeUnit.MILLISECONDS)) {
+                    return "Probe did not finish";
+                }
+            }
+            exitCode = docker.inspectExecCmd(execId).exec().getExitCodeLong();
+        } catch (IOException | RuntimeException e) {
+            return "Probe failed: " + e.getMessage();
+        }
+        String result = output.toString(StandardCharsets.UTF_8).trim();
+        if (tcp) {
+            return exitCode != null && exitCode == 0 ? null : "TCP connect failed" + (result.isEmpty() ? "" : ": " + result);
+        }
+        Matcher statusLine = STATUS_LINE.matcher(result);
+        if (!statusLine.matches()) {
+            return "HTTP request failed" + (result.isEmpty() ? "" : ": " + result);
+        }
+        return HealthProbe.checkStatus(Integer.parseInt(statusLine.group(1)));
+    }
+
+    @Override
+    public void close() {
+        try {
+            docker.removeContainerCmd(containerId).withForce(true).exec();
+        } catch (NotFoundException e) {
+            // Already removed itself
+        } catch (RuntimeException e) {
+            log.warn("Could not remove probe container {}: {}", containerId, e.getMessage());
+        }
+    }
+}
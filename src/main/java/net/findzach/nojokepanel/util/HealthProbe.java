@@ -0,0 +1,104 @@
+package net.findzach.nojokepanel.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * Polls a freshly started container until it answers, so it only takes traffic once it can serve it.
+ * <p>
+ * With a path, the probe is an HTTP GET that must answer 2xx or 3xx; without one, accepting a TCP connection
+ * on the port is enough. The checks run from the panel itself unless another {@link Check} is given, e.g.
+ * a {@link DockerProbe} for a container the panel can't reach.
+ */
+@Slf4j
+public class HealthProbe {
+
+    static final Duration ATTEMPT_TIMEOUT = Duration.ofSeconds(2);
+
+    /**
+     * One probe attempt.
+     */
+    @FunctionalInterface
+    public interface Check {
+        /**
+         * @return null if healthy, otherwise why not
+         */
+        String run() throws InterruptedException;
+    }
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(ATTEMPT_TIMEOUT)
+            .followRedirects(HttpClient.Redirect.NEVER)
+            .build();
+
+    /**
+     * Blocks until the target is healthy.
+     *
+     * @param path HTTP path to probe, or null/blank for a TCP probe
+     * @throws IOException if it is still unhealthy after the timeout
+     */
+    public void await(String host, int port, String path, long timeoutMillis, long intervalMillis) throws IOException, InterruptedException {
+        await(host + ":" + port, () -> check(host, port, path), timeoutMillis, intervalMillis);
+    }
+
+    /**
+     * Blocks until {@code check} passes.
+     *
+     * @param target what is probed, for log messages
+     * @throws IOException if it is still unhealthy after the timeout
+     */
+    public void await(String target, Check check, long timeoutMillis, long intervalMillis) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        String lastError;
+        int attempts = 0;
+        do {
+            attempts++;
+            lastError = check.run();
+            if (lastError == null) {
+                log.info("{} is healthy after {} probe(s)", target, attempts);
+                return;
+            }
+            log.debug("Probe {} of {} failed: {}", attempts, target, lastError);
+            Thread.sleep(intervalMillis);
+        } while (System.currentTimeMillis() < deadline);
+        throw new IOException("Not healthy after " + timeoutMillis / 1000 + " s (" + attempts + " probes): " + lastError);
+    }
+
+    /**
+     * @return null if healthy, otherwise why not
+     */
+    public String check(String host, int port, String path) throws InterruptedException {
+        if (path == null || path.isBlank()) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(host, port), (int) ATTEMPT_TIMEOUT.toMillis());
+                return null;
+            } catch (IOException e) {
+                return "TCP connect failed: " + e.getMessage();
+            }
+        }
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://" + host + ":" + port + (path.startsWith("/") ? path : "/" + path)))
+                    .timeout(ATTEMPT_TIMEOUT)
+                    .GET()
+                    .build();
+            return checkStatus(httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode());
+        } catch (IOException | IllegalArgumentException e) {
+            return "HTTP request failed: " + e.getMessage();
+        }
+    }
+
+    /**
+     * @return null if an HTTP status counts as healthy, otherwise why not
+     */
+    static String checkStatus(int status) {
+        return status >= 200 && status < 400 ? null : "HTTP " + status;
+    }
+}
@@ -0,0 +1,39 @@
+package net.findzach.nojokepanel.util;
+
+import com.github.dockerjava.transport.DockerHttpClient;
+
+import java.io.IOException;
+
+/**
+ * Wraps a {@link DockerHttpClient} and records every request in {@link DockerCallMetrics}. Responses with
+ * a 4xx/5xx status count as errors, as do transport failures.
+ */
+public class InstrumentedDockerHttpClient implements DockerHttpClient {
+
+    private final DockerHttpClient delegate;
+    private final DockerCallMetrics metrics;
+
+    public InstrumentedDockerHttpClient(DockerHttpClient delegate, DockerCallMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Response execute(Request request) {
+        String command = DockerCallMetrics.commandOf(String.valueOf(request.method()), request.path());
+        long started = metrics.started(command);
+        boolean error = true;
+        try {
+            Response response = delegate.execute(request);
+            error = response.getStatusCode() >= 400;
+            return response;
+        } finally {
+            metrics.finished(command, started, error);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
@@ -0,0 +1,568 @@
+package net.findzach.nojokepanel.util;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Durable, compressed copies of finished build logs, kept after the container and its in-memory
+ * {@link BuildLog} are gone. Byte offsets are the same as in the original log.
+ * <p>
+ * Logs are appended to shared segment files, each log as a run of independent gzip members of
+ * {@code memberBytes} uncompressed bytes. A run of members is itself a valid gzip stream, so a whole log can
+ * be sent to a client that accepts gzip with a single {@link FileChannel#transferTo}, without decompressing
+ * it or copying it through the heap. Reading a range only inflates the members it overlaps, found by binary
+ * search in the log's sparse offset index.
+ * <p>
+ * Where each log lives is recorded in an append-only catalog, written after the log's bytes are on disk, so
+ * a crash mid-write loses at most the log being written; the torn tail is cut off on the next start. A new
+ * segment is started once the current one reaches {@code segmentBytes}, and whole segments are deleted,
+ * oldest first, once the archive exceeds {@code maxBytes}. Readers hold a reference to the segment they
+ * read from, and a deleted segment's file only goes once the last of them is done. The catalog is rewritten
+ * with just the live logs whenever segments are deleted or replaced logs make up most of it.
+ */
+public class LogArchive implements Closeable {
+
+    private static final String CATALOG = "catalog.bin";
+    private static final Pattern SEGMENT = Pattern.compile("segment-(\\d{6})\\.log\\.gz");
+    private static final int COPY_BUFFER = 64 * 1024;
+    private static final int CATALOG_SLACK = 64;
+
+    /**
+     * Where an archived log lives: its segment, and the sparse index of its gzip members.
+     */
+    private static final class Entry {
+        final String id;
+        final long size;
+        final int segment;
+        final long[] offsets; // Uncompressed offset of each member
+        final long[] positions; // Position of each member in the segment, plus the end of the last one
+
+        Entry(String id, long size, int segment, long[] offsets, long[] positions) {
+            this.id = id;
+            this.size = size;
+            this.segment = segment;
+            this.offsets = offsets;
+            this.positions = positions;
+        }
+
+        long start() {
+            return positions[0];
+        }
+
+        long end() {
+            return positions[positions.length - 1];
+        }
+
+        /**
+         * @return the member holding the byte at {@code offset}
+         */
+        int member(long offset) {
+            int low = 0;
+            int high = offsets.length - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (offsets[mid] <= offset) low = mid;
+                else high = mid - 1;
+            }
+            return low;
+        }
+    }
+
+    /**
+     * An open segment file and how many reads or writes are using it.
+     */
+    private static final class Segment {
+        final int number;
+        final FileChannel channel;
+        int refs;
+        boolean deleted;
+
+        Segment(int number, FileChannel channel) {
+            this.number = number;
+            this.channel = channel;
+        }
+    }
+
+    private final Path root;
+    private final long segmentBytes;
+    private final int memberBytes;
+    private final long maxBytes;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<Integer, Segment> segments = new HashMap<>(); // Open segments; guarded by itself
+    private final TreeMap<Integer, Long> segmentSizes = new TreeMap<>();
+    private FileChannel catalog;
+    private int catalogRecords;
+    private int currentSegment;
+
+    public LogArchive(Path root) throws IOException {
+        this(root, 64L * 1024 * 1024, 64 * 1024, 0);
+    }
+
+    /**
+     * @param segmentBytes start a new segment file once the current one is this big
+     * @param memberBytes  uncompressed bytes per gzip member; the most a range read has to inflate per member
+     * @param maxBytes     delete the oldest segments once all of them together are bigger than this, 0 never
+     */
+    public LogArchive(Path root, long segmentBytes, int memberBytes, long maxBytes) throws IOException {
+        this.root = root;
+        this.segmentBytes = segmentBytes;
+        this.memberBytes = memberBytes;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(root);
+        this.catalog = FileChannel.open(root.resolve(CATALOG), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        recover();
+    }
+
+    /**
+     * Loads the catalog, dropping a torn last record and logs whose segment was deleted, and cuts segments
+     * back to the end of their last cataloged log.
+     */
+    private void recover() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(root, "segment-*.log.gz")) {
+            for (Path file : files) {
+                Matcher matcher = SEGMENT.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    segmentSizes.put(Integer.parseInt(matcher.group(1)), Files.size(file));
+                }
+            }
+        }
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(root.resolve(CATALOG))))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                byte[] record = new byte[length];
+                if (in.readNBytes(record, 0, length) < length) break;
+                Entry entry = decode(record);
+                valid += 4 + length;
+                catalogRecords++;
+                Long segmentSize = segmentSizes.get(entry.segment);
+                if (segmentSize != null && entry.end() <= segmentSize) {
+                    entries.put(entry.id, entry);
+                } else {
+                    entries.remove(entry.id);
+                }
+            }
+        }
+        catalog.truncate(valid);
+        catalog.position(valid);
+
+        Map<Integer, Long> used = new HashMap<>();
+        for (Entry entry : entries.values()) {
+            used.merge(entry.segment, entry.end(), Math::max);
+        }
+        for (Map.Entry<Integer, Long> segment : segmentSizes.entrySet()) {
+            long end = used.getOrDefault(segment.getKey(), 0L);
+            if (segment.getValue() > end) {
+                try (FileChannel channel = FileChannel.open(segmentPath(segment.getKey()), StandardOpenOption.WRITE)) {
+                    channel.truncate(end);
+                }
+                segment.setValue(end);
+            }
+        }
+        currentSegment = segmentSizes.isEmpty() ? 1 : segmentSizes.lastKey();
+        segmentSizes.putIfAbsent(currentSegment, 0L);
+        if (catalogRecords > entries.size()) {
+            compactCatalog();
+        }
+    }
+
+    /**
+     * Compresses a log into the archive, replacing an earlier copy. The log only becomes visible once all of
+     * it is on disk.
+     *
+     * @return the IDs of older logs deleted to keep the archive under its limit
+     */
+    public synchronized List<String> archive(String id, BuildLog log) throws IOException {
+        checkId(id);
+        if (segmentSizes.get(currentSegment) >= segmentBytes) {
+            currentSegment++;
+            segmentSizes.put(currentSegment, 0L);
+        }
+        Segment current = acquire(currentSegment, true);
+        try {
+            append(id, log, current);
+        } finally {
+            release(current);
+        }
+        return enforceLimit();
+    }
+
+    private void append(String id, BuildLog log, Segment current) throws IOException {
+        FileChannel segment = current.channel;
+        long start = segmentSizes.get(currentSegment);
+        List<Long> offsets = new ArrayList<>();
+        List<Long> positions = new ArrayList<>();
+        byte[] buffer = new byte[memberBytes];
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(memberBytes / 4);
+        long offset = 0;
+        long position = start;
+        int read;
+        while ((read = readFully(log, offset, buffer)) > 0) {
+            compressed.reset();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed, COPY_BUFFER)) {
+                gzip.write(buffer, 0, read);
+            }
+            offsets.add(offset);
+            positions.add(position);
+            position += write(segment, position, ByteBuffer.wrap(compressed.toByteArray()));
+            offset += read;
+        }
+        if (offsets.isEmpty()) {
+            // An empty log is still one (empty) gzip member, so downloads are valid gzip streams
+            compressed.reset();
+            new GZIPOutputStream(compressed).close();
+            offsets.add(0L);
+            positions.add(position);
+            position += write(segment, position, ByteBuffer.wrap(compressed.toByteArray()));
+        }
+        positions.add(position);
+        segment.force(false);
+
+        Entry entry = new Entry(id, offset, currentSegment,
+                offsets.stream().mapToLong(Long::longValue).toArray(), positions.stream().mapToLong(Long::longValue).toArray());
+        byte[] record = encode(entry);
+        ByteBuffer framed = ByteBuffer.allocate(4 + record.length).putInt(record.length).put(record).flip();
+        write(catalog, catalog.position(), framed);
+        catalog.position(catalog.position() + 4 + record.length);
+        catalog.force(false);
+        catalogRecords++;
+        segmentSizes.put(currentSegment, position);
+        entries.put(id, entry);
+    }
+
+    /**
+     * Deletes the oldest segments, and the logs in them, while the archive is over its limit, then compacts
+     * the catalog if that or replaced logs left it mostly dead records. The segment being written to is never
+     * deleted.
+     *
+     * @return the IDs of the deleted logs
+     */
+    private List<String> enforceLimit() throws IOException {
+        List<String> evicted = new ArrayList<>();
+        boolean deleted = false;
+        if (maxBytes > 0) {
+            long total = segmentSizes.values().stream().mapToLong(Long::longValue).sum();
+            while (total > maxBytes && segmentSizes.firstKey() != currentSegment) {
+                int oldest = segmentSizes.firstKey();
+                total -= segmentSizes.remove(oldest);
+                entries.values().removeIf(entry -> entry.segment == oldest && evicted.add(entry.id));
+                delete(oldest);
+                deleted = true;
+            }
+        }
+        if (deleted || catalogRecords > 2 * entries.size() + CATALOG_SLACK) {
+            compactCatalog();
+        }
+        return evicted;
+    }
+
+    /**
+     * Replaces the catalog with one holding just the live logs. The new catalog is written aside and moved
+     * over the old one, so a crash leaves one or the other.
+     */
+    private void compactCatalog() throws IOException {
+        Path compacted = root.resolve(CATALOG + ".tmp");
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+            for (Entry entry : entries.values()) {
+                byte[] record = encode(entry);
+                position += write(out, position, ByteBuffer.allocate(4 + record.length).putInt(record.length).put(record).flip());
+            }
+            out.force(false);
+        }
+        catalog.close();
+        Files.move(compacted, root.resolve(CATALOG), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        catalog = FileChannel.open(root.resolve(CATALOG), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        catalog.position(catalog.size());
+        catalogRecords = entries.size();
+    }
+
+    public boolean contains(String id) {
+        return entries.containsKey(id);
+    }
+
+    /**
+     * @return the archived log's uncompressed size in bytes, or -1 if it isn't archived
+     */
+    public long size(String id) {
+        Entry entry = entries.get(id);
+        return entry != null ? entry.size : -1;
+    }
+
+    /**
+     * @return the archived log's size on disk, gzip-compressed, or -1 if it isn't archived
+     */
+    public long compressedSize(String id) {
+        Entry entry = entries.get(id);
+        return entry != null ? entry.end() - entry.start() : -1;
+    }
+
+    /**
+     * @return the total size of all segments on disk
+     */
+    public synchronized long getDiskBytes() {
+        return segmentSizes.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * Copies up to {@code length} bytes starting at {@code offset} into {@code dst}, inflating only the
+     * members that overlap them.
+     *
+     * @return the number of bytes copied, 0 at the end of the log
+     * @throws NoSuchFileException if the log isn't archived
+     */
+    public int read(String id, long offset, byte[] dst, int dstOffset, int length) throws IOException {
+        Entry entry = require(id);
+        if (offset >= entry.size || length <= 0) return 0;
+        Segment segment = acquire(entry);
+        try {
+            int copied = 0;
+            int member = entry.member(offset);
+            while (copied < length && member < entry.offsets.length) {
+                byte[] bytes = inflate(segment, entry, member);
+                int from = (int) (offset + copied - entry.offsets[member]);
+                int count = Math.min(bytes.length - from, length - copied);
+                System.arraycopy(bytes, from, dst, dstOffset + copied, count);
+                copied += count;
+                member++;
+            }
+            return copied;
+        } finally {
+            release(segment);
+        }
+    }
+
+    /**
+     * Writes {@code length} bytes of the log starting at {@code offset}, a member at a time.
+     *
+     * @return the number of bytes written
+     */
+    public long copy(String id, long offset, long length, OutputStream out) throws IOException {
+        Entry entry = require(id);
+        long end = Math.min(entry.size, offset + length);
+        Segment segment = acquire(entry);
+        try {
+            long position = offset;
+            while (position < end) {
+                int member = entry.member(position);
+                byte[] bytes = inflate(segment, entry, member);
+                int from = (int) (position - entry.offsets[member]);
+                int count = (int) Math.min(bytes.length - from, end - position);
+                out.write(bytes, from, count);
+                position += count;
+            }
+            return Math.max(0, end - offset);
+        } finally {
+            release(segment);
+        }
+    }
+
+    /**
+     * Sends the whole log, still gzip-compressed, straight from the segment file.
+     *
+     * @return the number of compressed bytes sent
+     */
+    public long transferCompressed(String id, WritableByteChannel target) throws IOException {
+        Entry entry = require(id);
+        Segment segment = acquire(entry);
+        try {
+            long position = entry.start();
+            while (position < entry.end()) {
+                long sent = segment.channel.transferTo(position, entry.end() - position, target);
+                if (sent <= 0) throw new EOFException("Segment " + entry.segment + " ends before log " + id);
+                position += sent;
+            }
+            return entry.end() - entry.start();
+        } finally {
+            release(segment);
+        }
+    }
+
+    /**
+     * @return the IDs of every archived log
+     */
+    public List<String> ids() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    private static byte[] inflate(Segment segment, Entry entry, int member) throws IOException {
+        int compressedLength = (int) (entry.positions[member + 1] - entry.positions[member]);
+        ByteBuffer compressed = ByteBuffer.allocate(compressedLength);
+        long position = entry.positions[member];
+        while (compressed.hasRemaining()) {
+            int read = segment.channel.read(compressed, position);
+            if (read < 0) throw new EOFException("Segment " + entry.segment + " ends before log " + entry.id);
+            position += read;
+        }
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed.array()))) {
+            return in.readAllBytes();
+        }
+    }
+
+    private Entry require(String id) throws NoSuchFileException {
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            throw new NoSuchFileException("No archived log " + id);
+        }
+        return entry;
+    }
+
+    /**
+     * Takes a reference to the segment holding a log, so it stays readable until {@link #release}d.
+     *
+     * @throws NoSuchFileException if the segment was deleted since the log was looked up
+     */
+    private Segment acquire(Entry entry) throws IOException {
+        try {
+            return acquire(entry.segment, false);
+        } catch (NoSuchFileException e) {
+            throw new NoSuchFileException("No archived log " + entry.id);
+        }
+    }
+
+    /**
+     * @param create true only for the segment being written; reads never bring a deleted segment back
+     */
+    private Segment acquire(int number, boolean create) throws IOException {
+        synchronized (segments) {
+            Segment segment = segments.get(number);
+            if (segment == null) {
+                FileChannel channel = create
+                        ? FileChannel.open(segmentPath(number), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                        : FileChannel.open(segmentPath(number), StandardOpenOption.READ);
+                segment = new Segment(number, channel);
+                segments.put(number, segment);
+            }
+            segment.refs++;
+            return segment;
+        }
+    }
+
+    private void release(Segment segment) throws IOException {
+        synchronized (segments) {
+            segment.refs--;
+            if (segment.refs == 0 && segment.deleted) {
+                segment.channel.close();
+                Files.deleteIfExists(segmentPath(segment.number));
+            }
+        }
+    }
+
+    /**
+     * Deletes a segment's file now, or once the reads still using it are done.
+     */
+    private void delete(int number) throws IOException {
+        synchronized (segments) {
+            Segment segment = segments.remove(number);
+            if (segment != null) {
+                segment.deleted = true;
+                if (segment.refs > 0) return;
+                segment.channel.close();
+            }
+            Files.deleteIfExists(segmentPath(number));
+        }
+    }
+
+    private Path segmentPath(int segment) {
+        return root.resolve(String.format("segment-%06d.log.gz", segment));
+    }
+
+    private static int readFully(BuildLog log, long offset, byte[] buffer) throws IOException {
+        int filled = 0;
+        int read;
+        while (filled < buffer.length && (read = log.read(offset + filled, buffer, filled, buffer.length - filled)) > 0) {
+            filled += read;
+        }
+        return filled;
+    }
+
+    private static int write(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        int written = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        return written;
+    }
+
+    private static byte[] encode(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + entry.offsets.length * 16);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(entry.id);
+            out.writeLong(entry.size);
+            out.writeInt(entry.segment);
+            out.writeInt(entry.offsets.length);
+            for (int i = 0; i < entry.offsets.length; i++) {
+                out.writeLong(entry.offsets[i]);
+                out.writeLong(entry.positions[i]);
+            }
+            out.writeLong(entry.end());
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Entry decode(byte[] record) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            String id = in.readUTF();
+            long size = in.readLong();
+            int segment = in.readInt();
+            int members = in.readInt();
+            long[] offsets = new long[members];
+            long[] positions = new long[members + 1];
+            for (int i = 0; i < members; i++) {
+                offsets[i] = in.readLong();
+                positions[i] = in.readLong();
+            }
+            positions[members] = in.readLong();
+            return new Entry(id, size, segment, offsets, positions);
+        }
+    }
+
+    private static void checkId(String id) {
+        if (!id.matches("[A-Za-z0-9._-]+")) {
+            throw new IllegalArgumentException("Invalid log id " + id);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        synchronized (segments) {
+            for (Segment segment : segments.values()) {
+                segment.channel.close();
+            }
+            segments.clear();
+        }
+        catalog.close();
+    }
+}
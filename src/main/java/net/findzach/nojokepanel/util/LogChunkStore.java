@@ -0,0 +1,107 @@
+package net.findzach.nojokepanel.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Owns the memory budget shared by every {@link BuildLog}.
+ * <p>
+ * Logs allocate fixed-size chunks through the store. Once a chunk is full, or its log is sealed, it is
+ * queued here, and whenever resident chunks exceed the budget the oldest queued chunks are written to their
+ * log's spill file and dropped from the heap. Heap use therefore stays near the budget no matter how many builds have run.
+ */
+@Slf4j
+public class LogChunkStore {
+
+    private record SealedChunk(BuildLog log, BuildLog.Chunk chunk) {
+    }
+
+    private final int chunkSize;
+    private final long memoryBudget;
+    private final Path spillDir;
+    private final AtomicLong residentBytes = new AtomicLong();
+    private final AtomicLong spilledBytes = new AtomicLong();
+    private final Queue<SealedChunk> sealedChunks = new ConcurrentLinkedQueue<>();
+
+    public LogChunkStore(int chunkSize, long memoryBudget, Path spillDir) throws IOException {
+        this.chunkSize = chunkSize;
+        this.memoryBudget = memoryBudget;
+        this.spillDir = spillDir;
+        Files.createDirectories(spillDir);
+        // Spill files only back logs of the running process, anything left over is from a previous run
+        try (DirectoryStream<Path> orphans = Files.newDirectoryStream(spillDir, "*.log")) {
+            for (Path orphan : orphans) {
+                Files.deleteIfExists(orphan);
+            }
+        }
+    }
+
+    public BuildLog create(String id) {
+        return new BuildLog(id, this);
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public long getResidentBytes() {
+        return residentBytes.get();
+    }
+
+    public long getSpilledBytes() {
+        return spilledBytes.get();
+    }
+
+    void allocated(int bytes) {
+        residentBytes.addAndGet(bytes);
+    }
+
+    void trimmed(long freedBytes) {
+        residentBytes.addAndGet(-freedBytes);
+    }
+
+    void sealed(BuildLog log, BuildLog.Chunk chunk) {
+        sealedChunks.add(new SealedChunk(log, chunk));
+    }
+
+    void released(BuildLog log, long freedBytes) {
+        residentBytes.addAndGet(-freedBytes);
+        sealedChunks.removeIf(sealed -> sealed.log() == log);
+    }
+
+    Path spillPath(String logId) {
+        return spillDir.resolve(logId.replaceAll("[^A-Za-z0-9._-]", "_") + ".log");
+    }
+
+    /**
+     * Spills the oldest full chunks until resident memory is back under the budget. Chunks that are
+     * still being written are never spilled.
+     */
+    void evictIfOverBudget() {
+        if (residentBytes.get() <= memoryBudget) return;
+        synchronized (this) {
+            while (residentBytes.get() > memoryBudget) {
+                SealedChunk victim = sealedChunks.poll();
+                if (victim == null) break;
+                try {
+                    long freed = victim.log().evict(victim.chunk());
+                    residentBytes.addAndGet(-freed);
+                    spilledBytes.addAndGet(freed);
+                } catch (IOException e) {
+                    log.warn("Failed to spill log chunk of {} to disk: {}", victim.log().getId(), e.getMessage());
+                }
+            }
+        }
+    }
+}
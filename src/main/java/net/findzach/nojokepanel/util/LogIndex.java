@@ -0,0 +1,554 @@
+package net.findzach.nojokepanel.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A trigram index over many logs, for case-insensitive substring search.
+ * <p>
+ * Each log is cut into blocks of whole lines, a few kilobytes each, and the index maps every trigram (three
+ * consecutive bytes, ASCII letters folded to lower case) to the blocks containing it. A query is answered by
+ * intersecting the posting lists of its trigrams, which leaves a handful of candidate blocks out of
+ * thousands of logs; only those are read back and checked line by line, since containing every trigram of
+ * the query doesn't mean containing the query. Posting lists are stored delta-encoded as varints, which
+ * keeps the index a small fraction of the size of the logs.
+ * <p>
+ * A log is indexed once, when it is complete, into a {@link Document} that can be saved next to the log and
+ * loaded again on startup instead of re-reading the log. Removing a log only hides its blocks; once hidden
+ * blocks make up half of the index, it is compacted, so an index whose logs age out doesn't grow forever.
+ */
+public class LogIndex {
+
+    public static final int MIN_QUERY_BYTES = 3;
+    private static final int MAGIC = 0x4C495831; // "LIX1"
+    private static final int READ_BUFFER = 64 * 1024;
+
+    /**
+     * Reads a log's bytes by offset, e.g. from the {@link LogArchive}.
+     */
+    public interface Source {
+        /**
+         * @return the number of bytes copied, 0 at the end of the log
+         */
+        int read(long offset, byte[] dst, int dstOffset, int length) throws IOException;
+    }
+
+    /**
+     * A candidate block: where to read it and what to call it in results.
+     */
+    public record Block(String documentId, String source, long offset, int length, long firstLine) {
+    }
+
+    /**
+     * One indexed log: its block table and, until it is added to an index, its own posting lists.
+     */
+    public static final class Document {
+        private final String id;
+        private final String source;
+        private final long[] blockOffsets;
+        private final int[] blockLengths;
+        private final long[] blockFirstLines;
+        private final Map<Integer, Postings> postings;
+
+        private Document(String id, String source, long[] blockOffsets, int[] blockLengths, long[] blockFirstLines,
+                         Map<Integer, Postings> postings) {
+            this.id = id;
+            this.source = source;
+            this.blockOffsets = blockOffsets;
+            this.blockLengths = blockLengths;
+            this.blockFirstLines = blockFirstLines;
+            this.postings = postings;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public int getBlockCount() {
+            return blockOffsets.length;
+        }
+
+        /**
+         * Saves the document so {@link #load} can restore it without re-reading the log. The file appears
+         * atomically.
+         */
+        public void save(Path path) throws IOException {
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeUTF(id);
+                out.writeUTF(source != null ? source : "");
+                out.writeInt(blockOffsets.length);
+                for (int i = 0; i < blockOffsets.length; i++) {
+                    out.writeLong(blockOffsets[i]);
+                    out.writeInt(blockLengths[i]);
+                    out.writeLong(blockFirstLines[i]);
+                }
+                out.writeInt(postings.size());
+                for (Map.Entry<Integer, Postings> entry : postings.entrySet()) {
+                    Postings list = entry.getValue();
+                    out.writeInt(entry.getKey());
+                    out.writeInt(list.count);
+                    out.writeInt(list.size);
+                    out.write(list.data, 0, list.size);
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        public static Document load(Path path) throws IOException {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Not a log index: " + path);
+                }
+                String id = in.readUTF();
+                String source = in.readUTF();
+                int blocks = in.readInt();
+                long[] offsets = new long[blocks];
+                int[] lengths = new int[blocks];
+                long[] firstLines = new long[blocks];
+                for (int i = 0; i < blocks; i++) {
+                    offsets[i] = in.readLong();
+                    lengths[i] = in.readInt();
+                    firstLines[i] = in.readLong();
+                }
+                int trigrams = in.readInt();
+                Map<Integer, Postings> postings = new HashMap<>(trigrams * 2);
+                for (int i = 0; i < trigrams; i++) {
+                    int trigram = in.readInt();
+                    Postings list = new Postings();
+                    list.count = in.readInt();
+                    list.size = in.readInt();
+                    list.data = new byte[list.size];
+                    in.readFully(list.data);
+                    list.last = list.decode()[list.count - 1];
+                    postings.put(trigram, list);
+                }
+                return new Document(id, source.isEmpty() ? null : source, offsets, lengths, firstLines, postings);
+            }
+        }
+    }
+
+    /**
+     * Ascending block numbers, delta-encoded as varints.
+     */
+    private static final class Postings {
+        private byte[] data = new byte[4];
+        private int size;
+        private int count;
+        private int last = -1;
+
+        void add(int block) {
+            if (block == last) return;
+            int delta = block - last - 1; // Strictly ascending, so the smallest delta is stored as 0
+            last = block;
+            count++;
+            if (size + 5 > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + 5));
+            }
+            while ((delta & ~0x7F) != 0) {
+                data[size++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            data[size++] = (byte) delta;
+        }
+
+        int[] decode() {
+            int[] blocks = new int[count];
+            int position = 0;
+            int previous = -1;
+            for (int i = 0; i < count; i++) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[position++];
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                previous += delta + 1;
+                blocks[i] = previous;
+            }
+            return blocks;
+        }
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> documentIndex = new HashMap<>();
+    private final List<String> documentIds = new ArrayList<>();
+    private final List<String> documentSources = new ArrayList<>();
+    private final List<Integer> documentBlocks = new ArrayList<>();
+    private final Map<Integer, Postings> postings = new HashMap<>();
+    private int[] blockDocuments = new int[1024];
+    private long[] blockOffsets = new long[1024];
+    private int[] blockLengths = new int[1024];
+    private long[] blockFirstLines = new long[1024];
+    private int blockCount;
+    private int removedBlocks;
+
+    /**
+     * Indexes a complete log.
+     *
+     * @param source     shown with matches from this log, e.g. the repository and commit it built
+     * @param blockBytes lines are grouped into blocks of at least this many bytes; smaller blocks mean less
+     *                   to verify per query and a bigger index
+     */
+    public static Document build(String id, String source, long size, Source log, int blockBytes) throws IOException {
+        List<long[]> blocks = new ArrayList<>();
+        Map<Integer, Postings> postings = new HashMap<>();
+        Set<Integer> blockTrigrams = new HashSet<>();
+        byte[] buffer = new byte[READ_BUFFER];
+        long offset = 0;
+        long blockStart = 0;
+        long blockFirstLine = 0;
+        long line = 0;
+        int window = 0; // Last bytes of the current line, folded, one per byte of the int
+        int windowLength = 0;
+        while (offset < size) {
+            int read = log.read(offset, buffer, 0, (int) Math.min(buffer.length, size - offset));
+            if (read <= 0) break;
+            for (int i = 0; i < read; i++) {
+                byte b = buffer[i];
+                if (b == '\n') {
+                    line++;
+                    window = 0;
+                    windowLength = 0;
+                    long end = offset + i + 1;
+                    if (end - blockStart >= blockBytes) {
+                        addBlock(blocks, postings, blockTrigrams, blockStart, end, blockFirstLine);
+                        blockStart = end;
+                        blockFirstLine = line;
+                    }
+                    continue;
+                }
+                window = (window << 8 | fold(b)) & 0xFFFFFF;
+                if (++windowLength >= 3) {
+                    blockTrigrams.add(window);
+                }
+            }
+            offset += read;
+        }
+        if (offset > blockStart) {
+            addBlock(blocks, postings, blockTrigrams, blockStart, offset, blockFirstLine);
+        }
+        long[] offsets = new long[blocks.size()];
+        int[] lengths = new int[blocks.size()];
+        long[] firstLines = new long[blocks.size()];
+        for (int i = 0; i < blocks.size(); i++) {
+            offsets[i] = blocks.get(i)[0];
+            lengths[i] = (int) (blocks.get(i)[1] - blocks.get(i)[0]);
+            firstLines[i] = blocks.get(i)[2];
+        }
+        return new Document(id, source, offsets, lengths, firstLines, postings);
+    }
+
+    private static void addBlock(List<long[]> blocks, Map<Integer, Postings> postings, Set<Integer> blockTrigrams,
+                                 long start, long end, long firstLine) {
+        int block = blocks.size();
+        blocks.add(new long[]{start, end, firstLine});
+        for (int trigram : blockTrigrams) {
+            postings.computeIfAbsent(trigram, t -> new Postings()).add(block);
+        }
+        blockTrigrams.clear();
+    }
+
+    /**
+     * Adds a document to the index; a document with the same ID that is already indexed is left as it is.
+     * The document's own posting lists are merged in, so it is cheap to keep afterwards.
+     *
+     * @return false if the ID was already indexed
+     */
+    public boolean add(Document document) {
+        lock.writeLock().lock();
+        try {
+            if (documentIndex.containsKey(document.id)) return false;
+            int documentNumber = documentIds.size();
+            documentIndex.put(document.id, documentNumber);
+            documentIds.add(document.id);
+            documentSources.add(document.source);
+            documentBlocks.add(document.blockOffsets.length);
+            int base = blockCount;
+            ensureBlockCapacity(blockCount + document.blockOffsets.length);
+            for (int i = 0; i < document.blockOffsets.length; i++) {
+                blockDocuments[blockCount] = documentNumber;
+                blockOffsets[blockCount] = document.blockOffsets[i];
+                blockLengths[blockCount] = document.blockLengths[i];
+                blockFirstLines[blockCount] = document.blockFirstLines[i];
+                blockCount++;
+            }
+            for (Map.Entry<Integer, Postings> entry : document.postings.entrySet()) {
+                Postings global = postings.computeIfAbsent(entry.getKey(), t -> new Postings());
+                for (int block : entry.getValue().decode()) {
+                    global.add(base + block);
+                }
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a document, e.g. once its log is no longer archived. Its blocks stop turning up in
+     * {@link #candidates} right away; the memory they take is reclaimed by the next compaction.
+     *
+     * @return false if the ID wasn't indexed
+     */
+    public boolean remove(String documentId) {
+        lock.writeLock().lock();
+        try {
+            Integer document = documentIndex.remove(documentId);
+            if (document == null) return false;
+            documentIds.set(document, null);
+            documentSources.set(document, null);
+            removedBlocks += documentBlocks.get(document);
+            if (removedBlocks * 2 >= blockCount) {
+                compact();
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops the blocks and posting list entries of removed documents, renumbering what is left. Documents and
+     * blocks keep their order, so posting lists stay ascending.
+     */
+    private void compact() {
+        int[] documentNumbers = new int[documentIds.size()];
+        List<String> ids = new ArrayList<>();
+        List<String> sources = new ArrayList<>();
+        List<Integer> blocks = new ArrayList<>();
+        documentIndex.clear();
+        for (int document = 0; document < documentIds.size(); document++) {
+            String id = documentIds.get(document);
+            if (id == null) {
+                documentNumbers[document] = -1;
+                continue;
+            }
+            documentNumbers[document] = ids.size();
+            documentIndex.put(id, ids.size());
+            ids.add(id);
+            sources.add(documentSources.get(document));
+            blocks.add(documentBlocks.get(document));
+        }
+        documentIds.clear();
+        documentIds.addAll(ids);
+        documentSources.clear();
+        documentSources.addAll(sources);
+        documentBlocks.clear();
+        documentBlocks.addAll(blocks);
+
+        int[] blockNumbers = new int[blockCount];
+        int kept = 0;
+        for (int block = 0; block < blockCount; block++) {
+            int document = documentNumbers[blockDocuments[block]];
+            if (document < 0) {
+                blockNumbers[block] = -1;
+                continue;
+            }
+            blockNumbers[block] = kept;
+            blockDocuments[kept] = document;
+            blockOffsets[kept] = blockOffsets[block];
+            blockLengths[kept] = blockLengths[block];
+            blockFirstLines[kept] = blockFirstLines[block];
+            kept++;
+        }
+        blockCount = kept;
+        removedBlocks = 0;
+        int capacity = Math.max(1024, kept);
+        if (blockDocuments.length > 2 * capacity) {
+            blockDocuments = Arrays.copyOf(blockDocuments, capacity);
+            blockOffsets = Arrays.copyOf(blockOffsets, capacity);
+            blockLengths = Arrays.copyOf(blockLengths, capacity);
+            blockFirstLines = Arrays.copyOf(blockFirstLines, capacity);
+        }
+
+        postings.entrySet().removeIf(entry -> {
+            Postings renumbered = new Postings();
+            for (int block : entry.getValue().decode()) {
+                if (blockNumbers[block] >= 0) {
+                    renumbered.add(blockNumbers[block]);
+                }
+            }
+            entry.setValue(renumbered);
+            return renumbered.count == 0;
+        });
+    }
+
+    public boolean contains(String documentId) {
+        lock.readLock().lock();
+        try {
+            return documentIndex.containsKey(documentId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getDocumentCount() {
+        lock.readLock().lock();
+        try {
+            return documentIndex.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getBlockCount() {
+        lock.readLock().lock();
+        try {
+            return blockCount - removedBlocks;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the blocks that may contain the query, newest documents first.
+     *
+     * @param documentId only search this document, or null for all
+     * @throws IllegalArgumentException if the query is shorter than {@value #MIN_QUERY_BYTES} bytes
+     */
+    public List<Block> candidates(String query, String documentId) {
+        byte[] folded = fold(query);
+        if (folded.length < MIN_QUERY_BYTES) {
+            throw new IllegalArgumentException("Queries need at least " + MIN_QUERY_BYTES + " characters");
+        }
+        Set<Integer> trigrams = new LinkedHashSet<>();
+        for (int i = 2; i < folded.length; i++) {
+            trigrams.add((folded[i - 2] & 0xFF) << 16 | (folded[i - 1] & 0xFF) << 8 | (folded[i] & 0xFF));
+        }
+        lock.readLock().lock();
+        try {
+            Integer only = null;
+            if (documentId != null) {
+                only = documentIndex.get(documentId);
+                if (only == null) return List.of();
+            }
+            List<Postings> lists = new ArrayList<>();
+            for (int trigram : trigrams) {
+                Postings list = postings.get(trigram);
+                if (list == null) return List.of();
+                lists.add(list);
+            }
+            lists.sort((a, b) -> Integer.compare(a.count, b.count));
+            int[] matches = lists.get(0).decode();
+            int matchCount = matches.length;
+            for (int l = 1; l < lists.size() && matchCount > 0; l++) {
+                matchCount = intersect(matches, matchCount, lists.get(l).decode());
+            }
+            List<Block> blocks = new ArrayList<>();
+            for (int i = matchCount - 1; i >= 0; i--) {
+                int block = matches[i];
+                int document = blockDocuments[block];
+                if (only != null && document != only || documentIds.get(document) == null) continue;
+                blocks.add(new Block(documentIds.get(document), documentSources.get(document),
+                        blockOffsets[block], blockLengths[block], blockFirstLines[block]));
+            }
+            return blocks;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Keeps the entries of {@code matches} that are also in {@code other}, both ascending.
+     *
+     * @return how many entries of {@code matches} are left
+     */
+    private static int intersect(int[] matches, int matchCount, int[] other) {
+        int kept = 0;
+        int j = 0;
+        for (int i = 0; i < matchCount && j < other.length; i++) {
+            while (j < other.length && other[j] < matches[i]) j++;
+            if (j < other.length && other[j] == matches[i]) {
+                matches[kept++] = matches[i];
+            }
+        }
+        return kept;
+    }
+
+    private void ensureBlockCapacity(int capacity) {
+        if (capacity <= blockDocuments.length) return;
+        int grown = Math.max(capacity, blockDocuments.length * 2);
+        blockDocuments = Arrays.copyOf(blockDocuments, grown);
+        blockOffsets = Arrays.copyOf(blockOffsets, grown);
+        blockLengths = Arrays.copyOf(blockLengths, grown);
+        blockFirstLines = Arrays.copyOf(blockFirstLines, grown);
+    }
+
+    /**
+     * Finds the lines of a block that contain the query, with the same case folding as the index.
+     *
+     * @param onMatch receives the line number (0-based) within the log, the line's byte offset and its text
+     * @return how many lines matched
+     */
+    public static int scanBlock(Block block, byte[] bytes, int length, String query, LineConsumer onMatch) {
+        byte[] folded = fold(query);
+        int matches = 0;
+        long line = block.firstLine();
+        int lineStart = 0;
+        for (int i = 0; i <= length; i++) {
+            if (i == length || bytes[i] == '\n') {
+                if (i > lineStart && containsFolded(bytes, lineStart, i, folded)) {
+                    matches++;
+                    if (!onMatch.accept(line, block.offset() + lineStart,
+                            new String(bytes, lineStart, i - lineStart, StandardCharsets.UTF_8))) {
+                        return matches;
+                    }
+                }
+                line++;
+                lineStart = i + 1;
+            }
+        }
+        return matches;
+    }
+
+    public interface LineConsumer {
+        /**
+         * @return false to stop scanning
+         */
+        boolean accept(long line, long offset, String text);
+    }
+
+    private static boolean containsFolded(byte[] bytes, int start, int end, byte[] folded) {
+        outer:
+        for (int i = start; i <= end - folded.length; i++) {
+            for (int j = 0; j < folded.length; j++) {
+                if (fold(bytes[i + j]) != folded[j]) continue outer;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static byte[] fold(String query) {
+        byte[] bytes = query.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) fold(bytes[i]);
+        }
+        return bytes;
+    }
+
+    private static int fold(byte b) {
+        return b >= 'A' && b <= 'Z' ? (b | 0x20) & 0xFF : b & 0xFF;
+    }
+}
@@ -0,0 +1,179 @@
+package net.findzach.nojokepanel.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The recent output of a running container, fed from one upstream log stream and fanned out to any number
+ * of viewers.
+ * <p>
+ * Docker delivers stdout and stderr as interleaved frames, and a frame can end in the middle of a line (or of
+ * a UTF-8 character), so each stream is reassembled into whole lines separately. Lines are expected to start
+ * with Docker's RFC 3339 timestamp, which is split off and kept. Each line gets a sequence number and is
+ * kept in a ring of the last {@code capacity} lines, from which a new viewer is given its backlog: the last
+ * N lines, the lines since a point in time, or everything after a sequence number it has already seen.
+ * Overlong lines are cut at {@code maxLineBytes}, so memory stays bounded whatever the app writes.
+ */
+public class LogTail {
+
+    public record Line(long seq, boolean stderr, Instant timestamp, String text) {
+    }
+
+    /**
+     * Receives live lines; called while the tail is locked, so it must not block.
+     */
+    public interface Viewer {
+        void onLine(Line line);
+    }
+
+    /**
+     * The lines a viewer asked for, and the sequence number of the last line it won't also get live.
+     */
+    public record Backlog(List<Line> lines, long lastSeq) {
+    }
+
+    private final int capacity;
+    private final int maxLineBytes;
+    private final ArrayDeque<Line> ring = new ArrayDeque<>();
+    private final Set<Viewer> viewers = new LinkedHashSet<>();
+    private final ByteArrayOutputStream[] partial = {new ByteArrayOutputStream(), new ByteArrayOutputStream()};
+    private long seq;
+    private Instant lastTimestamp;
+    private Instant skipUntil;
+
+    public LogTail(int capacity, int maxLineBytes) {
+        this.capacity = capacity;
+        this.maxLineBytes = maxLineBytes;
+    }
+
+    /**
+     * Adds a frame of output.
+     *
+     * @param stderr which stream the frame belongs to; TTY containers only have one, passed as stdout
+     */
+    public synchronized void append(boolean stderr, byte[] bytes) {
+        ByteArrayOutputStream buffer = partial[stderr ? 1 : 0];
+        int start = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == '\n') {
+                buffer.write(bytes, start, i - start);
+                emit(stderr, buffer);
+                start = i + 1;
+            } else if (buffer.size() + i - start >= maxLineBytes) {
+                buffer.write(bytes, start, i - start);
+                emit(stderr, buffer);
+                start = i;
+            }
+        }
+        buffer.write(bytes, start, bytes.length - start);
+    }
+
+    /**
+     * Emits the unfinished last line of each stream, e.g. when the upstream ends.
+     */
+    public synchronized void flush() {
+        for (int stream = 0; stream < partial.length; stream++) {
+            if (partial[stream].size() > 0) {
+                emit(stream == 1, partial[stream]);
+            }
+        }
+    }
+
+    /**
+     * Prepares for a new upstream that starts at the returned time. Docker's {@code since} has a resolution
+     * of seconds, so the new stream repeats the last lines; those up to the last timestamp seen are skipped.
+     *
+     * @return the timestamp of the last line seen, or null if none had one
+     */
+    public synchronized Instant resume() {
+        flush();
+        skipUntil = lastTimestamp;
+        return lastTimestamp;
+    }
+
+    private void emit(boolean stderr, ByteArrayOutputStream buffer) {
+        int length = buffer.size();
+        byte[] bytes = buffer.toByteArray();
+        buffer.reset();
+        if (length > 0 && bytes[length - 1] == '\r') length--;
+        String text = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        Instant timestamp = null;
+        int space = text.indexOf(' ');
+        if (space > 0) {
+            try {
+                timestamp = Instant.parse(text.substring(0, space));
+                text = text.substring(space + 1);
+            } catch (DateTimeParseException e) {
+                // Not timestamped, keep the whole line
+            }
+        }
+        if (timestamp != null) {
+            if (skipUntil != null && !timestamp.isAfter(skipUntil)) {
+                return;
+            }
+            skipUntil = null;
+            lastTimestamp = timestamp;
+        }
+        Line line = new Line(++seq, stderr, timestamp, text);
+        if (ring.size() == capacity) {
+            ring.poll();
+        }
+        ring.add(line);
+        for (Viewer viewer : viewers) {
+            viewer.onLine(line);
+        }
+    }
+
+    /**
+     * Registers a viewer and returns its backlog; every later line goes to the viewer live.
+     *
+     * @param afterSeq if 0 or more, the backlog is the lines after this sequence number (a reconnect)
+     * @param since    otherwise, if not null, the lines from this time on
+     * @param tail     otherwise, the last this many lines
+     */
+    public synchronized Backlog attach(Viewer viewer, long afterSeq, Instant since, int tail) {
+        List<Line> lines = new ArrayList<>();
+        if (afterSeq >= 0) {
+            for (Line line : ring) {
+                if (line.seq() > afterSeq) lines.add(line);
+            }
+        } else if (since != null) {
+            for (Line line : ring) {
+                if (line.timestamp() == null || !line.timestamp().isBefore(since)) lines.add(line);
+            }
+        } else {
+            Iterator<Line> newest = ring.descendingIterator();
+            while (newest.hasNext() && lines.size() < tail) {
+                lines.add(newest.next());
+            }
+            Collections.reverse(lines);
+        }
+        viewers.add(viewer);
+        return new Backlog(lines, seq);
+    }
+
+    /**
+     * @return true if no viewers are left
+     */
+    public synchronized boolean detach(Viewer viewer) {
+        viewers.remove(viewer);
+        return viewers.isEmpty();
+    }
+
+    public synchronized int getViewerCount() {
+        return viewers.size();
+    }
+
+    public synchronized int size() {
+        return ring.size();
+    }
+}
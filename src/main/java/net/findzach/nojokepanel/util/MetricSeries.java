@@ -0,0 +1,174 @@
+package net.findzach.nojokepanel.util;
+
+import java.util.Arrays;
+
+/**
+ * Resource usage history for one container, kept in fixed-size primitive ring buffers at three resolutions.
+ * <p>
+ * Samples go into the per-second tier; whenever a minute (or hour) boundary is crossed, the average of the
+ * samples seen during the closed interval is written to the next tier. Missing intervals are stored as NaN.
+ * Memory use is fixed at construction, about 20 KB with the default tier sizes, regardless of uptime.
+ * All methods are thread-safe.
+ */
+public class MetricSeries {
+
+    public static final int CPU_PERCENT = 0;
+    public static final int MEMORY_BYTES = 1;
+    public static final int MEMORY_LIMIT_BYTES = 2;
+    public static final int NET_RX_BYTES_PER_SEC = 3;
+    public static final int NET_TX_BYTES_PER_SEC = 4;
+    public static final int BLOCK_READ_BYTES_PER_SEC = 5;
+    public static final int BLOCK_WRITE_BYTES_PER_SEC = 6;
+    public static final int CHANNELS = 7;
+    public static final String[] CHANNEL_NAMES = {"cpu", "mem", "memLimit", "netRx", "netTx", "blkRead", "blkWrite"};
+
+    public enum Resolution {
+        SECOND(1), MINUTE(60), HOUR(3600);
+
+        private final long seconds;
+
+        Resolution(long seconds) {
+            this.seconds = seconds;
+        }
+
+        public long getSeconds() {
+            return seconds;
+        }
+    }
+
+    /**
+     * A window of one tier: the epoch second of the first slot, the slot width and one array per channel.
+     */
+    public record Window(long startEpochSecond, long stepSeconds, float[][] values) {
+    }
+
+    private final Tier[] tiers;
+
+    public MetricSeries() {
+        this(300, 240, 168); // 5 minutes, 4 hours, 7 days
+    }
+
+    public MetricSeries(int seconds, int minutes, int hours) {
+        this.tiers = new Tier[]{new Tier(Resolution.SECOND, seconds), new Tier(Resolution.MINUTE, minutes), new Tier(Resolution.HOUR, hours)};
+    }
+
+    /**
+     * Records one sample; values are indexed by the channel constants. Samples older than the newest one are ignored.
+     */
+    public synchronized void record(long epochSecond, float[] values) {
+        for (int i = 0; i < tiers.length; i++) {
+            Tier tier = tiers[i];
+            long slot = epochSecond / tier.resolution.seconds;
+            if (i == 0) {
+                tier.put(slot, values);
+            } else {
+                tier.accumulate(slot, values);
+            }
+        }
+    }
+
+    public synchronized Window window(Resolution resolution) {
+        return tiers[resolution.ordinal()].window();
+    }
+
+    /**
+     * @return the most recent per-second sample, or null if nothing was recorded yet
+     */
+    public synchronized float[] latest() {
+        Tier tier = tiers[0];
+        if (tier.lastSlot < 0) return null;
+        float[] values = new float[CHANNELS];
+        int index = tier.index(tier.lastSlot);
+        for (int c = 0; c < CHANNELS; c++) {
+            values[c] = tier.data[c * tier.capacity + index];
+        }
+        return values;
+    }
+
+    private static final class Tier {
+        private final Resolution resolution;
+        private final int capacity;
+        private final float[] data; // Channel-major: data[channel * capacity + index]
+        private final double[] sums = new double[CHANNELS];
+        private final int[] counts = new int[CHANNELS];
+        private long lastSlot = -1;
+        private long pendingSlot = -1;
+
+        private Tier(Resolution resolution, int capacity) {
+            this.resolution = resolution;
+            this.capacity = capacity;
+            this.data = new float[CHANNELS * capacity];
+            Arrays.fill(data, Float.NaN);
+        }
+
+        private int index(long slot) {
+            return (int) (slot % capacity);
+        }
+
+        private void put(long slot, float[] values) {
+            if (slot < lastSlot) return;
+            advanceTo(slot);
+            int index = index(slot);
+            for (int c = 0; c < CHANNELS; c++) {
+                data[c * capacity + index] = values[c];
+            }
+        }
+
+        /**
+         * Averages samples per slot, writing the slot out once a sample for a later slot arrives.
+         */
+        private void accumulate(long slot, float[] values) {
+            if (slot < pendingSlot) return;
+            if (slot != pendingSlot) {
+                if (pendingSlot >= 0) {
+                    float[] averages = new float[CHANNELS];
+                    for (int c = 0; c < CHANNELS; c++) {
+                        averages[c] = counts[c] == 0 ? Float.NaN : (float) (sums[c] / counts[c]);
+                    }
+                    put(pendingSlot, averages);
+                }
+                Arrays.fill(sums, 0);
+                Arrays.fill(counts, 0);
+                pendingSlot = slot;
+            }
+            for (int c = 0; c < CHANNELS; c++) {
+                if (!Float.isNaN(values[c])) {
+                    sums[c] += values[c];
+                    counts[c]++;
+                }
+            }
+        }
+
+        /**
+         * Blanks the slots skipped since the last write, so stale values from a previous lap don't show through.
+         */
+        private void advanceTo(long slot) {
+            if (lastSlot >= 0) {
+                long gap = Math.min(slot - lastSlot, capacity);
+                for (long s = slot - gap + 1; s <= slot; s++) {
+                    int index = index(s);
+                    for (int c = 0; c < CHANNELS; c++) {
+                        data[c * capacity + index] = Float.NaN;
+                    }
+                }
+            }
+            lastSlot = Math.max(lastSlot, slot);
+        }
+
+        private Window window() {
+            float[][] values = new float[CHANNELS][capacity];
+            if (lastSlot < 0) {
+                return new Window(0, resolution.seconds, new float[CHANNELS][0]);
+            }
+            long firstSlot = lastSlot - capacity + 1;
+            for (int i = 0; i < capacity; i++) {
+                long slot = firstSlot + i;
+                int index = slot < 0 ? -1 : index(slot);
+                for (int c = 0; c < CHANNELS; c++) {
+                    values[c][i] = index < 0 ? Float.NaN : data[c * capacity + index];
+                }
+            }
+            return new Window(firstSlot * resolution.seconds, resolution.seconds, values);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package net.findzach.nojokepanel.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A small DAG of stages for one run of a pipeline. A stage starts as soon as every stage it depends on has
+ * finished, so independent stages overlap on the executor.
+ * <p>
+ * Stages must be added after their dependencies, which keeps the graph acyclic by construction. A failed
+ * stage is retried up to its attempt limit with a linear backoff. Once a stage fails for good, or the
+ * thread waiting in {@link #run()} is interrupted, the whole run is cancelled: stages that haven't started
+ * never do and running ones are interrupted. {@link #run()} only returns once no stage is running any more,
+ * so the caller can safely clean up what the stages were working on.
+ */
+@Slf4j
+public class StageGraph {
+
+    private static final long SETTLE_TIMEOUT_SECONDS = 30;
+
+    public interface Body {
+        void run() throws Exception;
+    }
+
+    private record Stage(String name, int maxAttempts, Body body, List<String> dependsOn) {
+    }
+
+    private final String name;
+    private final Executor executor;
+    private final long retryBackoffMillis;
+    private final Map<String, Stage> stages = new LinkedHashMap<>();
+    private final Map<String, Thread> running = new ConcurrentHashMap<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private volatile boolean cancelled;
+
+    /**
+     * @param name used in log messages, e.g. the container being deployed
+     */
+    public StageGraph(String name, Executor executor, long retryBackoffMillis) {
+        this.name = name;
+        this.executor = executor;
+        this.retryBackoffMillis = retryBackoffMillis;
+    }
+
+    public StageGraph stage(String stageName, Body body, String... dependsOn) {
+        return stage(stageName, 1, body, dependsOn);
+    }
+
+    /**
+     * @param maxAttempts how often the stage runs before its failure fails the graph; only worth raising for
+     *                    stages that are safe to repeat
+     */
+    public StageGraph stage(String stageName, int maxAttempts, Body body, String... dependsOn) {
+        if (stages.containsKey(stageName)) {
+            throw new IllegalArgumentException("Duplicate stage " + stageName);
+        }
+        for (String dependency : dependsOn) {
+            if (!stages.containsKey(dependency)) {
+                throw new IllegalArgumentException("Stage " + stageName + " depends on " + dependency + ", which must be added first");
+            }
+        }
+        stages.put(stageName, new Stage(stageName, Math.max(1, maxAttempts), body, List.of(dependsOn)));
+        return this;
+    }
+
+    /**
+     * Runs every stage and waits for them.
+     *
+     * @throws Exception the first stage failure, as thrown by the stage
+     * @throws InterruptedException if the calling thread was interrupted, after cancelling the stages
+     */
+    public void run() throws Exception {
+        Map<String, CompletableFuture<Void>> futures = new HashMap<>();
+        List<CompletableFuture<Void>> all = new ArrayList<>();
+        for (Stage stage : stages.values()) {
+            CompletableFuture<?>[] dependencies = stage.dependsOn().stream().map(futures::get).toArray(CompletableFuture[]::new);
+            CompletableFuture<Void> future = CompletableFuture.allOf(dependencies).thenRunAsync(() -> execute(stage), executor);
+            futures.put(stage.name(), future);
+            all.add(future);
+        }
+        CompletableFuture<Void> settled = CompletableFuture.allOf(all.toArray(new CompletableFuture[0]));
+        Throwable outcome = null;
+        try {
+            settled.get();
+        } catch (ExecutionException e) {
+            outcome = unwrap(e.getCause()); // A cancellation, or e.g. the executor rejecting a stage
+        } catch (InterruptedException e) {
+            cancel();
+            awaitSettled(settled);
+            throw e;
+        }
+        Throwable cause = failure.get() != null ? failure.get() : outcome;
+        if (cause instanceof Exception exception) {
+            throw exception;
+        }
+        if (cause instanceof Error error) {
+            throw error;
+        }
+    }
+
+    /**
+     * Stops the run: pending stages are skipped and running ones interrupted.
+     */
+    public void cancel() {
+        cancelled = true;
+        running.values().forEach(Thread::interrupt);
+    }
+
+    private void execute(Stage stage) {
+        if (cancelled) {
+            throw new CancellationException("Stage " + stage.name() + " of " + name + " skipped, the run was cancelled");
+        }
+        running.put(stage.name(), Thread.currentThread());
+        try {
+            if (cancelled) Thread.currentThread().interrupt(); // Cancelled between the check and the put
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    stage.body().run();
+                    return;
+                } catch (Exception e) {
+                    if (cancelled) {
+                        throw new CancellationException("Stage " + stage.name() + " of " + name + " was cancelled");
+                    }
+                    if (e instanceof InterruptedException || attempt >= stage.maxAttempts()) {
+                        if (failure.compareAndSet(null, e)) {
+                            log.warn("Stage {} of {} failed, cancelling the remaining stages: {}", stage.name(), name, e.getMessage());
+                            cancel();
+                        }
+                        throw new CompletionException(e);
+                    }
+                    log.warn("Stage {} of {} failed (attempt {} of {}), retrying: {}", stage.name(), name, attempt, stage.maxAttempts(), e.getMessage());
+                    Thread.sleep(retryBackoffMillis * attempt);
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new CancellationException("Stage " + stage.name() + " of " + name + " was cancelled");
+        } finally {
+            running.remove(stage.name());
+            Thread.interrupted(); // Don't leak a cancellation interrupt into the executor's next task
+        }
+    }
+
+    private void awaitSettled(CompletableFuture<Void> settled) {
+        try {
+            settled.get(SETTLE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            // Expected, the stages were cancelled
+        } catch (TimeoutException e) {
+            log.warn("Stages {} of {} did not stop within {} s of being cancelled", running.keySet(), name, SETTLE_TIMEOUT_SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        while (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e;
+    }
+}
@@ -0,0 +1,68 @@
+package net.findzach.nojokepanel.util;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * AES-GCM encryption for secrets stored in the registry database, such as repository access tokens.
+ * <p>
+ * Ciphertext is {@code v1:} followed by the Base64 of a random 12-byte IV and the encrypted bytes with their
+ * authentication tag, so tampered or wrongly keyed values fail to decrypt instead of yielding garbage.
+ */
+public class TokenCipher {
+
+    private static final String PREFIX = "v1:";
+    private static final int IV_BYTES = 12;
+    private static final int TAG_BITS = 128;
+
+    private final SecretKey key;
+    private final SecureRandom random = new SecureRandom();
+
+    public TokenCipher(byte[] key) {
+        if (key.length != 16 && key.length != 32) {
+            throw new IllegalArgumentException("Token key must be 128 or 256 bits, got " + key.length * 8);
+        }
+        this.key = new SecretKeySpec(key, "AES");
+    }
+
+    public static byte[] generateKey() {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        return key;
+    }
+
+    public String encrypt(String plaintext) {
+        try {
+            byte[] iv = new byte[IV_BYTES];
+            random.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+            byte[] encrypted = cipher.doFinal(plaintext.getBytes(StandardCharsets.UTF_8));
+            ByteBuffer out = ByteBuffer.allocate(IV_BYTES + encrypted.length).put(iv).put(encrypted);
+            return PREFIX + Base64.getEncoder().encodeToString(out.array());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to encrypt token", e);
+        }
+    }
+
+    public String decrypt(String ciphertext) {
+        if (!ciphertext.startsWith(PREFIX)) {
+            throw new IllegalArgumentException("Value is not an encrypted token");
+        }
+        try {
+            byte[] data = Base64.getDecoder().decode(ciphertext.substring(PREFIX.length()));
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, data, 0, IV_BYTES));
+            return new String(cipher.doFinal(data, IV_BYTES, data.length - IV_BYTES), StandardCharsets.UTF_8);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to decrypt token, was the key changed?", e);
+        }
+    }
+}
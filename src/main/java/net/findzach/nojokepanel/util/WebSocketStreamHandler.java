@@ -6,21 +6,66 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.exec.ExecuteStreamHandler;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 
+/**
+ * Pumps a build process's stdout and stderr into the container's build log and out to WebSocket viewers.
+ * <p>
+ * Both streams are serviced by a single pump task that polls them without blocking. Lines are split at the
+ * byte level into reusable buffers and appended to the {@link BuildLog} as bytes; viewers receive output in
+ * batches bounded by size and age instead of one message per line. Mirroring every line to SLF4J is off
+ * unless requested, since a synchronous logger call per line caps throughput.
+ */
 @Slf4j
 public class WebSocketStreamHandler implements ExecuteStreamHandler {
 
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+    private static final int MAX_LINE_BYTES = 64 * 1024;
+    private static final int BATCH_BYTES = 32 * 1024;
+    private static final long BATCH_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long MAX_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final int ERROR_TAIL_CHARS = 16 * 1024;
+    private static final long STOP_TIMEOUT_SECONDS = 30;
+    private static final byte[] ERROR_PREFIX = "ERROR: ".getBytes(StandardCharsets.UTF_8);
+
+    private static final AtomicInteger pumpCount = new AtomicInteger();
+    private static final ExecutorService pumps = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "build-output-pump-" + pumpCount.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
     private final PanelContainer panelContainer;
     private final BuildLogWebSocketHandler webSocketHandler;
+    private final boolean mirrorToLog;
     private final StringBuilder errorOutput = new StringBuilder();
-    private InputStream inputStream;
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private final byte[] readBuffer = new byte[READ_BUFFER_BYTES];
+    private byte[] batch = new byte[BATCH_BYTES * 2];
+    private int batchLength;
+    private long batchEndOffset = -1;
+    private long batchStartedAt;
+    private volatile boolean stopRequested;
+    private StreamPump output;
+    private StreamPump error;
     private OutputStream outputStream;
-    private InputStream errorStream;
 
     public WebSocketStreamHandler(PanelContainer panelContainer, BuildLogWebSocketHandler webSocketHandler) {
+        this(panelContainer, webSocketHandler, false);
+    }
+
+    public WebSocketStreamHandler(PanelContainer panelContainer, BuildLogWebSocketHandler webSocketHandler, boolean mirrorToLog) {
         this.panelContainer = panelContainer;
         this.webSocketHandler = webSocketHandler;
+        this.mirrorToLog = mirrorToLog;
     }
 
     @Override
@@ -30,64 +75,187 @@ public class WebSocketStreamHandler implements ExecuteStreamHandler {
 
     @Override
     public void setProcessErrorStream(InputStream is) throws IOException {
-        this.errorStream = is;
-        startErrorStreamReader();
+        this.error = new StreamPump(is, true);
     }
 
     @Override
     public void setProcessOutputStream(InputStream is) throws IOException {
-        this.inputStream = is;
-        startOutputStreamReader();
+        this.output = new StreamPump(is, false);
     }
 
     @Override
     public void start() throws IOException {
-        // Streams are handled in setProcessOutputStream and setProcessErrorStream
+        pumps.execute(this::pump);
     }
 
+    /**
+     * Called once the process has exited. Waits for the pump to drain what's left in the pipes before
+     * the streams are closed.
+     */
     @Override
     public void stop() {
+        stopRequested = true;
         try {
-            if (inputStream != null) inputStream.close();
-            if (errorStream != null) errorStream.close();
+            if (!finished.await(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Output pump for container {} did not finish draining in time", panelContainer.getId());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (output != null) output.in.close();
+            if (error != null) error.in.close();
             if (outputStream != null) outputStream.close();
         } catch (IOException e) {
             log.error("Error closing streams", e);
         }
     }
 
-    private void startOutputStreamReader() {
-        new Thread(() -> {
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    panelContainer.addLog(line);
-                    webSocketHandler.broadcastMessage(panelContainer.getId(), line);
-                    log.info("Build output for container {}: {}", panelContainer.getId(), line);
+    private void pump() {
+        long idleNanos = 0;
+        try {
+            while (true) {
+                boolean stopping = stopRequested;
+                boolean progress = poll(output) | poll(error);
+                if (stopping && !progress) {
+                    break; // The process has exited and both pipes are empty
+                }
+                if (progress) {
+                    idleNanos = 0;
+                } else {
+                    flush(false);
+                    idleNanos = Math.min(MAX_IDLE_NANOS, Math.max(TimeUnit.MILLISECONDS.toNanos(1), idleNanos * 2));
+                    LockSupport.parkNanos(idleNanos);
                 }
-            } catch (IOException e) {
-                log.error("Error reading output stream for container {}", panelContainer.getId(), e);
             }
-        }).start();
+            if (output != null) output.endOfStream();
+            if (error != null) error.endOfStream();
+            flush(true);
+        } catch (IOException e) {
+            log.error("Error reading build output for container {}", panelContainer.getId(), e);
+            flush(true);
+        } finally {
+            finished.countDown();
+        }
     }
 
-    private void startErrorStreamReader() {
-        new Thread(() -> {
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(errorStream))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    errorOutput.append(line).append("\n");
-                    panelContainer.addLog("ERROR: " + line);
-                    webSocketHandler.broadcastMessage(panelContainer.getId(), "ERROR: " + line);
-                    log.error("Build error for container {}: {}", panelContainer.getId(), line);
-                }
-            } catch (IOException e) {
-                log.error("Error reading error stream for container {}", panelContainer.getId(), e);
-            }
-        }).start();
+    private boolean poll(StreamPump stream) throws IOException {
+        if (stream == null || stream.eof) return false;
+        int available = stream.in.available();
+        if (available <= 0 && !stopRequested) return false;
+        int read = stream.in.read(readBuffer, 0, Math.min(Math.max(available, 1), readBuffer.length));
+        if (read < 0) {
+            stream.eof = true;
+            return false;
+        }
+        stream.split(readBuffer, read);
+        flush(false);
+        return read > 0;
+    }
+
+    private void appendToBatch(byte[] line, int length, long endOffset) {
+        if (batchLength == 0) batchStartedAt = System.nanoTime();
+        if (batchLength + length + 1 > batch.length) {
+            batch = Arrays.copyOf(batch, Math.max(batch.length * 2, batchLength + length + 1));
+        }
+        System.arraycopy(line, 0, batch, batchLength, length);
+        batchLength += length;
+        batch[batchLength++] = '\n';
+        batchEndOffset = endOffset;
+    }
+
+    private void flush(boolean force) {
+        if (batchLength == 0) return;
+        if (!force && batchLength < BATCH_BYTES && System.nanoTime() - batchStartedAt < BATCH_NANOS) return;
+        String text = new String(batch, 0, batchLength - 1, StandardCharsets.UTF_8); // One String per batch
+        webSocketHandler.broadcastMessage(panelContainer.getId(), text, batchEndOffset);
+        batchLength = 0;
+        batchEndOffset = -1;
+        if (batch.length > BATCH_BYTES * 4) batch = new byte[BATCH_BYTES * 2]; // Don't hold on to a spike
     }
 
     public String getErrorOutput() {
-        return errorOutput.toString();
+        synchronized (errorOutput) {
+            return errorOutput.toString();
+        }
+    }
+
+    /**
+     * Splits one process stream into lines. Stderr lines are stored with an "ERROR: " prefix, which is
+     * kept at the start of the reusable line buffer.
+     */
+    private final class StreamPump {
+        private final InputStream in;
+        private final boolean stderr;
+        private final int prefixLength;
+        private byte[] line = new byte[1024];
+        private int lineLength;
+        private boolean eof;
+
+        private StreamPump(InputStream in, boolean stderr) {
+            this.in = in;
+            this.stderr = stderr;
+            if (stderr) System.arraycopy(ERROR_PREFIX, 0, line, 0, ERROR_PREFIX.length);
+            this.prefixLength = stderr ? ERROR_PREFIX.length : 0;
+            this.lineLength = prefixLength;
+        }
+
+        private void split(byte[] buffer, int length) {
+            int start = 0;
+            for (int i = 0; i < length; i++) {
+                if (buffer[i] == '\n') {
+                    appendToLine(buffer, start, i - start);
+                    emitLine();
+                    start = i + 1;
+                }
+            }
+            appendToLine(buffer, start, length - start);
+        }
+
+        private void appendToLine(byte[] buffer, int offset, int length) {
+            while (length > 0) {
+                if (lineLength == prefixLength + MAX_LINE_BYTES) {
+                    emitLine(); // Overlong line, split it
+                }
+                if (lineLength == line.length) {
+                    line = Arrays.copyOf(line, Math.min(line.length * 2, prefixLength + MAX_LINE_BYTES));
+                }
+                int n = Math.min(length, line.length - lineLength);
+                System.arraycopy(buffer, offset, line, lineLength, n);
+                lineLength += n;
+                offset += n;
+                length -= n;
+            }
+        }
+
+        private void emitLine() {
+            int length = lineLength;
+            if (length > prefixLength && line[length - 1] == '\r') length--;
+            BuildLog buildLog = panelContainer.getBuildLog();
+            long endOffset = buildLog != null ? buildLog.append(line, 0, length, true) : -1;
+            appendToBatch(line, length, endOffset);
+            if (stderr || mirrorToLog) {
+                String text = new String(line, prefixLength, length - prefixLength, StandardCharsets.UTF_8);
+                if (stderr) rememberError(text);
+                if (mirrorToLog) {
+                    if (stderr) log.error("Build error for container {}: {}", panelContainer.getId(), text);
+                    else log.info("Build output for container {}: {}", panelContainer.getId(), text);
+                }
+            }
+            lineLength = prefixLength;
+        }
+
+        private void endOfStream() {
+            if (lineLength > prefixLength) emitLine();
+        }
+
+        private void rememberError(String text) {
+            synchronized (errorOutput) {
+                errorOutput.append(text).append("\n");
+                if (errorOutput.length() > ERROR_TAIL_CHARS) {
+                    errorOutput.delete(0, errorOutput.length() - ERROR_TAIL_CHARS);
+                }
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,69 @@
+package net.findzach.nojokepanel.benchmark;
+
+import net.findzach.nojokepanel.handler.BuildLogWebSocketHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link BuildLogWebSocketHandler#broadcastMessage} fanning one build output batch out to N viewers. The
+ * sessions accept frames instantly, so this measures queueing and the sender pool, not the network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BuildLogBroadcastBenchmark {
+
+    private static final String CONTAINER_ID = "app-benchmark";
+
+    @Param({"1", "10", "100", "1000"})
+    public int viewers;
+
+    private BuildLogWebSocketHandler handler;
+    private List<InMemoryWebSocketSession> sessions;
+    private String message;
+    private long offset;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        handler = new BuildLogWebSocketHandler(4);
+        ReflectionTestUtils.setField(handler, "subscriberQueueKb", 1024);
+        ReflectionTestUtils.setField(handler, "maxFrameChars", 65536);
+        ReflectionTestUtils.setField(handler, "sendTimeLimitMs", 10000);
+        sessions = new ArrayList<>();
+        for (int i = 0; i < viewers; i++) {
+            InMemoryWebSocketSession session = new InMemoryWebSocketSession("session-" + i, CONTAINER_ID);
+            handler.afterConnectionEstablished(session);
+            sessions.add(session);
+        }
+        message = "[builder] Downloading layer sha256:4f4fb700ef54461cfa02571ae0db9a0dc1e0cdb5577484a6d75e68dc38e8acc1 100%";
+    }
+
+    @Benchmark
+    public void broadcast() {
+        handler.broadcastMessage(CONTAINER_ID, message, offset += message.length() + 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        handler.shutdown();
+    }
+}
@@ -0,0 +1,69 @@
+package net.findzach.nojokepanel.benchmark;
+
+import net.findzach.nojokepanel.model.PanelContainer;
+import net.findzach.nojokepanel.service.ContainerService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Walking the in-memory container registry the way the dashboard, the metrics sync and Docker event lookups
+ * do. Only the registry map is exercised, so the service is built without its collaborators.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContainerRegistryBenchmark {
+
+    private static final String[] STATUSES = {"RUNNING", "RUNNING", "RUNNING", "STOPPED", "FAILED"};
+
+    @Param({"10000"})
+    public int containers;
+
+    private ContainerService containerService;
+
+    @Setup
+    public void setUp() {
+        containerService = new ContainerService(null, null, null, null, null, null, null, null, null);
+        for (int i = 0; i < containers; i++) {
+            PanelContainer panelContainer = new PanelContainer("app-" + i + "-latest", "github-" + i, "app-" + i + ":latest", "app" + i + ".example.com", 8080);
+            panelContainer.setDockerId(String.format("%064x", i));
+            panelContainer.setStatus(STATUSES[i % STATUSES.length]);
+            containerService.getContainers().put(panelContainer.getId(), panelContainer);
+        }
+    }
+
+    @Benchmark
+    public int countRunning() {
+        int running = 0;
+        for (PanelContainer panelContainer : containerService.getContainers().values()) {
+            if ("RUNNING".equals(panelContainer.getStatus())) running++;
+        }
+        return running;
+    }
+
+    @Benchmark
+    public List<PanelContainer> copyForDashboard() {
+        return new ArrayList<>(containerService.getContainers().values());
+    }
+
+    @Benchmark
+    public PanelContainer findByDockerIdMiss() {
+        return containerService.findByDockerId("unknown");
+    }
+}
@@ -0,0 +1,80 @@
+package net.findzach.nojokepanel.benchmark;
+
+import net.findzach.nojokepanel.model.PanelContainer;
+import net.findzach.nojokepanel.util.LogChunkStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appending to and rendering a container's build log through {@link PanelContainer}, with the log large
+ * enough that older chunks have spilled to disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PanelContainerLogBenchmark {
+
+    private static final String LINE = "[builder] Paketo Buildpack for Maven 6.17.2 - Running './mvnw -Dmaven.test.skip=true package'";
+
+    private Path spillDir;
+    private LogChunkStore logChunkStore;
+    private PanelContainer panelContainer;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws Exception {
+        spillDir = Files.createTempDirectory("nojokepanel-bench");
+        logChunkStore = new LogChunkStore(64 * 1024, 4L * 1024 * 1024, spillDir);
+        panelContainer = new PanelContainer("app-benchmark", "github-benchmark", "app-benchmark:latest", "bench.local", 8080);
+        panelContainer.setBuildLog(logChunkStore.create(panelContainer.getId()));
+        for (int i = 0; i < 100_000; i++) {
+            panelContainer.addLog(LINE + " " + i); // ~10 MB, most of it spilled
+        }
+    }
+
+    @Benchmark
+    public long addLog() {
+        return panelContainer.addLog(LINE);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long addLogContended() {
+        return panelContainer.addLog(LINE);
+    }
+
+    /**
+     * What the detail page renders: the last 256 KB of the log.
+     */
+    @Benchmark
+    public List<String> getLogs() {
+        return panelContainer.getLogs();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws Exception {
+        panelContainer.getBuildLog().release();
+        try (var paths = Files.walk(spillDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
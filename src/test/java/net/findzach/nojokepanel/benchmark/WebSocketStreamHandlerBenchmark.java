@@ -0,0 +1,102 @@
+package net.findzach.nojokepanel.benchmark;
+
+import net.findzach.nojokepanel.handler.BuildLogWebSocketHandler;
+import net.findzach.nojokepanel.model.PanelContainer;
+import net.findzach.nojokepanel.util.LogChunkStore;
+import net.findzach.nojokepanel.util.WebSocketStreamHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Line processing throughput of {@link WebSocketStreamHandler}: splitting a build's stdout and stderr into
+ * lines, appending them to the build log and batching them out to one viewer. Scores are lines per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WebSocketStreamHandlerBenchmark {
+
+    private static final int STDOUT_LINES = 18_000;
+    private static final int STDERR_LINES = 2_000;
+
+    private Path spillDir;
+    private LogChunkStore logChunkStore;
+    private BuildLogWebSocketHandler webSocketHandler;
+    private byte[] stdout;
+    private byte[] stderr;
+    private PanelContainer panelContainer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        spillDir = Files.createTempDirectory("nojokepanel-bench");
+        logChunkStore = new LogChunkStore(64 * 1024, 256L * 1024 * 1024, spillDir);
+        webSocketHandler = new BuildLogWebSocketHandler(1);
+        ReflectionTestUtils.setField(webSocketHandler, "subscriberQueueKb", 1024);
+        ReflectionTestUtils.setField(webSocketHandler, "maxFrameChars", 65536);
+        ReflectionTestUtils.setField(webSocketHandler, "sendTimeLimitMs", 10000);
+        webSocketHandler.afterConnectionEstablished(new InMemoryWebSocketSession("viewer", "app-benchmark"));
+        stdout = lines(STDOUT_LINES, "[builder] Adding layer 'paketo-buildpacks/bellsoft-liberica:jre' ");
+        stderr = lines(STDERR_LINES, "warning: deprecated API in module ");
+    }
+
+    private static byte[] lines(int count, String prefix) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < count; i++) {
+            out.writeBytes((prefix + i + (i % 10 == 0 ? "\r\n" : "\n")).getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    @Setup(Level.Invocation)
+    public void newBuild() {
+        panelContainer = new PanelContainer("app-benchmark", "github-benchmark", "app-benchmark:latest", "bench.local", 8080);
+        panelContainer.setBuildLog(logChunkStore.create(panelContainer.getId()));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STDOUT_LINES + STDERR_LINES)
+    public long processBuildOutput() throws Exception {
+        WebSocketStreamHandler handler = new WebSocketStreamHandler(panelContainer, webSocketHandler);
+        handler.setProcessOutputStream(new ByteArrayInputStream(stdout));
+        handler.setProcessErrorStream(new ByteArrayInputStream(stderr));
+        handler.start();
+        handler.stop();
+        return panelContainer.getBuildLog().lineCount();
+    }
+
+    @TearDown(Level.Invocation)
+    public void releaseBuild() {
+        panelContainer.getBuildLog().release();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        webSocketHandler.shutdown();
+        try (var paths = Files.walk(spillDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package net.findzach.nojokepanel.handler;
+
+import net.findzach.nojokepanel.model.PanelContainer;
+import net.findzach.nojokepanel.service.ContainerService;
+import net.findzach.nojokepanel.util.BuildLog;
+import net.findzach.nojokepanel.util.LogChunkStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Path;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BuildLogWebSocketHandlerTest {
+
+    private static final String CONTAINER_ID = "app-1";
+
+    @TempDir
+    Path spillDir;
+
+    private BuildLogWebSocketHandler handler;
+    private ContainerService containerService;
+
+    @BeforeEach
+    void setUp() {
+        handler = new BuildLogWebSocketHandler(2);
+        ReflectionTestUtils.setField(handler, "subscriberQueueKb", 1024);
+        ReflectionTestUtils.setField(handler, "maxFrameChars", 65536);
+        ReflectionTestUtils.setField(handler, "sendTimeLimitMs", 10000);
+        containerService = mock(ContainerService.class);
+        ApplicationContext applicationContext = mock(ApplicationContext.class);
+        when(applicationContext.getBean(ContainerService.class)).thenReturn(containerService);
+        ReflectionTestUtils.setField(handler, "applicationContext", applicationContext);
+    }
+
+    @AfterEach
+    void tearDown() {
+        handler.shutdown();
+    }
+
+    @Test
+    void fansEveryLineOutToEveryViewer() throws Exception {
+        RecordingSession first = new RecordingSession("s1", null);
+        RecordingSession second = new RecordingSession("s2", null);
+        handler.afterConnectionEstablished(first);
+        handler.afterConnectionEstablished(second);
+        assertEquals(2, handler.getViewerCount(CONTAINER_ID));
+
+        for (int i = 0; i < 50; i++) {
+            handler.broadcastMessage(CONTAINER_ID, "line " + i);
+        }
+
+        List<String> expected = lines(0, 50);
+        assertEquals(expected, first.awaitLines(50));
+        assertEquals(expected, second.awaitLines(50));
+
+        handler.afterConnectionClosed(first, CloseStatus.NORMAL);
+        assertEquals(1, handler.getViewerCount(CONTAINER_ID));
+    }
+
+    @Test
+    void replaysFromTheOffsetThenContinuesLiveWithoutGapsOrDuplicates() throws Exception {
+        BuildLog buildLog = new LogChunkStore(64, 1024 * 1024, spillDir).create(CONTAINER_ID);
+        PanelContainer panelContainer = new PanelContainer(CONTAINER_ID, "app", "app-1:latest", "app.example.com", 8080);
+        panelContainer.setBuildLog(buildLog);
+        when(containerService.getContainer(CONTAINER_ID)).thenReturn(panelContainer);
+        long[] offsets = new long[30];
+        for (int i = 0; i < 20; i++) {
+            offsets[i] = buildLog.append("line " + i);
+        }
+
+        RecordingSession viewer = new RecordingSession("s1", offsets[4]);
+        handler.afterConnectionEstablished(viewer);
+        handler.broadcastMessage(CONTAINER_ID, "line 19", offsets[19]); // Late delivery of a replayed line
+        for (int i = 20; i < 30; i++) {
+            offsets[i] = buildLog.append("line " + i);
+            handler.broadcastMessage(CONTAINER_ID, "line " + i, offsets[i]);
+        }
+
+        assertEquals(lines(5, 30), viewer.awaitLines(25));
+    }
+
+    private static List<String> lines(int from, int to) {
+        List<String> lines = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            lines.add("line " + i);
+        }
+        return lines;
+    }
+
+    /**
+     * Keeps the lines of every frame it is sent, without the offset headers.
+     */
+    private static final class RecordingSession implements WebSocketSession {
+        private final String id;
+        private final URI uri;
+        private final List<String> lines = new CopyOnWriteArrayList<>();
+        private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+
+        private RecordingSession(String id, Long offset) {
+            this.id = id;
+            this.uri = URI.create("ws://localhost/build-logs?containerId=" + CONTAINER_ID + (offset != null ? "&offset=" + offset : ""));
+        }
+
+        List<String> awaitLines(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (lines.size() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(50); // Anything beyond the expected lines would be a duplicate
+            return new ArrayList<>(lines);
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) {
+            for (String line : ((TextMessage) message).getPayload().split("\n")) {
+                if (!line.startsWith(LogSubscriber.OFFSET_HEADER)) lines.add(line);
+            }
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public URI getUri() {
+            return uri;
+        }
+
+        @Override
+        public HttpHeaders getHandshakeHeaders() {
+            return new HttpHeaders();
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public Principal getPrincipal() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return null;
+        }
+
+        @Override
+        public String getAcceptedProtocol() {
+            return null;
+        }
+
+        @Override
+        public void setTextMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getTextMessageSizeLimit() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getBinaryMessageSizeLimit() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public List<WebSocketExtension> getExtensions() {
+            return List.of();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void close(CloseStatus status) {
+        }
+    }
+}
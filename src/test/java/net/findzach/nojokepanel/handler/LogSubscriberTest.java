@@ -0,0 +1,46 @@
+package net.findzach.nojokepanel.handler;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class LogSubscriberTest {
+
+    @Test
+    void boundsTheQueueByCharactersAndMarksWhatWasDropped() throws Exception {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.isOpen()).thenReturn(true);
+        List<Runnable> sends = new ArrayList<>();
+        LogSubscriber subscriber = new LogSubscriber(session, sends::add, 4000, 1 << 20);
+
+        // A batch bigger than the whole queue still goes through when nothing else is waiting, but fills it
+        subscriber.offer("x".repeat(10_000), 10_000);
+        for (int i = 0; i < 3; i++) {
+            subscriber.offer("y".repeat(10), 10_010 + i * 10L);
+        }
+        assertEquals(1, sends.size(), "the viewer is drained by one task at a time");
+        sends.remove(0).run();
+
+        // Once drained, lines are queued again up to the limit
+        for (int i = 0; i < 5; i++) {
+            subscriber.offer(String.valueOf((char) ('a' + i)).repeat(1000), 11_000 + i * 1000L);
+        }
+        sends.remove(0).run();
+
+        ArgumentCaptor<TextMessage> frames = ArgumentCaptor.forClass(TextMessage.class);
+        verify(session, times(2)).sendMessage(frames.capture());
+        String first = frames.getAllValues().get(0).getPayload();
+        assertEquals(LogSubscriber.OFFSET_HEADER + "10000\n[... 3 batches of output dropped, viewer is too slow ...]\n"
+                + "x".repeat(10_000), first);
+        String second = frames.getAllValues().get(1).getPayload();
+        assertTrue(second.startsWith(LogSubscriber.OFFSET_HEADER + "14000\n[... 1 batches of output dropped"));
+        assertTrue(second.endsWith("a".repeat(1000) + "\n" + "b".repeat(1000) + "\n" + "c".repeat(1000) + "\n" + "d".repeat(1000)));
+    }
+}
@@ -0,0 +1,48 @@
+package net.findzach.nojokepanel.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BuildCacheTest {
+
+    private static final String REPO = "https://github.com/FindZach/app";
+
+    @TempDir
+    Path root;
+
+    @Test
+    void findsBuildsByNodeCommitAndSettingsAcrossRestarts() {
+        BuildCache cache = new BuildCache(root.toString());
+        cache.record("node-a", REPO, "abc", "settings", "app:1", "sha256:1");
+        assertEquals("sha256:1", cache.find("node-a", REPO + ".git", "abc", "settings").orElseThrow().imageId());
+        assertTrue(cache.find("node-b", REPO, "abc", "settings").isEmpty(), "the image only exists on the node that built it");
+        assertTrue(cache.find("node-a", REPO, "abc", "other settings").isEmpty());
+        assertTrue(cache.find("node-a", REPO, null, "settings").isEmpty());
+
+        BuildCache restarted = new BuildCache(root.toString());
+        BuildCache.BuildRecord record = restarted.find("node-a", REPO, "abc", "settings").orElseThrow();
+        restarted.evict(record);
+        assertTrue(new BuildCache(root.toString()).find("node-a", REPO, "abc", "settings").isEmpty());
+    }
+
+    @Test
+    void lookupsOnlyReachTheFileOnFlush() throws Exception {
+        BuildCache cache = new BuildCache(root.toString());
+        cache.record("node-a", REPO, "abc", "settings", "app:1", "sha256:1");
+        Path records = root.resolve("builds.json");
+        String saved = Files.readString(records);
+        long builtAt = cache.getRecords().get(0).lastUsedAt();
+
+        Thread.sleep(5);
+        cache.find("node-a", REPO, "abc", "settings");
+        assertEquals(saved, Files.readString(records));
+
+        cache.flush();
+        assertTrue(new BuildCache(root.toString()).getRecords().get(0).lastUsedAt() > builtAt);
+    }
+}
@@ -0,0 +1,71 @@
+package net.findzach.nojokepanel.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BuildSchedulerTest {
+
+    private BuildScheduler scheduler;
+
+    @AfterEach
+    void tearDown() {
+        if (scheduler != null) scheduler.shutdown();
+    }
+
+    @Test
+    void runsQueuedBuildsByPriorityThenFifo() throws Exception {
+        scheduler = new BuildScheduler(1, 10);
+        CountDownLatch blocker = new CountDownLatch(1);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        scheduler.submit("blocker", 0, blocker::await);
+        scheduler.submit("low-1", 0, () -> order.add("low-1"));
+        BuildScheduler.BuildTask last = scheduler.submit("low-2", 0, () -> order.add("low-2"));
+        BuildScheduler.BuildTask high = scheduler.submit("high", 5, () -> order.add("high"));
+        assertEquals(1, scheduler.getQueuePosition("high"));
+
+        blocker.countDown();
+        assertEquals(BuildScheduler.State.SUCCEEDED, last.getCompletion().get(5, TimeUnit.SECONDS));
+        assertEquals(BuildScheduler.State.SUCCEEDED, high.getState());
+        assertEquals(List.of("high", "low-1", "low-2"), order);
+    }
+
+    @Test
+    void rejectsWhenQueueIsFull() throws Exception {
+        scheduler = new BuildScheduler(1, 1);
+        CountDownLatch blocker = new CountDownLatch(1);
+        scheduler.submit("running", 0, blocker::await);
+        scheduler.submit("queued", 0, () -> { });
+
+        assertThrows(RejectedExecutionException.class, () -> scheduler.submit("overflow", 0, () -> { }));
+        assertEquals(1, scheduler.getStats().rejected());
+        blocker.countDown();
+    }
+
+    @Test
+    void cancelsQueuedAndRunningBuilds() throws Exception {
+        scheduler = new BuildScheduler(1, 10);
+        CountDownLatch started = new CountDownLatch(1);
+        BuildScheduler.BuildTask running = scheduler.submit("running", 0, () -> {
+            started.countDown();
+            Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+        });
+        BuildScheduler.BuildTask queued = scheduler.submit("queued", 0, () -> fail("cancelled build must not run"));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertTrue(scheduler.cancel("queued"));
+        assertTrue(scheduler.cancel("running"));
+
+        assertEquals(BuildScheduler.State.CANCELLED, queued.getCompletion().get(5, TimeUnit.SECONDS));
+        assertEquals(BuildScheduler.State.CANCELLED, running.getCompletion().get(5, TimeUnit.SECONDS));
+        assertFalse(scheduler.cancel("running"));
+    }
+}
@@ -0,0 +1,56 @@
+package net.findzach.nojokepanel.service;
+
+import net.findzach.nojokepanel.model.PanelContainer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContainerServiceListingTest {
+
+    private ContainerService containerService;
+
+    @BeforeEach
+    void setUp() {
+        containerService = new ContainerService(null, null, null, null, null, null, null, null, null);
+        for (int i = 0; i < 25; i++) {
+            PanelContainer panelContainer = new PanelContainer(String.format("app-%02d", i), "github-" + i, "app-" + i + ":latest",
+                    (i % 2 == 0 ? "even" : "odd") + i + ".example.com", 8080);
+            panelContainer.setStatus(i % 5 == 0 ? "FAILED" : "RUNNING");
+            containerService.getContainers().put(panelContainer.getId(), panelContainer);
+        }
+    }
+
+    @Test
+    void cursorWalksEveryContainerOnceInIdOrder() {
+        List<String> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            ContainerService.ContainerPage page = containerService.listContainers(cursor, 10, Set.of(), null);
+            page.containers().forEach(panelContainer -> seen.add(panelContainer.getId()));
+            cursor = page.nextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        assertEquals(25, seen.size());
+        assertEquals("app-00", seen.get(0));
+        assertEquals("app-24", seen.get(24));
+    }
+
+    @Test
+    void filtersByStatusAndDomainBeforePaging() {
+        ContainerService.ContainerPage failed = containerService.listContainers(null, 2, Set.of("FAILED"), null);
+        assertEquals(List.of("app-00", "app-05"), failed.containers().stream().map(PanelContainer::getId).toList());
+        assertEquals("app-05", failed.nextCursor());
+
+        ContainerService.ContainerPage rest = containerService.listContainers(failed.nextCursor(), 2, Set.of("FAILED"), "EVEN");
+        assertEquals(List.of("app-10", "app-20"), rest.containers().stream().map(PanelContainer::getId).toList());
+        assertNull(rest.nextCursor());
+    }
+}
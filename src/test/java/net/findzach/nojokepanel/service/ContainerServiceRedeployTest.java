@@ -0,0 +1,117 @@
+package net.findzach.nojokepanel.service;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.CreateContainerCmd;
+import com.github.dockerjava.api.command.CreateContainerResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.findzach.nojokepanel.handler.BuildLogWebSocketHandler;
+import net.findzach.nojokepanel.model.GitHubDeploy;
+import net.findzach.nojokepanel.model.PanelContainer;
+import net.findzach.nojokepanel.util.LogChunkStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ContainerServiceRedeployTest {
+
+    private static final String REPO = "https://github.com/org/app";
+    private static final String COMMIT = "c".repeat(40);
+
+    @TempDir
+    Path tempDir;
+
+    private final DockerClient docker = mock(DockerClient.class, RETURNS_DEEP_STUBS);
+    private final RegistryStore registryStore = mock(RegistryStore.class);
+    private WorkspaceManager workspaceManager;
+    private ContainerService containerService;
+    private PanelContainer current;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        NodeRegistry nodeRegistry = new NodeRegistry(List.of(new NodeRegistry.Node(NodeRegistry.LOCAL, "unix:///var/run/docker.sock", docker, docker)),
+                NodeRegistry.Strategy.LEAST_LOADED, 1, 512 * 1024 * 1024, 0.85);
+        GitMirrorCache gitMirrorCache = mock(GitMirrorCache.class);
+        when(gitMirrorCache.checkout(any(), any(), any(), any())).thenReturn(COMMIT);
+        ToolchainCache toolchainCache = mock(ToolchainCache.class);
+        when(toolchainCache.getPackVersion()).thenReturn("0.32.0");
+        BuildCache buildCache = new BuildCache(tempDir.resolve("build-cache").toString());
+        workspaceManager = new WorkspaceManager(tempDir.resolve("workspaces").toString(), 0, 1000);
+        containerService = spy(new ContainerService(nodeRegistry, mock(BuildLogWebSocketHandler.class), toolchainCache, gitMirrorCache,
+                buildCache, new LogChunkStore(64 * 1024, 1 << 20, tempDir.resolve("spill")), registryStore,
+                new DeployMetrics(new SimpleMeterRegistry()), workspaceManager));
+
+        CreateContainerCmd createContainerCmd = mock(CreateContainerCmd.class, RETURNS_SELF);
+        when(docker.createContainerCmd(anyString())).thenReturn(createContainerCmd);
+        CreateContainerResponse created = new CreateContainerResponse();
+        created.setId("new-docker-id");
+        when(createContainerCmd.exec()).thenReturn(created);
+
+        GitHubDeploy githubDeploy = new GitHubDeploy();
+        githubDeploy.setRepoUrl(REPO);
+        githubDeploy.setDomain("app.example.com");
+        githubDeploy.setInternalPort(8080);
+        githubDeploy.setHealthPath("/health");
+        current = containerService.initiateDeployment(githubDeploy);
+        current.setNodeId(NodeRegistry.LOCAL);
+        current.setDockerId("old-docker-id");
+        current.setStatus("RUNNING");
+        // The replacement reuses this image instead of running pack
+        buildCache.record(NodeRegistry.LOCAL, REPO, COMMIT, "builder=paketobuildpacks/builder-jammy-base;env=BP_JVM_VERSION=17;pack=0.32.0",
+                "app:1", "sha256:1");
+    }
+
+    @AfterEach
+    void tearDown() {
+        containerService.shutdown();
+        workspaceManager.shutdown();
+    }
+
+    @Test
+    void cutsOverOnlyOnceTheReplacementIsHealthy() throws Exception {
+        doNothing().when(containerService).awaitHealthy(any(), any());
+        PanelContainer replacement = containerService.initiateRedeploy(current.getId(), null);
+        assertEquals(current.getId(), replacement.getReplaces());
+        assertEquals(current.routeNameOrName(), replacement.routeNameOrName(), "both containers share one Traefik service");
+
+        containerService.completeDeployment(replacement);
+
+        InOrder order = inOrder(containerService, docker);
+        order.verify(docker).startContainerCmd("new-docker-id");
+        order.verify(containerService).awaitHealthy(same(replacement), any());
+        order.verify(docker).stopContainerCmd("old-docker-id");
+        order.verify(docker).removeContainerCmd("old-docker-id");
+        assertEquals("RUNNING", replacement.getStatus());
+        assertNull(containerService.getContainer(current.getId()));
+        verify(registryStore).markRemoved(current.getId());
+    }
+
+    @Test
+    void withdrawsAnUnhealthyReplacementAndKeepsTheOldOne() throws Exception {
+        doThrow(new IOException("Not healthy after 120 s")).when(containerService).awaitHealthy(any(), any());
+        PanelContainer replacement = containerService.initiateRedeploy(current.getId(), null);
+
+        assertThrows(IOException.class, () -> containerService.completeDeployment(replacement));
+
+        verify(docker).removeContainerCmd("new-docker-id");
+        verify(docker, never()).stopContainerCmd("old-docker-id");
+        verify(docker, never()).removeContainerCmd("old-docker-id");
+        assertNull(replacement.getDockerId(), "it no longer shares the old container's Traefik service");
+        assertSame(current, containerService.getContainer(current.getId()));
+        assertEquals("RUNNING", current.getStatus());
+    }
+
+    @Test
+    void refusesToRedeployWithoutAHealthPath() {
+        containerService.getDeployment(current.getId()).setHealthPath(" ");
+        assertThrows(IllegalArgumentException.class, () -> containerService.initiateRedeploy(current.getId(), null));
+    }
+}
@@ -0,0 +1,108 @@
+package net.findzach.nojokepanel.service;
+
+import com.github.dockerjava.api.DockerClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.findzach.nojokepanel.model.GitHubDeploy;
+import net.findzach.nojokepanel.model.PanelContainer;
+import net.findzach.nojokepanel.util.LogChunkStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ContainerServiceRegistryTest {
+
+    @Test
+    void eventsForARemovedContainerDoNotBringItBack() throws Exception {
+        NodeRegistry nodeRegistry = mock(NodeRegistry.class);
+        when(nodeRegistry.client(any())).thenReturn(mock(DockerClient.class, RETURNS_DEEP_STUBS));
+        RegistryStore registryStore = mock(RegistryStore.class);
+        ContainerService containerService = new ContainerService(nodeRegistry, null, null, null, null, null, registryStore, null, null);
+        PanelContainer panelContainer = new PanelContainer("app-1", "github-1", "app-1:latest", "app.example.com", 8080);
+        panelContainer.setStatus("RUNNING");
+        containerService.getContainers().put(panelContainer.getId(), panelContainer);
+        // The row is still in the database until the removal is flushed
+        when(registryStore.loadContainer("app-1")).thenReturn(Optional.of(panelContainer));
+
+        containerService.removeContainer("app-1");
+        // The die and destroy events arrive before the flush, looked up by label or by a reference taken earlier
+        assertNull(containerService.getContainer("app-1"));
+        containerService.applyStatus(panelContainer, "REMOVED");
+
+        assertFalse(containerService.getContainers().containsKey("app-1"));
+        InOrder order = inOrder(registryStore);
+        order.verify(registryStore).markRemoved("app-1");
+        order.verify(registryStore, never()).markDirty(panelContainer);
+    }
+
+    @Test
+    void adoptingADockerContainerIsSavedAndChangesTheETag() {
+        RegistryStore registryStore = mock(RegistryStore.class);
+        ContainerService containerService = new ContainerService(null, null, null, null, null, null, registryStore, null, null);
+        PanelContainer panelContainer = new PanelContainer("app-1", "github-1", "app-1:latest", "app.example.com", 8080);
+        containerService.getContainers().put(panelContainer.getId(), panelContainer);
+        String version = containerService.getRegistryVersion();
+
+        containerService.adoptDockerContainer(panelContainer, "docker-1", "node-a");
+        assertEquals("docker-1", panelContainer.getDockerId());
+        assertEquals("node-a", panelContainer.getNodeId());
+        assertNotEquals(version, containerService.getRegistryVersion());
+        verify(registryStore).markDirty(panelContainer);
+
+        containerService.adoptDockerContainer(panelContainer, "docker-2", "node-b");
+        assertEquals("docker-1", panelContainer.getDockerId(), "a container already started keeps its Docker ID");
+        verify(registryStore, times(1)).markDirty(panelContainer);
+    }
+
+    @Test
+    void concurrentIdenticalDeploysAttachToOneWithoutRemovingIt(@TempDir Path spillDir) throws Exception {
+        GitMirrorCache gitMirrorCache = mock(GitMirrorCache.class);
+        when(gitMirrorCache.resolveCommit(any(), any(), any())).thenReturn("a".repeat(40));
+        ToolchainCache toolchainCache = mock(ToolchainCache.class);
+        when(toolchainCache.getPackVersion()).thenReturn("0.32.0");
+        RegistryStore registryStore = mock(RegistryStore.class);
+        DeployMetrics deployMetrics = new DeployMetrics(new SimpleMeterRegistry());
+        ContainerService containerService = new ContainerService(null, null, toolchainCache, gitMirrorCache, null,
+                new LogChunkStore(64 * 1024, 1 << 20, spillDir), registryStore, deployMetrics, null);
+
+        int callers = 16;
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<ContainerService.Initiation>> futures = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            futures.add(pool.submit(() -> {
+                GitHubDeploy githubDeploy = new GitHubDeploy();
+                githubDeploy.setRepoUrl("https://github.com/org/app");
+                githubDeploy.setRef("main");
+                githubDeploy.setDomain("app.example.com");
+                githubDeploy.setInternalPort(8080);
+                start.await();
+                return containerService.initiateOrAttach(githubDeploy);
+            }));
+        }
+        start.countDown();
+        List<ContainerService.Initiation> initiations = new ArrayList<>();
+        for (Future<ContainerService.Initiation> future : futures) {
+            initiations.add(future.get());
+        }
+        pool.shutdown();
+
+        PanelContainer winner = initiations.stream().filter(initiation -> !initiation.attached()).findFirst().orElseThrow().container();
+        assertEquals(1, initiations.stream().filter(initiation -> !initiation.attached()).count());
+        assertTrue(initiations.stream().allMatch(initiation -> initiation.container() == winner));
+        assertEquals(List.of(winner.getId()), new ArrayList<>(containerService.getContainers().keySet()));
+        assertNotNull(containerService.getDeployment(winner.getId()));
+        verify(registryStore, never()).markRemoved(winner.getId());
+    }
+}
@@ -0,0 +1,47 @@
+package net.findzach.nojokepanel.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.findzach.nojokepanel.model.PanelContainer;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeployMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final DeployMetrics metrics = new DeployMetrics(registry);
+
+    @Test
+    void recordsStagesOnTheTimerAndTheContainer() throws Exception {
+        PanelContainer panelContainer = new PanelContainer("app-1", "app", "app-1:latest", "app.example.com", 8080);
+        metrics.recordQueueWait(panelContainer, 40);
+        assertEquals("abc", metrics.time(panelContainer, DeployMetrics.CLONE, () -> "abc"));
+        assertThrows(IllegalStateException.class, () -> metrics.run(panelContainer, DeployMetrics.BUILD, () -> {
+            throw new IllegalStateException("pack failed");
+        }));
+
+        assertEquals(List.of(DeployMetrics.QUEUE, DeployMetrics.CLONE, DeployMetrics.BUILD), List.copyOf(panelContainer.getStageTimings().keySet()));
+        assertEquals(40, panelContainer.getStageTimings().get(DeployMetrics.QUEUE));
+        assertEquals(1, registry.get(DeployMetrics.STAGE_TIMER).tags("stage", DeployMetrics.CLONE, "outcome", "success").timer().count());
+        assertEquals(1, registry.get(DeployMetrics.STAGE_TIMER).tags("stage", DeployMetrics.BUILD, "outcome", "failure").timer().count());
+        assertEquals(1, registry.get(DeployMetrics.FAILURES).tags("stage", DeployMetrics.BUILD).counter().count());
+    }
+
+    @Test
+    void aNewDeployStartsWithNoStageTimings() throws Exception {
+        PanelContainer panelContainer = new PanelContainer("app-1", "app", "app-1:latest", "app.example.com", 8080);
+        metrics.run(panelContainer, DeployMetrics.CLONE, () -> { });
+        metrics.run(panelContainer, DeployMetrics.BUILD, () -> { });
+
+        metrics.startDeploy(panelContainer);
+        metrics.run(panelContainer, DeployMetrics.CLONE, () -> { });
+        metrics.time(panelContainer, DeployMetrics.IMAGE_REUSE, () -> true);
+
+        Map<String, Long> timings = panelContainer.getStageTimings();
+        assertEquals(List.of(DeployMetrics.CLONE, DeployMetrics.IMAGE_REUSE), List.copyOf(timings.keySet()),
+                "the reused image's deploy doesn't show the previous build");
+    }
+}
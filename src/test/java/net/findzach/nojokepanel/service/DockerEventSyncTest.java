@@ -0,0 +1,54 @@
+package net.findzach.nojokepanel.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DockerEventSyncTest {
+
+    @Test
+    void mapsEventsToStatuses() {
+        assertEquals("RUNNING", DockerEventSync.statusForEvent("start", null, "STOPPED"));
+        assertEquals("RUNNING", DockerEventSync.statusForEvent("restart", null, "EXITED"));
+        assertEquals("RUNNING", DockerEventSync.statusForEvent("unpause", null, "PAUSED"));
+        assertEquals("PAUSED", DockerEventSync.statusForEvent("pause", null, "RUNNING"));
+        assertEquals("STOPPED", DockerEventSync.statusForEvent("stop", null, "RUNNING"));
+        assertEquals("REMOVED", DockerEventSync.statusForEvent("destroy", null, "STOPPED"));
+        assertNull(DockerEventSync.statusForEvent("exec_start", null, "RUNNING"));
+        assertNull(DockerEventSync.statusForEvent(null, null, "RUNNING"));
+    }
+
+    @Test
+    void aDieIsAStopOnlyWithExitCodeZero() {
+        assertEquals("STOPPED", DockerEventSync.statusForEvent("die", Map.of("exitCode", "0"), "RUNNING"));
+        assertEquals("EXITED", DockerEventSync.statusForEvent("die", Map.of("exitCode", "1"), "RUNNING"));
+        assertEquals("EXITED", DockerEventSync.statusForEvent("die", Map.of("exitCode", "137"), "RUNNING"));
+        assertEquals("EXITED", DockerEventSync.statusForEvent("die", Map.of(), "RUNNING"), "no exit code is not a clean stop");
+        assertEquals("EXITED", DockerEventSync.statusForEvent("die", null, "RUNNING"));
+    }
+
+    @Test
+    void theDieAfterAnOomKeepsTheOomStatus() {
+        String status = DockerEventSync.statusForEvent("oom", null, "RUNNING");
+        assertEquals("OOM_KILLED", status);
+        assertEquals("OOM_KILLED", DockerEventSync.statusForEvent("die", Map.of("exitCode", "137"), status));
+        assertEquals("RUNNING", DockerEventSync.statusForEvent("start", null, status), "a restart clears it");
+    }
+
+    @Test
+    void mapsListedStatesAndParsesTheExitCode() {
+        assertEquals("RUNNING", DockerEventSync.statusForState("running", "Up 3 hours"));
+        assertEquals("RUNNING", DockerEventSync.statusForState("restarting", "Restarting (1) 2 seconds ago"));
+        assertEquals("PAUSED", DockerEventSync.statusForState("paused", "Up 3 hours (Paused)"));
+        assertEquals("STOPPED", DockerEventSync.statusForState("exited", "Exited (0) 5 minutes ago"));
+        assertEquals("EXITED", DockerEventSync.statusForState("exited", "Exited (137) 5 minutes ago"));
+        assertEquals("EXITED", DockerEventSync.statusForState("exited", "Exited (-1) 5 minutes ago"));
+        assertEquals("STOPPED", DockerEventSync.statusForState("exited", null));
+        assertEquals("EXITED", DockerEventSync.statusForState("dead", "Dead"));
+        assertNull(DockerEventSync.statusForState("created", "Created"));
+        assertNull(DockerEventSync.statusForState("removing", "Removal In Progress"));
+        assertNull(DockerEventSync.statusForState(null, null));
+    }
+}
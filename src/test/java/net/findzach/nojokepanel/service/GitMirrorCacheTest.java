@@ -0,0 +1,126 @@
+package net.findzach.nojokepanel.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GitMirrorCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path origin;
+    private String originUrl;
+    private GitMirrorCache cache;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        origin = Files.createDirectory(tempDir.resolve("origin"));
+        originUrl = origin.toUri().toString();
+        git(origin, "init", "--quiet");
+        commit("first");
+        cache = new GitMirrorCache(tempDir.resolve("mirrors").toString(), 10_000);
+    }
+
+    @Test
+    void checksOutDefaultBranchAndFetchesIncrementally() throws Exception {
+        File firstBuild = tempDir.resolve("build-1").toFile();
+        String firstCommit = cache.checkout(originUrl, "", "", firstBuild);
+        assertEquals(head(), firstCommit);
+        assertEquals("first", Files.readString(firstBuild.toPath().resolve("app.txt")));
+
+        commit("second");
+        File secondBuild = tempDir.resolve("build-2").toFile();
+        String secondCommit = cache.checkout(originUrl, "", "", secondBuild);
+        assertEquals(head(), secondCommit);
+        assertNotEquals(firstCommit, secondCommit);
+        assertEquals("second", Files.readString(secondBuild.toPath().resolve("app.txt")));
+
+        try (var mirrors = Files.list(tempDir.resolve("mirrors"))) {
+            assertEquals(1, mirrors.count());
+        }
+    }
+
+    @Test
+    void checksOutPinnedCommit() throws Exception {
+        String pinned = head();
+        commit("second");
+
+        File build = tempDir.resolve("build").toFile();
+        assertEquals(pinned, cache.checkout(originUrl, "", pinned, build));
+        assertEquals("first", Files.readString(build.toPath().resolve("app.txt")));
+    }
+
+    @Test
+    void resolvesRefsWithoutFetching() throws Exception {
+        assertEquals(head(), cache.resolveCommit(originUrl, "", ""));
+        git(origin, "-c", "user.name=test", "-c", "user.email=test@example.com", "tag", "-a", "-m", "release", "v1");
+        commit("second");
+        String second = head();
+        assertEquals(second, cache.resolveCommit(originUrl, "", git(origin, "branch", "--show-current").trim()));
+        assertEquals(git(origin, "rev-parse", "v1^{commit}").trim(), cache.resolveCommit(originUrl, "", "v1"));
+        assertNull(cache.resolveCommit(originUrl, "", "no-such-branch"));
+        assertFalse(Files.exists(tempDir.resolve("mirrors").resolve(GitMirrorCache.mirrorKey(originUrl) + ".git")));
+    }
+
+    @Test
+    void lsRemotePrefersBranchesAndPeeledTags() {
+        String output = "aaa\trefs/tags/main\nbbb\trefs/heads/main\nccc\trefs/tags/v1\nddd\trefs/tags/v1^{}\n";
+        assertEquals("bbb", GitMirrorCache.parseLsRemote(output, "main"));
+        assertEquals("ddd", GitMirrorCache.parseLsRemote(output, "v1"));
+        assertNull(GitMirrorCache.parseLsRemote("", "main"));
+        assertNull(GitMirrorCache.parseLsRemote("eee\trefs/heads/feature/main\n", "main"), "only an exact ref counts");
+    }
+
+    @Test
+    void keepsTheMirrorWhenTheRemoteIsUnreachableAndRecreatesACorruptOne() throws Exception {
+        cache.checkout(originUrl, "", "", tempDir.resolve("build-1").toFile());
+        Path mirror = tempDir.resolve("mirrors").resolve(GitMirrorCache.mirrorKey(originUrl) + ".git");
+
+        Path moved = Files.move(origin, tempDir.resolve("moved"));
+        assertThrows(IOException.class, () -> cache.checkout(originUrl, "", "", tempDir.resolve("build-2").toFile()));
+        assertTrue(Files.isDirectory(mirror), "a failed fetch alone doesn't throw the mirror away");
+        Files.move(moved, origin);
+
+        Files.writeString(mirror.resolve("refs/heads/broken"), "0123456789012345678901234567890123456789\n");
+        Files.writeString(mirror.resolve("config"), "not a git config");
+        assertEquals(head(), cache.checkout(originUrl, "", "", tempDir.resolve("build-3").toFile()));
+        assertFalse(Files.exists(mirror.resolve("refs/heads/broken")));
+    }
+
+    @Test
+    void mirrorKeyIgnoresHostCaseAndGitSuffixButNotPathCase() {
+        assertEquals(GitMirrorCache.mirrorKey("https://GitHub.com/FindZach/NoJokePanel.git"),
+                GitMirrorCache.mirrorKey("https://github.com/FindZach/NoJokePanel/"));
+        assertNotEquals(GitMirrorCache.mirrorKey("https://github.com/Org/Repo"),
+                GitMirrorCache.mirrorKey("https://github.com/org/repo"));
+    }
+
+    private void commit(String content) throws Exception {
+        Files.writeString(origin.resolve("app.txt"), content);
+        git(origin, "add", "app.txt");
+        git(origin, "-c", "user.name=test", "-c", "user.email=test@example.com", "commit", "--quiet", "-m", content);
+    }
+
+    private String head() throws Exception {
+        return git(origin, "rev-parse", "HEAD").trim();
+    }
+
+    private String git(Path dir, String... args) throws Exception {
+        String[] command = new String[args.length + 1];
+        command[0] = "git";
+        System.arraycopy(args, 0, command, 1, args.length);
+        Process process = new ProcessBuilder(command).directory(dir.toFile()).redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        if (process.waitFor() != 0) throw new IOException("git failed: " + output);
+        return output;
+    }
+}
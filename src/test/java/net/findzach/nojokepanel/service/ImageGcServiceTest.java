@@ -0,0 +1,53 @@
+package net.findzach.nojokepanel.service;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.core.DefaultDockerClientConfig;
+import com.github.dockerjava.core.DockerClientImpl;
+import com.github.dockerjava.transport.DockerHttpClient;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ImageGcServiceTest {
+
+    private static final String HOST = "unix:///var/run/docker.sock";
+
+    @Test
+    void asksTheNodeForSharedSizes() {
+        DockerHttpClient http = mock(DockerHttpClient.class);
+        DockerHttpClient.Response response = mock(DockerHttpClient.Response.class);
+        when(response.getStatusCode()).thenReturn(200);
+        when(response.getBody()).thenReturn(new ByteArrayInputStream("""
+                [{"Id": "sha256:a", "Size": 1000, "SharedSize": 700},
+                 {"Id": "sha256:b", "Size": 500, "SharedSize": 0},
+                 {"Id": "sha256:c", "Size": 800, "SharedSize": -1}]
+                """.getBytes(StandardCharsets.UTF_8)));
+        when(http.execute(any())).thenReturn(response);
+        DockerClient docker = DockerClientImpl.getInstance(DefaultDockerClientConfig.createDefaultConfigBuilder().withDockerHost(HOST).build(), http);
+
+        Map<String, Long> shared = ImageGcService.sharedSizes(new NodeRegistry.Node("local", HOST, docker, docker));
+
+        assertEquals(Map.of("sha256:a", 700L, "sha256:b", 0L), shared, "-1 means the daemon didn't compute it");
+        ArgumentCaptor<DockerHttpClient.Request> request = ArgumentCaptor.forClass(DockerHttpClient.Request.class);
+        verify(http).execute(request.capture());
+        assertEquals("/images/json?shared-size=1", request.getValue().path());
+        verify(response).close();
+    }
+
+    @Test
+    void fallsBackToWholeSizesWhenTheNodeCantTell() {
+        DockerHttpClient http = mock(DockerHttpClient.class);
+        when(http.execute(any())).thenThrow(new RuntimeException("connection refused"));
+        DockerClient docker = DockerClientImpl.getInstance(DefaultDockerClientConfig.createDefaultConfigBuilder().withDockerHost(HOST).build(), http);
+        assertTrue(ImageGcService.sharedSizes(new NodeRegistry.Node("local", HOST, docker, docker)).isEmpty());
+
+        DockerClient other = mock(DockerClient.class);
+        assertTrue(ImageGcService.sharedSizes(new NodeRegistry.Node("local", HOST, other, other)).isEmpty());
+    }
+}
@@ -0,0 +1,73 @@
+package net.findzach.nojokepanel.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageRetentionPolicyTest {
+
+    private static final long HOUR = 60 * 60 * 1000L;
+    private static final long GB = 1024L * 1024 * 1024;
+    private static final long NOW = 1000 * HOUR;
+
+    @Test
+    void keepsTheNewestImagesPerAppAndImagesInUse() {
+        ImageRetentionPolicy policy = new ImageRetentionPolicy(2, 0, 0, 24 * HOUR, HOUR);
+        List<ImageRetentionPolicy.ImageInfo> images = List.of(
+                image("a1", "repo-a", 100, 100, 1, false),
+                image("a2", "repo-a", 200, 200, 1, true),   // Old but running
+                image("a3", "repo-a", 300, 300, 1, false),
+                image("a4", "repo-a", 400, 400, 1, false),
+                image("b1", "repo-b", 100, 100, 1, false),  // Only image of its app
+                image("none", null, 50, 50, 1, false),       // Dangling
+                image("fresh", null, 999.5, 999.5, 1, false)); // Maybe a deploy still starting
+
+        List<String> evicted = ids(policy.plan(images, NOW));
+        assertEquals(List.of("none", "a1"), evicted, "least recently used first");
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedUnderTheWatermark() {
+        ImageRetentionPolicy policy = new ImageRetentionPolicy(1, 5 * GB, 3 * GB, 0, HOUR);
+        List<ImageRetentionPolicy.ImageInfo> images = List.of(
+                image("a1", "repo-a", 100, 990, 1, false),  // Old build, but reused recently
+                image("a2", "repo-a", 200, 200, 1, false),
+                image("a3", "repo-a", 300, 300, 1, false),
+                image("a4", "repo-a", 400, 400, 1, false),
+                image("a5", "repo-a", 500, 500, 1, false),
+                image("a6", "repo-a", 600, 600, 1, false));
+
+        ImageRetentionPolicy.Plan plan = policy.plan(images, NOW);
+        assertEquals(List.of("a2", "a3", "a4"), ids(plan), "from 6 GB down to the 3 GB low watermark");
+        assertEquals(6 * GB, plan.totalBytes());
+        assertEquals(3 * GB, plan.bytesAfter());
+
+        assertTrue(policy.plan(images.subList(0, 5), NOW).evict().isEmpty(), "5 GB is not over the high watermark");
+    }
+
+    @Test
+    void countsSharedLayersTowardsTheWatermarkOnlyOnce() {
+        ImageRetentionPolicy policy = new ImageRetentionPolicy(1, 5 * GB, 3 * GB, 0, HOUR);
+        List<ImageRetentionPolicy.ImageInfo> images = new ArrayList<>();
+        for (int i = 1; i <= 6; i++) {
+            // 1 GB each, most of it the run image every build shares
+            images.add(new ImageRetentionPolicy.ImageInfo("a" + i, "repo-a", i * 100 * HOUR, i * 100 * HOUR, GB, GB / 4, false));
+        }
+
+        ImageRetentionPolicy.Plan plan = policy.plan(images, NOW);
+        assertTrue(plan.evict().isEmpty(), "6 GB of images, but deleting any of them frees a quarter of that");
+        assertEquals(6 * GB / 4, plan.totalBytes());
+    }
+
+    private static ImageRetentionPolicy.ImageInfo image(String id, String app, double createdHours, double lastUsedHours,
+                                                        long sizeGb, boolean inUse) {
+        return new ImageRetentionPolicy.ImageInfo(id, app, (long) (createdHours * HOUR), (long) (lastUsedHours * HOUR), sizeGb * GB, sizeGb * GB, inUse);
+    }
+
+    private static List<String> ids(ImageRetentionPolicy.Plan plan) {
+        return plan.evict().stream().map(ImageRetentionPolicy.ImageInfo::id).toList();
+    }
+}
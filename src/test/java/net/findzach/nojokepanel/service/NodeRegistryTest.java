@@ -0,0 +1,109 @@
+package net.findzach.nojokepanel.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NodeRegistryTest {
+
+    private static final long GB = 1024L * 1024 * 1024;
+
+    private final NodeRegistry.Node small = node("small", 4, 8);
+    private final NodeRegistry.Node large = node("large", 16, 64);
+
+    @Test
+    void leastLoadedSpreadsDeploysAndCountsPendingOnes() throws Exception {
+        NodeRegistry registry = registry(NodeRegistry.Strategy.LEAST_LOADED);
+        registry.updateUsage(Map.of("small", new double[]{1, 2 * GB}, "large", new double[]{8, 8 * GB}));
+
+        // small is 25% busy, large 50%
+        NodeRegistry.Node first = registry.place(null);
+        assertEquals("small", first.getId());
+        // The pending 1-CPU reservation takes small to 50%; the tie goes to the node with fewer containers
+        NodeRegistry.Node second = registry.place(null);
+        assertEquals("large", second.getId());
+        assertEquals("small", registry.place(null).getId());
+
+        registry.release(first);
+        assertEquals(1, small.getPendingDeploys());
+        registry.release(second);
+        assertEquals(0, large.getPendingDeploys());
+    }
+
+    @Test
+    void concurrentPlacementsSeeEachOthersReservations() throws Exception {
+        NodeRegistry.Node other = node("other", 4, 8);
+        NodeRegistry registry = new NodeRegistry(List.of(small, other), NodeRegistry.Strategy.LEAST_LOADED, 1, 512 * 1024 * 1024, 0.85);
+        int deploys = 40;
+        ExecutorService pool = Executors.newFixedThreadPool(deploys);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<NodeRegistry.Node>> placements = new ArrayList<>();
+        for (int i = 0; i < deploys; i++) {
+            placements.add(pool.submit(() -> {
+                start.await();
+                return registry.place(null);
+            }));
+        }
+        start.countDown();
+        for (Future<NodeRegistry.Node> placement : placements) {
+            placement.get();
+        }
+        pool.shutdown();
+
+        // Two identical idle nodes: a burst splits evenly
+        assertEquals(deploys / 2, small.getPendingDeploys());
+        assertEquals(deploys / 2, other.getPendingDeploys());
+    }
+
+    @Test
+    void binPackingFillsTheBusiestNodeThatStillFits() throws Exception {
+        NodeRegistry registry = registry(NodeRegistry.Strategy.BIN_PACKING);
+        registry.updateUsage(Map.of("small", new double[]{2.5, 2 * GB}, "large", new double[]{2, 4 * GB}));
+
+        // small would reach 87.5% CPU with one more deploy, over the 85% limit
+        assertEquals("large", registry.place(null).getId());
+
+        registry.updateUsage(Map.of("small", new double[]{1, 2 * GB}, "large", new double[]{2, 4 * GB}));
+        assertEquals("small", registry.place(null).getId(), "small is the fuller node and still fits");
+    }
+
+    @Test
+    void skipsUnhealthyNodesAndHonoursPinnedPlacement() throws Exception {
+        NodeRegistry registry = registry(NodeRegistry.Strategy.LEAST_LOADED);
+        small.markUnhealthy();
+        assertEquals("large", registry.place(null).getId());
+        assertEquals("small", registry.place("small").getId(), "a redeploy stays on its node");
+        assertThrows(IOException.class, () -> registry.place("gone"));
+
+        large.markUnhealthy();
+        assertThrows(IOException.class, () -> registry.place(null));
+    }
+
+    @Test
+    void containersWithoutANodeUseTheDefault() {
+        NodeRegistry registry = registry(NodeRegistry.Strategy.LEAST_LOADED);
+        assertSame(small, registry.getNode(null));
+        assertNull(registry.getNode("gone"));
+        assertThrows(IllegalStateException.class, () -> registry.client("gone"));
+        assertEquals(NodeRegistry.Strategy.BIN_PACKING, NodeRegistry.Strategy.parse("bin-packing"));
+    }
+
+    private NodeRegistry registry(NodeRegistry.Strategy strategy) {
+        return new NodeRegistry(List.of(small, large), strategy, 1, 512 * 1024 * 1024, 0.85);
+    }
+
+    private static NodeRegistry.Node node(String id, int cpus, long memoryGb) {
+        NodeRegistry.Node node = new NodeRegistry.Node(id, "tcp://" + id + ":2375", null, null);
+        node.updateCapacity(cpus, memoryGb * GB, 0);
+        return node;
+    }
+}
@@ -0,0 +1,136 @@
+package net.findzach.nojokepanel.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OperationRegistryTest {
+
+    private OperationRegistry registry;
+
+    @AfterEach
+    void tearDown() {
+        if (registry != null) registry.shutdown();
+    }
+
+    @Test
+    void runsOperationsOnTheSameContainerInOrder() throws Exception {
+        registry = new OperationRegistry(4, 100);
+        CountDownLatch blocker = new CountDownLatch(1);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        OperationRegistry.Operation first = registry.submit("STOP", "app", () -> {
+            blocker.await();
+            order.add("stop");
+        });
+        OperationRegistry.Operation second = registry.submit("REMOVE", "app", () -> order.add("remove"));
+        OperationRegistry.Operation other = registry.submit("START", "other", () -> order.add("other"));
+
+        awaitFinished(other);
+        assertEquals(List.of("other"), order);
+        assertEquals(OperationRegistry.State.PENDING, second.getState());
+        assertEquals(2, registry.list(true).size());
+
+        blocker.countDown();
+        awaitFinished(second);
+        assertEquals(List.of("other", "stop", "remove"), order);
+        assertEquals(OperationRegistry.State.SUCCEEDED, first.getState());
+        assertEquals(OperationRegistry.State.SUCCEEDED, second.getState());
+    }
+
+    @Test
+    void recordsFailuresAndPublishesEveryTransition() throws Exception {
+        registry = new OperationRegistry(1, 100);
+        List<OperationRegistry.State> seen = new CopyOnWriteArrayList<>();
+        CountDownLatch finished = new CountDownLatch(1);
+        registry.subscribe(operation -> {
+            seen.add(operation.getState());
+            if (operation.isFinished()) finished.countDown();
+        });
+
+        OperationRegistry.Operation operation = registry.submit("STOP", "app", () -> {
+            throw new Exception("Container not found");
+        });
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertEquals(OperationRegistry.State.FAILED, operation.getState());
+        assertEquals("Container not found", operation.getError());
+        assertEquals(operation, registry.get(operation.getId()));
+        assertTrue(seen.contains(OperationRegistry.State.FAILED));
+    }
+
+    @Test
+    void workOnAnotherPoolWaitsForEarlierOperationsOnTheContainer() throws Exception {
+        registry = new OperationRegistry(2, 100);
+        ExecutorService bulkPool = Executors.newFixedThreadPool(2);
+        try {
+            CountDownLatch blocker = new CountDownLatch(1);
+            List<String> order = new CopyOnWriteArrayList<>();
+            registry.submit("STOP", "app", () -> {
+                blocker.await();
+                order.add("stop");
+            });
+            CompletableFuture<String> bulk = registry.enqueue("app", bulkPool, () -> {
+                order.add("bulk remove");
+                return "done";
+            });
+            OperationRegistry.Operation after = registry.submit("START", "app", () -> order.add("start"));
+
+            Thread.sleep(100);
+            assertTrue(order.isEmpty());
+            blocker.countDown();
+            assertEquals("done", bulk.get(5, TimeUnit.SECONDS));
+            awaitFinished(after);
+            assertEquals(List.of("stop", "bulk remove", "start"), order);
+        } finally {
+            bulkPool.shutdownNow();
+        }
+    }
+
+    @Test
+    void subscribersGetTheStateAtTheTimeOfEachChange() throws Exception {
+        registry = new OperationRegistry(1, 100);
+        List<OperationRegistry.Operation> published = new CopyOnWriteArrayList<>();
+        CountDownLatch finished = new CountDownLatch(1);
+        registry.subscribe(operation -> {
+            published.add(operation);
+            if (operation.isFinished()) finished.countDown();
+        });
+
+        OperationRegistry.Operation operation = registry.submit("STOP", "app", () -> { });
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(OperationRegistry.State.PENDING, OperationRegistry.State.RUNNING, OperationRegistry.State.SUCCEEDED),
+                published.stream().map(OperationRegistry.Operation::getState).toList());
+        assertTrue(published.stream().allMatch(snapshot -> snapshot != operation && snapshot.getId().equals(operation.getId())));
+    }
+
+    @Test
+    void leavesASharedPoolToItsOwnerOnShutdown() throws Exception {
+        ExecutorService shared = Executors.newFixedThreadPool(1);
+        try {
+            new OperationRegistry(shared, 100).shutdown();
+            assertFalse(shared.isShutdown());
+            assertEquals("still running", shared.submit(() -> "still running").get(5, TimeUnit.SECONDS));
+        } finally {
+            shared.shutdownNow();
+        }
+    }
+
+    private static void awaitFinished(OperationRegistry.Operation operation) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!operation.isFinished() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(operation.isFinished());
+    }
+}
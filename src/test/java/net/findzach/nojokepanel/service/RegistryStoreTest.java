@@ -0,0 +1,110 @@
+package net.findzach.nojokepanel.service;
+
+import net.findzach.nojokepanel.model.EncryptedStringConverter;
+import net.findzach.nojokepanel.model.GitHubDeploy;
+import net.findzach.nojokepanel.model.PanelContainer;
+import net.findzach.nojokepanel.repository.ContainerRecordRepository;
+import net.findzach.nojokepanel.repository.DeploymentRecordRepository;
+import net.findzach.nojokepanel.util.TokenCipher;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import({EncryptedStringConverter.class, RegistryStoreTest.Keys.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // The store commits its own transactions
+class RegistryStoreTest {
+
+    @TestConfiguration
+    static class Keys {
+        @Bean
+        TokenCipher tokenCipher() {
+            return new TokenCipher(TokenCipher.generateKey());
+        }
+    }
+
+    @Autowired
+    private ContainerRecordRepository containerRepository;
+
+    @Autowired
+    private DeploymentRecordRepository deploymentRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private RegistryStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = newStore();
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.shutdown();
+        deploymentRepository.deleteAll();
+        containerRepository.deleteAll();
+    }
+
+    @Test
+    void loadsEveryContainerWhateverItsStatus() {
+        store.markDirty(container("a", "RUNNING"));
+        store.markDirty(container("b", "STOPPED"));
+        store.markDirty(container("c", "FAILED"));
+        store.flush();
+
+        Map<String, String> loaded = new HashMap<>();
+        RegistryStore restarted = newStore();
+        restarted.loadAll(panelContainer -> loaded.put(panelContainer.getId(), panelContainer.getStatus()));
+        restarted.shutdown();
+        assertEquals(Map.of("a", "RUNNING", "b", "STOPPED", "c", "FAILED"), loaded);
+    }
+
+    @Test
+    void flushWritesTheLatestStateAndRemovals() {
+        PanelContainer panelContainer = container("a", "CREATING");
+        GitHubDeploy githubDeploy = new GitHubDeploy();
+        githubDeploy.setRepoUrl("https://github.com/org/app");
+        githubDeploy.setGithubToken("secret-token");
+        store.markDirty(panelContainer);
+        store.markDirty("a", githubDeploy);
+        panelContainer.setStatus("RUNNING"); // Changed again before the flush
+        store.markDirty(panelContainer);
+        store.markDirty(container("b", "RUNNING"));
+        store.flush();
+
+        assertEquals("RUNNING", store.loadContainer("a").orElseThrow().getStatus());
+        assertEquals("secret-token", store.loadDeployment("a").orElseThrow().getGithubToken());
+
+        store.markRemoved("a");
+        assertTrue(store.loadContainer("a").isEmpty(), "a queued removal hides the row before it is flushed");
+        assertTrue(store.loadDeployment("a").isEmpty());
+        store.flush();
+        assertTrue(store.loadContainer("a").isEmpty());
+        assertTrue(store.loadDeployment("a").isEmpty());
+        assertTrue(store.loadContainer("b").isPresent());
+    }
+
+    private RegistryStore newStore() {
+        return new RegistryStore(containerRepository, deploymentRepository, transactionManager, 60_000, 1000);
+    }
+
+    private static PanelContainer container(String id, String status) {
+        PanelContainer panelContainer = new PanelContainer(id, "app-" + id, "app-" + id + ":latest", id + ".example.com", 8080);
+        panelContainer.setStatus(status);
+        return panelContainer;
+    }
+}
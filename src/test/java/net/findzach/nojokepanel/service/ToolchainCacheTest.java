@@ -0,0 +1,77 @@
+package net.findzach.nojokepanel.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ToolchainCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path archive;
+    private String sha256;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Path contents = Files.createDirectory(tempDir.resolve("contents"));
+        Files.writeString(contents.resolve("pack"), "#!/bin/sh\necho pack\n");
+        archive = tempDir.resolve("pack.tgz");
+        Process tar = new ProcessBuilder("tar", "-czf", archive.toString(), "-C", contents.toString(), "pack").inheritIO().start();
+        assertEquals(0, tar.waitFor());
+        sha256 = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(archive)));
+    }
+
+    @Test
+    void installsThePinnedArchiveOnceAndReusesIt() throws Exception {
+        Path pack = cache(sha256, false).getPack();
+        assertEquals(tempDir.resolve("toolchains/pack/0.32.0-" + sha256 + "/pack"), pack);
+        assertTrue(Files.isExecutable(pack));
+
+        Files.delete(archive); // A second process finds the install without fetching again
+        assertEquals(pack, cache(sha256, false).getPack());
+    }
+
+    @Test
+    void rejectsAMismatchedOrUnpinnedArchive() {
+        IOException mismatch = assertThrows(IOException.class, () -> cache("0".repeat(64), false).getPack());
+        assertTrue(mismatch.getMessage().contains("Checksum mismatch"));
+        IOException unpinned = assertThrows(IOException.class, () -> cache("", false).getPack());
+        assertTrue(unpinned.getMessage().contains("allow-unverified-pack"));
+    }
+
+    @Test
+    void verifiesAgainstThePublishedChecksumWhenNothingIsPinned() throws Exception {
+        Path release = Files.createDirectories(tempDir.resolve("releases/v0.32.0"));
+        Files.writeString(release.resolve("pack-v0.32.0-linux.tgz.sha256"), sha256 + "  pack-v0.32.0-linux.tgz\n");
+        assertEquals(tempDir.resolve("toolchains/pack/0.32.0-" + sha256 + "/pack"), cache("", false).getPack());
+
+        Files.writeString(release.resolve("pack-v0.32.0-linux.tgz.sha256"), "0".repeat(64) + "  pack-v0.32.0-linux.tgz\n");
+        IOException mismatch = assertThrows(IOException.class, () -> cache("", false).getPack());
+        assertTrue(mismatch.getMessage().contains("Checksum mismatch"));
+    }
+
+    @Test
+    void unverifiedInstallsNeverReuseAnEarlierOne() throws Exception {
+        Path planted = Files.createDirectories(tempDir.resolve("toolchains/pack/0.32.0-planted"));
+        Files.writeString(planted.resolve("pack"), "#!/bin/sh\necho planted\n");
+        Files.setPosixFilePermissions(planted.resolve("pack"), PosixFilePermissions.fromString("rwxr-xr-x"));
+
+        assertEquals(tempDir.resolve("toolchains/pack/0.32.0-" + sha256 + "/pack"), cache("", true).getPack());
+    }
+
+    private ToolchainCache cache(String expectedSha256, boolean allowUnverified) {
+        return new ToolchainCache(tempDir.resolve("toolchains").toString(), "0.32.0", expectedSha256, archive.toString(),
+                tempDir.resolve("releases").toUri().toString(), allowUnverified, new DeployMetrics(new SimpleMeterRegistry()));
+    }
+}
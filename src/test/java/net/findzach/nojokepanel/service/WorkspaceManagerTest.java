@@ -0,0 +1,103 @@
+package net.findzach.nojokepanel.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkspaceManagerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private WorkspaceManager manager;
+
+    @AfterEach
+    void tearDown() {
+        if (manager != null) manager.shutdown();
+    }
+
+    @Test
+    void givesEachBuildItsOwnDirectoryAndDeletesItInTheBackground() throws Exception {
+        manager = new WorkspaceManager(tempDir.toString(), 0, 1000);
+        WorkspaceManager.Workspace first = manager.create("app-1-latest");
+        WorkspaceManager.Workspace second = manager.create("app-1-latest");
+        assertNotEquals(first.getPath(), second.getPath());
+        assertTrue(Files.isDirectory(first.getPath()));
+        assertEquals(2, manager.getActiveCount());
+
+        Files.createDirectories(first.getPath().resolve(".git/objects"));
+        Files.writeString(first.getPath().resolve(".git/objects/pack"), "x".repeat(4096));
+        first.close();
+
+        assertFalse(Files.exists(first.getPath()), "the name is freed as soon as the workspace is released");
+        assertEquals(1, manager.getActiveCount());
+        awaitEmptyTrash();
+        assertEquals(4096, manager.getDeletedBytes());
+        assertTrue(Files.isDirectory(second.getPath()));
+    }
+
+    @Test
+    void sweepsOnlyWorkspacesLeftByAPreviousRun() throws Exception {
+        String workspaceId = UUID.randomUUID().toString();
+        Path orphan = Files.createDirectories(tempDir.resolve(workspaceId + "/src"));
+        Files.writeString(orphan.resolve("Main.java"), "class Main {}");
+        Files.createDirectories(tempDir.resolve(".trash/" + UUID.randomUUID() + "-" + UUID.randomUUID()));
+        // Someone else's files in a shared root, e.g. /tmp
+        Path unrelated = Files.createDirectories(tempDir.resolve("3f0c1e7a-unrelated"));
+        Path unrelatedFile = Files.writeString(tempDir.resolve("notes.txt"), "keep");
+        Path unrelatedTrash = Files.createDirectories(tempDir.resolve(".trash/user-files"));
+
+        manager = new WorkspaceManager(tempDir.toString(), 0, 1000);
+
+        awaitTrash(1);
+        assertFalse(Files.exists(orphan.getParent()));
+        try (Stream<Path> trashed = Files.list(tempDir.resolve(".trash"))) {
+            assertEquals(List.of(unrelatedTrash), trashed.toList(), "only the panel's workspaces are deleted from the trash");
+        }
+        assertTrue(Files.isDirectory(unrelated));
+        assertEquals("keep", Files.readString(unrelatedFile));
+    }
+
+    @Test
+    void flagsWorkspacesOverTheQuota() throws Exception {
+        manager = new WorkspaceManager(tempDir.toString(), 1, 50);
+        WorkspaceManager.Workspace workspace = manager.create("app-2-latest");
+        CountDownLatch exceeded = new CountDownLatch(1);
+        workspace.onQuotaExceeded(exceeded::countDown);
+        workspace.enforceQuota();
+
+        Files.write(workspace.getPath().resolve("huge.bin"), new byte[2 * 1024 * 1024]);
+
+        assertTrue(exceeded.await(5, TimeUnit.SECONDS));
+        assertTrue(workspace.isOverQuota());
+        IOException error = assertThrows(IOException.class, workspace::enforceQuota);
+        assertTrue(error.getMessage().contains("1 MB"));
+        workspace.close();
+    }
+
+    private void awaitEmptyTrash() throws Exception {
+        awaitTrash(0);
+    }
+
+    private void awaitTrash(int remaining) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            try (Stream<Path> entries = Files.list(tempDir.resolve(".trash"))) {
+                if (entries.count() == remaining) return;
+            }
+            Thread.sleep(20);
+        }
+        fail("workspace trash was not emptied");
+    }
+}
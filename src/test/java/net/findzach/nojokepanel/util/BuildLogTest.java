@@ -0,0 +1,117 @@
+package net.findzach.nojokepanel.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BuildLogTest {
+
+    @TempDir
+    Path spillDir;
+
+    @Test
+    void spillsOldChunksOnceOverBudgetAndReadsThemBack() throws Exception {
+        LogChunkStore store = new LogChunkStore(16, 64, spillDir);
+        BuildLog log = store.create("app-1");
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String line = "line " + i;
+            expected.add(line);
+            log.append(line);
+        }
+
+        assertTrue(store.getResidentBytes() <= 64 + 16, "resident bytes should stay near the budget");
+        assertTrue(store.getSpilledBytes() > 0);
+        assertEquals(200, log.lineCount());
+        assertEquals(expected, log.readLines(0, Integer.MAX_VALUE).lines());
+    }
+
+    @Test
+    void readLinesResumesFromOffset() throws Exception {
+        LogChunkStore store = new LogChunkStore(8, 1024, spillDir);
+        BuildLog log = store.create("app-2");
+        log.append("first");
+        long offset = log.append("second");
+        log.append("third");
+
+        BuildLog.Slice slice = log.readLines(offset, 1024);
+        assertEquals(List.of("third"), slice.lines());
+        assertEquals(log.size(), slice.nextOffset());
+        assertEquals(List.of("second", "third"), log.tail(13));
+        assertEquals(List.of("third"), log.tail(12));
+    }
+
+    @Test
+    void concurrentWritersNeverSplitLines() throws Exception {
+        LogChunkStore store = new LogChunkStore(32, 128, spillDir);
+        BuildLog log = store.create("app-3");
+        Thread out = new Thread(() -> { for (int i = 0; i < 1000; i++) log.append("stdout " + i); });
+        Thread err = new Thread(() -> { for (int i = 0; i < 1000; i++) log.append("ERROR: stderr " + i); });
+        out.start();
+        err.start();
+        out.join();
+        err.join();
+
+        List<String> lines = log.readLines(0, Integer.MAX_VALUE).lines();
+        assertEquals(2000, lines.size());
+        assertTrue(lines.stream().allMatch(line -> line.matches("(stdout|ERROR: stderr) \\d+")));
+    }
+
+    @Test
+    void sealTrimsTheLastChunkAndLetsItSpill() throws Exception {
+        LogChunkStore store = new LogChunkStore(64, 1024, spillDir);
+        BuildLog log = store.create("app-5");
+        log.append("first");
+        log.append("second");
+        assertEquals(64, store.getResidentBytes(), "the chunk being written is allocated in full");
+
+        log.seal();
+        assertEquals(log.size(), store.getResidentBytes(), "only its contents stay on the heap");
+
+        // Another build's output pushes the sealed log out to disk, through a file opened just for that
+        BuildLog other = store.create("app-6");
+        for (int i = 0; i < 200; i++) other.append("other " + i);
+        assertTrue(Files.exists(spillDir.resolve("app-5.log")));
+        assertEquals(List.of("first", "second"), log.readLines(0, Integer.MAX_VALUE).lines());
+
+        long offset = log.append("late");
+        log.seal();
+        assertEquals(List.of("late"), log.readLines(offset - 5, 1024).lines());
+        assertEquals(List.of("first", "second", "late"), log.tail(1024));
+    }
+
+    @Test
+    void releaseFreesMemoryAndSpillFile() throws Exception {
+        LogChunkStore store = new LogChunkStore(16, 16, spillDir);
+        BuildLog log = store.create("app-4");
+        for (int i = 0; i < 50; i++) log.append("line " + i);
+        assertTrue(Files.exists(spillDir.resolve("app-4.log")));
+
+        log.release();
+        assertEquals(0, store.getResidentBytes());
+        assertFalse(Files.exists(spillDir.resolve("app-4.log")));
+    }
+
+    @Test
+    void aRetainedLogStaysReadableUntilTheLastRelease() throws Exception {
+        LogChunkStore store = new LogChunkStore(16, 16, spillDir);
+        BuildLog log = store.create("app-5");
+        for (int i = 0; i < 50; i++) log.append("line " + i);
+        assertTrue(log.retain());
+
+        log.release(); // The owner lets go first
+        assertEquals(List.of("line 49"), log.tail(8));
+        assertTrue(Files.exists(spillDir.resolve("app-5.log")));
+
+        log.release();
+        assertEquals(0, store.getResidentBytes());
+        assertFalse(Files.exists(spillDir.resolve("app-5.log")));
+        assertFalse(log.retain());
+    }
+}
@@ -0,0 +1,39 @@
+package net.findzach.nojokepanel.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DockerCallMetricsTest {
+
+    @Test
+    void groupsRequestsByPathTemplate() {
+        assertEquals("POST /containers/{id}/stop", DockerCallMetrics.commandOf("POST", "/v1.47/containers/3f2a9c/stop?t=10"));
+        assertEquals("GET /containers/json", DockerCallMetrics.commandOf("GET", "/containers/json?all=1"));
+        assertEquals("POST /containers/create", DockerCallMetrics.commandOf("POST", "/v1.41/containers/create?name=app"));
+        assertEquals("GET /images/{id}/json", DockerCallMetrics.commandOf("GET", "/images/paketobuildpacks/builder-jammy-base/json"));
+        assertEquals("DELETE /images/{id}", DockerCallMetrics.commandOf("DELETE", "/images/library/nginx:latest"));
+        assertEquals("GET /events", DockerCallMetrics.commandOf("GET", "/v1.47/events?since=1"));
+        assertEquals("GET /_ping", DockerCallMetrics.commandOf("GET", "/_ping"));
+    }
+
+    @Test
+    void countsCallsErrorsAndLatency() {
+        DockerCallMetrics metrics = new DockerCallMetrics();
+        metrics.finished("GET /_ping", metrics.started("GET /_ping"), false);
+        long inFlight = metrics.started("GET /_ping");
+        metrics.finished("POST /containers/{id}/stop", metrics.started("POST /containers/{id}/stop"), true);
+
+        List<DockerCallMetrics.CommandStats> stats = metrics.snapshot();
+        DockerCallMetrics.CommandStats ping = stats.stream().filter(s -> s.command().equals("GET /_ping")).findFirst().orElseThrow();
+        assertEquals(1, ping.calls());
+        assertEquals(1, ping.inFlight());
+        assertEquals(0, ping.errors());
+        DockerCallMetrics.CommandStats stop = stats.stream().filter(s -> s.command().startsWith("POST")).findFirst().orElseThrow();
+        assertEquals(1, stop.errors());
+        metrics.finished("GET /_ping", inFlight, false);
+        assertEquals(0, metrics.snapshot().get(0).inFlight());
+    }
+}
@@ -0,0 +1,71 @@
+package net.findzach.nojokepanel.util;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.command.ExecCreateCmd;
+import com.github.dockerjava.api.command.ExecCreateCmdResponse;
+import com.github.dockerjava.api.command.ExecStartCmd;
+import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.api.model.StreamType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class DockerProbeTest {
+
+    private final DockerClient docker = mock(DockerClient.class, RETURNS_DEEP_STUBS);
+    private final ExecCreateCmd execCreateCmd = mock(ExecCreateCmd.class, RETURNS_SELF);
+    private final DockerProbe probe = new DockerProbe(docker, "probe");
+    private String output;
+    private long exitCode;
+
+    @BeforeEach
+    void setUp() {
+        when(docker.execCreateCmd("probe")).thenReturn(execCreateCmd);
+        ExecCreateCmdResponse created = mock(ExecCreateCmdResponse.class);
+        when(created.getId()).thenReturn("exec-1");
+        when(execCreateCmd.exec()).thenReturn(created);
+        ExecStartCmd execStartCmd = mock(ExecStartCmd.class);
+        when(docker.execStartCmd("exec-1")).thenReturn(execStartCmd);
+        when(execStartCmd.exec(any())).thenAnswer(invocation -> {
+            ResultCallback<Frame> callback = invocation.getArgument(0);
+            if (!output.isEmpty()) {
+                callback.onNext(new Frame(StreamType.STDOUT, output.getBytes(StandardCharsets.UTF_8)));
+            }
+            callback.onComplete();
+            return callback;
+        });
+        when(docker.inspectExecCmd("exec-1").exec().getExitCodeLong()).thenAnswer(invocation -> exitCode);
+    }
+
+    @Test
+    void judgesTheHttpStatusLineLikeTheDirectProbe() throws Exception {
+        output = "HTTP/1.1 200 OK\r\n";
+        assertNull(probe.check("172.18.0.5", 8080, "health"));
+        ArgumentCaptor<String[]> cmd = ArgumentCaptor.forClass(String[].class);
+        verify(execCreateCmd).withCmd(cmd.capture());
+        assertEquals(List.of("/health", "172.18.0.5", "8080"), List.of(cmd.getValue()).subList(3, 6));
+
+        output = "HTTP/1.0 302 Found\r\n";
+        assertNull(probe.check("172.18.0.5", 8080, "/health"));
+        output = "HTTP/1.1 503 Service Unavailable\r\n";
+        assertEquals("HTTP 503", probe.check("172.18.0.5", 8080, "/health"));
+        output = "";
+        assertEquals("HTTP request failed", probe.check("172.18.0.5", 8080, "/health"));
+    }
+
+    @Test
+    void usesTheExitCodeForATcpProbe() throws Exception {
+        output = "";
+        exitCode = 0;
+        assertNull(probe.check("172.18.0.5", 8080, null));
+        exitCode = 1;
+        assertEquals("TCP connect failed", probe.check("172.18.0.5", 8080, ""));
+    }
+}
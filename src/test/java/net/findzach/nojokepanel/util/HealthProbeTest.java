@@ -0,0 +1,58 @@
+package net.findzach.nojokepanel.util;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HealthProbeTest {
+
+    private final HealthProbe probe = new HealthProbe();
+    private final AtomicInteger requests = new AtomicInteger();
+    private HttpServer server;
+    private int port;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        // Unhealthy for the first two probes, like an app still starting up
+        server.createContext("/health", exchange -> {
+            exchange.sendResponseHeaders(requests.incrementAndGet() < 3 ? 503 : 200, -1);
+            exchange.close();
+        });
+        server.start();
+        port = server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void waitsUntilTheHttpCheckPasses() throws Exception {
+        assertEquals("HTTP 503", probe.check("127.0.0.1", port, "/health"));
+        probe.await("127.0.0.1", port, "health", 5000, 10);
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    void fallsBackToATcpCheckWithoutAPath() throws Exception {
+        assertNull(probe.check("127.0.0.1", port, ""));
+        assertEquals(0, requests.get());
+
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closedPort = socket.getLocalPort();
+        }
+        IOException error = assertThrows(IOException.class, () -> probe.await("127.0.0.1", closedPort, null, 200, 50));
+        assertTrue(error.getMessage().contains("TCP connect failed"));
+    }
+}
@@ -0,0 +1,136 @@
+package net.findzach.nojokepanel.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogArchiveTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsRangesAndServesTheCompressedLogAsOneGzipStream() throws Exception {
+        LogChunkStore store = new LogChunkStore(64, 1024 * 1024, dir.resolve("spill"));
+        StringBuilder expected = new StringBuilder();
+        BuildLog log = store.create("app1");
+        for (int i = 0; i < 1000; i++) {
+            String line = "[builder] Adding layer 'paketo-buildpacks/node-engine:node' " + i;
+            log.append(line);
+            expected.append(line).append('\n');
+        }
+        byte[] original = expected.toString().getBytes(StandardCharsets.UTF_8);
+
+        try (LogArchive archive = new LogArchive(dir.resolve("archive"), 1024 * 1024, 4096, 0)) {
+            archive.archive("app1", log);
+            assertEquals(original.length, archive.size("app1"));
+            assertTrue(archive.compressedSize("app1") < original.length / 4, "build output compresses well");
+
+            // A range spanning two members
+            byte[] range = new byte[300];
+            assertEquals(300, archive.read("app1", 4000, range, 0, 300));
+            assertArrayEquals(Arrays.copyOfRange(original, 4000, 4300), range);
+
+            ByteArrayOutputStream tail = new ByteArrayOutputStream();
+            assertEquals(100, archive.copy("app1", original.length - 100, 1000, tail));
+            assertArrayEquals(Arrays.copyOfRange(original, original.length - 100, original.length), tail.toByteArray());
+            assertEquals(0, archive.read("app1", original.length, range, 0, 300));
+
+            ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+            assertEquals(archive.compressedSize("app1"), archive.transferCompressed("app1", Channels.newChannel(gzip)));
+            try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip.toByteArray()))) {
+                assertArrayEquals(original, in.readAllBytes());
+            }
+        }
+    }
+
+    @Test
+    void recoversFromATornWriteAndDropsTheOldestSegmentsOverTheLimit() throws Exception {
+        LogChunkStore store = new LogChunkStore(64, 1024 * 1024, dir.resolve("spill"));
+        Path root = dir.resolve("archive");
+        try (LogArchive archive = new LogArchive(root, 1, 4096, 0)) {
+            for (int build = 0; build < 3; build++) {
+                BuildLog log = store.create("app" + build);
+                log.append("build " + build);
+                archive.archive(log.getId(), log);
+            }
+        }
+        // A crash halfway through writing the next log leaves garbage after the last catalog record
+        try (FileChannel catalog = FileChannel.open(root.resolve("catalog.bin"), StandardOpenOption.APPEND)) {
+            catalog.write(ByteBuffer.wrap(new byte[]{0, 0, 1, 0, 42}));
+        }
+
+        try (LogArchive archive = new LogArchive(root, 1, 4096, 0)) {
+            assertEquals(3, archive.ids().size());
+            byte[] line = new byte[7];
+            archive.read("app2", 0, line, 0, line.length);
+            assertEquals("build 2", new String(line, StandardCharsets.UTF_8));
+
+            BuildLog next = store.create("app3");
+            next.append("build 3");
+            archive.archive("app3", next);
+        }
+
+        // Every log went to its own segment; a limit of about two segments keeps the newest two
+        long segment;
+        try (LogArchive archive = new LogArchive(root, 1, 4096, 0)) {
+            assertEquals(4, archive.ids().size(), "the torn record is gone, so later logs are readable again");
+            segment = archive.getDiskBytes() / 4;
+        }
+        try (LogArchive archive = new LogArchive(root, 1, 4096, segment * 2 + segment / 2)) {
+            BuildLog last = store.create("app4");
+            last.append("build 4");
+            assertEquals(List.of("app0", "app1", "app2"), archive.archive("app4", last).stream().sorted().toList());
+            assertFalse(archive.contains("app0"));
+            assertFalse(archive.contains("app2"));
+            assertTrue(archive.contains("app3"));
+            assertTrue(archive.contains("app4"));
+        }
+    }
+
+    @Test
+    void evictedLogsStayGoneAndTheCatalogKeepsOnlyLiveRecords() throws Exception {
+        LogChunkStore store = new LogChunkStore(64, 1024 * 1024, dir.resolve("spill"));
+        Path root = dir.resolve("archive");
+        long segment;
+        try (LogArchive archive = new LogArchive(root, 1, 4096, 0)) {
+            BuildLog log = store.create("app0");
+            log.append("build 0");
+            archive.archive("app0", log);
+            segment = archive.getDiskBytes();
+        }
+
+        try (LogArchive archive = new LogArchive(root, 1, 4096, segment * 2 + segment / 2)) {
+            for (int build = 1; build < 10; build++) {
+                BuildLog log = store.create("app" + build);
+                log.append("build " + build);
+                archive.archive(log.getId(), log);
+            }
+            assertFalse(archive.contains("app0"));
+            assertThrows(NoSuchFileException.class, () -> archive.read("app0", 0, new byte[7], 0, 7));
+            assertFalse(Files.exists(root.resolve("segment-000001.log.gz")), "a read never brings an evicted segment back");
+        }
+
+        long catalogBytes = Files.size(root.resolve("catalog.bin"));
+        try (LogArchive archive = new LogArchive(root, 1, 4096, 0)) {
+            assertEquals(2, archive.ids().size());
+            assertEquals(catalogBytes, Files.size(root.resolve("catalog.bin")), "nothing left to compact on restart");
+        }
+        assertTrue(catalogBytes < 10 * 30, "the catalog holds the two live logs, not all ten");
+    }
+}
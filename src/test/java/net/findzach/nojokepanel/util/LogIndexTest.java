@@ -0,0 +1,124 @@
+package net.findzach.nojokepanel.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogIndexTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void findsMatchingLinesWithOffsetsAcrossArchivedLogs() throws Exception {
+        LogArchive archive = new LogArchive(dir.resolve("archive"));
+        LogChunkStore store = new LogChunkStore(64, 1024 * 1024, dir.resolve("spill"));
+        LogIndex index = new LogIndex();
+        for (int build = 0; build < 3; build++) {
+            BuildLog log = store.create("app" + build);
+            for (int i = 0; i < 500; i++) {
+                log.append(i == 321 && build != 1 ? "ERROR: Cannot find module 'left-pad'" : "Step " + i + " of build " + build);
+            }
+            archive.archive(log.getId(), log);
+            String id = log.getId();
+            index.add(LogIndex.build(id, "repo" + build, archive.size(id),
+                    (offset, dst, dstOffset, length) -> archive.read(id, offset, dst, dstOffset, length), 256));
+        }
+
+        List<LogIndex.Block> blocks = index.candidates("cannot FIND module", null);
+        assertTrue(blocks.size() < index.getBlockCount() / 10, "the index should rule out almost every block");
+        List<String> hits = new ArrayList<>();
+        for (LogIndex.Block block : blocks) {
+            byte[] bytes = new byte[block.length()];
+            int read = archive.read(block.documentId(), block.offset(), bytes, 0, bytes.length);
+            LogIndex.scanBlock(block, bytes, read, "cannot FIND module", (line, offset, text) -> {
+                byte[] atOffset = new byte[text.length()];
+                try {
+                    archive.read(block.documentId(), offset, atOffset, 0, atOffset.length);
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+                assertEquals(text, new String(atOffset));
+                hits.add(block.documentId() + ":" + line + ":" + block.source());
+                return true;
+            });
+        }
+        assertEquals(List.of("app2:321:repo2", "app0:321:repo0"), hits, "newest log first, 0-based line numbers");
+        assertTrue(index.candidates("no such text", null).isEmpty());
+        assertEquals(1, index.candidates("cannot find", "app0").size());
+        assertThrows(IllegalArgumentException.class, () -> index.candidates("ab", null));
+    }
+
+    @Test
+    void savedDocumentsLoadBackIntoAnEqualIndex() throws Exception {
+        LogArchive archive = new LogArchive(dir.resolve("archive"));
+        LogChunkStore store = new LogChunkStore(64, 1024 * 1024, dir.resolve("spill"));
+        BuildLog log = store.create("saved");
+        for (int i = 0; i < 2000; i++) {
+            log.append("Downloading layer " + Integer.toHexString(i * 7919));
+        }
+        archive.archive("saved", log);
+        LogIndex.Document document = LogIndex.build("saved", null, archive.size("saved"),
+                (offset, dst, dstOffset, length) -> archive.read("saved", offset, dst, dstOffset, length), 1024);
+        document.save(dir.resolve("saved.idx"));
+
+        LogIndex built = new LogIndex();
+        built.add(document);
+        LogIndex loaded = new LogIndex();
+        loaded.add(LogIndex.Document.load(dir.resolve("saved.idx")));
+        assertFalse(loaded.add(LogIndex.Document.load(dir.resolve("saved.idx"))), "a log is only indexed once");
+
+        assertEquals(built.getBlockCount(), loaded.getBlockCount());
+        assertEquals(built.candidates("layer 3a", null), loaded.candidates("layer 3a", null));
+        assertFalse(loaded.candidates("layer 3a", null).isEmpty());
+    }
+
+    @Test
+    void removedLogsLeaveTheIndexAndAreCompactedAway() throws Exception {
+        LogArchive archive = new LogArchive(dir.resolve("archive"));
+        LogChunkStore store = new LogChunkStore(64, 1024 * 1024, dir.resolve("spill"));
+        LogIndex index = new LogIndex();
+        for (int build = 0; build < 4; build++) {
+            BuildLog log = store.create("app" + build);
+            for (int i = 0; i < 200; i++) {
+                log.append("Step " + i + " of build " + build + (build == 3 ? " only in the newest" : ""));
+            }
+            archive.archive(log.getId(), log);
+            String id = log.getId();
+            index.add(LogIndex.build(id, null, archive.size(id),
+                    (offset, dst, dstOffset, length) -> archive.read(id, offset, dst, dstOffset, length), 256));
+        }
+        int[] blocks = new int[4];
+        for (int build = 0; build < 4; build++) {
+            blocks[build] = index.candidates("of build " + build, null).size();
+        }
+        assertEquals(index.getBlockCount(), blocks[0] + blocks[1] + blocks[2] + blocks[3]);
+        List<LogIndex.Block> newest = index.candidates("only in the newest", null);
+
+        assertTrue(index.remove("app0"));
+        assertFalse(index.remove("app0"));
+        assertFalse(index.contains("app0"));
+        assertEquals(3, index.getDocumentCount());
+        assertEquals(blocks[1] + blocks[2] + blocks[3], index.getBlockCount());
+        assertTrue(index.candidates("of build 0", null).isEmpty(), "a removed log is hidden before compaction");
+
+        index.remove("app1"); // Half the blocks are now removed, which compacts the index
+        assertEquals(blocks[2] + blocks[3], index.getBlockCount());
+        assertTrue(index.candidates("of build 1", null).isEmpty());
+        assertEquals(newest, index.candidates("only in the newest", null), "blocks keep their place in their log");
+        assertEquals(blocks[2], index.candidates("of build 2", "app2").size());
+
+        BuildLog log = store.create("app4");
+        log.append("Step 0 of build 4");
+        archive.archive("app4", log);
+        index.add(LogIndex.build("app4", null, archive.size("app4"),
+                (offset, dst, dstOffset, length) -> archive.read("app4", offset, dst, dstOffset, length), 256));
+        assertEquals("app4", index.candidates("of build 4", null).get(0).documentId());
+        assertEquals(blocks[3], index.candidates("of build 3", null).size(), "documents added after compaction get fresh numbers");
+    }
+}
@@ -0,0 +1,75 @@
+package net.findzach.nojokepanel.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogTailTest {
+
+    @Test
+    void reassemblesLinesPerStreamAcrossFrames() {
+        LogTail tail = new LogTail(100, 1024);
+        List<LogTail.Line> live = new ArrayList<>();
+        tail.attach(live::add, -1, null, 0);
+
+        // stdout's line is split mid-character and stderr's frame lands in between
+        byte[] out = "2025-03-06T10:00:00.5Z h\u00e9llo\n".getBytes(StandardCharsets.UTF_8);
+        int split = "2025-03-06T10:00:00.5Z h".length() + 1;
+        tail.append(false, Arrays.copyOfRange(out, 0, split));
+        tail.append(true, "2025-03-06T10:00:01Z boom\r\n2025-03-06T10:00:02Z half".getBytes(StandardCharsets.UTF_8));
+        tail.append(false, Arrays.copyOfRange(out, split, out.length));
+        tail.flush();
+
+        assertEquals(3, live.size());
+        assertEquals("boom", live.get(0).text());
+        assertTrue(live.get(0).stderr());
+        assertEquals("h\u00e9llo", live.get(1).text());
+        assertFalse(live.get(1).stderr());
+        assertEquals(Instant.parse("2025-03-06T10:00:00.5Z"), live.get(1).timestamp());
+        assertEquals("half", live.get(2).text());
+    }
+
+    @Test
+    void seeksByTailTimeOrSequenceWithinTheRing() {
+        LogTail tail = new LogTail(5, 1024);
+        for (int i = 0; i < 8; i++) {
+            tail.append(false, ("2025-03-06T10:00:0" + i + "Z line " + i + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(5, tail.size(), "the ring keeps the newest lines only");
+
+        assertEquals(List.of("line 6", "line 7"), texts(tail.attach(line -> { }, -1, null, 2)));
+        assertEquals(List.of("line 5", "line 6", "line 7"),
+                texts(tail.attach(line -> { }, -1, Instant.parse("2025-03-06T10:00:05Z"), 100)));
+        LogTail.Backlog resumed = tail.attach(line -> { }, 7, null, 100); // Sequence numbers start at 1
+        assertEquals(List.of("line 7"), texts(resumed));
+        assertEquals(8, resumed.lastSeq());
+    }
+
+    @Test
+    void cutsOverlongLinesAndSkipsLinesRepeatedAfterAResume() {
+        LogTail tail = new LogTail(100, 8);
+        List<LogTail.Line> live = new ArrayList<>();
+        tail.attach(live::add, -1, null, 0);
+        tail.append(false, "0123456789abcdefghij\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals(List.of("01234567", "89abcdef", "ghij"), live.stream().map(LogTail.Line::text).toList());
+
+        LogTail stamped = new LogTail(100, 1024);
+        stamped.append(false, "2025-03-06T10:00:01.1Z a\n2025-03-06T10:00:01.2Z b\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals(Instant.parse("2025-03-06T10:00:01.2Z"), stamped.resume());
+        // The new stream starts at the whole second, repeating both lines
+        stamped.append(false, "2025-03-06T10:00:01.1Z a\n2025-03-06T10:00:01.2Z b\n2025-03-06T10:00:01.3Z c\n".getBytes(StandardCharsets.UTF_8));
+        LogTail.Viewer viewer = line -> { };
+        assertEquals(List.of("a", "b", "c"), texts(stamped.attach(viewer, -1, null, 100)));
+        assertTrue(stamped.detach(viewer), "the last viewer left");
+    }
+
+    private static List<String> texts(LogTail.Backlog backlog) {
+        return backlog.lines().stream().map(LogTail.Line::text).toList();
+    }
+}
@@ -0,0 +1,53 @@
+package net.findzach.nojokepanel.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricSeriesTest {
+
+    private static float[] sample(float cpu) {
+        float[] values = new float[MetricSeries.CHANNELS];
+        values[MetricSeries.CPU_PERCENT] = cpu;
+        return values;
+    }
+
+    @Test
+    void keepsTheLastSecondsAndBlanksGaps() {
+        MetricSeries series = new MetricSeries(4, 4, 4);
+        series.record(100, sample(1));
+        series.record(101, sample(2));
+        series.record(103, sample(4));
+
+        MetricSeries.Window window = series.window(MetricSeries.Resolution.SECOND);
+        assertEquals(100, window.startEpochSecond());
+        float[] cpu = window.values()[MetricSeries.CPU_PERCENT];
+        assertEquals(1f, cpu[0]);
+        assertEquals(2f, cpu[1]);
+        assertTrue(Float.isNaN(cpu[2]));
+        assertEquals(4f, cpu[3]);
+
+        series.record(106, sample(7)); // Wraps around the ring
+        cpu = series.window(MetricSeries.Resolution.SECOND).values()[MetricSeries.CPU_PERCENT];
+        assertEquals(4f, cpu[0]);
+        assertTrue(Float.isNaN(cpu[1]));
+        assertTrue(Float.isNaN(cpu[2]));
+        assertEquals(7f, cpu[3]);
+        assertEquals(7f, series.latest()[MetricSeries.CPU_PERCENT]);
+    }
+
+    @Test
+    void rollsClosedMinutesUpIntoAverages() {
+        MetricSeries series = new MetricSeries(4, 4, 4);
+        series.record(60, sample(10));
+        series.record(61, sample(20));
+        series.record(62, sample(Float.NaN));
+        assertEquals(0, series.window(MetricSeries.Resolution.MINUTE).values()[0].length); // Minute still open
+
+        series.record(120, sample(50));
+        MetricSeries.Window minutes = series.window(MetricSeries.Resolution.MINUTE);
+        float[] cpu = minutes.values()[MetricSeries.CPU_PERCENT];
+        assertEquals(60, minutes.stepSeconds());
+        assertEquals(15f, cpu[cpu.length - 1]);
+    }
+}
@@ -0,0 +1,86 @@
+package net.findzach.nojokepanel.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StageGraphTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void runsIndependentStagesConcurrentlyAndRespectsDependencies() throws Exception {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        List<String> order = new CopyOnWriteArrayList<>();
+        AtomicInteger flaky = new AtomicInteger();
+
+        new StageGraph("app-1", executor, 1)
+                .stage("clone", () -> {
+                    bothStarted.countDown();
+                    assertTrue(bothStarted.await(5, TimeUnit.SECONDS), "pack should run alongside clone");
+                    order.add("clone");
+                })
+                .stage("pack", 3, () -> {
+                    if (flaky.incrementAndGet() < 3) throw new IOException("download reset");
+                    bothStarted.countDown();
+                    order.add("pack");
+                })
+                .stage("build", () -> order.add("build"), "clone", "pack")
+                .stage("start", () -> order.add("start"), "build")
+                .run();
+
+        assertEquals(3, flaky.get());
+        assertEquals(List.of("build", "start"), order.subList(2, 4));
+        assertTrue(order.containsAll(List.of("clone", "pack")));
+    }
+
+    @Test
+    void failureSkipsDependentsAndInterruptsRunningStages() throws Exception {
+        CountDownLatch slowStarted = new CountDownLatch(1);
+        AtomicInteger interrupted = new AtomicInteger();
+        AtomicInteger dependentRuns = new AtomicInteger();
+        StageGraph graph = new StageGraph("app-2", executor, 1)
+                .stage("slow", () -> {
+                    slowStarted.countDown();
+                    try {
+                        Thread.sleep(10_000);
+                    } catch (InterruptedException e) {
+                        interrupted.incrementAndGet();
+                        throw e;
+                    }
+                })
+                .stage("broken", () -> {
+                    assertTrue(slowStarted.await(5, TimeUnit.SECONDS));
+                    throw new IOException("pack build failed");
+                })
+                .stage("create", dependentRuns::incrementAndGet, "slow", "broken");
+
+        long started = System.nanoTime();
+        IOException error = assertThrows(IOException.class, graph::run);
+        assertEquals("pack build failed", error.getMessage());
+        assertEquals(1, interrupted.get());
+        assertEquals(0, dependentRuns.get());
+        assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started) < 5);
+    }
+
+    @Test
+    void rejectsDependenciesOnLaterStages() {
+        StageGraph graph = new StageGraph("app-3", executor, 1);
+        assertThrows(IllegalArgumentException.class, () -> graph.stage("build", () -> { }, "clone"));
+    }
+}
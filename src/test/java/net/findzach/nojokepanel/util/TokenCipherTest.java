@@ -0,0 +1,28 @@
+package net.findzach.nojokepanel.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenCipherTest {
+
+    @Test
+    void roundTripsWithARandomIvPerValue() {
+        TokenCipher cipher = new TokenCipher(TokenCipher.generateKey());
+        String first = cipher.encrypt("ghp_secret");
+        String second = cipher.encrypt("ghp_secret");
+
+        assertNotEquals(first, second);
+        assertFalse(first.contains("ghp_secret"));
+        assertEquals("ghp_secret", cipher.decrypt(first));
+        assertEquals("ghp_secret", cipher.decrypt(second));
+    }
+
+    @Test
+    void rejectsValuesEncryptedWithAnotherKey() {
+        String encrypted = new TokenCipher(TokenCipher.generateKey()).encrypt("ghp_secret");
+        TokenCipher other = new TokenCipher(TokenCipher.generateKey());
+
+        assertThrows(IllegalStateException.class, () -> other.decrypt(encrypted));
+    }
+}